@@ -0,0 +1,127 @@
+#!/usr/bin/env python
+# Copyright 2013 The Flutter Authors. All rights reserved.
+# Use of this source code is governed by a BSD-style license that can be
+# found in the LICENSE file.
+
+"""
+Compares the JSON results of a JMH run of the codec benchmarks, recorded with
+`-prof gc -rf json`, against a baseline, or replaces the baseline with them.
+
+No baseline is checked in, since throughput depends on the machine. Record one
+in the build output directory of the machine that runs the comparison with
+`testing/run_tests.py --type=java_benchmarks --update-java-benchmark-baseline`.
+
+Allocation per operation does not depend on the machine, so it is held to a
+tight tolerance. Throughput does, so it is held to a loose one that can be
+disabled with --throughput-tolerance=0 when comparing across machines.
+"""
+
+from __future__ import print_function
+
+import argparse
+import json
+import os
+import platform
+import sys
+
+ALLOCATION_METRIC = u'\u00b7gc.alloc.rate.norm'
+# Allocations below this many bytes per operation are measurement noise.
+ALLOCATION_SLACK_BYTES = 64
+
+
+def BenchmarkKey(result):
+  params = result.get('params', {})
+  key = result['benchmark']
+  for name in sorted(params):
+    key += ' %s=%s' % (name, params[name])
+  return key
+
+
+def Summarize(results):
+  summary = {}
+  for result in results:
+    primary = result['primaryMetric']
+    entry = {
+      'throughput': round(primary['score'], 3),
+      'throughput_unit': primary['scoreUnit'],
+    }
+    allocation = result.get('secondaryMetrics', {}).get(ALLOCATION_METRIC)
+    if allocation is not None:
+      entry['allocated_bytes_per_op'] = round(allocation['score'], 1)
+    summary[BenchmarkKey(result)] = entry
+  return summary
+
+
+def Compare(baseline, current, throughput_tolerance, allocation_tolerance):
+  regressions = []
+  for key in sorted(current):
+    if key not in baseline:
+      print('New benchmark without a baseline: %s' % key)
+      continue
+    expected = baseline[key]
+    actual = current[key]
+    if throughput_tolerance > 0:
+      floor = expected['throughput'] * (1 - throughput_tolerance)
+      if actual['throughput'] < floor:
+        regressions.append('%s: throughput %.3f %s, baseline %.3f' % (
+            key, actual['throughput'], actual['throughput_unit'], expected['throughput']))
+    if 'allocated_bytes_per_op' in expected and 'allocated_bytes_per_op' in actual:
+      ceiling = expected['allocated_bytes_per_op'] * (1 + allocation_tolerance) + ALLOCATION_SLACK_BYTES
+      if actual['allocated_bytes_per_op'] > ceiling:
+        regressions.append('%s: allocates %.1f B/op, baseline %.1f B/op' % (
+            key, actual['allocated_bytes_per_op'], expected['allocated_bytes_per_op']))
+  skipped = [key for key in baseline if key not in current]
+  if skipped:
+    print('%d of %d baseline benchmarks were not run.' % (len(skipped), len(baseline)))
+  return regressions
+
+
+def main():
+  parser = argparse.ArgumentParser(description=__doc__)
+  parser.add_argument('--baseline', required=True,
+      help='The baseline JSON file.')
+  parser.add_argument('--results', required=True,
+      help='The JSON results written by JMH.')
+  parser.add_argument('--update', action='store_true', default=False,
+      help='Replace the baseline with the results instead of comparing them.')
+  parser.add_argument('--throughput-tolerance', type=float, default=0.3,
+      help='The tolerated relative drop in throughput, or 0 to ignore throughput.')
+  parser.add_argument('--allocation-tolerance', type=float, default=0.1,
+      help='The tolerated relative growth in bytes allocated per operation.')
+  args = parser.parse_args()
+
+  with open(args.results) as results_file:
+    results = json.load(results_file)
+  current = Summarize(results)
+
+  if args.update:
+    baseline = {
+      'jvm': '%s %s' % (results[0]['vmName'], results[0]['jdkVersion']) if results else '',
+      'host': '%s %s' % (platform.system(), platform.machine()),
+      'benchmarks': current,
+    }
+    with open(args.baseline, 'w') as baseline_file:
+      json.dump(baseline, baseline_file, indent=2, sort_keys=True, separators=(',', ': '))
+      baseline_file.write('\n')
+    print('Wrote %d benchmarks to %s' % (len(current), args.baseline))
+    return 0
+
+  if not os.path.isfile(args.baseline):
+    print('No baseline at %s, so %d benchmarks were not compared. Record one with '
+          '--update-java-benchmark-baseline.' % (args.baseline, len(current)))
+    return 0
+
+  with open(args.baseline) as baseline_file:
+    baseline = json.load(baseline_file)['benchmarks']
+  regressions = Compare(baseline, current, args.throughput_tolerance, args.allocation_tolerance)
+  if regressions:
+    print('Codec benchmarks regressed against %s:' % args.baseline)
+    for regression in regressions:
+      print('  ' + regression)
+    return 1
+  print('Codec benchmarks are within the tolerances of %s.' % args.baseline)
+  return 0
+
+
+if __name__ == '__main__':
+  sys.exit(main())
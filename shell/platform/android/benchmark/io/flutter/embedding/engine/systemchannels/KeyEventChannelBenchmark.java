@@ -0,0 +1,53 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.embedding.engine.systemchannels;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.flutter.plugin.common.JSONMessageCodec;
+
+/**
+ * Measures the per-event cost of encoding a key event as a JSON message on
+ * {@code flutter/keyevent} against encoding it as a key data packet.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyEventChannelBenchmark {
+  private final KeyEventChannel.FlutterKeyEvent keyEvent =
+      new KeyEventChannel.FlutterKeyEvent(1, 0, 'a', 'A', 29, null, 30, 1, 257, 1118, 654);
+
+  @Benchmark
+  public int encodeJsonMessage() {
+    ByteBuffer buffer = JSONMessageCodec.INSTANCE.encodeMessage(
+        KeyEventChannel.encodeKeyEvent("keydown", keyEvent)
+    );
+    return buffer.position();
+  }
+
+  // Like KeyEventChannel, which reuses one buffer for every packet.
+  private final ByteBuffer packet = ByteBuffer.allocateDirect(KeyEventChannel.KEY_DATA_SIZE);
+
+  @Benchmark
+  public int encodeKeyDataPacket() {
+    packet.clear();
+    KeyEventChannel.encodeKeyData(KeyEventChannel.KEY_DATA_TYPE_KEYDOWN, keyEvent, packet);
+    return packet.position();
+  }
+}
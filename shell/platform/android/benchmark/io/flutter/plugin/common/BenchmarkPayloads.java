@@ -0,0 +1,151 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugin.common;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Payloads shaped like the traffic seen on platform channels, shared by the codec benchmarks.
+ *
+ * <p>All payloads are built deterministically so that results are comparable between runs.</p>
+ */
+final class BenchmarkPayloads {
+    /**
+     * The payload shapes benchmarked for the message codecs.
+     */
+    enum Shape {
+        /**
+         * A flat map with a handful of scalar values, like the arguments of most method calls.
+         */
+        SMALL_MAP,
+        /**
+         * Four levels of maps with four children each, holding strings, numbers and lists, like a
+         * serialized widget or semantics tree.
+         */
+        NESTED_MAP,
+        /**
+         * 4096 doubles, like a batch of sensor or path data.
+         */
+        LARGE_TYPED_ARRAY,
+        /**
+         * 16K chars of mostly ASCII text with some two- and three-byte UTF-8 characters.
+         */
+        LONG_STRING
+    }
+
+    private BenchmarkPayloads() {
+    }
+
+    static Object message(Shape shape) {
+        switch (shape) {
+            case SMALL_MAP:
+                return smallMap();
+            case NESTED_MAP:
+                return nestedMap(4);
+            case LARGE_TYPED_ARRAY:
+                return largeTypedArray();
+            case LONG_STRING:
+                return longString(16 * 1024);
+            default:
+                throw new IllegalArgumentException("Unknown shape: " + shape);
+        }
+    }
+
+    /**
+     * A call like those sent for text input and clipboard updates.
+     */
+    static MethodCall smallMethodCall() {
+        return new MethodCall("TextInput.setEditingState", smallMap());
+    }
+
+    /**
+     * A call carrying a tree of arguments.
+     */
+    static MethodCall nestedMethodCall() {
+        return new MethodCall("SemanticsUpdate.apply", nestedMap(4));
+    }
+
+    static String longString(int length) {
+        final StringBuilder builder = new StringBuilder(length);
+        final String text = "The quick brown fox jumps over the lazy dog. ";
+        int i = 0;
+        while (builder.length() < length) {
+            // Every 64th char is non-ASCII, alternating between two- and three-byte encodings.
+            if (i % 64 == 63) {
+                builder.append(i % 128 == 127 ? '\u00e9' : '\u4e2d');
+            } else {
+                builder.append(text.charAt(i % text.length()));
+            }
+            i++;
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Returns a direct buffer holding {@code size} bytes between position zero and its limit, as
+     * messages arrive from the engine.
+     */
+    static ByteBuffer bytes(int size) {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < size; i++) {
+            buffer.put((byte) i);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Copies the bytes of an encoded message, between position zero and its current position, into
+     * a direct buffer positioned for decoding.
+     */
+    static ByteBuffer asReceived(ByteBuffer encoded) {
+        final ByteBuffer bytes = encoded.duplicate();
+        bytes.flip();
+        final ByteBuffer received = ByteBuffer.allocateDirect(bytes.remaining()).order(ByteOrder.nativeOrder());
+        received.put(bytes);
+        received.flip();
+        return received;
+    }
+
+    private static Map<String, Object> smallMap() {
+        final Map<String, Object> map = new HashMap<>();
+        map.put("text", "Hello, world");
+        map.put("selectionBase", 5);
+        map.put("selectionExtent", 12);
+        map.put("composing", false);
+        map.put("scale", 1.5);
+        return map;
+    }
+
+    private static Map<String, Object> nestedMap(int depth) {
+        final Map<String, Object> map = new HashMap<>();
+        map.put("id", depth * 1000);
+        map.put("label", "node at depth " + depth);
+        map.put("rect", Arrays.asList(0.0, 0.0, 411.5, 48.0 * depth));
+        map.put("flags", 0x2000L | depth);
+        if (depth > 1) {
+            final List<Object> children = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                children.add(nestedMap(depth - 1));
+            }
+            map.put("children", children);
+        }
+        return map;
+    }
+
+    private static double[] largeTypedArray() {
+        final double[] values = new double[4096];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i * 0.25;
+        }
+        return values;
+    }
+}
@@ -0,0 +1,53 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugin.common;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link BinaryCodec} passing small and large messages through, as a floor for the other
+ * codec benchmarks.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BinaryCodecBenchmark {
+    @Param({"64", "262144"})
+    public int size;
+
+    private ByteBuffer message;
+
+    @Setup
+    public void setUp() {
+        message = BenchmarkPayloads.bytes(size);
+    }
+
+    @Benchmark
+    public ByteBuffer encode() {
+        message.rewind();
+        return BinaryCodec.INSTANCE.encodeMessage(message);
+    }
+
+    @Benchmark
+    public ByteBuffer decode() {
+        message.rewind();
+        return BinaryCodec.INSTANCE.decodeMessage(message);
+    }
+}
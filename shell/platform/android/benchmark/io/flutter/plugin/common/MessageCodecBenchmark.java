@@ -0,0 +1,77 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugin.common;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link StandardMessageCodec} and {@link JSONMessageCodec} encoding and decoding
+ * {@link BenchmarkPayloads.Shape}s.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageCodecBenchmark {
+    @Param({"STANDARD", "JSON", "JSON_COLLECTIONS"})
+    public String codec;
+
+    @Param({"SMALL_MAP", "NESTED_MAP", "LARGE_TYPED_ARRAY", "LONG_STRING"})
+    public String shape;
+
+    private MessageCodec<Object> messageCodec;
+    private Object message;
+    private ByteBuffer encoded;
+
+    @Setup
+    public void setUp() {
+        switch (codec) {
+            case "STANDARD":
+                messageCodec = StandardMessageCodec.INSTANCE;
+                break;
+            case "JSON":
+                messageCodec = JSONMessageCodec.INSTANCE;
+                break;
+            case "JSON_COLLECTIONS":
+                messageCodec = JSONMessageCodec.COLLECTIONS_INSTANCE;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown codec: " + codec);
+        }
+        message = BenchmarkPayloads.message(BenchmarkPayloads.Shape.valueOf(shape));
+        final ByteBuffer buffer = messageCodec.encodeMessage(message);
+        encoded = BenchmarkPayloads.asReceived(buffer);
+    }
+
+    @Benchmark
+    public int encode() {
+        final ByteBuffer buffer = messageCodec.encodeMessage(message);
+        final int size = buffer.position();
+        // Lease the buffer and hand it back, as a channel and its messenger do.
+        DirectByteBufferPool.INSTANCE.lease(buffer);
+        DirectByteBufferPool.INSTANCE.release(buffer);
+        return size;
+    }
+
+    @Benchmark
+    public Object decode() {
+        encoded.rewind();
+        return messageCodec.decodeMessage(encoded);
+    }
+}
@@ -0,0 +1,119 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugin.common;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link StandardMethodCodec} and {@link JSONMethodCodec} encoding and decoding method
+ * calls and the success envelopes that answer them, and {@link StandardMethodCodec} decoding
+ * lazily for handlers that read a single argument.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MethodCodecBenchmark {
+    @Param({"STANDARD", "STANDARD_LAZY", "JSON", "JSON_COLLECTIONS"})
+    public String codec;
+
+    @Param({"SMALL_CALL", "NESTED_CALL"})
+    public String call;
+
+    private MethodCodec methodCodec;
+    private MethodCall methodCall;
+    private String routingArgument;
+    private ByteBuffer encodedCall;
+    private ByteBuffer encodedEnvelope;
+
+    @Setup
+    public void setUp() {
+        switch (codec) {
+            case "STANDARD":
+                methodCodec = StandardMethodCodec.INSTANCE;
+                break;
+            case "STANDARD_LAZY":
+                methodCodec = new StandardMethodCodec(new StandardMessageCodec(false, false, true));
+                break;
+            case "JSON":
+                methodCodec = JSONMethodCodec.INSTANCE;
+                break;
+            case "JSON_COLLECTIONS":
+                methodCodec = JSONMethodCodec.COLLECTIONS_INSTANCE;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown codec: " + codec);
+        }
+        switch (call) {
+            case "SMALL_CALL":
+                methodCall = BenchmarkPayloads.smallMethodCall();
+                routingArgument = "text";
+                break;
+            case "NESTED_CALL":
+                methodCall = BenchmarkPayloads.nestedMethodCall();
+                routingArgument = "id";
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown call: " + call);
+        }
+        ByteBuffer buffer = methodCodec.encodeMethodCall(methodCall);
+        encodedCall = BenchmarkPayloads.asReceived(buffer);
+        // The reply carries the call's arguments back as its result.
+        buffer = methodCodec.encodeSuccessEnvelope(methodCall.arguments);
+        encodedEnvelope = BenchmarkPayloads.asReceived(buffer);
+    }
+
+    @Benchmark
+    public int encodeMethodCall() {
+        final ByteBuffer buffer = methodCodec.encodeMethodCall(methodCall);
+        final int size = buffer.position();
+        // Lease the buffer and hand it back, as a channel and its messenger do.
+        DirectByteBufferPool.INSTANCE.lease(buffer);
+        DirectByteBufferPool.INSTANCE.release(buffer);
+        return size;
+    }
+
+    @Benchmark
+    public MethodCall decodeMethodCall() {
+        encodedCall.rewind();
+        return methodCodec.decodeMethodCall(encodedCall);
+    }
+
+    @Benchmark
+    public Object decodeMethodCallAndReadArgument() {
+        encodedCall.rewind();
+        // Like a handler that reads one argument and ignores the rest.
+        return methodCodec.decodeMethodCall(encodedCall).argument(routingArgument);
+    }
+
+    @Benchmark
+    public int encodeSuccessEnvelope() {
+        final ByteBuffer buffer = methodCodec.encodeSuccessEnvelope(methodCall.arguments);
+        final int size = buffer.position();
+        DirectByteBufferPool.INSTANCE.lease(buffer);
+        DirectByteBufferPool.INSTANCE.release(buffer);
+        return size;
+    }
+
+    @Benchmark
+    public Object decodeEnvelope() {
+        encodedEnvelope.rewind();
+        return methodCodec.decodeEnvelope(encodedEnvelope);
+    }
+}
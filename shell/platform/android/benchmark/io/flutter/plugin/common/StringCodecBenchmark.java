@@ -0,0 +1,59 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugin.common;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link StringCodec} encoding and decoding short and long strings.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringCodecBenchmark {
+    @Param({"32", "16384"})
+    public int length;
+
+    private String message;
+    private ByteBuffer encoded;
+
+    @Setup
+    public void setUp() {
+        message = BenchmarkPayloads.longString(length);
+        final ByteBuffer buffer = StringCodec.INSTANCE.encodeMessage(message);
+        encoded = BenchmarkPayloads.asReceived(buffer);
+    }
+
+    @Benchmark
+    public int encode() {
+        final ByteBuffer buffer = StringCodec.INSTANCE.encodeMessage(message);
+        final int size = buffer.position();
+        // Lease the buffer and hand it back, as a channel and its messenger do.
+        DirectByteBufferPool.INSTANCE.lease(buffer);
+        DirectByteBufferPool.INSTANCE.release(buffer);
+        return size;
+    }
+
+    @Benchmark
+    public String decode() {
+        encoded.rewind();
+        return StringCodec.INSTANCE.decodeMessage(encoded);
+    }
+}
@@ -0,0 +1,287 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugin.codegen;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates a {@code io.flutter.plugin.common.TypedMessageCodec} for each class annotated with
+ * {@code io.flutter.plugin.common.GenerateMessageCodec}.
+ *
+ * <p>Run it by adding the jar built by the {@code flutter_codec_generator} target to the annotation
+ * processor path of a project that depends on the Flutter embedding, and passing
+ * {@code -processor io.flutter.plugin.codegen.MessageCodecProcessor} to javac.</p>
+ */
+public final class MessageCodecProcessor extends AbstractProcessor {
+    private static final String ANNOTATION = "io.flutter.plugin.common.GenerateMessageCodec";
+    private static final String CODEC_SUFFIX = "Codec";
+    private static final int MIN_TYPE = 128;
+    private static final int MAX_TYPE = 255;
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(ANNOTATION);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() != ElementKind.CLASS) {
+                    error(element, "@GenerateMessageCodec only applies to classes");
+                    continue;
+                }
+                generateCodec((TypeElement) element);
+            }
+        }
+        return true;
+    }
+
+    private void generateCodec(TypeElement type) {
+        final Integer extensionType = extensionTypeOf(type);
+        if (extensionType == null) {
+            return;
+        }
+        if (extensionType < MIN_TYPE || extensionType > MAX_TYPE) {
+            error(type, "The extension type must be between " + MIN_TYPE + " and " + MAX_TYPE);
+            return;
+        }
+        if (!type.getTypeParameters().isEmpty()) {
+            error(type, "Classes with @GenerateMessageCodec must not be generic");
+            return;
+        }
+        if (type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC)) {
+            error(type, "Nested classes with @GenerateMessageCodec must be static");
+            return;
+        }
+        if (type.getModifiers().contains(Modifier.ABSTRACT) || !hasNoArgumentConstructor(type)) {
+            error(type, "Classes with @GenerateMessageCodec need a non-private no-argument constructor");
+            return;
+        }
+
+        final List<VariableElement> fields = new ArrayList<>();
+        for (Element member : type.getEnclosedElements()) {
+            if (member.getKind() != ElementKind.FIELD
+                || member.getModifiers().contains(Modifier.STATIC)
+                || member.getModifiers().contains(Modifier.TRANSIENT)) {
+                continue;
+            }
+            if (member.getModifiers().contains(Modifier.PRIVATE) || member.getModifiers().contains(Modifier.FINAL)) {
+                error(member, "Fields encoded by a generated codec must be neither private nor final");
+                return;
+            }
+            if (member.asType().getKind() == TypeKind.CHAR) {
+                error(member, "char fields are not supported by StandardMessageCodec");
+                return;
+            }
+            fields.add((VariableElement) member);
+        }
+
+        final String packageName = packageOf(type).getQualifiedName().toString();
+        final String codecName = codecNameOf(type);
+        final String valueType = type.getQualifiedName().toString();
+        final StringBuilder source = new StringBuilder();
+        source.append("// Generated by ").append(getClass().getName()).append(". Do not edit.\n\n");
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("import io.flutter.plugin.common.TypedMessageCodec;\n\n");
+        source.append("public final class ").append(codecName)
+            .append(" extends TypedMessageCodec<").append(valueType).append("> {\n");
+        source.append("    public static final ").append(codecName).append(" INSTANCE = new ")
+            .append(codecName).append("();\n\n");
+        source.append("    private ").append(codecName).append("() {\n");
+        source.append("        super(").append(extensionType).append(", ").append(fields.size()).append(");\n");
+        source.append("    }\n\n");
+
+        source.append("    @Override\n");
+        source.append("    protected void writeFields(").append(valueType)
+            .append(" value, TypedMessageCodec.FieldWriter writer) {\n");
+        for (VariableElement field : fields) {
+            source.append("        ").append(writeStatement(field)).append("\n");
+        }
+        source.append("    }\n\n");
+
+        source.append("    @Override\n");
+        source.append("    @SuppressWarnings(\"unchecked\")\n");
+        source.append("    protected ").append(valueType).append(" readFields(TypedMessageCodec.FieldReader reader) {\n");
+        source.append("        final ").append(valueType).append(" value = new ").append(valueType).append("();\n");
+        for (VariableElement field : fields) {
+            source.append("        value.").append(field.getSimpleName()).append(" = ")
+                .append(readExpression(field)).append(";\n");
+        }
+        source.append("        return value;\n");
+        source.append("    }\n");
+        source.append("}\n");
+
+        final String qualifiedCodecName = packageName.isEmpty() ? codecName : packageName + "." + codecName;
+        try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedCodecName, type).openWriter()) {
+            writer.write(source.toString());
+        } catch (IOException e) {
+            error(type, "Failed to write " + qualifiedCodecName + ": " + e.getMessage());
+        }
+    }
+
+    private String writeStatement(VariableElement field) {
+        final String access = "value." + field.getSimpleName();
+        final TypeMirror type = field.asType();
+        switch (type.getKind()) {
+            case INT:
+            case SHORT:
+            case BYTE:
+                return "writer.writeInt(" + access + ");";
+            case LONG:
+                return "writer.writeLong(" + access + ");";
+            case FLOAT:
+            case DOUBLE:
+                return "writer.writeDouble(" + access + ");";
+            case BOOLEAN:
+                return "writer.writeBoolean(" + access + ");";
+            default:
+                break;
+        }
+        if (isString(type)) {
+            return "writer.writeString(" + access + ");";
+        }
+        final TypeElement codecType = annotatedTypeOf(type);
+        if (codecType != null) {
+            return "writer.writeTyped(" + qualifiedCodecNameOf(codecType) + ".INSTANCE, " + access + ");";
+        }
+        return "writer.writeValue(" + access + ");";
+    }
+
+    private String readExpression(VariableElement field) {
+        final TypeMirror type = field.asType();
+        switch (type.getKind()) {
+            case INT:
+                return "reader.readInt()";
+            case SHORT:
+                return "(short) reader.readInt()";
+            case BYTE:
+                return "(byte) reader.readInt()";
+            case LONG:
+                return "reader.readLong()";
+            case FLOAT:
+                return "(float) reader.readDouble()";
+            case DOUBLE:
+                return "reader.readDouble()";
+            case BOOLEAN:
+                return "reader.readBoolean()";
+            default:
+                break;
+        }
+        if (isString(type)) {
+            return "reader.readString()";
+        }
+        final TypeElement codecType = annotatedTypeOf(type);
+        if (codecType != null) {
+            return "reader.readTyped(" + qualifiedCodecNameOf(codecType) + ".INSTANCE)";
+        }
+        return "(" + type + ") reader.readValue()";
+    }
+
+    private Integer extensionTypeOf(TypeElement type) {
+        final AnnotationMirror annotation = annotationOf(type);
+        if (annotation != null) {
+            for (ExecutableElement key : annotation.getElementValues().keySet()) {
+                if (key.getSimpleName().contentEquals("type")) {
+                    final AnnotationValue value = annotation.getElementValues().get(key);
+                    return (Integer) value.getValue();
+                }
+            }
+        }
+        error(type, "@GenerateMessageCodec needs an extension type");
+        return null;
+    }
+
+    private static AnnotationMirror annotationOf(Element element) {
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            final Element annotationType = annotation.getAnnotationType().asElement();
+            if (((TypeElement) annotationType).getQualifiedName().contentEquals(ANNOTATION)) {
+                return annotation;
+            }
+        }
+        return null;
+    }
+
+    // Returns the class of the given type if it has a generated codec as well.
+    private static TypeElement annotatedTypeOf(TypeMirror type) {
+        if (type.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        final Element element = ((DeclaredType) type).asElement();
+        return annotationOf(element) == null ? null : (TypeElement) element;
+    }
+
+    private static boolean isString(TypeMirror type) {
+        return type.getKind() == TypeKind.DECLARED
+            && ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().contentEquals("java.lang.String");
+    }
+
+    private static boolean hasNoArgumentConstructor(TypeElement type) {
+        for (Element member : type.getEnclosedElements()) {
+            if (member.getKind() == ElementKind.CONSTRUCTOR
+                && ((ExecutableElement) member).getParameters().isEmpty()
+                && !member.getModifiers().contains(Modifier.PRIVATE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static PackageElement packageOf(Element element) {
+        while (element.getKind() != ElementKind.PACKAGE) {
+            element = element.getEnclosingElement();
+        }
+        return (PackageElement) element;
+    }
+
+    // The codec of a nested class is named after the enclosing classes too, as in Outer_InnerCodec.
+    private static String codecNameOf(TypeElement type) {
+        String name = type.getSimpleName().toString();
+        Element enclosing = type.getEnclosingElement();
+        while (enclosing.getKind() != ElementKind.PACKAGE) {
+            name = enclosing.getSimpleName() + "_" + name;
+            enclosing = enclosing.getEnclosingElement();
+        }
+        return name + CODEC_SUFFIX;
+    }
+
+    private static String qualifiedCodecNameOf(TypeElement type) {
+        final String packageName = packageOf(type).getQualifiedName().toString();
+        return packageName.isEmpty() ? codecNameOf(type) : packageName + "." + codecNameOf(type);
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
@@ -3,6 +3,8 @@ package io.flutter.embedding.android;
 import android.os.Build;
 import android.support.annotation.IntDef;
 import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+import android.view.Choreographer;
 import android.view.InputDevice;
 import android.view.MotionEvent;
 
@@ -10,6 +12,7 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
 import io.flutter.embedding.engine.renderer.FlutterRenderer;
+import io.flutter.view.InputDeviceCache;
 
 /**
  * Sends touch information from Android to Flutter in a format that Flutter
@@ -73,8 +76,48 @@ public class AndroidTouchProcessor {
   // This flag indicates whether the original Android pointer events were batched together.
   private static final int POINTER_DATA_FLAG_BATCHED = 1;
 
+  private static final int BYTES_PER_POINTER = POINTER_DATA_FIELD_COUNT * BYTES_PER_FIELD;
+
+  // The number of packets that pointer data is written into, in turn.
+  @VisibleForTesting
+  static final int PACKET_RING_SIZE = 4;
+
+  // Packets are first allocated with room for this many pointers, which covers
+  // most events, and grow when an event has more.
+  private static final int INITIAL_PACKET_POINTER_CAPACITY = 2;
+
+  // The history index that stands for the current sample of an event.
+  private static final int CURRENT_SAMPLE = -1;
+
   @NonNull
   private final FlutterRenderer renderer;
+  @NonNull
+  private final InputDeviceCache inputDeviceCache = InputDeviceCache.getInstance();
+
+  // Direct buffers are slow to allocate and are only freed after a GC, so
+  // packets are reused instead of allocated for every event. The engine copies
+  // a packet before dispatchPointerDataPacket() returns, after which it may be
+  // written again; the ring leaves the most recent packets intact for a while
+  // longer. Touch events arrive on the main thread only.
+  @NonNull
+  private final ByteBuffer[] packetRing = new ByteBuffer[PACKET_RING_SIZE];
+  // The packet that was written last, which is still being added to while it
+  // waits for the next frame.
+  private int packetIndex;
+  private boolean hasPendingPacket;
+
+  private boolean forwardsHistoricalSamples;
+  private boolean coalescesToVsync;
+  private boolean isFlushScheduled;
+
+  @NonNull
+  private final Choreographer.FrameCallback flushCallback = new Choreographer.FrameCallback() {
+    @Override
+    public void doFrame(long frameTimeNanos) {
+      isFlushScheduled = false;
+      flush();
+    }
+  };
 
   /**
    * Constructs an {@code AndroidTouchProcessor} that will send touch event data
@@ -85,26 +128,76 @@ public class AndroidTouchProcessor {
     this.renderer = renderer;
   }
 
+  /**
+   * Sets whether moves also send Flutter the earlier samples that Android
+   * batched into the same {@link MotionEvent}, see
+   * {@link MotionEvent#getHistorySize()}.
+   *
+   * Android delivers at most one move per frame, so at high input rates an
+   * event holds several samples of which only the latest is sent by default.
+   * When enabled, every sample is sent with its own time stamp, in the same
+   * packet as the latest one, giving gestures such as flings and drawn
+   * strokes the full input rate. Disabled by default.
+   */
+  public void setForwardsHistoricalSamples(boolean forwardsHistoricalSamples) {
+    this.forwardsHistoricalSamples = forwardsHistoricalSamples;
+  }
+
+  /**
+   * Sets whether pointer data is held until the next frame and sent to Flutter
+   * in one packet, rather than sent as each {@link MotionEvent} arrives.
+   *
+   * Touch events are dispatched unbuffered, so a fast moving finger produces
+   * several events per frame, each of which would cost a JNI call and a task
+   * on Flutter's UI thread. When enabled, the data of all of them is appended
+   * to one packet that is sent from a {@link Choreographer} frame callback, on
+   * the same clock that {@link io.flutter.view.VsyncWaiter} drives Flutter
+   * frames with. Every pointer keeps its own time stamp, so Flutter sees the
+   * same data, but an event may reach Flutter up to one frame later, so this
+   * trades input latency for UI thread time. Disabled by default, so that
+   * apps only pay that latency when they opt in.
+   */
+  public void setCoalescesToVsync(boolean coalescesToVsync) {
+    this.coalescesToVsync = coalescesToVsync;
+    if (!coalescesToVsync) {
+      flush();
+    }
+  }
+
+  /**
+   * Sends the pointer data that is waiting for the next frame to Flutter right
+   * away. Called before the {@link FlutterRenderer} stops accepting pointer
+   * data, so that no events are lost.
+   */
+  public void flush() {
+    if (!hasPendingPacket) {
+      return;
+    }
+    hasPendingPacket = false;
+    ByteBuffer packet = packetRing[packetIndex];
+    renderer.dispatchPointerDataPacket(packet, packet.position());
+  }
+
   /**
    * Sends the given {@link MotionEvent} data to Flutter in a format that
    * Flutter understands.
    */
   public boolean onTouchEvent(@NonNull MotionEvent event) {
     int pointerCount = event.getPointerCount();
+    int maskedAction = event.getActionMasked();
+    int historySize = forwardsHistoricalSamples && maskedAction == MotionEvent.ACTION_MOVE
+        ? event.getHistorySize()
+        : 0;
 
     // Prepare a data packet of the appropriate size and order.
-    ByteBuffer packet = ByteBuffer.allocateDirect(
-        pointerCount * POINTER_DATA_FIELD_COUNT * BYTES_PER_FIELD
-    );
-    packet.order(ByteOrder.LITTLE_ENDIAN);
+    ByteBuffer packet = obtainPacket(pointerCount * (historySize + 1));
 
-    int maskedAction = event.getActionMasked();
     int pointerChange = getPointerChangeForAction(event.getActionMasked());
     boolean updateForSinglePointer = maskedAction == MotionEvent.ACTION_DOWN || maskedAction == MotionEvent.ACTION_POINTER_DOWN;
     boolean updateForMultiplePointers = !updateForSinglePointer && (maskedAction == MotionEvent.ACTION_UP || maskedAction == MotionEvent.ACTION_POINTER_UP);
     if (updateForSinglePointer) {
       // ACTION_DOWN and ACTION_POINTER_DOWN always apply to a single pointer only.
-      addPointerForIndex(event, event.getActionIndex(), pointerChange, 0, packet);
+      addPointerForIndex(event, event.getActionIndex(), CURRENT_SAMPLE, pointerChange, 0, packet);
     } else if (updateForMultiplePointers) {
       // ACTION_UP and ACTION_POINTER_UP may contain position updates for other pointers.
       // We are converting these updates to move events here in order to preserve this data.
@@ -112,28 +205,35 @@ public class AndroidTouchProcessor {
       // the original Android event later, should it need to forward it to a PlatformView.
       for (int p = 0; p < pointerCount; p++) {
         if (p != event.getActionIndex() && event.getToolType(p) == MotionEvent.TOOL_TYPE_FINGER) {
-          addPointerForIndex(event, p, PointerChange.MOVE, POINTER_DATA_FLAG_BATCHED, packet);
+          addPointerForIndex(event, p, CURRENT_SAMPLE, PointerChange.MOVE, POINTER_DATA_FLAG_BATCHED, packet);
         }
       }
       // It's important that we're sending the UP event last. This allows PlatformView
       // to correctly batch everything back into the original Android event if needed.
-      addPointerForIndex(event, event.getActionIndex(), pointerChange, 0, packet);
+      addPointerForIndex(event, event.getActionIndex(), CURRENT_SAMPLE, pointerChange, 0, packet);
     } else {
       // ACTION_MOVE may not actually mean all pointers have moved
       // but it's the responsibility of a later part of the system to
       // ignore 0-deltas if desired.
+      // Historical samples come first, oldest first. They are marked as batched
+      // so that a PlatformView still receives the one original Android event.
+      for (int h = 0; h < historySize; h++) {
+        for (int p = 0; p < pointerCount; p++) {
+          addPointerForIndex(event, p, h, pointerChange, POINTER_DATA_FLAG_BATCHED, packet);
+        }
+      }
       for (int p = 0; p < pointerCount; p++) {
-        addPointerForIndex(event, p, pointerChange, 0, packet);
+        addPointerForIndex(event, p, CURRENT_SAMPLE, pointerChange, 0, packet);
       }
     }
 
     // Verify that the packet is the expected size.
-    if (packet.position() % (POINTER_DATA_FIELD_COUNT * BYTES_PER_FIELD) != 0) {
+    if (packet.position() % BYTES_PER_POINTER != 0) {
       throw new AssertionError("Packet position is not on field boundary");
     }
 
     // Send the packet to Flutter.
-    renderer.dispatchPointerDataPacket(packet, packet.position());
+    sendPacket(packet);
 
     return true;
   }
@@ -157,24 +257,76 @@ public class AndroidTouchProcessor {
     }
 
     int pointerChange = getPointerChangeForAction(event.getActionMasked());
-    ByteBuffer packet = ByteBuffer.allocateDirect(
-        event.getPointerCount() * POINTER_DATA_FIELD_COUNT * BYTES_PER_FIELD
-    );
-    packet.order(ByteOrder.LITTLE_ENDIAN);
+    ByteBuffer packet = obtainPacket(event.getPointerCount());
 
     // ACTION_HOVER_MOVE always applies to a single pointer only.
-    addPointerForIndex(event, event.getActionIndex(), pointerChange, 0, packet);
-    if (packet.position() % (POINTER_DATA_FIELD_COUNT * BYTES_PER_FIELD) != 0) {
+    addPointerForIndex(event, event.getActionIndex(), CURRENT_SAMPLE, pointerChange, 0, packet);
+    if (packet.position() % BYTES_PER_POINTER != 0) {
       throw new AssertionError("Packet position is not on field boundary.");
     }
-    renderer.dispatchPointerDataPacket(packet, packet.position());
+    sendPacket(packet);
     return true;
   }
 
+  /**
+   * Returns the packet to write the pointers of the next event into, with room
+   * for {@code pointerCount} more pointers.
+   *
+   * This is the next packet in the ring, empty, unless a packet is waiting for
+   * the next frame, in which case the pointers are appended to that one.
+   */
+  @NonNull
+  private ByteBuffer obtainPacket(int pointerCount) {
+    if (!hasPendingPacket) {
+      packetIndex = (packetIndex + 1) % PACKET_RING_SIZE;
+      if (packetRing[packetIndex] != null) {
+        packetRing[packetIndex].clear();
+      }
+    }
+
+    ByteBuffer packet = packetRing[packetIndex];
+    int size = (packet == null ? 0 : packet.position()) + pointerCount * BYTES_PER_POINTER;
+    if (packet == null || packet.capacity() < size) {
+      int capacity = packet == null
+          ? INITIAL_PACKET_POINTER_CAPACITY * BYTES_PER_POINTER
+          : packet.capacity();
+      while (capacity < size) {
+        capacity *= 2;
+      }
+      ByteBuffer grown = ByteBuffer.allocateDirect(capacity);
+      grown.order(ByteOrder.LITTLE_ENDIAN);
+      if (packet != null) {
+        packet.flip();
+        grown.put(packet);
+      }
+      packet = grown;
+      packetRing[packetIndex] = packet;
+    }
+    return packet;
+  }
+
+  /**
+   * Sends the packet to Flutter, or leaves it for the next frame when
+   * coalescing.
+   */
+  private void sendPacket(@NonNull ByteBuffer packet) {
+    if (!coalescesToVsync) {
+      renderer.dispatchPointerDataPacket(packet, packet.position());
+      return;
+    }
+    hasPendingPacket = true;
+    if (!isFlushScheduled) {
+      isFlushScheduled = true;
+      Choreographer.getInstance().postFrameCallback(flushCallback);
+    }
+  }
+
   // TODO(mattcarroll): consider creating a PointerPacket class instead of using a procedure that mutates inputs.
+  // Adds the sample at historyIndex, or the current sample for CURRENT_SAMPLE.
   private void addPointerForIndex(
       MotionEvent event,
       int pointerIndex,
+      int historyIndex,
       int pointerChange,
       int pointerData,
       ByteBuffer packet
@@ -189,15 +341,18 @@ public class AndroidTouchProcessor {
         ? PointerSignalKind.SCROLL
         : PointerSignalKind.NONE;
 
-    long timeStamp = event.getEventTime() * 1000; // Convert from milliseconds to microseconds.
+    long eventTime = historyIndex == CURRENT_SAMPLE
+        ? event.getEventTime()
+        : event.getHistoricalEventTime(historyIndex);
+    long timeStamp = eventTime * 1000; // Convert from milliseconds to microseconds.
 
     packet.putLong(timeStamp); // time_stamp
     packet.putLong(pointerChange); // change
     packet.putLong(pointerKind); // kind
     packet.putLong(signalKind); // signal_kind
     packet.putLong(event.getPointerId(pointerIndex)); // device
-    packet.putDouble(event.getX(pointerIndex)); // physical_x
-    packet.putDouble(event.getY(pointerIndex)); // physical_y
+    packet.putDouble(getAxisValue(event, MotionEvent.AXIS_X, pointerIndex, historyIndex)); // physical_x
+    packet.putDouble(getAxisValue(event, MotionEvent.AXIS_Y, pointerIndex, historyIndex)); // physical_y
 
     if (pointerKind == PointerDeviceKind.MOUSE) {
       packet.putLong(event.getButtonState() & 0x1F); // buttons
@@ -209,39 +364,31 @@ public class AndroidTouchProcessor {
 
     packet.putLong(0); // obscured
 
-    packet.putDouble(event.getPressure(pointerIndex)); // pressure
-    double pressureMin = 0.0;
-    double pressureMax = 1.0;
-    if (event.getDevice() != null) {
-      InputDevice.MotionRange pressureRange = event.getDevice().getMotionRange(MotionEvent.AXIS_PRESSURE);
-      if (pressureRange != null) {
-        pressureMin = pressureRange.getMin();
-        pressureMax = pressureRange.getMax();
-      }
-    }
-    packet.putDouble(pressureMin); // pressure_min
-    packet.putDouble(pressureMax); // pressure_max
+    packet.putDouble(getAxisValue(event, MotionEvent.AXIS_PRESSURE, pointerIndex, historyIndex)); // pressure
+    InputDeviceCache.Device device = inputDeviceCache.getDevice(event.getDeviceId());
+    packet.putDouble(device.pressureMin); // pressure_min
+    packet.putDouble(device.pressureMax); // pressure_max
 
     if (pointerKind == PointerDeviceKind.STYLUS) {
-      packet.putDouble(event.getAxisValue(MotionEvent.AXIS_DISTANCE, pointerIndex)); // distance
+      packet.putDouble(getAxisValue(event, MotionEvent.AXIS_DISTANCE, pointerIndex, historyIndex)); // distance
       packet.putDouble(0.0); // distance_max
     } else {
       packet.putDouble(0.0); // distance
       packet.putDouble(0.0); // distance_max
     }
 
-    packet.putDouble(event.getSize(pointerIndex)); // size
+    packet.putDouble(getAxisValue(event, MotionEvent.AXIS_SIZE, pointerIndex, historyIndex)); // size
 
-    packet.putDouble(event.getToolMajor(pointerIndex)); // radius_major
-    packet.putDouble(event.getToolMinor(pointerIndex)); // radius_minor
+    packet.putDouble(getAxisValue(event, MotionEvent.AXIS_TOOL_MAJOR, pointerIndex, historyIndex)); // radius_major
+    packet.putDouble(getAxisValue(event, MotionEvent.AXIS_TOOL_MINOR, pointerIndex, historyIndex)); // radius_minor
 
     packet.putDouble(0.0); // radius_min
     packet.putDouble(0.0); // radius_max
 
-    packet.putDouble(event.getAxisValue(MotionEvent.AXIS_ORIENTATION, pointerIndex)); // orientation
+    packet.putDouble(getAxisValue(event, MotionEvent.AXIS_ORIENTATION, pointerIndex, historyIndex)); // orientation
 
     if (pointerKind == PointerDeviceKind.STYLUS) {
-      packet.putDouble(event.getAxisValue(MotionEvent.AXIS_TILT, pointerIndex)); // tilt
+      packet.putDouble(getAxisValue(event, MotionEvent.AXIS_TILT, pointerIndex, historyIndex)); // tilt
     } else {
       packet.putDouble(0.0); // tilt
     }
@@ -257,6 +404,12 @@ public class AndroidTouchProcessor {
     }
   }
 
+  private static float getAxisValue(MotionEvent event, int axis, int pointerIndex, int historyIndex) {
+    return historyIndex == CURRENT_SAMPLE
+        ? event.getAxisValue(axis, pointerIndex)
+        : event.getHistoricalAxisValue(axis, pointerIndex, historyIndex);
+  }
+
   @PointerChange
   private int getPointerChangeForAction(int maskedAction) {
     // Primary pointer:
@@ -95,6 +95,7 @@ public class FlutterView extends FrameLayout {
   private AndroidTouchProcessor androidTouchProcessor;
   @Nullable
   private AccessibilityBridge accessibilityBridge;
+  private boolean coalescesPointerEventsToVsync;
 
   // Directly implemented View behavior that communicates with Flutter.
   private final FlutterRenderer.ViewportMetrics viewportMetrics = new FlutterRenderer.ViewportMetrics();
@@ -469,6 +470,22 @@ public class FlutterView extends FrameLayout {
     return androidTouchProcessor.onTouchEvent(event);
   }
 
+  /**
+   * Sets whether the pointer data of the touch events that arrive during a frame is sent
+   * to Flutter together at the next frame, rather than as each event arrives.
+   *
+   * Coalescing saves Flutter's UI thread a task for every event, at the cost of up to one
+   * frame of input latency. Disabled by default.
+   *
+   * See {@link AndroidTouchProcessor#setCoalescesToVsync(boolean)}.
+   */
+  public void setCoalescesPointerEventsToVsync(boolean coalescesPointerEventsToVsync) {
+    this.coalescesPointerEventsToVsync = coalescesPointerEventsToVsync;
+    if (androidTouchProcessor != null) {
+      androidTouchProcessor.setCoalescesToVsync(coalescesPointerEventsToVsync);
+    }
+  }
+
   /**
    * Invoked by Android when a generic motion event occurs, e.g., joystick movement, mouse hover,
    * track pad touches, scroll wheel movements, etc.
@@ -580,6 +597,7 @@ public class FlutterView extends FrameLayout {
         textInputPlugin
     );
     androidTouchProcessor = new AndroidTouchProcessor(this.flutterEngine.getRenderer());
+    androidTouchProcessor.setCoalescesToVsync(coalescesPointerEventsToVsync);
     accessibilityBridge = new AccessibilityBridge(
         this,
         flutterEngine.getAccessibilityChannel(),
@@ -649,6 +667,9 @@ public class FlutterView extends FrameLayout {
     accessibilityBridge.release();
     accessibilityBridge = null;
 
+    // Deliver pointer data that is waiting for the next frame while the engine can still take it.
+    androidTouchProcessor.flush();
+
     // Inform the Android framework that it should retrieve a new InputConnection
     // now that the engine is detached. The new InputConnection will be null, which
     // signifies that this View does not process input (until a new engine is attached).
@@ -24,6 +24,7 @@ import io.flutter.embedding.engine.FlutterEngine.EngineLifecycleListener;
 import io.flutter.embedding.engine.dart.PlatformMessageHandler;
 import io.flutter.embedding.engine.renderer.FlutterRenderer;
 import io.flutter.embedding.engine.renderer.OnFirstFrameRenderedListener;
+import io.flutter.plugin.common.DirectByteBufferPool;
 import io.flutter.plugin.common.StandardMessageCodec;
 import io.flutter.view.AccessibilityBridge;
 import io.flutter.view.FlutterCallbackInformation;
@@ -639,9 +640,16 @@ public class FlutterJNI {
   // Called by native.
   // TODO(mattcarroll): determine if message is nonull or nullable
   @SuppressWarnings("unused")
-  private void handlePlatformMessage(@NonNull final String channel, byte[] message, final int replyId) {
+  private void handlePlatformMessage(
+      @NonNull final String channel,
+      @Nullable ByteBuffer message,
+      final int replyId,
+      final long messageData
+  ) {
     if (platformMessageHandler != null) {
-      platformMessageHandler.handleMessageFromDart(channel, message, replyId);
+      platformMessageHandler.handleMessageFromDart(channel, message, replyId, messageData);
+    } else {
+      cleanupMessageData(messageData);
     }
     // TODO(mattcarroll): log dropped messages when in debug mode (https://github.com/flutter/flutter/issues/25391)
   }
@@ -649,13 +657,30 @@ public class FlutterJNI {
   // Called by native to respond to a platform message that we sent.
   // TODO(mattcarroll): determine if reply is nonull or nullable
   @SuppressWarnings("unused")
-  private void handlePlatformMessageResponse(int replyId, byte[] reply) {
+  private void handlePlatformMessageResponse(int replyId, @Nullable ByteBuffer reply, long messageData) {
     if (platformMessageHandler != null) {
-      platformMessageHandler.handlePlatformMessageResponse(replyId, reply);
+      platformMessageHandler.handlePlatformMessageResponse(replyId, reply, messageData);
+    } else {
+      cleanupMessageData(messageData);
     }
     // TODO(mattcarroll): log dropped messages when in debug mode (https://github.com/flutter/flutter/issues/25391)
   }
 
+  /**
+   * Releases the engine memory behind a message or reply buffer passed to a
+   * {@link PlatformMessageHandler}.
+   * <p>
+   * The buffer must not be read after this call. A {@code messageData} of zero, which accompanies
+   * empty messages, is ignored. This method may be called from any thread.
+   */
+  public void cleanupMessageData(long messageData) {
+    if (messageData != 0) {
+      nativeCleanupMessageData(messageData);
+    }
+  }
+
+  private native void nativeCleanupMessageData(long messageData);
+
   /**
    * Sends an empty reply (identified by {@code responseId}) from Android to Flutter over the given
    * {@code channel}.
@@ -679,6 +704,10 @@ public class FlutterJNI {
 
   /**
    * Sends a reply {@code message} from Android to Flutter over the given {@code channel}.
+   * <p>
+   * The bytes of {@code message} are copied by the engine before this method returns, after which
+   * {@code message} is handed back to {@link DirectByteBufferPool#INSTANCE} for reuse if it was
+   * leased from there.
    */
   @UiThread
   public void dispatchPlatformMessage(@NonNull String channel, @Nullable ByteBuffer message, int position, int responseId) {
@@ -694,6 +723,7 @@ public class FlutterJNI {
     } else {
       Log.w(TAG, "Tried to send a platform message to Flutter, but FlutterJNI was detached from native C++. Could not send. Channel: " + channel + ". Response ID: " + responseId);
     }
+    DirectByteBufferPool.INSTANCE.release(message);
   }
 
   // Send a data-carrying platform message to Dart.
@@ -705,6 +735,37 @@ public class FlutterJNI {
       int responseId
   );
 
+  /**
+   * Sends several platform messages from Android to Flutter in a single call.
+   * <p>
+   * The first {@code position} bytes of {@code batch} hold one frame per message, each made of
+   * <ul>
+   *   <li>the length of the UTF-8 channel name, as an int</li>
+   *   <li>the UTF-8 channel name</li>
+   *   <li>the response ID, as an int, or zero if no response is expected</li>
+   *   <li>the length of the message, as an int, or -1 for an empty message</li>
+   *   <li>the message bytes</li>
+   * </ul>
+   * with all ints in native byte order. The engine dispatches the messages in order and copies
+   * {@code batch} before this method returns.
+   */
+  @UiThread
+  public void dispatchPlatformMessageBatch(@NonNull ByteBuffer batch, int position) {
+    ensureRunningOnMainThread();
+    if (isAttached()) {
+      nativeDispatchPlatformMessageBatch(nativePlatformViewId, batch, position);
+    } else {
+      Log.w(TAG, "Tried to send a batch of platform messages to Flutter, but FlutterJNI was detached from native C++. Could not send.");
+    }
+  }
+
+  // Send a batch of platform messages to Dart.
+  private native void nativeDispatchPlatformMessageBatch(
+      long nativePlatformViewId,
+      @NonNull ByteBuffer batch,
+      int position
+  );
+
   // TODO(mattcarroll): differentiate between channel responses and platform responses.
   @UiThread
   public void invokePlatformMessageEmptyResponseCallback(int responseId) {
@@ -736,6 +797,8 @@ public class FlutterJNI {
     } else {
       Log.w(TAG, "Tried to send a platform message response, but FlutterJNI was detached from native C++. Could not send. Response ID: " + responseId);
     }
+    // The engine has copied the response, so a pooled buffer can be reused.
+    DirectByteBufferPool.INSTANCE.release(message);
   }
 
   // Send a data-carrying response to a platform message received from Dart.
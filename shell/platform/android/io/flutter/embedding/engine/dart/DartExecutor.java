@@ -159,6 +159,7 @@ public class DartExecutor implements BinaryMessenger {
   }
 
   //------ START BinaryMessenger -----
+  // The BinaryMessenger methods below may be called from any thread, not only the main thread.
 
   /**
    * Sends the given {@code message} from Android to Dart over the given {@code channel}.
@@ -167,7 +168,6 @@ public class DartExecutor implements BinaryMessenger {
    * @param message the message payload, a direct-allocated {@link ByteBuffer} with the message bytes
    */
   @Override
-  @UiThread
   public void send(@NonNull String channel, @Nullable ByteBuffer message) {
     messenger.send(channel, message, null);
   }
@@ -182,11 +182,35 @@ public class DartExecutor implements BinaryMessenger {
    * @param callback a callback invoked when the Dart application responds to the message
    */
   @Override
-  @UiThread
   public void send(@NonNull String channel, @Nullable ByteBuffer message, @Nullable BinaryMessenger.BinaryReply callback) {
     messenger.send(channel, message, callback);
   }
 
+  /**
+   * Sends the given {@code messages} from Android to Dart over the given {@code channel} and
+   * then has the provided {@code callback} invoked when the Dart side responds, or its
+   * {@link BinaryMessenger.TimeoutBinaryReply#onTimeout()} invoked if Dart does not respond within
+   * {@code timeoutMillis}.
+   *
+   * @param channel       the name of the logical channel used for the message.
+   * @param message       the message payload, a direct-allocated {@link ByteBuffer} with the message
+   *                      bytes between position zero and current position, or null.
+   * @param callback      a callback invoked when the Dart application responds to the message or
+   *                      fails to do so in time
+   * @param timeoutMillis the positive number of milliseconds to wait for a response
+   * @return a {@link BinaryMessenger.Cancellable} that stops waiting for the response
+   */
+  @Override
+  @NonNull
+  public BinaryMessenger.Cancellable send(
+      @NonNull String channel,
+      @Nullable ByteBuffer message,
+      @NonNull BinaryMessenger.TimeoutBinaryReply callback,
+      long timeoutMillis
+  ) {
+    return messenger.send(channel, message, callback, timeoutMillis);
+  }
+
   /**
    * Sets the given {@link io.flutter.plugin.common.BinaryMessenger.BinaryMessageHandler} as the
    * singular handler for all incoming messages received from the Dart side of this Dart execution
@@ -196,11 +220,42 @@ public class DartExecutor implements BinaryMessenger {
    * @param handler a {@link BinaryMessageHandler} to be invoked on incoming messages, or null.
    */
   @Override
-  @UiThread
   public void setMessageHandler(@NonNull String channel, @Nullable BinaryMessenger.BinaryMessageHandler handler) {
     messenger.setMessageHandler(channel, handler);
   }
 
+  /**
+   * Creates a {@link BinaryMessenger.TaskQueue} for running message handlers of this Dart
+   * execution context off the main thread.
+   *
+   * @param options the {@link BinaryMessenger.TaskQueueOptions} describing the queue.
+   */
+  @Override
+  @NonNull
+  public BinaryMessenger.TaskQueue makeBackgroundTaskQueue(@NonNull BinaryMessenger.TaskQueueOptions options) {
+    return messenger.makeBackgroundTaskQueue(options);
+  }
+
+  /**
+   * Sets the given {@link io.flutter.plugin.common.BinaryMessenger.BinaryMessageHandler} as the
+   * singular handler for all incoming messages received from the Dart side of this Dart execution
+   * context, to be invoked on the given {@code taskQueue}.
+   *
+   * @param channel the name of the channel.
+   * @param handler a {@link BinaryMessageHandler} to be invoked on incoming messages, or null.
+   * @param taskQueue a {@link BinaryMessenger.TaskQueue} made by
+   *                  {@link #makeBackgroundTaskQueue(BinaryMessenger.TaskQueueOptions)}, or null
+   *                  for the main thread.
+   */
+  @Override
+  public void setMessageHandler(
+      @NonNull String channel,
+      @Nullable BinaryMessenger.BinaryMessageHandler handler,
+      @Nullable BinaryMessenger.TaskQueue taskQueue
+  ) {
+    messenger.setMessageHandler(channel, handler, taskQueue);
+  }
+
   /**
    * Returns the number of pending channel callback replies.
    *
@@ -208,18 +263,57 @@ public class DartExecutor implements BinaryMessenger {
    * ByteBuffer, io.flutter.plugin.common.BinaryMessenger.BinaryReply)}, developers can optionally
    * specify a reply callback if they expect a reply from the Flutter application.
    *
-   * <p>This method tracks all the pending callbacks that are waiting for response, and is supposed
-   * to be called from the main thread (as other methods). Calling from a different thread could
-   * possibly capture an indeterministic internal state, so don't do it.
+   * <p>This method tracks all the pending callbacks that are waiting for response. It may be called
+   * from any thread, but messages sent concurrently may or may not be counted.
    *
    * <p>Currently, it's mainly useful for a testing framework like Espresso to determine whether all
    * the async channel callbacks are handled and the app is idle.
    */
-  @UiThread
   public int getPendingChannelResponseCount() {
     return messenger.getPendingChannelResponseCount();
   }
 
+  /**
+   * Sets how long a reply from the Flutter application is awaited for messages sent without a
+   * timeout, after which the reply callback is dropped. Callbacks that implement
+   * {@link BinaryMessenger.TimeoutBinaryReply}, such as those of
+   * {@link io.flutter.plugin.common.MethodChannel#invokeMethod}, are told that they timed out, and
+   * all other callbacks receive a null reply. A reply that arrives later is ignored.
+   * <p>
+   * Defaults to zero, which keeps such callbacks until the Flutter application responds, however
+   * long that takes. The new timeout applies to messages sent afterwards.
+   *
+   * @param timeoutMillis the non-negative number of milliseconds to await a reply, or zero.
+   */
+  public void setStaleReplyTimeout(long timeoutMillis) {
+    messenger.setStaleReplyTimeout(timeoutMillis);
+  }
+
+  /**
+   * Coalesces the messages sent to Dart during one turn of the main looper into a single native
+   * call, instead of crossing JNI once per message.
+   * <p>
+   * Batching suits channels that send many small messages in quick succession. Messages are still
+   * delivered to Dart one by one and in order, but each may be delayed until the current main
+   * looper task and the tasks queued before the flush have run.
+   *
+   * @param listener a {@link PlatformMessageBatchListener} informed of every dispatched batch, or
+   *                 null.
+   */
+  @UiThread
+  public void enablePlatformMessageBatching(@Nullable PlatformMessageBatchListener listener) {
+    messenger.enableBatching(listener);
+  }
+
+  /**
+   * Sends any batched messages to Dart and returns to sending every message as soon as it is
+   * submitted.
+   */
+  @UiThread
+  public void disablePlatformMessageBatching() {
+    messenger.disableBatching();
+  }
+
   //------ END BinaryMessenger -----
 
   /**
@@ -249,6 +343,22 @@ public class DartExecutor implements BinaryMessenger {
     }
   }
 
+  /**
+   * Receives metrics about batches of platform messages, see
+   * {@link #enablePlatformMessageBatching(PlatformMessageBatchListener)}.
+   */
+  public interface PlatformMessageBatchListener {
+    /**
+     * Called on the main thread after a batch was handed to the engine.
+     *
+     * @param messageCount      the number of messages in the batch.
+     * @param byteCount         the size of the batch, including framing, in bytes.
+     * @param flushLatencyNanos the time between the first message joining the batch and the batch
+     *                          being sent, in nanoseconds.
+     */
+    void onBatchDispatched(int messageCount, int byteCount, long flushLatencyNanos);
+  }
+
   /**
    * Configuration options that specify which Dart entrypoint function is executed and where
    * to find that entrypoint and other assets required for Dart execution.
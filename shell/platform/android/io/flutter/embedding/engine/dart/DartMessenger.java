@@ -4,14 +4,24 @@
 
 package io.flutter.embedding.engine.dart;
 
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.UiThread;
 
 import java.nio.ByteBuffer;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import io.flutter.Log;
 import io.flutter.embedding.engine.FlutterJNI;
@@ -26,37 +36,99 @@ import io.flutter.plugin.common.BinaryMessenger;
  * See {@link BinaryMessenger}, which sends messages from Android to Dart
  * <p>
  * See {@link PlatformMessageHandler}, which handles messages to Android from Dart
+ * <p>
+ * Messages may be sent and handlers registered from any thread. Handlers live in a concurrent map
+ * and pending replies in a lock-free {@link PendingReplyTable}, and work that {@link FlutterJNI}
+ * only accepts on the main thread is posted there.
  */
 class DartMessenger implements BinaryMessenger, PlatformMessageHandler {
   private static final String TAG = "DartMessenger";
 
+  /**
+   * How long a reply from Dart is awaited before its callback is dropped, unless configured with
+   * {@link #setStaleReplyTimeout(long)}. Zero, so callbacks are kept until Dart responds.
+   */
+  static final long DEFAULT_STALE_REPLY_TIMEOUT_MS = 0;
+
+  @Nullable
+  private static ExecutorService sharedBackgroundExecutor;
+
   @NonNull
   private final FlutterJNI flutterJNI;
   @NonNull
-  private final Map<String, BinaryMessenger.BinaryMessageHandler> messageHandlers;
+  private final Handler mainThreadHandler;
+  @NonNull
+  private final ConcurrentMap<String, HandlerInfo> messageHandlers;
   @NonNull
-  private final Map<Integer, BinaryMessenger.BinaryReply> pendingReplies;
-  private int nextReplyId = 1;
+  private final PendingReplyTable pendingReplies;
+  @NonNull
+  private final ReplyTimeoutWheel replyTimeoutWheel;
+  // Only accessed on the main thread.
+  @Nullable
+  private PlatformMessageBatcher batcher;
+  // Zero when stale replies are never dropped.
+  private volatile long staleReplyTimeoutMs;
+  // In SystemClock#uptimeMillis() time.
+  @NonNull
+  private final AtomicLong nextStaleReplySweep;
 
   DartMessenger(@NonNull FlutterJNI flutterJNI) {
+    this(flutterJNI, DEFAULT_STALE_REPLY_TIMEOUT_MS);
+  }
+
+  DartMessenger(@NonNull FlutterJNI flutterJNI, long staleReplyTimeoutMs) {
     this.flutterJNI = flutterJNI;
-    this.messageHandlers = new HashMap<>();
-    this.pendingReplies = new HashMap<>();
+    this.mainThreadHandler = new Handler(Looper.getMainLooper());
+    this.messageHandlers = new ConcurrentHashMap<>();
+    this.pendingReplies = new PendingReplyTable();
+    this.replyTimeoutWheel = new ReplyTimeoutWheel(mainThreadHandler, pendingReplies, new ReplyTimeoutWheel.TimeoutListener() {
+      @Override
+      public void onReplyTimeout(@NonNull PendingReplyTable.Entry entry) {
+        Log.v(TAG, "Timed out waiting for reply " + entry.replyId + " from Dart.");
+        try {
+          ((BinaryMessenger.TimeoutBinaryReply) entry.callback).onTimeout();
+        } catch (Exception ex) {
+          Log.e(TAG, "Uncaught exception in binary message timeout handler", ex);
+        }
+      }
+    });
+    this.nextStaleReplySweep = new AtomicLong();
+    setStaleReplyTimeout(staleReplyTimeoutMs);
   }
 
   @Override
   public void setMessageHandler(@NonNull String channel, @Nullable BinaryMessenger.BinaryMessageHandler handler) {
+    setMessageHandler(channel, handler, null);
+  }
+
+  @Override
+  @NonNull
+  public BinaryMessenger.TaskQueue makeBackgroundTaskQueue(@NonNull BinaryMessenger.TaskQueueOptions options) {
+    final Executor executor = options.getExecutor() != null
+        ? options.getExecutor()
+        : getSharedBackgroundExecutor();
+    return options.getIsSerial() ? new SerialTaskQueue(executor) : new ConcurrentTaskQueue(executor);
+  }
+
+  @Override
+  public void setMessageHandler(
+      @NonNull String channel,
+      @Nullable BinaryMessenger.BinaryMessageHandler handler,
+      @Nullable BinaryMessenger.TaskQueue taskQueue
+  ) {
     if (handler == null) {
       Log.v(TAG, "Removing handler for channel '" + channel + "'");
       messageHandlers.remove(channel);
-    } else {
-      Log.v(TAG, "Setting handler for channel '" + channel + "'");
-      messageHandlers.put(channel, handler);
+      return;
+    }
+    if (taskQueue != null && !(taskQueue instanceof DartMessengerTaskQueue)) {
+      throw new IllegalArgumentException("Unrecognized TaskQueue, use makeBackgroundTaskQueue() to create one");
     }
+    Log.v(TAG, "Setting handler for channel '" + channel + "'");
+    messageHandlers.put(channel, new HandlerInfo(handler, (DartMessengerTaskQueue) taskQueue));
   }
 
   @Override
-  @UiThread
   public void send(@NonNull String channel, @NonNull ByteBuffer message) {
     Log.v(TAG, "Sending message over channel '" + channel + "'");
     send(channel, message, null);
@@ -71,53 +143,239 @@ class DartMessenger implements BinaryMessenger, PlatformMessageHandler {
     Log.v(TAG, "Sending message with callback over channel '" + channel + "'");
     int replyId = 0;
     if (callback != null) {
-      replyId = nextReplyId++;
-      pendingReplies.put(replyId, callback);
+      final long now = SystemClock.uptimeMillis();
+      final long timeoutMs = staleReplyTimeoutMs;
+      final long deadline = timeoutMs == 0 ? Long.MAX_VALUE : now + timeoutMs;
+      replyId = pendingReplies.add(callback, deadline, false).replyId;
+      maybeDropStaleReplies(now);
     }
-    if (message == null) {
+    dispatchOnMainThread(channel, message, replyId);
+  }
+
+  @Override
+  @NonNull
+  public BinaryMessenger.Cancellable send(
+      @NonNull String channel,
+      @Nullable ByteBuffer message,
+      @NonNull BinaryMessenger.TimeoutBinaryReply callback,
+      long timeoutMillis
+  ) {
+    if (timeoutMillis <= 0) {
+      throw new IllegalArgumentException("timeoutMillis must be positive, was " + timeoutMillis);
+    }
+    Log.v(TAG, "Sending message with callback and " + timeoutMillis + "ms timeout over channel '" + channel + "'");
+    final PendingReplyTable.Entry entry = pendingReplies.add(callback, SystemClock.uptimeMillis() + timeoutMillis, true);
+    replyTimeoutWheel.schedule(entry);
+    dispatchOnMainThread(channel, message, entry.replyId);
+    return new PendingReply(entry);
+  }
+
+  private void dispatchOnMainThread(@NonNull final String channel, @Nullable final ByteBuffer message, final int replyId) {
+    if (Looper.myLooper() == Looper.getMainLooper()) {
+      dispatch(channel, message, replyId);
+    } else {
+      // FlutterJNI only accepts messages on the main thread.
+      mainThreadHandler.post(new Runnable() {
+        @Override
+        public void run() {
+          dispatch(channel, message, replyId);
+        }
+      });
+    }
+  }
+
+  private void dispatch(@NonNull String channel, @Nullable ByteBuffer message, int replyId) {
+    if (batcher != null) {
+      batcher.add(channel, message, replyId);
+    } else if (message == null) {
       flutterJNI.dispatchEmptyPlatformMessage(channel, replyId);
     } else {
       flutterJNI.dispatchPlatformMessage(channel, message, message.position(), replyId);
     }
   }
 
+  /**
+   * Starts coalescing messages sent to Dart during one turn of the main looper into a single
+   * native call, reporting each batch to {@code listener} if it is not null.
+   */
+  @UiThread
+  void enableBatching(@Nullable DartExecutor.PlatformMessageBatchListener listener) {
+    disableBatching();
+    batcher = new PlatformMessageBatcher(flutterJNI, mainThreadHandler, listener);
+  }
+
+  /**
+   * Sends any batched messages and stops batching.
+   */
+  @UiThread
+  void disableBatching() {
+    if (batcher != null) {
+      batcher.flush();
+      batcher = null;
+    }
+  }
+
+  /**
+   * Sets how long a reply from Dart to a message sent without an explicit timeout is awaited
+   * before its callback is dropped, or disables dropping such callbacks if {@code timeoutMillis}
+   * is zero.
+   * <p>
+   * The new timeout applies to messages sent afterwards.
+   */
+  void setStaleReplyTimeout(long timeoutMillis) {
+    if (timeoutMillis < 0) {
+      throw new IllegalArgumentException("timeoutMillis must not be negative, was " + timeoutMillis);
+    }
+    staleReplyTimeoutMs = timeoutMillis;
+    nextStaleReplySweep.set(SystemClock.uptimeMillis() + timeoutMillis);
+  }
+
+  /**
+   * Drops replies that Dart has not answered within the stale reply timeout, at most once per
+   * quarter of that timeout. Dropped callbacks are told so on the main thread: those that are
+   * {@link BinaryMessenger.TimeoutBinaryReply}s time out, and all others receive a null reply.
+   */
+  private void maybeDropStaleReplies(long now) {
+    final long timeoutMs = staleReplyTimeoutMs;
+    final long sweepTime = nextStaleReplySweep.get();
+    if (timeoutMs == 0 || now < sweepTime || !nextStaleReplySweep.compareAndSet(sweepTime, now + timeoutMs / 4)) {
+      return;
+    }
+    for (final PendingReplyTable.Entry entry : pendingReplies.removeExpired(now)) {
+      Log.w(TAG, "Dropping reply callback for message " + entry.replyId + ", Dart did not respond within "
+          + timeoutMs + "ms.");
+      mainThreadHandler.post(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            if (entry.callback instanceof BinaryMessenger.TimeoutBinaryReply) {
+              ((BinaryMessenger.TimeoutBinaryReply) entry.callback).onTimeout();
+            } else {
+              entry.callback.reply(null);
+            }
+          } catch (Exception ex) {
+            Log.e(TAG, "Uncaught exception in dropped binary message reply handler", ex);
+          }
+        }
+      });
+    }
+  }
+
   @Override
   public void handleMessageFromDart(
       @NonNull final String channel,
-      @Nullable byte[] message,
-      final int replyId
+      @Nullable ByteBuffer message,
+      final int replyId,
+      long messageData
   ) {
     Log.v(TAG, "Received message from Dart over channel '" + channel + "'");
-    BinaryMessenger.BinaryMessageHandler handler = messageHandlers.get(channel);
-    if (handler != null) {
-      try {
-        Log.v(TAG, "Deferring to registered handler to process message.");
-        final ByteBuffer buffer = (message == null ? null : ByteBuffer.wrap(message));
-        handler.onMessage(buffer, new Reply(flutterJNI, replyId));
-      } catch (Exception ex) {
-        Log.e(TAG, "Uncaught exception in binary message listener", ex);
-        flutterJNI.invokePlatformMessageEmptyResponseCallback(replyId);
-      }
-    } else {
+    final HandlerInfo handlerInfo = messageHandlers.get(channel);
+    if (handlerInfo == null) {
       Log.v(TAG, "No registered handler for message. Responding to Dart with empty reply message.");
+      flutterJNI.cleanupMessageData(messageData);
       flutterJNI.invokePlatformMessageEmptyResponseCallback(replyId);
+      return;
+    }
+
+    // Handlers that accept engine memory read the message in place; all others get a heap copy
+    // so that they may keep the message for as long as they like.
+    final DirectMessage directMessage;
+    final ByteBuffer buffer;
+    if (handlerInfo.handler instanceof BinaryMessenger.DirectBinaryMessageHandler) {
+      directMessage = new DirectMessage(flutterJNI, messageData);
+      buffer = readOnly(message);
+    } else {
+      directMessage = null;
+      buffer = copyToHeap(message);
+      flutterJNI.cleanupMessageData(messageData);
+    }
+    final Reply reply = new Reply(replyId);
+
+    if (handlerInfo.taskQueue == null) {
+      invokeHandler(handlerInfo.handler, buffer, reply, directMessage);
+    } else {
+      Log.v(TAG, "Dispatching message to the handler's task queue.");
+      handlerInfo.taskQueue.dispatch(new Runnable() {
+        @Override
+        public void run() {
+          invokeHandler(handlerInfo.handler, buffer, reply, directMessage);
+        }
+      });
+    }
+  }
+
+  private static void invokeHandler(
+      @NonNull BinaryMessenger.BinaryMessageHandler handler,
+      @Nullable ByteBuffer message,
+      @NonNull Reply reply,
+      @Nullable DirectMessage directMessage
+  ) {
+    try {
+      Log.v(TAG, "Deferring to registered handler to process message.");
+      if (directMessage != null) {
+        ((BinaryMessenger.DirectBinaryMessageHandler) handler).onDirectMessage(message, reply, directMessage);
+      } else {
+        handler.onMessage(message, reply);
+      }
+    } catch (Exception ex) {
+      Log.e(TAG, "Uncaught exception in binary message listener", ex);
+      reply.replyEmptyIfPending();
+    } finally {
+      if (directMessage != null) {
+        directMessage.delivered();
+      }
     }
   }
 
   @Override
-  public void handlePlatformMessageResponse(int replyId, @Nullable byte[] reply) {
+  public void handlePlatformMessageResponse(int replyId, @Nullable ByteBuffer reply, long messageData) {
     Log.v(TAG, "Received message reply from Dart.");
-    BinaryMessenger.BinaryReply callback = pendingReplies.remove(replyId);
-    if (callback != null) {
-      try {
-        Log.v(TAG, "Invoking registered callback for reply from Dart.");
-        callback.reply(reply == null ? null : ByteBuffer.wrap(reply));
-      } catch (Exception ex) {
-        Log.e(TAG, "Uncaught exception in binary message reply handler", ex);
+    final PendingReplyTable.Entry entry = pendingReplies.remove(replyId);
+    if (entry == null) {
+      flutterJNI.cleanupMessageData(messageData);
+      return;
+    }
+    if (entry.hasTimeout) {
+      replyTimeoutWheel.onRemoved();
+    }
+    final BinaryMessenger.BinaryReply callback = entry.callback;
+    final DirectMessage directMessage = callback instanceof BinaryMessenger.DirectBinaryReply
+        ? new DirectMessage(flutterJNI, messageData)
+        : null;
+    try {
+      Log.v(TAG, "Invoking registered callback for reply from Dart.");
+      if (directMessage != null) {
+        ((BinaryMessenger.DirectBinaryReply) callback).directReply(readOnly(reply), directMessage);
+      } else {
+        final ByteBuffer buffer = copyToHeap(reply);
+        flutterJNI.cleanupMessageData(messageData);
+        callback.reply(buffer);
+      }
+    } catch (Exception ex) {
+      Log.e(TAG, "Uncaught exception in binary message reply handler", ex);
+    } finally {
+      if (directMessage != null) {
+        directMessage.delivered();
       }
     }
   }
 
+  @Nullable
+  private static ByteBuffer readOnly(@Nullable ByteBuffer buffer) {
+    return buffer == null ? null : buffer.asReadOnlyBuffer();
+  }
+
+  @Nullable
+  private static ByteBuffer copyToHeap(@Nullable ByteBuffer buffer) {
+    if (buffer == null) {
+      return null;
+    }
+    final ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+    copy.put(buffer);
+    copy.flip();
+    return copy;
+  }
+
   /**
    * Returns the number of pending channel callback replies.
    *
@@ -125,23 +383,182 @@ class DartMessenger implements BinaryMessenger, PlatformMessageHandler {
    * ByteBuffer, io.flutter.plugin.common.BinaryMessenger.BinaryReply)}, developers can optionally
    * specify a reply callback if they expect a reply from the Flutter application.
    *
-   * <p>This method tracks all the pending callbacks that are waiting for response, and is supposed
-   * to be called from the main thread (as other methods). Calling from a different thread could
-   * possibly capture an indeterministic internal state, so don't do it.
+   * <p>This method tracks all the pending callbacks that are waiting for response. It may be called
+   * from any thread, but messages sent concurrently may or may not be counted. Callbacks that Dart
+   * does not answer within the stale reply timeout are eventually dropped and no longer counted.
    */
-  @UiThread
   public int getPendingChannelResponseCount() {
     return pendingReplies.size();
   }
 
-  private static class Reply implements BinaryMessenger.BinaryReply {
+  /**
+   * Handle to a reply awaited with a timeout.
+   */
+  private class PendingReply implements BinaryMessenger.Cancellable {
+    @NonNull
+    private final PendingReplyTable.Entry entry;
+
+    PendingReply(@NonNull PendingReplyTable.Entry entry) {
+      this.entry = entry;
+    }
+
+    @Override
+    public boolean cancel() {
+      if (!pendingReplies.remove(entry)) {
+        return false;
+      }
+      Log.v(TAG, "Cancelled waiting for reply " + entry.replyId + " from Dart.");
+      replyTimeoutWheel.onRemoved();
+      return true;
+    }
+  }
+
+  /**
+   * Tracks the engine memory behind a message or reply that was delivered in place, releasing it
+   * once it is neither being delivered nor retained.
+   */
+  private static class DirectMessage implements BinaryMessenger.MessageRetention {
+    private static final int DELIVERING = 0;
+    private static final int RETAINED = 1;
+    private static final int RELEASED = 2;
+
     @NonNull
     private final FlutterJNI flutterJNI;
+    private final long messageData;
+    private final AtomicInteger state = new AtomicInteger(DELIVERING);
+
+    DirectMessage(@NonNull FlutterJNI flutterJNI, long messageData) {
+      this.flutterJNI = flutterJNI;
+      this.messageData = messageData;
+    }
+
+    @Override
+    public void retain() {
+      if (!state.compareAndSet(DELIVERING, RETAINED)) {
+        throw new IllegalStateException("Message can only be retained while it is being delivered");
+      }
+    }
+
+    @Override
+    public void release() {
+      if (!state.compareAndSet(RETAINED, RELEASED)) {
+        throw new IllegalStateException("Message is not retained");
+      }
+      flutterJNI.cleanupMessageData(messageData);
+    }
+
+    void delivered() {
+      if (state.compareAndSet(DELIVERING, RELEASED)) {
+        flutterJNI.cleanupMessageData(messageData);
+      }
+    }
+  }
+
+  @NonNull
+  private static synchronized ExecutorService getSharedBackgroundExecutor() {
+    if (sharedBackgroundExecutor == null) {
+      sharedBackgroundExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger nextThreadId = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+          final Thread thread = new Thread(runnable, "flutter-channel-" + nextThreadId.getAndIncrement());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return sharedBackgroundExecutor;
+  }
+
+  private static class HandlerInfo {
+    @NonNull
+    final BinaryMessenger.BinaryMessageHandler handler;
+    @Nullable
+    final DartMessengerTaskQueue taskQueue;
+
+    HandlerInfo(@NonNull BinaryMessenger.BinaryMessageHandler handler, @Nullable DartMessengerTaskQueue taskQueue) {
+      this.handler = handler;
+      this.taskQueue = taskQueue;
+    }
+  }
+
+  private interface DartMessengerTaskQueue extends BinaryMessenger.TaskQueue {
+    void dispatch(@NonNull Runnable runnable);
+  }
+
+  /**
+   * Runs tasks as soon as its {@link Executor} allows, possibly several at once.
+   */
+  private static class ConcurrentTaskQueue implements DartMessengerTaskQueue {
+    @NonNull
+    private final Executor executor;
+
+    ConcurrentTaskQueue(@NonNull Executor executor) {
+      this.executor = executor;
+    }
+
+    @Override
+    public void dispatch(@NonNull Runnable runnable) {
+      executor.execute(runnable);
+    }
+  }
+
+  /**
+   * Runs tasks one at a time, in the order they were dispatched, on threads of its
+   * {@link Executor}.
+   */
+  private static class SerialTaskQueue implements DartMessengerTaskQueue {
+    @NonNull
+    private final Executor executor;
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean isRunning = new AtomicBoolean(false);
+    private final Runnable drain = new Runnable() {
+      @Override
+      public void run() {
+        drain();
+      }
+    };
+
+    SerialTaskQueue(@NonNull Executor executor) {
+      this.executor = executor;
+    }
+
+    @Override
+    public void dispatch(@NonNull Runnable runnable) {
+      tasks.add(runnable);
+      executor.execute(drain);
+    }
+
+    private void drain() {
+      if (!isRunning.compareAndSet(false, true)) {
+        // The running drain picks up the new task, or schedules another drain for it.
+        return;
+      }
+      try {
+        final Runnable task = tasks.poll();
+        if (task != null) {
+          task.run();
+        }
+      } finally {
+        isRunning.set(false);
+        if (!tasks.isEmpty()) {
+          executor.execute(drain);
+        }
+      }
+    }
+  }
+
+  /**
+   * Sends a single reply to a message from Dart. Replies submitted off the main thread are posted
+   * to it, since {@link FlutterJNI} only accepts them there. Messages batched before the reply is
+   * sent are flushed first, so that Dart receives them in the order they were submitted.
+   */
+  private class Reply implements BinaryMessenger.BinaryReply {
     private final int replyId;
     private final AtomicBoolean done = new AtomicBoolean(false);
 
-    Reply(@NonNull FlutterJNI flutterJNI, int replyId) {
-      this.flutterJNI = flutterJNI;
+    Reply(int replyId) {
       this.replyId = replyId;
     }
 
@@ -150,6 +567,32 @@ class DartMessenger implements BinaryMessenger, PlatformMessageHandler {
       if (done.getAndSet(true)) {
         throw new IllegalStateException("Reply already submitted");
       }
+      sendOnMainThread(reply);
+    }
+
+    void replyEmptyIfPending() {
+      if (!done.getAndSet(true)) {
+        sendOnMainThread(null);
+      }
+    }
+
+    private void sendOnMainThread(@Nullable final ByteBuffer reply) {
+      if (Looper.myLooper() == Looper.getMainLooper()) {
+        send(reply);
+      } else {
+        mainThreadHandler.post(new Runnable() {
+          @Override
+          public void run() {
+            send(reply);
+          }
+        });
+      }
+    }
+
+    private void send(@Nullable ByteBuffer reply) {
+      if (batcher != null) {
+        batcher.flush();
+      }
       if (reply == null) {
         flutterJNI.invokePlatformMessageEmptyResponseCallback(replyId);
       } else {
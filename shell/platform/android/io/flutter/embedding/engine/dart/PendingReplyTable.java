@@ -0,0 +1,166 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.embedding.engine.dart;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import io.flutter.plugin.common.BinaryMessenger;
+
+/**
+ * Reply callbacks awaiting an answer from Dart, keyed by reply id.
+ * <p>
+ * Reply ids are handed out sequentially, so the table is a ring of slots indexed by the low bits of
+ * the id. A slot only stays occupied while its reply is pending; an id whose slot still holds a
+ * reply from {@code SLOT_COUNT} sends earlier goes to a small overflow map instead. Adding and
+ * removing replies is lock-free and, outside of overflow, does not box the id or allocate anything
+ * but the {@link Entry} itself.
+ * <p>
+ * Every entry carries a deadline. Entries added with an explicit timeout are expired by a
+ * {@link ReplyTimeoutWheel}; all others are dropped by {@link #removeExpired(long)} once their
+ * deadline passes, so replies that Dart never sends cannot accumulate without bound.
+ * <p>
+ * This class is thread safe.
+ */
+final class PendingReplyTable {
+  private static final int SLOT_COUNT = 1024;
+  private static final int SLOT_MASK = SLOT_COUNT - 1;
+
+  /**
+   * A pending reply.
+   */
+  static final class Entry {
+    final int replyId;
+    @NonNull
+    final BinaryMessenger.BinaryReply callback;
+    // In SystemClock#uptimeMillis() time.
+    final long deadline;
+    // Whether the sender asked for a timeout, rather than getting the default stale deadline.
+    final boolean hasTimeout;
+
+    Entry(int replyId, @NonNull BinaryMessenger.BinaryReply callback, long deadline, boolean hasTimeout) {
+      this.replyId = replyId;
+      this.callback = callback;
+      this.deadline = deadline;
+      this.hasTimeout = hasTimeout;
+    }
+  }
+
+  private final AtomicReferenceArray<Entry> slots = new AtomicReferenceArray<>(SLOT_COUNT);
+  private final ConcurrentHashMap<Integer, Entry> overflow = new ConcurrentHashMap<>();
+  private final AtomicInteger nextReplyId = new AtomicInteger(1);
+  private final AtomicInteger size = new AtomicInteger(0);
+
+  /**
+   * Registers {@code callback} under a newly allocated, non-zero reply id and returns its entry.
+   */
+  @NonNull
+  Entry add(@NonNull BinaryMessenger.BinaryReply callback, long deadline, boolean hasTimeout) {
+    final Entry entry = new Entry(allocateReplyId(), callback, deadline, hasTimeout);
+    if (!slots.compareAndSet(entry.replyId & SLOT_MASK, null, entry)) {
+      overflow.put(entry.replyId, entry);
+    }
+    size.incrementAndGet();
+    return entry;
+  }
+
+  /**
+   * Removes and returns the entry for {@code replyId}, or null if it is not pending.
+   */
+  @Nullable
+  Entry remove(int replyId) {
+    final int index = replyId & SLOT_MASK;
+    final Entry slotEntry = slots.get(index);
+    if (slotEntry != null && slotEntry.replyId == replyId && slots.compareAndSet(index, slotEntry, null)) {
+      size.decrementAndGet();
+      return slotEntry;
+    }
+    if (overflow.isEmpty()) {
+      return null;
+    }
+    final Entry overflowEntry = overflow.remove(replyId);
+    if (overflowEntry != null) {
+      size.decrementAndGet();
+    }
+    return overflowEntry;
+  }
+
+  /**
+   * Removes {@code entry} if it is still pending, returning whether it was.
+   */
+  boolean remove(@NonNull Entry entry) {
+    final int index = entry.replyId & SLOT_MASK;
+    if (slots.get(index) == entry) {
+      if (slots.compareAndSet(index, entry, null)) {
+        size.decrementAndGet();
+        return true;
+      }
+      return false;
+    }
+    if (overflow.remove(entry.replyId, entry)) {
+      size.decrementAndGet();
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Removes and returns all entries without an explicit timeout whose deadline is at or before
+   * {@code now}.
+   */
+  @NonNull
+  List<Entry> removeExpired(long now) {
+    List<Entry> expired = null;
+    for (int i = 0; i < SLOT_COUNT; i++) {
+      final Entry entry = slots.get(i);
+      if (entry != null && !entry.hasTimeout && entry.deadline <= now && slots.compareAndSet(i, entry, null)) {
+        size.decrementAndGet();
+        expired = append(expired, entry);
+      }
+    }
+    final Iterator<Entry> overflowEntries = overflow.values().iterator();
+    while (overflowEntries.hasNext()) {
+      final Entry entry = overflowEntries.next();
+      if (!entry.hasTimeout && entry.deadline <= now && overflow.remove(entry.replyId, entry)) {
+        size.decrementAndGet();
+        expired = append(expired, entry);
+      }
+    }
+    return expired == null ? Collections.<Entry>emptyList() : expired;
+  }
+
+  /**
+   * Returns the number of pending replies.
+   */
+  int size() {
+    return size.get();
+  }
+
+  private int allocateReplyId() {
+    int replyId;
+    do {
+      // Zero means that no reply is expected, so it is skipped when the counter wraps around.
+      replyId = nextReplyId.getAndIncrement();
+    } while (replyId == 0);
+    return replyId;
+  }
+
+  @NonNull
+  private static List<Entry> append(@Nullable List<Entry> list, @NonNull Entry entry) {
+    if (list == null) {
+      list = new ArrayList<>();
+    }
+    list.add(entry);
+    return list;
+  }
+}
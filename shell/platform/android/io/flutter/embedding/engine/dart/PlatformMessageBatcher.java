@@ -0,0 +1,158 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.embedding.engine.dart;
+
+import android.os.Handler;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.UiThread;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.flutter.embedding.engine.FlutterJNI;
+import io.flutter.plugin.common.DirectByteBufferPool;
+
+/**
+ * Coalesces platform messages sent to Dart during one turn of the main looper into a single
+ * {@link FlutterJNI#dispatchPlatformMessageBatch(ByteBuffer, int)} call.
+ * <p>
+ * The first message added to an empty batch posts a flush to the main looper, so messages sent
+ * while the current task runs, and any tasks queued before the flush, share one JNI crossing.
+ * Batches that grow beyond {@link #MAX_BATCH_BYTES} are flushed right away.
+ * <p>
+ * This class must only be used on the main thread.
+ */
+@UiThread
+final class PlatformMessageBatcher {
+  private static final Charset UTF8 = Charset.forName("UTF8");
+  private static final int INITIAL_CAPACITY = 4096;
+  private static final int MAX_CACHED_CHANNEL_NAMES = 64;
+  // Length of the channel name, the response ID and the message length.
+  private static final int FRAME_HEADER_BYTES = 12;
+
+  /**
+   * Batches holding at least this many bytes are flushed without waiting for the looper.
+   */
+  static final int MAX_BATCH_BYTES = 64 * 1024;
+
+  @NonNull
+  private final FlutterJNI flutterJNI;
+  @NonNull
+  private final Handler mainThreadHandler;
+  @Nullable
+  private final DartExecutor.PlatformMessageBatchListener listener;
+  private final Map<String, byte[]> channelNames = new HashMap<>();
+  @NonNull
+  private ByteBuffer batch = allocate(INITIAL_CAPACITY);
+  private int messageCount = 0;
+  private long firstMessageNanos;
+
+  private final Runnable flush = new Runnable() {
+    @Override
+    public void run() {
+      flush();
+    }
+  };
+
+  PlatformMessageBatcher(
+      @NonNull FlutterJNI flutterJNI,
+      @NonNull Handler mainThreadHandler,
+      @Nullable DartExecutor.PlatformMessageBatchListener listener
+  ) {
+    this.flutterJNI = flutterJNI;
+    this.mainThreadHandler = mainThreadHandler;
+    this.listener = listener;
+  }
+
+  /**
+   * Appends a message, with its bytes between position zero and its current position, to the
+   * batch. The message buffer is handed back to {@link DirectByteBufferPool#INSTANCE} for reuse if
+   * it was leased from there.
+   */
+  void add(@NonNull String channel, @Nullable ByteBuffer message, int replyId) {
+    final byte[] channelName = encodeChannelName(channel);
+    final int messageLength = message == null ? 0 : message.position();
+    ensureCapacity(FRAME_HEADER_BYTES + channelName.length + messageLength);
+    batch.putInt(channelName.length);
+    batch.put(channelName);
+    batch.putInt(replyId);
+    if (message == null) {
+      batch.putInt(-1);
+    } else {
+      batch.putInt(messageLength);
+      final ByteBuffer bytes = message.duplicate();
+      bytes.flip();
+      batch.put(bytes);
+      DirectByteBufferPool.INSTANCE.release(message);
+    }
+
+    if (messageCount++ == 0) {
+      firstMessageNanos = System.nanoTime();
+      mainThreadHandler.post(flush);
+    }
+    if (batch.position() >= MAX_BATCH_BYTES) {
+      flush();
+    }
+  }
+
+  /**
+   * Sends all batched messages to Dart now.
+   */
+  void flush() {
+    if (messageCount == 0) {
+      return;
+    }
+    mainThreadHandler.removeCallbacks(flush);
+    final int batchSize = messageCount;
+    final int batchBytes = batch.position();
+    final long flushLatencyNanos = System.nanoTime() - firstMessageNanos;
+    messageCount = 0;
+    flutterJNI.dispatchPlatformMessageBatch(batch, batchBytes);
+    if (batch.capacity() > MAX_BATCH_BYTES) {
+      // Do not hold on to the room that an unusually large message needed.
+      batch = allocate(INITIAL_CAPACITY);
+    } else {
+      batch.clear();
+    }
+    if (listener != null) {
+      listener.onBatchDispatched(batchSize, batchBytes, flushLatencyNanos);
+    }
+  }
+
+  @NonNull
+  private byte[] encodeChannelName(@NonNull String channel) {
+    byte[] channelName = channelNames.get(channel);
+    if (channelName == null) {
+      channelName = channel.getBytes(UTF8);
+      if (channelNames.size() < MAX_CACHED_CHANNEL_NAMES) {
+        channelNames.put(channel, channelName);
+      }
+    }
+    return channelName;
+  }
+
+  private void ensureCapacity(int frameBytes) {
+    if (batch.remaining() >= frameBytes) {
+      return;
+    }
+    int capacity = batch.capacity();
+    while (capacity - batch.position() < frameBytes) {
+      capacity *= 2;
+    }
+    final ByteBuffer grown = allocate(capacity);
+    batch.flip();
+    grown.put(batch);
+    batch = grown;
+  }
+
+  @NonNull
+  private static ByteBuffer allocate(int capacity) {
+    return ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+  }
+}
@@ -7,12 +7,24 @@ package io.flutter.embedding.engine.dart;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
+import java.nio.ByteBuffer;
+
 /**
  * WARNING: THIS CLASS IS EXPERIMENTAL. DO NOT SHIP A DEPENDENCY ON THIS CODE.
  * IF YOU USE IT, WE WILL BREAK YOU.
+ * <p>
+ * Message and reply buffers are direct {@link ByteBuffer}s over memory owned by the engine.
+ * Implementations must pass {@code messageData} to
+ * {@link io.flutter.embedding.engine.FlutterJNI#cleanupMessageData(long)} exactly once, after
+ * which the buffer must no longer be read.
  */
 public interface PlatformMessageHandler {
-  void handleMessageFromDart(@NonNull final String channel, @Nullable byte[] message, final int replyId);
+  void handleMessageFromDart(
+      @NonNull final String channel,
+      @Nullable ByteBuffer message,
+      final int replyId,
+      long messageData
+  );
 
-  void handlePlatformMessageResponse(int replyId, @Nullable byte[] reply);
+  void handlePlatformMessageResponse(int replyId, @Nullable ByteBuffer reply, long messageData);
 }
@@ -0,0 +1,146 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.embedding.engine.dart;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Expires pending replies that were sent with a timeout.
+ * <p>
+ * Rather than posting a delayed task per message, this hashed timer wheel posts a single task that
+ * ticks every {@link #TICK_MS} while timed replies are outstanding. Each tick looks at one bucket of
+ * entries, those whose deadline is rounded up to that tick modulo the wheel size, and times out the
+ * ones that are due and still pending in the {@link PendingReplyTable}. Timeouts therefore fire up to one
+ * tick late.
+ * <p>
+ * Entries may be scheduled from any thread; they are handed to the ticking task through a lock-free
+ * queue. Buckets are only touched by the ticking task on the thread of the given {@link Handler}.
+ */
+final class ReplyTimeoutWheel {
+  static final long TICK_MS = 50;
+  private static final int BUCKET_COUNT = 256;
+  private static final int BUCKET_MASK = BUCKET_COUNT - 1;
+
+  interface TimeoutListener {
+    /**
+     * Called on the wheel's thread with an entry that was removed from the table because its
+     * deadline passed.
+     */
+    void onReplyTimeout(@NonNull PendingReplyTable.Entry entry);
+  }
+
+  @NonNull
+  private final Handler handler;
+  @NonNull
+  private final PendingReplyTable table;
+  @NonNull
+  private final TimeoutListener listener;
+  private final ConcurrentLinkedQueue<PendingReplyTable.Entry> incoming = new ConcurrentLinkedQueue<>();
+  // Number of scheduled entries that are still pending in the table.
+  private final AtomicInteger outstanding = new AtomicInteger(0);
+  private final AtomicBoolean isTicking = new AtomicBoolean(false);
+
+  // Only accessed by the ticking task.
+  private final ArrayList<ArrayList<PendingReplyTable.Entry>> buckets = new ArrayList<>(BUCKET_COUNT);
+  private long lastTick = -1;
+
+  private final Runnable tick = new Runnable() {
+    @Override
+    public void run() {
+      tick();
+    }
+  };
+
+  ReplyTimeoutWheel(@NonNull Handler handler, @NonNull PendingReplyTable table, @NonNull TimeoutListener listener) {
+    this.handler = handler;
+    this.table = table;
+    this.listener = listener;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      buckets.add(new ArrayList<PendingReplyTable.Entry>());
+    }
+  }
+
+  /**
+   * Times out the given entry once its deadline passes, unless it is removed from the table first,
+   * in which case {@link #onRemoved()} must be called.
+   */
+  void schedule(@NonNull PendingReplyTable.Entry entry) {
+    outstanding.incrementAndGet();
+    incoming.add(entry);
+    startTicking();
+  }
+
+  /**
+   * Records that a scheduled entry was removed from the table by a response or cancellation.
+   */
+  void onRemoved() {
+    outstanding.decrementAndGet();
+  }
+
+  private void startTicking() {
+    if (isTicking.compareAndSet(false, true)) {
+      handler.postDelayed(tick, TICK_MS);
+    }
+  }
+
+  private void tick() {
+    final long now = SystemClock.uptimeMillis();
+    final long currentTick = now / TICK_MS;
+
+    PendingReplyTable.Entry entry;
+    while ((entry = incoming.poll()) != null) {
+      // The first tick that starts at or after the deadline, so that the bucket is never visited
+      // while the entry is not due yet. Entries already due go into the current bucket so that
+      // they are not missed for a round.
+      final long deadlineTick = Math.max((entry.deadline + TICK_MS - 1) / TICK_MS, currentTick);
+      buckets.get((int) (deadlineTick & BUCKET_MASK)).add(entry);
+    }
+
+    // Catch up on ticks that were delayed, visiting each bucket at most once.
+    final long firstTick = lastTick < 0 ? currentTick : Math.max(lastTick + 1, currentTick - BUCKET_MASK);
+    for (long t = firstTick; t <= currentTick; t++) {
+      expire(buckets.get((int) (t & BUCKET_MASK)), now);
+    }
+    lastTick = currentTick;
+
+    if (outstanding.get() > 0) {
+      handler.postDelayed(tick, TICK_MS);
+      return;
+    }
+    // Whatever is left in the buckets was answered or cancelled.
+    for (ArrayList<PendingReplyTable.Entry> bucket : buckets) {
+      bucket.clear();
+    }
+    lastTick = -1;
+    isTicking.set(false);
+    if (!incoming.isEmpty()) {
+      startTicking();
+    }
+  }
+
+  private void expire(@NonNull ArrayList<PendingReplyTable.Entry> bucket, long now) {
+    int kept = 0;
+    for (int i = 0; i < bucket.size(); i++) {
+      final PendingReplyTable.Entry entry = bucket.get(i);
+      if (entry.deadline > now) {
+        // Due in a later round of the wheel.
+        bucket.set(kept++, entry);
+      } else if (table.remove(entry)) {
+        outstanding.decrementAndGet();
+        listener.onReplyTimeout(entry);
+      }
+    }
+    for (int i = bucket.size() - 1; i >= kept; i--) {
+      bucket.remove(i);
+    }
+  }
+}
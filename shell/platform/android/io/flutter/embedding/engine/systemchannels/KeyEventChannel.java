@@ -4,50 +4,159 @@
 
 package io.flutter.embedding.engine.systemchannels;
 
-import android.os.Build;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
-import android.view.InputDevice;
 import android.view.KeyEvent;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import io.flutter.embedding.engine.dart.DartExecutor;
 import io.flutter.plugin.common.BasicMessageChannel;
+import io.flutter.plugin.common.BinaryMessenger;
 import io.flutter.plugin.common.JSONMessageCodec;
+import io.flutter.view.InputDeviceCache;
 
 /**
  * TODO(mattcarroll): fill in javadoc for KeyEventChannel.
  */
 public class KeyEventChannel {
+  /**
+   * The channel that carries key data packets, see {@link #setUsesKeyDataPackets(boolean)}.
+   */
+  public static final String KEY_DATA_CHANNEL = "flutter/keydata";
+
+  // A key data packet holds one little-endian 32-bit integer per field, in the
+  // order written by encodeKeyData(). Must match the unpacking code of the
+  // framework's flutter/keydata listener.
+  private static final int KEY_DATA_FIELD_COUNT = 12;
+  private static final int BYTES_PER_FIELD = 4;
+  static final int KEY_DATA_SIZE = KEY_DATA_FIELD_COUNT * BYTES_PER_FIELD;
+
+  // Values of the type field.
+  static final int KEY_DATA_TYPE_KEYUP = 0;
+  static final int KEY_DATA_TYPE_KEYDOWN = 1;
 
   @NonNull
   public final BasicMessageChannel<Object> channel;
+  @NonNull
+  private final DartExecutor dartExecutor;
+  // Packets are copied by the engine before send() returns on the main thread,
+  // where key events arrive, so one buffer serves every packet.
+  @NonNull
+  private final ByteBuffer keyDataPacket = ByteBuffer.allocateDirect(KEY_DATA_SIZE);
+  private boolean usesKeyDataPackets;
+  // Whether the framework acknowledged a packet, after which packets are sent
+  // without awaiting a reply.
+  private boolean isKeyDataAcknowledged;
+  // Whether the framework left a packet unanswered, after which events are
+  // sent as JSON messages again.
+  private boolean isKeyDataUnsupported;
+  // The JSON messages of the packets awaiting a reply, oldest first, which are
+  // sent in order if the framework turns out not to support packets.
+  @NonNull
+  private final List<Map<String, Object>> unacknowledgedKeyEvents = new ArrayList<>();
 
   public KeyEventChannel(@NonNull DartExecutor dartExecutor) {
+    this.dartExecutor = dartExecutor;
     this.channel = new BasicMessageChannel<>(dartExecutor, "flutter/keyevent", JSONMessageCodec.INSTANCE);
   }
 
-  public void keyUp(@NonNull FlutterKeyEvent keyEvent) {
-    Map<String, Object> message = new HashMap<>();
-    message.put("type", "keyup");
-    message.put("keymap", "android");
-    encodeKeyEvent(keyEvent, message);
+  /**
+   * Sets whether key events are sent to Flutter as fixed-layout binary packets on
+   * {@link #KEY_DATA_CHANNEL}, rather than as JSON messages on {@link #channel}.
+   *
+   * A JSON message costs a map of boxed values, string building and tokenizing for
+   * every keystroke, while a packet is written straight into a direct buffer.
+   *
+   * Packets require framework support: a listener on {@link #KEY_DATA_CHANNEL} that
+   * answers packets with a non-empty reply. Packets await a reply until the first
+   * one is acknowledged. A packet that gets an empty reply, as every message
+   * to a channel without a listener does, is sent again as a JSON message, and so
+   * are all later events, so that no key event is lost on a framework without
+   * support. Disabled by default.
+   */
+  public void setUsesKeyDataPackets(boolean usesKeyDataPackets) {
+    this.usesKeyDataPackets = usesKeyDataPackets;
+    isKeyDataAcknowledged = false;
+    isKeyDataUnsupported = false;
+  }
 
-    channel.send(message);
+  public void keyUp(@NonNull FlutterKeyEvent keyEvent) {
+    send("keyup", KEY_DATA_TYPE_KEYUP, keyEvent);
   }
 
   public void keyDown(@NonNull FlutterKeyEvent keyEvent) {
-    Map<String, Object> message = new HashMap<>();
-    message.put("type", "keydown");
-    message.put("keymap", "android");
-    encodeKeyEvent(keyEvent, message);
+    send("keydown", KEY_DATA_TYPE_KEYDOWN, keyEvent);
+  }
+
+  private void send(@NonNull String type, int keyDataType, @NonNull FlutterKeyEvent keyEvent) {
+    if (!usesKeyDataPackets || isKeyDataUnsupported) {
+      channel.send(encodeKeyEvent(type, keyEvent));
+      return;
+    }
+    keyDataPacket.clear();
+    encodeKeyData(keyDataType, keyEvent, keyDataPacket);
+    if (isKeyDataAcknowledged) {
+      dartExecutor.send(KEY_DATA_CHANNEL, keyDataPacket);
+      return;
+    }
+    unacknowledgedKeyEvents.add(encodeKeyEvent(type, keyEvent));
+    dartExecutor.send(KEY_DATA_CHANNEL, keyDataPacket, new BinaryMessenger.BinaryReply() {
+      @Override
+      public void reply(@Nullable ByteBuffer reply) {
+        if (reply != null) {
+          isKeyDataAcknowledged = true;
+          unacknowledgedKeyEvents.clear();
+        } else if (!unacknowledgedKeyEvents.isEmpty()) {
+          // The framework does not listen for packets, so this and every later
+          // packet went unhandled.
+          isKeyDataUnsupported = true;
+          sendUnacknowledgedKeyEvents();
+        }
+      }
+    });
+  }
+
+  private void sendUnacknowledgedKeyEvents() {
+    for (Map<String, Object> message : unacknowledgedKeyEvents) {
+      channel.send(message);
+    }
+    unacknowledgedKeyEvents.clear();
+  }
 
-    channel.send(message);
+  /**
+   * Writes the key data packet for the event at the position of {@code packet}.
+   */
+  static void encodeKeyData(int type, @NonNull FlutterKeyEvent event, @NonNull ByteBuffer packet) {
+    packet.order(ByteOrder.LITTLE_ENDIAN);
+    packet.putInt(type);
+    packet.putInt(event.flags);
+    packet.putInt(event.plainCodePoint);
+    packet.putInt(event.codePoint);
+    packet.putInt(event.keyCode);
+    packet.putInt(event.scanCode);
+    packet.putInt(event.metaState);
+    // Whether the event has a complex character, followed by the character.
+    packet.putInt(event.complexCharacter != null ? 1 : 0);
+    packet.putInt(event.complexCharacter != null ? event.complexCharacter : 0);
+    packet.putInt(event.source);
+    packet.putInt(event.vendorId);
+    packet.putInt(event.productId);
   }
 
-  private void encodeKeyEvent(@NonNull FlutterKeyEvent event, @NonNull Map<String, Object> message) {
+  /**
+   * Returns the JSON message for the event, of the given type.
+   */
+  @NonNull
+  static Map<String, Object> encodeKeyEvent(@NonNull String type, @NonNull FlutterKeyEvent event) {
+    Map<String, Object> message = new HashMap<>();
+    message.put("type", type);
+    message.put("keymap", "android");
     message.put("flags", event.flags);
     message.put("plainCodePoint", event.plainCodePoint);
     message.put("codePoint", event.codePoint);
@@ -60,6 +169,7 @@ public class KeyEventChannel {
     message.put("source", event.source);
     message.put("vendorId", event.vendorId);
     message.put("productId", event.productId);
+    return message;
   }
 
   /**
@@ -112,6 +222,33 @@ public class KeyEventChannel {
         int scanCode,
         int metaState,
         int source
+    ) {
+      this(
+          deviceId,
+          flags,
+          plainCodePoint,
+          codePoint,
+          keyCode,
+          complexCharacter,
+          scanCode,
+          metaState,
+          source,
+          InputDeviceCache.getInstance().getDevice(deviceId)
+      );
+    }
+
+    public FlutterKeyEvent(
+        int deviceId,
+        int flags,
+        int plainCodePoint,
+        int codePoint,
+        int keyCode,
+        @Nullable Character complexCharacter,
+        int scanCode,
+        int metaState,
+        int source,
+        int vendorId,
+        int productId
     ) {
       this.deviceId = deviceId;
       this.flags = flags;
@@ -122,19 +259,35 @@ public class KeyEventChannel {
       this.scanCode = scanCode;
       this.metaState = metaState;
       this.source = source;
-      InputDevice device = InputDevice.getDevice(deviceId);
-      if (device != null) {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-          this.vendorId = device.getVendorId();
-          this.productId = device.getProductId();
-        } else {
-          this.vendorId = 0;
-          this.productId = 0;
-        }
-      } else {
-        this.vendorId = 0;
-        this.productId = 0;
-      }
+      this.vendorId = vendorId;
+      this.productId = productId;
+    }
+
+    private FlutterKeyEvent(
+        int deviceId,
+        int flags,
+        int plainCodePoint,
+        int codePoint,
+        int keyCode,
+        @Nullable Character complexCharacter,
+        int scanCode,
+        int metaState,
+        int source,
+        @NonNull InputDeviceCache.Device device
+    ) {
+      this(
+          deviceId,
+          flags,
+          plainCodePoint,
+          codePoint,
+          keyCode,
+          complexCharacter,
+          scanCode,
+          metaState,
+          source,
+          device.vendorId,
+          device.productId
+      );
     }
   }
 }
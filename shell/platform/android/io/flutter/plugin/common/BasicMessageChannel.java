@@ -36,6 +36,9 @@ public final class BasicMessageChannel<T> {
     private final String name;
     @NonNull
     private final MessageCodec<T> codec;
+    private final boolean encodesIntoPool;
+    @Nullable
+    private final BinaryMessenger.TaskQueue taskQueue;
 
     /**
      * Creates a new channel associated with the specified {@link BinaryMessenger}
@@ -46,6 +49,21 @@ public final class BasicMessageChannel<T> {
      * @param codec a {@link MessageCodec}.
      */
     public BasicMessageChannel(@NonNull BinaryMessenger messenger, @NonNull String name, @NonNull MessageCodec<T> codec) {
+        this(messenger, name, codec, null);
+    }
+
+    /**
+     * Creates a new channel associated with the specified {@link BinaryMessenger} and with the
+     * specified name and {@link MessageCodec}, whose messages are decoded and handled on the given
+     * {@link BinaryMessenger.TaskQueue}.
+     *
+     * @param messenger a {@link BinaryMessenger}.
+     * @param name a channel name String.
+     * @param codec a {@link MessageCodec}.
+     * @param taskQueue a {@link BinaryMessenger.TaskQueue} made by {@code messenger}, or null to
+     * handle messages on the main thread.
+     */
+    public BasicMessageChannel(@NonNull BinaryMessenger messenger, @NonNull String name, @NonNull MessageCodec<T> codec, @Nullable BinaryMessenger.TaskQueue taskQueue) {
         if (BuildConfig.DEBUG) {
             if (messenger == null) {
                 Log.e(TAG, "Parameter messenger must not be null.");
@@ -60,6 +78,17 @@ public final class BasicMessageChannel<T> {
         this.messenger = messenger;
         this.name = name;
         this.codec = codec;
+        this.encodesIntoPool = codec != null && DirectByteBufferPool.encodesIntoPool(codec);
+        this.taskQueue = taskQueue;
+    }
+
+    // Marks a message this channel has just encoded, and never hands out, as leased, so that the
+    // messenger returns its buffer to the pool once the message has been sent.
+    private ByteBuffer leased(ByteBuffer message) {
+        if (encodesIntoPool && message != null) {
+            DirectByteBufferPool.INSTANCE.lease(message);
+        }
+        return message;
     }
 
     /**
@@ -81,7 +110,7 @@ public final class BasicMessageChannel<T> {
      */
     @UiThread
     public void send(@Nullable T message, @Nullable final Reply<T> callback) {
-        messenger.send(name, codec.encodeMessage(message),
+        messenger.send(name, leased(codec.encodeMessage(message)),
             callback == null ? null : new IncomingReplyHandler(callback));
     }
 
@@ -98,8 +127,13 @@ public final class BasicMessageChannel<T> {
      */
     @UiThread
     public void setMessageHandler(@Nullable final MessageHandler<T> handler) {
-        messenger.setMessageHandler(name,
-            handler == null ? null : new IncomingMessageHandler(handler));
+        final IncomingMessageHandler incomingHandler =
+            handler == null ? null : new IncomingMessageHandler(handler);
+        if (taskQueue == null) {
+            messenger.setMessageHandler(name, incomingHandler);
+        } else {
+            messenger.setMessageHandler(name, incomingHandler, taskQueue);
+        }
     }
 
     /**
@@ -171,7 +205,7 @@ public final class BasicMessageChannel<T> {
                 handler.onMessage(codec.decodeMessage(message), new Reply<T>() {
                     @Override
                     public void reply(T reply) {
-                        callback.reply(codec.encodeMessage(reply));
+                        callback.reply(leased(codec.encodeMessage(reply)));
                     }
                 });
             } catch (RuntimeException e) {
@@ -9,6 +9,7 @@ import android.support.annotation.Nullable;
 import android.support.annotation.UiThread;
 
 import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
 
 /**
  * Facility for communicating with Flutter using asynchronous message passing with binary messages.
@@ -16,10 +17,15 @@ import java.nio.ByteBuffer;
  * <a href="https://docs.flutter.io/flutter/services/BinaryMessages-class.html">BinaryMessages</a>
  * to participate.
  * <p>
- * {@code BinaryMessenger} is expected to be utilized from a single thread throughout the duration
- * of its existence. If created on the main thread, then all invocations should take place on the
- * main thread. If created on a background thread, then all invocations should take place on that
- * background thread.
+ * Whether a {@code BinaryMessenger} may be used from more than one thread depends on the
+ * implementation. The messenger of a {@code DartExecutor} accepts {@code send} and
+ * {@code setMessageHandler} calls from any thread, and hands messages sent off the main thread to
+ * the engine once the main looper runs. Other messengers, such as {@code FlutterView} and
+ * {@code FlutterNativeView}, must only be used from the main thread. Code that does not know
+ * which messenger it holds should stay on the main thread.
+ * <p>
+ * Message handlers run on the main thread, unless registered with a {@link TaskQueue}. Reply
+ * callbacks run on the main thread.
  *
  * @see BasicMessageChannel , which supports message passing with Strings and semi-structured messages.
  * @see MethodChannel , which supports communication using asynchronous method invocation.
@@ -50,6 +56,33 @@ public interface BinaryMessenger {
     @UiThread
     void send(@NonNull String channel, @Nullable ByteBuffer message, @Nullable BinaryReply callback);
 
+    /**
+     * Sends a binary message to the Flutter application, expecting a reply within the given time.
+     *
+     * <p>If the Flutter application does not respond within {@code timeoutMillis}, the
+     * {@link TimeoutBinaryReply#onTimeout()} method of {@code callback} is called instead of
+     * {@link BinaryReply#reply(ByteBuffer)}, and a late response is ignored.</p>
+     *
+     * <p>Any uncaught exception thrown by the callback will be caught and logged.</p>
+     *
+     * <p>The default implementation sends the message with
+     * {@link #send(String, ByteBuffer, BinaryReply)} and times the callback out on the main
+     * thread.</p>
+     *
+     * @param channel the name {@link String} of the logical channel used for the message.
+     * @param message the message payload, a direct-allocated {@link ByteBuffer} with the message bytes
+     * between position zero and current position, or null.
+     * @param callback a {@link TimeoutBinaryReply} callback invoked when the Flutter application
+     * responds to the message, or when it fails to do so in time.
+     * @param timeoutMillis the positive number of milliseconds to wait for a response.
+     * @return a {@link Cancellable} that stops waiting for the response.
+     */
+    @UiThread
+    @NonNull
+    default Cancellable send(@NonNull String channel, @Nullable ByteBuffer message, @NonNull TimeoutBinaryReply callback, long timeoutMillis) {
+        return TimedBinaryReply.send(this, channel, message, callback, timeoutMillis);
+    }
+
     /**
      * Registers a handler to be invoked when the Flutter application sends a message
      * to its host platform.
@@ -66,6 +99,97 @@ public interface BinaryMessenger {
     @UiThread
     void setMessageHandler(@NonNull String channel, @Nullable BinaryMessageHandler handler);
 
+    /**
+     * Creates a {@link TaskQueue} that runs message handlers off the main thread.
+     *
+     * <p>The default implementation returns a queue that messengers without background handler
+     * support ignore, so that handlers registered with it run on the main thread.</p>
+     *
+     * @param options the {@link TaskQueueOptions} describing the queue.
+     * @return a {@link TaskQueue} to be passed to
+     * {@link #setMessageHandler(String, BinaryMessageHandler, TaskQueue)}.
+     */
+    @UiThread
+    @NonNull
+    default TaskQueue makeBackgroundTaskQueue(@NonNull TaskQueueOptions options) {
+        return new TaskQueue() {};
+    }
+
+    /**
+     * Registers a handler to be invoked on the given {@link TaskQueue} when the Flutter application
+     * sends a message to its host platform.
+     *
+     * <p>Behaves like {@link #setMessageHandler(String, BinaryMessageHandler)}, except that
+     * messages are decoded and handled on the threads of {@code taskQueue} rather than on the main
+     * thread. The {@link BinaryReply} handed to the handler may be used from any thread.</p>
+     *
+     * <p>The default implementation ignores {@code taskQueue} and registers the handler with
+     * {@link #setMessageHandler(String, BinaryMessageHandler)}.</p>
+     *
+     * @param channel the name {@link String} of the channel.
+     * @param handler a {@link BinaryMessageHandler} to be invoked on incoming messages, or null.
+     * @param taskQueue a {@link TaskQueue} made by this messenger's
+     * {@link #makeBackgroundTaskQueue(TaskQueueOptions)}, or null to handle messages on the main
+     * thread.
+     */
+    @UiThread
+    default void setMessageHandler(@NonNull String channel, @Nullable BinaryMessageHandler handler, @Nullable TaskQueue taskQueue) {
+        setMessageHandler(channel, handler);
+    }
+
+    /**
+     * An opaque queue on which a {@link BinaryMessenger} invokes message handlers.
+     *
+     * @see #makeBackgroundTaskQueue(TaskQueueOptions)
+     */
+    interface TaskQueue {}
+
+    /**
+     * Options for {@link #makeBackgroundTaskQueue(TaskQueueOptions)}.
+     */
+    class TaskQueueOptions {
+        private boolean isSerial = true;
+        @Nullable
+        private Executor executor;
+
+        /**
+         * Returns whether handlers on the queue run one at a time, in message order.
+         */
+        public boolean getIsSerial() {
+            return isSerial;
+        }
+
+        /**
+         * Sets whether handlers on the queue run one at a time, in message order. Defaults to true.
+         *
+         * <p>Non-serial queues may run several messages at once and in any order.</p>
+         */
+        @NonNull
+        public TaskQueueOptions setIsSerial(boolean isSerial) {
+            this.isSerial = isSerial;
+            return this;
+        }
+
+        /**
+         * Returns the {@link Executor} that runs the queue's handlers, or null for the
+         * messenger's shared background threads.
+         */
+        @Nullable
+        public Executor getExecutor() {
+            return executor;
+        }
+
+        /**
+         * Sets the {@link Executor} that runs the queue's handlers. Defaults to the messenger's
+         * shared background threads.
+         */
+        @NonNull
+        public TaskQueueOptions setExecutor(@Nullable Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+    }
+
     /**
      * Handler for incoming binary messages from Flutter.
      */
@@ -80,6 +204,10 @@ public interface BinaryMessenger {
          * <p>Any uncaught exception thrown by this method will be caught by the messenger implementation and
          * logged, and a null reply message will be sent back to Flutter.</p>
          *
+         * <p>The message buffer, and any views over it such as the typed data decoded by a
+         * {@link StandardMessageCodec} created with {@code decodeTypedDataAsViews}, must not be used
+         * after this method returns. Copy any data that is needed beyond this call.</p>
+         *
          * @param message the message {@link ByteBuffer} payload, possibly null.
          * @param reply A {@link BinaryReply} used for submitting a reply back to Flutter.
          */
@@ -103,4 +231,106 @@ public interface BinaryMessenger {
         @UiThread
         void reply(@Nullable ByteBuffer reply);
     }
+
+    /**
+     * A {@link BinaryReply} for messages sent with a timeout, see
+     * {@link #send(String, ByteBuffer, TimeoutBinaryReply, long)}.
+     */
+    interface TimeoutBinaryReply extends BinaryReply {
+        /**
+         * Called instead of {@link #reply(ByteBuffer)} when the Flutter application did not
+         * respond in time.
+         */
+        @UiThread
+        void onTimeout();
+    }
+
+    /**
+     * Handle to a message sent with {@link #send(String, ByteBuffer, TimeoutBinaryReply, long)}.
+     */
+    interface Cancellable {
+        /**
+         * Stops waiting for the response. The reply callback will not be invoked afterwards.
+         *
+         * <p>May be called from any thread.</p>
+         *
+         * @return true if the response was still awaited, false if the callback has already been
+         * invoked or the message was cancelled before.
+         */
+        boolean cancel();
+    }
+
+    /**
+     * A {@link BinaryMessageHandler} that accepts message buffers pointing directly into the memory
+     * of the Flutter engine.
+     *
+     * <p>Messengers that support it deliver messages to such handlers through
+     * {@link #onDirectMessage(ByteBuffer, BinaryReply, MessageRetention)} without first copying them
+     * to the Java heap. Other messengers call {@link #onMessage(ByteBuffer, BinaryReply)} as
+     * usual.</p>
+     */
+    interface DirectBinaryMessageHandler extends BinaryMessageHandler {
+        /**
+         * Handles the specified message, which is backed by engine memory.
+         *
+         * <p>The same reply requirements as for {@link #onMessage(ByteBuffer, BinaryReply)} apply.</p>
+         *
+         * <p>The message buffer is read-only and becomes invalid when this method returns, unless
+         * {@link MessageRetention#retain()} is called before returning. A retained message stays
+         * valid until {@link MessageRetention#release()}. Reading an invalid buffer has undefined
+         * results.</p>
+         *
+         * @param message the message {@link ByteBuffer} payload, possibly null.
+         * @param reply A {@link BinaryReply} used for submitting a reply back to Flutter.
+         * @param retention a {@link MessageRetention} used to keep the message valid beyond this call.
+         */
+        @UiThread
+        void onDirectMessage(@Nullable ByteBuffer message, @NonNull BinaryReply reply, @NonNull MessageRetention retention);
+    }
+
+    /**
+     * A {@link BinaryReply} that accepts reply buffers pointing directly into the memory of the
+     * Flutter engine.
+     *
+     * <p>Messengers that support it deliver replies received from Flutter through
+     * {@link #directReply(ByteBuffer, MessageRetention)} without first copying them to the Java
+     * heap. Other messengers call {@link #reply(ByteBuffer)} as usual.</p>
+     */
+    interface DirectBinaryReply extends BinaryReply {
+        /**
+         * Handles the specified reply, which is backed by engine memory.
+         *
+         * <p>The reply buffer is read-only and becomes invalid when this method returns, unless
+         * {@link MessageRetention#retain()} is called before returning. A retained reply stays
+         * valid until {@link MessageRetention#release()}.</p>
+         *
+         * @param reply the reply payload, or null.
+         * @param retention a {@link MessageRetention} used to keep the reply valid beyond this call.
+         */
+        @UiThread
+        void directReply(@Nullable ByteBuffer reply, @NonNull MessageRetention retention);
+    }
+
+    /**
+     * Controls how long a message or reply buffer backed by engine memory stays valid.
+     */
+    interface MessageRetention {
+        /**
+         * Keeps the buffer valid after the call that delivered it returns.
+         *
+         * <p>May only be called once, while that call is in progress.</p>
+         *
+         * @throws IllegalStateException if the buffer was already retained or released.
+         */
+        void retain();
+
+        /**
+         * Releases a buffer kept by {@link #retain()}. The buffer must not be read afterwards.
+         *
+         * <p>May be called from any thread.</p>
+         *
+         * @throws IllegalStateException if the buffer is not retained.
+         */
+        void release();
+    }
 }
@@ -0,0 +1,644 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugin.common;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.UiThread;
+import android.util.Log;
+
+import io.flutter.BuildConfig;
+import io.flutter.plugin.common.BinaryMessenger.BinaryReply;
+import io.flutter.plugin.common.BinaryMessenger.DirectBinaryMessageHandler;
+import io.flutter.plugin.common.BinaryMessenger.MessageRetention;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A named channel for transferring large payloads to and from the Flutter application in chunks.
+ *
+ * <p>Rather than as one message, which the sender has to hold in full and the engine copies in
+ * full, a payload is sent as a sequence of fixed-size chunks. The sender reads each chunk from its
+ * source only when it is about to be sent, and keeps at most a window of chunks in flight, sending
+ * the next one as the receiver acknowledges an earlier one. Memory held for a transfer on the
+ * sending side is thus bounded by the window rather than by the payload. The receiver handles each
+ * chunk as it arrives, for instance by copying it into a buffer allocated for the whole payload
+ * up front, see {@link ReassemblingReceiver}.</p>
+ *
+ * <p>Transfers use the following messages, with multi-byte values in little-endian byte order:</p>
+ * <ul>
+ *     <li>begin: the byte 0, the transfer id as int32, the payload length as int64 and the chunk
+ *     size as int32.</li>
+ *     <li>chunk: the byte 1, the transfer id as int32, the sequence number of the chunk as int32,
+ *     and the bytes of the chunk, which are the payload bytes at sequence number times chunk size.
+ *     All chunks but the last have the chunk size.</li>
+ *     <li>cancel: the byte 2 and the transfer id as int32.</li>
+ * </ul>
+ * <p>The receiver answers begin and chunk messages with the single byte 0 to accept them or 1 to
+ * abort the transfer. Cancel messages are not answered. A channel on the Dart side that uses the
+ * same messages can send payloads to this channel and receive payloads from it.</p>
+ *
+ * <p>A transfer from Flutter that receives no chunk for {@link #IDLE_TIMEOUT_MS} is cancelled, so
+ * that a transfer abandoned by Flutter, for instance on hot restart, does not hold its receiver
+ * forever.</p>
+ *
+ * <p>The logical identity of the channel is given by its name. Identically named channels will
+ * interfere with each other's communication.</p>
+ */
+public final class ChunkedTransferChannel {
+    private static final String TAG = "ChunkedTransferChannel#";
+
+    /**
+     * The chunk size of channels created without one, which keeps a chunk message within the
+     * buffers pooled by {@link DirectByteBufferPool}.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 32 * 1024;
+
+    /**
+     * The number of unacknowledged chunks of channels created without one.
+     */
+    public static final int DEFAULT_WINDOW = 4;
+
+    /**
+     * How long a transfer from Flutter may go without a chunk before it is cancelled.
+     */
+    public static final long IDLE_TIMEOUT_MS = 60 * 1000;
+
+    private static final byte BEGIN = 0;
+    private static final byte CHUNK = 1;
+    private static final byte CANCEL = 2;
+    private static final byte ACCEPT = 0;
+    private static final byte ABORT = 1;
+    private static final int BEGIN_SIZE = 1 + 4 + 8 + 4;
+    private static final int CHUNK_HEADER_SIZE = 1 + 4 + 4;
+    private static final int CANCEL_SIZE = 1 + 4;
+
+    // Transfer ids are unique per process, so that channels of the same name do not mix them up.
+    private static final AtomicInteger nextTransferId = new AtomicInteger();
+
+    private final BinaryMessenger messenger;
+    private final String name;
+    private final int chunkSize;
+    private final int window;
+    private final Handler mainThreadHandler = new Handler(Looper.getMainLooper());
+    // The handler of transfers from Flutter, whose transfers are cancelled when it is replaced.
+    @Nullable
+    private IncomingTransferHandler incomingTransferHandler;
+
+    /**
+     * Creates a new channel associated with the specified {@link BinaryMessenger} and with the
+     * specified name, {@link #DEFAULT_CHUNK_SIZE} and {@link #DEFAULT_WINDOW}.
+     *
+     * @param messenger a {@link BinaryMessenger}.
+     * @param name a channel name String.
+     */
+    public ChunkedTransferChannel(@NonNull BinaryMessenger messenger, @NonNull String name) {
+        this(messenger, name, DEFAULT_CHUNK_SIZE, DEFAULT_WINDOW);
+    }
+
+    /**
+     * Creates a new channel associated with the specified {@link BinaryMessenger} and with the
+     * specified name, that sends payloads in chunks of {@code chunkSize} bytes with at most
+     * {@code window} chunks awaiting acknowledgement.
+     *
+     * @param messenger a {@link BinaryMessenger}.
+     * @param name a channel name String.
+     * @param chunkSize the positive number of payload bytes per chunk.
+     * @param window the positive number of chunks that may be in flight at once.
+     */
+    public ChunkedTransferChannel(@NonNull BinaryMessenger messenger, @NonNull String name, int chunkSize, int window) {
+        if (BuildConfig.DEBUG) {
+            if (messenger == null) {
+                Log.e(TAG, "Parameter messenger must not be null.");
+            }
+            if (name == null) {
+                Log.e(TAG, "Parameter name must not be null.");
+            }
+        }
+        if (chunkSize <= 0 || window <= 0) {
+            throw new IllegalArgumentException("chunkSize and window must be positive");
+        }
+        this.messenger = messenger;
+        this.name = name;
+        this.chunkSize = chunkSize;
+        this.window = window;
+    }
+
+    /**
+     * Sends the remaining bytes of {@code payload} to Flutter. The bytes are copied chunk by chunk
+     * as they are sent, so the buffer must not change until the transfer completes.
+     *
+     * @see #send(ReadableByteChannel, long)
+     */
+    @UiThread
+    @NonNull
+    public ResultFuture<Object> send(@NonNull ByteBuffer payload) {
+        final ByteBuffer source = payload.duplicate();
+        return send(new ReadableByteChannel() {
+            @Override
+            public int read(ByteBuffer destination) {
+                if (!source.hasRemaining()) {
+                    return -1;
+                }
+                final int count = Math.min(source.remaining(), destination.remaining());
+                final int limit = source.limit();
+                source.limit(source.position() + count);
+                destination.put(source);
+                source.limit(limit);
+                return count;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        }, source.remaining());
+    }
+
+    /**
+     * Sends {@code length} bytes read from {@code source} to Flutter.
+     *
+     * <p>The source is read on the platform thread, one chunk at a time, when the chunk is about to
+     * be sent, so it should not block for long: a file or memory is fine, a network stream is not.
+     * It is not closed by the channel.</p>
+     *
+     * <p>The returned future completes with null once the receiver has acknowledged every chunk. It
+     * fails with a {@link ResultFuture.NotImplementedException} if Flutter has no receiver on this
+     * channel, with a {@link FlutterException} if the receiver rejects or aborts the transfer, and
+     * with the {@link IOException} if the source cannot be read. Cancelling the future, which may
+     * be done on any thread, cancels the transfer.</p>
+     *
+     * @param source the {@link ReadableByteChannel} to read the payload from.
+     * @param length the number of bytes to send.
+     * @return a {@link ResultFuture} of the completion of the transfer.
+     */
+    @UiThread
+    @NonNull
+    public ResultFuture<Object> send(@NonNull ReadableByteChannel source, long length) {
+        if (length < 0) {
+            throw new IllegalArgumentException("length must not be negative, was " + length);
+        }
+        final OutgoingTransfer transfer = new OutgoingTransfer(nextTransferId.getAndIncrement(), source, length);
+        transfer.begin();
+        return transfer.future;
+    }
+
+    /**
+     * Registers a handler for transfers from Flutter on this channel.
+     *
+     * <p>Overrides any existing handler registration for (the name of) this channel. Transfers from
+     * Flutter are rejected while no handler is registered. Transfers in progress with the handler
+     * previously registered through this channel are cancelled.</p>
+     *
+     * @param handler a {@link TransferHandler}, or null to deregister.
+     */
+    @UiThread
+    public void setTransferHandler(@Nullable TransferHandler handler) {
+        final IncomingTransferHandler previous = incomingTransferHandler;
+        incomingTransferHandler = handler == null ? null : new IncomingTransferHandler(handler);
+        messenger.setMessageHandler(name, incomingTransferHandler);
+        if (previous != null) {
+            previous.cancelAll();
+        }
+    }
+
+    /**
+     * A handler of transfers from Flutter.
+     */
+    public interface TransferHandler {
+        /**
+         * Returns the {@link Receiver} of a transfer of {@code length} bytes that Flutter starts, or
+         * null to reject the transfer. Called on the platform thread.
+         */
+        @UiThread
+        @Nullable
+        Receiver onTransfer(long length);
+    }
+
+    /**
+     * The receiving end of a single transfer from Flutter. Its methods are called on the platform
+     * thread.
+     */
+    public interface Receiver {
+        /**
+         * Handles the chunk of the payload that starts at {@code offset}. Chunks normally arrive in
+         * order, and each arrives once.
+         *
+         * <p>The chunk buffer is read-only and only valid until this method returns. Throwing an
+         * exception aborts the transfer.</p>
+         */
+        @UiThread
+        void onChunk(@NonNull ByteBuffer chunk, long offset);
+
+        /**
+         * Called once every chunk has been handled.
+         */
+        @UiThread
+        void onComplete();
+
+        /**
+         * Called instead of {@link #onComplete()} when Flutter cancels the transfer or the transfer
+         * is aborted.
+         */
+        @UiThread
+        void onCancel();
+    }
+
+    /**
+     * A {@link Receiver} that copies the chunks of a transfer into a direct buffer allocated for the
+     * whole payload when the transfer begins, and hands the buffer over once it is complete.
+     */
+    public abstract static class ReassemblingReceiver implements Receiver {
+        private final ByteBuffer payload;
+
+        /**
+         * Creates a receiver for a payload of {@code length} bytes.
+         *
+         * @throws IllegalArgumentException if {@code length} does not fit a {@link ByteBuffer}.
+         */
+        protected ReassemblingReceiver(long length) {
+            if (length > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Payload of " + length + " bytes does not fit a ByteBuffer");
+            }
+            payload = ByteBuffer.allocateDirect((int) length);
+        }
+
+        /**
+         * Handles the complete payload, positioned at zero and limited to its length.
+         */
+        @UiThread
+        protected abstract void onPayload(@NonNull ByteBuffer payload);
+
+        @Override
+        public final void onChunk(@NonNull ByteBuffer chunk, long offset) {
+            final ByteBuffer destination = payload.duplicate();
+            destination.position((int) offset);
+            destination.put(chunk);
+        }
+
+        @Override
+        public final void onComplete() {
+            onPayload(payload);
+        }
+
+        @Override
+        public void onCancel() {
+        }
+    }
+
+    private static int chunkCount(long length, int chunkSize) {
+        final long count = (length + chunkSize - 1) / chunkSize;
+        if (count > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Payload of " + length + " bytes has too many chunks");
+        }
+        return (int) count;
+    }
+
+    private static ByteBuffer obtainMessage(int size) {
+        final ByteBuffer message = DirectByteBufferPool.INSTANCE.obtain(size).order(ByteOrder.LITTLE_ENDIAN);
+        // The messenger hands the buffer back to the pool once the engine has copied it.
+        DirectByteBufferPool.INSTANCE.lease(message);
+        return message;
+    }
+
+    private void sendCancel(int transferId) {
+        final ByteBuffer message = obtainMessage(CANCEL_SIZE);
+        message.put(CANCEL).putInt(transferId);
+        messenger.send(name, message);
+    }
+
+    private final class OutgoingTransfer {
+        final ResultFuture<Object> future = new ResultFuture<>();
+        private final int id;
+        private final ReadableByteChannel source;
+        private final long length;
+        private final int chunkCount;
+        private int nextSequence;
+        private int acknowledged;
+        // Also set by cancelling the future, which may happen on any thread.
+        private volatile boolean finished;
+
+        OutgoingTransfer(int id, ReadableByteChannel source, long length) {
+            this.id = id;
+            this.source = source;
+            this.length = length;
+            this.chunkCount = chunkCount(length, chunkSize);
+        }
+
+        void begin() {
+            future.setCancellable(new BinaryMessenger.Cancellable() {
+                @Override
+                public boolean cancel() {
+                    if (finished) {
+                        return false;
+                    }
+                    finished = true;
+                    // Messengers other than that of a DartExecutor only send on the main thread.
+                    if (Looper.myLooper() == Looper.getMainLooper()) {
+                        sendCancel(id);
+                    } else {
+                        mainThreadHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                sendCancel(id);
+                            }
+                        });
+                    }
+                    return true;
+                }
+            });
+            final ByteBuffer message = obtainMessage(BEGIN_SIZE);
+            message.put(BEGIN).putInt(id).putLong(length).putInt(chunkSize);
+            messenger.send(name, message, new BinaryReply() {
+                @Override
+                public void reply(@Nullable ByteBuffer reply) {
+                    if (reply == null) {
+                        finish();
+                        future.notImplemented();
+                    } else if (accepted(reply)) {
+                        fillWindow();
+                    }
+                }
+            });
+        }
+
+        // Sends chunks until the window is full or every chunk has been sent.
+        private void fillWindow() {
+            while (!finished && nextSequence < chunkCount && nextSequence - acknowledged < window) {
+                final ByteBuffer message;
+                try {
+                    message = readChunk(nextSequence);
+                } catch (IOException e) {
+                    Log.e(TAG + name, "Failed to read transfer payload", e);
+                    finish();
+                    sendCancel(id);
+                    future.fail(e);
+                    return;
+                }
+                nextSequence++;
+                messenger.send(name, message, new BinaryReply() {
+                    @Override
+                    public void reply(@Nullable ByteBuffer reply) {
+                        if (reply == null) {
+                            finish();
+                            future.notImplemented();
+                        } else if (accepted(reply)) {
+                            acknowledged++;
+                            if (acknowledged == chunkCount) {
+                                finish();
+                                future.success(null);
+                            } else {
+                                fillWindow();
+                            }
+                        }
+                    }
+                });
+            }
+            if (chunkCount == 0 && !finished) {
+                finish();
+                future.success(null);
+            }
+        }
+
+        private ByteBuffer readChunk(int sequence) throws IOException {
+            final int size = (int) Math.min(chunkSize, length - (long) sequence * chunkSize);
+            final ByteBuffer message = obtainMessage(CHUNK_HEADER_SIZE + size);
+            message.put(CHUNK).putInt(id).putInt(sequence);
+            final int end = message.position() + size;
+            message.limit(end);
+            while (message.hasRemaining()) {
+                if (source.read(message) < 0) {
+                    DirectByteBufferPool.INSTANCE.release(message);
+                    throw new EOFException("Source ended " + (end - message.position()) + " bytes early");
+                }
+            }
+            message.limit(message.capacity());
+            return message;
+        }
+
+        // Returns whether the receiver accepted a message, finishing the transfer otherwise.
+        private boolean accepted(ByteBuffer reply) {
+            if (finished) {
+                return false;
+            }
+            if (reply.hasRemaining() && reply.get(reply.position()) == ACCEPT) {
+                return true;
+            }
+            finish();
+            future.error("transfer-aborted", "The receiver aborted the transfer", null);
+            return false;
+        }
+
+        private void finish() {
+            finished = true;
+        }
+    }
+
+    private static final class IncomingTransfer {
+        final Receiver receiver;
+        final long length;
+        final int chunkSize;
+        final int chunkCount;
+        final BitSet received = new BitSet();
+        int receivedCount;
+        // In SystemClock#uptimeMillis() time.
+        long lastActivity = SystemClock.uptimeMillis();
+
+        IncomingTransfer(Receiver receiver, long length, int chunkSize) {
+            this.receiver = receiver;
+            this.length = length;
+            this.chunkSize = chunkSize;
+            this.chunkCount = chunkCount(length, chunkSize);
+        }
+    }
+
+    private final class IncomingTransferHandler implements DirectBinaryMessageHandler {
+        private final TransferHandler handler;
+        private final Map<Integer, IncomingTransfer> transfers = new HashMap<>();
+        private boolean isExpiryScheduled;
+        private final Runnable expireIdleTransfers = new Runnable() {
+            @Override
+            public void run() {
+                isExpiryScheduled = false;
+                final long now = SystemClock.uptimeMillis();
+                long oldestActivity = now;
+                final Iterator<Map.Entry<Integer, IncomingTransfer>> entries = transfers.entrySet().iterator();
+                while (entries.hasNext()) {
+                    final Map.Entry<Integer, IncomingTransfer> entry = entries.next();
+                    if (now - entry.getValue().lastActivity < IDLE_TIMEOUT_MS) {
+                        oldestActivity = Math.min(oldestActivity, entry.getValue().lastActivity);
+                        continue;
+                    }
+                    Log.w(TAG + name, "Cancelling transfer " + entry.getKey() + ", which received no chunk for "
+                        + IDLE_TIMEOUT_MS + "ms");
+                    entries.remove();
+                    try {
+                        entry.getValue().receiver.onCancel();
+                    } catch (RuntimeException e) {
+                        Log.e(TAG + name, "Failed to cancel idle transfer", e);
+                    }
+                }
+                scheduleExpiry(oldestActivity + IDLE_TIMEOUT_MS - now);
+            }
+        };
+
+        IncomingTransferHandler(TransferHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        @UiThread
+        public void onMessage(@Nullable ByteBuffer message, @NonNull BinaryReply reply) {
+            if (message == null || !message.hasRemaining()) {
+                reply.reply(null);
+                return;
+            }
+            final ByteBuffer header = message.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            switch (header.get()) {
+                case BEGIN:
+                    reply.reply(status(begin(header)));
+                    break;
+                case CHUNK:
+                    reply.reply(status(chunk(header)));
+                    break;
+                case CANCEL:
+                    reply.reply(null);
+                    if (header.remaining() < CANCEL_SIZE - 1) {
+                        break;
+                    }
+                    final IncomingTransfer transfer = transfers.remove(header.getInt());
+                    if (transfer != null) {
+                        transfer.receiver.onCancel();
+                    }
+                    break;
+                default:
+                    reply.reply(null);
+            }
+        }
+
+        @Override
+        @UiThread
+        public void onDirectMessage(@Nullable ByteBuffer message, @NonNull BinaryReply reply, @NonNull MessageRetention retention) {
+            // Chunks are handled before this returns, so they are read in place without retaining them.
+            onMessage(message, reply);
+        }
+
+        private boolean begin(ByteBuffer header) {
+            if (header.remaining() < BEGIN_SIZE - 1) {
+                return false;
+            }
+            final int id = header.getInt();
+            final long length = header.getLong();
+            final int chunkSize = header.getInt();
+            if (length < 0 || chunkSize <= 0 || transfers.containsKey(id)) {
+                return false;
+            }
+            final Receiver receiver;
+            try {
+                receiver = handler.onTransfer(length);
+            } catch (RuntimeException e) {
+                Log.e(TAG + name, "Failed to begin transfer", e);
+                return false;
+            }
+            if (receiver == null) {
+                return false;
+            }
+            final IncomingTransfer transfer = new IncomingTransfer(receiver, length, chunkSize);
+            if (transfer.chunkCount == 0) {
+                receiver.onComplete();
+            } else {
+                transfers.put(id, transfer);
+                scheduleExpiry(IDLE_TIMEOUT_MS);
+            }
+            return true;
+        }
+
+        private boolean chunk(ByteBuffer header) {
+            if (header.remaining() < CHUNK_HEADER_SIZE - 1) {
+                return false;
+            }
+            final int id = header.getInt();
+            final int sequence = header.getInt();
+            final IncomingTransfer transfer = transfers.get(id);
+            if (transfer == null) {
+                return false;
+            }
+            final long offset = (long) sequence * transfer.chunkSize;
+            final long expectedSize = Math.min(transfer.chunkSize, transfer.length - offset);
+            if (sequence < 0 || sequence >= transfer.chunkCount || header.remaining() != expectedSize) {
+                abort(id, transfer);
+                return false;
+            }
+            transfer.lastActivity = SystemClock.uptimeMillis();
+            if (transfer.received.get(sequence)) {
+                return true;
+            }
+            try {
+                transfer.receiver.onChunk(header.slice().asReadOnlyBuffer(), offset);
+            } catch (RuntimeException e) {
+                Log.e(TAG + name, "Failed to handle transfer chunk", e);
+                abort(id, transfer);
+                return false;
+            }
+            transfer.received.set(sequence);
+            if (++transfer.receivedCount == transfer.chunkCount) {
+                transfers.remove(id);
+                transfer.receiver.onComplete();
+            }
+            return true;
+        }
+
+        // Cancels every transfer in progress, once this handler has been replaced.
+        private void cancelAll() {
+            mainThreadHandler.removeCallbacks(expireIdleTransfers);
+            isExpiryScheduled = false;
+            final IncomingTransfer[] cancelled = transfers.values().toArray(new IncomingTransfer[0]);
+            transfers.clear();
+            for (IncomingTransfer transfer : cancelled) {
+                try {
+                    transfer.receiver.onCancel();
+                } catch (RuntimeException e) {
+                    Log.e(TAG + name, "Failed to cancel transfer of a replaced handler", e);
+                }
+            }
+        }
+
+        // Checks for idle transfers after the delay, unless a check is already scheduled, which is
+        // no later, or there are no transfers in progress.
+        private void scheduleExpiry(long delayMillis) {
+            if (!isExpiryScheduled && !transfers.isEmpty()) {
+                isExpiryScheduled = true;
+                mainThreadHandler.postDelayed(expireIdleTransfers, delayMillis);
+            }
+        }
+
+        private void abort(int id, IncomingTransfer transfer) {
+            transfers.remove(id);
+            transfer.receiver.onCancel();
+        }
+
+        private ByteBuffer status(boolean accepted) {
+            final ByteBuffer reply = obtainMessage(1);
+            reply.put(accepted ? ACCEPT : ABORT);
+            return reply;
+        }
+    }
+}
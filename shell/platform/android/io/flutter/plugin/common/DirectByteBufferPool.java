@@ -0,0 +1,178 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugin.common;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A pool of reusable, direct-allocated {@link ByteBuffer}s grouped into power-of-two size classes.
+ *
+ * <p>The codecs of this package encode messages into buffers obtained from {@link #INSTANCE}. When
+ * {@link BasicMessageChannel}, {@link MethodChannel} or {@link EventChannel} encode a message
+ * themselves, they lease its buffer, which never leaves the channel layer. Once such a message has
+ * been copied into the engine, for instance by {@code FlutterJNI.dispatchPlatformMessage}, the
+ * buffer is handed back with {@link #release(ByteBuffer)} and reused for a later message. This
+ * avoids a fresh {@link ByteBuffer#allocateDirect(int)} per message, which is slow and is only
+ * reclaimed by a GC cleaner.</p>
+ *
+ * <p>Buffers returned by a public {@code encode} method of a codec are never leased, so callers may
+ * keep them and send them any number of times.</p>
+ *
+ * <p>Only buffers recently leased by this pool are recycled; releasing any other buffer, or
+ * releasing a buffer twice, has no effect. Leases are tracked in a small ring, so a leased buffer
+ * that is never released is simply forgotten and garbage collected like any other buffer.</p>
+ *
+ * <p>This class is thread safe.</p>
+ */
+public final class DirectByteBufferPool {
+    public static final DirectByteBufferPool INSTANCE = new DirectByteBufferPool();
+
+    // Size classes are 2^MIN_SIZE_CLASS_SHIFT through 2^MAX_SIZE_CLASS_SHIFT bytes. Larger buffers
+    // are allocated on demand and never pooled.
+    private static final int MIN_SIZE_CLASS_SHIFT = 6;
+    private static final int MAX_SIZE_CLASS_SHIFT = 16;
+    private static final int SIZE_CLASS_COUNT = MAX_SIZE_CLASS_SHIFT - MIN_SIZE_CLASS_SHIFT + 1;
+    private static final int MAX_FREE_BUFFERS_PER_SIZE_CLASS = 4;
+    private static final int LEASE_RING_SIZE = 16;
+
+    private final ByteBuffer[][] freeBuffers = new ByteBuffer[SIZE_CLASS_COUNT][MAX_FREE_BUFFERS_PER_SIZE_CLASS];
+    private final int[] freeBufferCounts = new int[SIZE_CLASS_COUNT];
+    private final ByteBuffer[] leases = new ByteBuffer[LEASE_RING_SIZE];
+    private int nextLease = 0;
+
+    private DirectByteBufferPool() {
+    }
+
+    /**
+     * Returns the largest capacity, in bytes, of buffers retained by this pool.
+     */
+    public static int maxPooledCapacity() {
+        return 1 << MAX_SIZE_CLASS_SHIFT;
+    }
+
+    /**
+     * Returns a cleared, direct-allocated buffer in native byte order with a capacity of at least
+     * {@code minCapacity} bytes.
+     *
+     * <p>The returned buffer is not tracked as a lease; use {@link #lease(ByteBuffer)} once it is
+     * handed out to code that will {@link #release(ByteBuffer)} it.</p>
+     */
+    @NonNull
+    synchronized ByteBuffer obtain(int minCapacity) {
+        final int sizeClass = sizeClassOf(minCapacity);
+        if (sizeClass < 0) {
+            return ByteBuffer.allocateDirect(minCapacity).order(ByteOrder.nativeOrder());
+        }
+        final int count = freeBufferCounts[sizeClass];
+        if (count > 0) {
+            final ByteBuffer buffer = freeBuffers[sizeClass][count - 1];
+            freeBuffers[sizeClass][count - 1] = null;
+            freeBufferCounts[sizeClass] = count - 1;
+            return buffer;
+        }
+        return ByteBuffer.allocateDirect(1 << (sizeClass + MIN_SIZE_CLASS_SHIFT))
+            .order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Returns whether {@code codec} encodes messages with one of the codecs of this package, into
+     * buffers obtained from this pool that no one else holds on to.
+     *
+     * <p>Codecs that override the encode methods, even to call the inherited ones, may keep the
+     * encoded buffers and are never leased.</p>
+     */
+    static boolean encodesIntoPool(@NonNull MessageCodec<?> codec) {
+        final Class<?> owner = declaringClassOf(codec, "encodeMessage", Object.class);
+        return owner == StandardMessageCodec.class
+            || owner == JSONMessageCodec.class
+            || owner == StringCodec.class
+            || owner == TypedMessageCodec.class;
+    }
+
+    /**
+     * Returns whether {@code codec} encodes method calls and envelopes with one of the codecs of
+     * this package, as for {@link #encodesIntoPool(MessageCodec)}.
+     */
+    static boolean encodesIntoPool(@NonNull MethodCodec codec) {
+        final Class<?> owner = declaringClassOf(codec, "encodeMethodCall", MethodCall.class);
+        return (owner == StandardMethodCodec.class || owner == JSONMethodCodec.class)
+            && declaringClassOf(codec, "encodeSuccessEnvelope", Object.class) == owner
+            && declaringClassOf(codec, "encodeErrorEnvelope", String.class, String.class, Object.class) == owner;
+    }
+
+    @Nullable
+    private static Class<?> declaringClassOf(@NonNull Object codec, @NonNull String name, Class<?>... parameterTypes) {
+        try {
+            return codec.getClass().getMethod(name, parameterTypes).getDeclaringClass();
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns a buffer obtained with {@link #obtain(int)} to the pool without checking its lease.
+     */
+    synchronized void recycle(@NonNull ByteBuffer buffer) {
+        final int capacity = buffer.capacity();
+        final int sizeClass = sizeClassOf(capacity);
+        if (sizeClass < 0 || capacity != 1 << (sizeClass + MIN_SIZE_CLASS_SHIFT)) {
+            return;
+        }
+        final int count = freeBufferCounts[sizeClass];
+        if (count < MAX_FREE_BUFFERS_PER_SIZE_CLASS) {
+            buffer.clear();
+            buffer.order(ByteOrder.nativeOrder());
+            freeBuffers[sizeClass][count] = buffer;
+            freeBufferCounts[sizeClass] = count + 1;
+        }
+    }
+
+    /**
+     * Records that the given buffer, obtained with {@link #obtain(int)}, is handed out and may come
+     * back through {@link #release(ByteBuffer)}.
+     */
+    synchronized void lease(@NonNull ByteBuffer buffer) {
+        leases[nextLease] = buffer;
+        nextLease = (nextLease + 1) % LEASE_RING_SIZE;
+    }
+
+    /**
+     * Returns a buffer previously leased from this pool, making it available for reuse.
+     *
+     * <p>Buffers that were not leased from this pool are ignored, so it is always safe to call this
+     * method with any message buffer once its contents have been consumed.</p>
+     *
+     * @param buffer the consumed buffer, possibly null.
+     */
+    public void release(@Nullable ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect()) {
+            return;
+        }
+        synchronized (this) {
+            for (int i = 0; i < LEASE_RING_SIZE; i++) {
+                if (leases[i] == buffer) {
+                    leases[i] = null;
+                    recycle(buffer);
+                    return;
+                }
+            }
+        }
+    }
+
+    private static int sizeClassOf(int capacity) {
+        if (capacity > 1 << MAX_SIZE_CLASS_SHIFT) {
+            return -1;
+        }
+        if (capacity <= 1 << MIN_SIZE_CLASS_SHIFT) {
+            return 0;
+        }
+        final int shift = 32 - Integer.numberOfLeadingZeros(capacity - 1);
+        return shift - MIN_SIZE_CLASS_SHIFT;
+    }
+}
@@ -4,6 +4,8 @@
 
 package io.flutter.plugin.common;
 
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.annotation.UiThread;
 import android.util.Log;
 
@@ -12,6 +14,8 @@ import io.flutter.plugin.common.BinaryMessenger.BinaryMessageHandler;
 import io.flutter.plugin.common.BinaryMessenger.BinaryReply;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -37,6 +41,7 @@ public final class EventChannel {
     private final BinaryMessenger messenger;
     private final String name;
     private final MethodCodec codec;
+    private final boolean encodesIntoPool;
 
     /**
      * Creates a new channel associated with the specified {@link BinaryMessenger}
@@ -72,6 +77,16 @@ public final class EventChannel {
         this.messenger = messenger;
         this.name = name;
         this.codec = codec;
+        this.encodesIntoPool = codec != null && DirectByteBufferPool.encodesIntoPool(codec);
+    }
+
+    // Marks a message this channel has just encoded, and never hands out, as leased, so that the
+    // messenger returns its buffer to the pool once the message has been sent.
+    private ByteBuffer leased(ByteBuffer message) {
+        if (encodesIntoPool && message != null) {
+            DirectByteBufferPool.INSTANCE.lease(message);
+        }
+        return message;
     }
 
     /**
@@ -86,7 +101,26 @@ public final class EventChannel {
      */
     @UiThread
     public void setStreamHandler(final StreamHandler handler) {
-        messenger.setMessageHandler(name, handler == null ? null : new IncomingStreamRequestHandler(handler));
+        setStreamHandler(handler, null);
+    }
+
+    /**
+     * Registers a stream handler on this channel whose events are subject to the given
+     * {@link BackpressureStrategy}.
+     *
+     * <p>Events are sent only as fast as the Flutter application acknowledges them. Events produced
+     * in the meantime are held back, and coalesced or dropped as the strategy prescribes, so that a
+     * high-rate event source cannot flood the Flutter application. Error and end-of-stream events
+     * are never dropped.</p>
+     *
+     * <p>Overrides any existing handler registration for (the name of) this channel.</p>
+     *
+     * @param handler a {@link StreamHandler}, or null to deregister.
+     * @param strategy a {@link BackpressureStrategy}, or null to send every event immediately.
+     */
+    @UiThread
+    public void setStreamHandler(final StreamHandler handler, @Nullable final BackpressureStrategy strategy) {
+        messenger.setMessageHandler(name, handler == null ? null : new IncomingStreamRequestHandler(handler, strategy));
     }
 
     /**
@@ -157,12 +191,146 @@ public final class EventChannel {
         void endOfStream();
     }
 
+    /**
+     * Describes how a stream registered with
+     * {@link #setStreamHandler(StreamHandler, BackpressureStrategy)} copes with a Flutter
+     * application that consumes events more slowly than they are produced.
+     *
+     * <p>Unless the strategy is credit based, events are sent while fewer than
+     * {@link #setMaxInFlight(int) maxInFlight} events await acknowledgement by the Flutter
+     * application, and held back otherwise. Held back events are treated as follows:</p>
+     * <ul>
+     *   <li>{@link #latestPerKey(KeySelector)} keeps only the latest event for each key.</li>
+     *   <li>{@link #dropOldest(int)} keeps the most recent events, up to a capacity.</li>
+     *   <li>{@link #credit(int)} sends events only as the Flutter application grants credit, and
+     *   keeps the most recent events, up to a capacity, until it does.</li>
+     * </ul>
+     *
+     * <p>Consecutive held back errors are coalesced into the most recent one. Under a capacity,
+     * held back errors count towards it like other events.</p>
+     *
+     * <p>The Flutter application grants credit by invoking the {@code request} method on the
+     * channel with the number of further events it accepts as argument.</p>
+     */
+    public static final class BackpressureStrategy {
+        /**
+         * How long to wait for the Flutter application to acknowledge an event before it is
+         * considered consumed anyway, unless set with {@link #setAckTimeoutMillis(long)}.
+         */
+        public static final long DEFAULT_ACK_TIMEOUT_MS = 5000;
+
+        private static final int LATEST_PER_KEY = 0;
+        private static final int DROP_OLDEST = 1;
+        private static final int CREDIT = 2;
+
+        private final int mode;
+        @Nullable
+        private final KeySelector keySelector;
+        private final int capacity;
+        private int maxInFlight = 1;
+        private long ackTimeoutMillis = DEFAULT_ACK_TIMEOUT_MS;
+
+        private BackpressureStrategy(int mode, @Nullable KeySelector keySelector, int capacity) {
+            this.mode = mode;
+            this.keySelector = keySelector;
+            this.capacity = capacity;
+        }
+
+        /**
+         * Creates a strategy that replaces a held back event with any later event of the same key.
+         *
+         * <p>Held back events keep their order, each taking the place of the first event of its
+         * key. An error or end-of-stream event separates earlier events from later ones, which are
+         * not coalesced with each other.</p>
+         *
+         * @param keySelector a {@link KeySelector}, or null for all events to share one key so that
+         * only the latest event is kept.
+         */
+        @NonNull
+        public static BackpressureStrategy latestPerKey(@Nullable KeySelector keySelector) {
+            return new BackpressureStrategy(LATEST_PER_KEY, keySelector, Integer.MAX_VALUE);
+        }
+
+        /**
+         * Creates a strategy that holds back at most {@code capacity} events, dropping the oldest
+         * one when another event arrives.
+         *
+         * @param capacity the positive maximum number of events held back.
+         */
+        @NonNull
+        public static BackpressureStrategy dropOldest(int capacity) {
+            if (capacity <= 0) {
+                throw new IllegalArgumentException("capacity must be positive");
+            }
+            return new BackpressureStrategy(DROP_OLDEST, null, capacity);
+        }
+
+        /**
+         * Creates a strategy that sends one event per credit granted by the Flutter application,
+         * holding back at most {@code capacity} events, oldest dropped first, while it has none.
+         *
+         * <p>Streams start without credit. Error and end-of-stream events do not need credit.</p>
+         *
+         * @param capacity the positive maximum number of events held back.
+         */
+        @NonNull
+        public static BackpressureStrategy credit(int capacity) {
+            if (capacity <= 0) {
+                throw new IllegalArgumentException("capacity must be positive");
+            }
+            return new BackpressureStrategy(CREDIT, null, capacity);
+        }
+
+        /**
+         * Sets the number of events that may await acknowledgement at once. Defaults to 1. Has
+         * no effect on credit based strategies.
+         */
+        @NonNull
+        public BackpressureStrategy setMaxInFlight(int maxInFlight) {
+            if (maxInFlight <= 0) {
+                throw new IllegalArgumentException("maxInFlight must be positive");
+            }
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        /**
+         * Sets how long to wait for the Flutter application to acknowledge an event before it is
+         * considered consumed anyway. Defaults to {@link #DEFAULT_ACK_TIMEOUT_MS}.
+         */
+        @NonNull
+        public BackpressureStrategy setAckTimeoutMillis(long ackTimeoutMillis) {
+            if (ackTimeoutMillis <= 0) {
+                throw new IllegalArgumentException("ackTimeoutMillis must be positive");
+            }
+            this.ackTimeoutMillis = ackTimeoutMillis;
+            return this;
+        }
+
+        /**
+         * Extracts the key by which {@link #latestPerKey(KeySelector)} coalesces events.
+         */
+        public interface KeySelector {
+            /**
+             * Returns the key of the given event. Keys are compared with {@link Object#equals(Object)}.
+             *
+             * @param event the event, possibly null.
+             * @return the key, possibly null.
+             */
+            @Nullable
+            Object keyOf(@Nullable Object event);
+        }
+    }
+
     private final class IncomingStreamRequestHandler implements BinaryMessageHandler {
         private final StreamHandler handler;
+        @Nullable
+        private final BackpressureStrategy strategy;
         private final AtomicReference<EventSink> activeSink = new AtomicReference<>(null);
 
-        IncomingStreamRequestHandler(StreamHandler handler) {
+        IncomingStreamRequestHandler(StreamHandler handler, @Nullable BackpressureStrategy strategy) {
             this.handler = handler;
+            this.strategy = strategy;
         }
 
         @Override
@@ -172,13 +340,17 @@ public final class EventChannel {
                 onListen(call.arguments, reply);
             } else if (call.method.equals("cancel")) {
                 onCancel(call.arguments, reply);
+            } else if (call.method.equals("request")) {
+                onRequest(call.arguments, reply);
             } else {
                 reply.reply(null);
             }
         }
 
         private void onListen(Object arguments, BinaryReply callback) {
-            final EventSink eventSink = new EventSinkImplementation();
+            final EventSink eventSink = strategy == null
+                ? new EventSinkImplementation()
+                : new BackpressureEventSink(strategy);
             final EventSink oldSink = activeSink.getAndSet(eventSink);
             if (oldSink != null) {
               // Repeated calls to onListen may happen during hot restart.
@@ -191,11 +363,11 @@ public final class EventChannel {
             }
             try {
                 handler.onListen(arguments, eventSink);
-                callback.reply(codec.encodeSuccessEnvelope(null));
+                callback.reply(leased(codec.encodeSuccessEnvelope(null)));
             } catch (RuntimeException e) {
                 activeSink.set(null);
                 Log.e(TAG + name, "Failed to open event stream", e);
-                callback.reply(codec.encodeErrorEnvelope("error", e.getMessage(), null));
+                callback.reply(leased(codec.encodeErrorEnvelope("error", e.getMessage(), null)));
             }
         }
 
@@ -204,16 +376,26 @@ public final class EventChannel {
             if (oldSink != null) {
                 try {
                     handler.onCancel(arguments);
-                    callback.reply(codec.encodeSuccessEnvelope(null));
+                    callback.reply(leased(codec.encodeSuccessEnvelope(null)));
                 } catch (RuntimeException e) {
                     Log.e(TAG + name, "Failed to close event stream", e);
-                    callback.reply(codec.encodeErrorEnvelope("error", e.getMessage(), null));
+                    callback.reply(leased(codec.encodeErrorEnvelope("error", e.getMessage(), null)));
                 }
             } else {
-                callback.reply(codec.encodeErrorEnvelope("error", "No active stream to cancel", null));
+                callback.reply(leased(codec.encodeErrorEnvelope("error", "No active stream to cancel", null)));
             }
         }
 
+        private void onRequest(Object arguments, BinaryReply callback) {
+            final EventSink sink = activeSink.get();
+            if (!(sink instanceof BackpressureEventSink) || !(arguments instanceof Number)) {
+                callback.reply(leased(codec.encodeErrorEnvelope("error", "No active stream to grant credit to", null)));
+                return;
+            }
+            ((BackpressureEventSink) sink).grant(((Number) arguments).longValue());
+            callback.reply(leased(codec.encodeSuccessEnvelope(null)));
+        }
+
         private final class EventSinkImplementation implements EventSink {
              final AtomicBoolean hasEnded = new AtomicBoolean(false);
 
@@ -223,7 +405,7 @@ public final class EventChannel {
                  if (hasEnded.get() || activeSink.get() != this) {
                      return;
                  }
-                 EventChannel.this.messenger.send(name, codec.encodeSuccessEnvelope(event));
+                 EventChannel.this.messenger.send(name, leased(codec.encodeSuccessEnvelope(event)));
              }
 
              @Override
@@ -234,7 +416,7 @@ public final class EventChannel {
                  }
                  EventChannel.this.messenger.send(
                      name,
-                     codec.encodeErrorEnvelope(errorCode, errorMessage, errorDetails));
+                     leased(codec.encodeErrorEnvelope(errorCode, errorMessage, errorDetails)));
              }
 
              @Override
@@ -246,5 +428,209 @@ public final class EventChannel {
                  EventChannel.this.messenger.send(name, null);
              }
          }
+
+        /**
+         * An {@link EventSink} that holds back events while the Flutter application is busy, as
+         * prescribed by a {@link BackpressureStrategy}.
+         *
+         * <p>Only accessed on the main thread, where acknowledgements are delivered too.</p>
+         */
+        private final class BackpressureEventSink implements EventSink, BinaryMessenger.TimeoutBinaryReply {
+            private final BackpressureStrategy strategy;
+            // Held back events, oldest first.
+            private final ArrayDeque<PendingEvent> pending = new ArrayDeque<>();
+            // Held back success events by key, for coalescing.
+            private final HashMap<Object, PendingEvent> pendingByKey = new HashMap<>();
+            // Held back success and error events, which count towards the capacity.
+            private int pendingEventCount = 0;
+            private int inFlight = 0;
+            private long credit = 0;
+            private boolean hasEnded = false;
+
+            BackpressureEventSink(BackpressureStrategy strategy) {
+                this.strategy = strategy;
+            }
+
+            @Override
+            @UiThread
+            public void success(Object event) {
+                if (hasEnded || activeSink.get() != this) {
+                    return;
+                }
+                if (pending.isEmpty() && canSend(true)) {
+                    sendSuccess(event);
+                    return;
+                }
+                if (strategy.mode == BackpressureStrategy.LATEST_PER_KEY) {
+                    final Object key = strategy.keySelector == null ? null : strategy.keySelector.keyOf(event);
+                    final PendingEvent existing = pendingByKey.get(key);
+                    if (existing != null) {
+                        existing.event = event;
+                        return;
+                    }
+                    final PendingEvent pendingEvent = PendingEvent.success(event, key);
+                    pendingByKey.put(key, pendingEvent);
+                    pending.add(pendingEvent);
+                    pendingEventCount++;
+                    return;
+                }
+                pending.add(PendingEvent.success(event, null));
+                if (++pendingEventCount > strategy.capacity) {
+                    dropOldest();
+                }
+            }
+
+            @Override
+            @UiThread
+            public void error(String errorCode, String errorMessage, Object errorDetails) {
+                if (hasEnded || activeSink.get() != this) {
+                    return;
+                }
+                final PendingEvent last = pending.peekLast();
+                if (last != null && last.type == PendingEvent.ERROR) {
+                    last.errorCode = errorCode;
+                    last.errorMessage = errorMessage;
+                    last.event = errorDetails;
+                    return;
+                }
+                pendingEventCount++;
+                enqueue(PendingEvent.error(errorCode, errorMessage, errorDetails));
+                if (pendingEventCount > strategy.capacity) {
+                    dropOldest();
+                }
+            }
+
+            @Override
+            @UiThread
+            public void endOfStream() {
+                if (hasEnded || activeSink.get() != this) {
+                    return;
+                }
+                hasEnded = true;
+                enqueue(PendingEvent.END_OF_STREAM);
+            }
+
+            @Override
+            public void reply(ByteBuffer reply) {
+                onAcknowledged();
+            }
+
+            @Override
+            public void onTimeout() {
+                onAcknowledged();
+            }
+
+            void grant(long events) {
+                if (events <= 0) {
+                    return;
+                }
+                credit = Math.min(Integer.MAX_VALUE, credit + events);
+                drain();
+            }
+
+            private void onAcknowledged() {
+                inFlight--;
+                drain();
+            }
+
+            private boolean canSend(boolean isSuccess) {
+                if (strategy.mode == BackpressureStrategy.CREDIT) {
+                    return !isSuccess || credit > 0;
+                }
+                return inFlight < strategy.maxInFlight;
+            }
+
+            private void enqueue(PendingEvent event) {
+                // Events after an error or the end of the stream are not coalesced with earlier ones.
+                pendingByKey.clear();
+                pending.add(event);
+                drain();
+            }
+
+            private void dropOldest() {
+                for (PendingEvent event : pending) {
+                    if (event.type != PendingEvent.END) {
+                        pending.removeFirstOccurrence(event);
+                        pendingEventCount--;
+                        return;
+                    }
+                }
+            }
+
+            private void drain() {
+                if (activeSink.get() != this) {
+                    pending.clear();
+                    pendingByKey.clear();
+                    pendingEventCount = 0;
+                    return;
+                }
+                PendingEvent event;
+                while ((event = pending.peek()) != null && canSend(event.type == PendingEvent.SUCCESS)) {
+                    pending.poll();
+                    switch (event.type) {
+                        case PendingEvent.SUCCESS:
+                            pendingEventCount--;
+                            if (pendingByKey.get(event.key) == event) {
+                                pendingByKey.remove(event.key);
+                            }
+                            sendSuccess(event.event);
+                            break;
+                        case PendingEvent.ERROR:
+                            pendingEventCount--;
+                            send(leased(codec.encodeErrorEnvelope(event.errorCode, event.errorMessage, event.event)));
+                            break;
+                        default:
+                            send(null);
+                            break;
+                    }
+                }
+            }
+
+            private void sendSuccess(Object event) {
+                if (strategy.mode == BackpressureStrategy.CREDIT) {
+                    credit--;
+                }
+                send(leased(codec.encodeSuccessEnvelope(event)));
+            }
+
+            private void send(ByteBuffer message) {
+                inFlight++;
+                EventChannel.this.messenger.send(name, message, this, strategy.ackTimeoutMillis);
+            }
+        }
+    }
+
+    /**
+     * An event held back by a {@link IncomingStreamRequestHandler.BackpressureEventSink}.
+     */
+    private static final class PendingEvent {
+        static final int SUCCESS = 0;
+        static final int ERROR = 1;
+        static final int END = 2;
+
+        static final PendingEvent END_OF_STREAM = new PendingEvent(END, null, null, null, null);
+
+        final int type;
+        // The success event or the error details.
+        Object event;
+        final Object key;
+        String errorCode;
+        String errorMessage;
+
+        private PendingEvent(int type, Object event, Object key, String errorCode, String errorMessage) {
+            this.type = type;
+            this.event = event;
+            this.key = key;
+            this.errorCode = errorCode;
+            this.errorMessage = errorMessage;
+        }
+
+        static PendingEvent success(Object event, Object key) {
+            return new PendingEvent(SUCCESS, event, key, null, null);
+        }
+
+        static PendingEvent error(String errorCode, String errorMessage, Object errorDetails) {
+            return new PendingEvent(ERROR, errorDetails, null, errorCode, errorMessage);
+        }
     }
 }
@@ -0,0 +1,40 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugin.common;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a plain data class for which the {@code io.flutter.plugin.codegen.MessageCodecProcessor}
+ * annotation processor generates a {@link TypedMessageCodec}.
+ *
+ * <p>The annotated class must have a no-argument constructor, and its fields must be neither
+ * private nor final; static and transient fields are ignored. The generated codec is named after
+ * the class with a {@code Codec} suffix, lives in the same package, and is available as its
+ * {@code INSTANCE} field. It encodes the fields in declaration order:</p>
+ *
+ * <ul>
+ *     <li>int, short, byte, long, float, double and boolean fields without boxing.</li>
+ *     <li>Fields whose type is itself annotated with {@code GenerateMessageCodec} with that type's
+ *     codec.</li>
+ *     <li>All other fields like {@link StandardMessageCodec} does, so they must have a type that
+ *     it supports.</li>
+ * </ul>
+ *
+ * <p>Reordering, adding or removing fields changes the wire format, which the Flutter application
+ * must match.</p>
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface GenerateMessageCodec {
+    /**
+     * The extension type byte that marks values of the annotated class in messages, between
+     * {@link TypedMessageCodec#MIN_TYPE} and {@link TypedMessageCodec#MAX_TYPE}.
+     */
+    int type();
+}
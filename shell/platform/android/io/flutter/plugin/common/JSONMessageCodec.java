@@ -5,9 +5,10 @@
 package io.flutter.plugin.common;
 
 import java.nio.ByteBuffer;
-import org.json.JSONException;
+import java.util.List;
+import java.util.Map;
+import org.json.JSONArray;
 import org.json.JSONObject;
-import org.json.JSONTokener;
 
 /**
  * A {@link MessageCodec} using UTF-8 encoded JSON messages.
@@ -16,7 +17,14 @@ import org.json.JSONTokener;
  * <a href="https://docs.flutter.io/flutter/services/JSONMessageCodec-class.html">JSONMessageCodec</a>
  * on the Dart side. These parts of the Flutter SDK are evolved synchronously.</p>
  *
- * <p>Supports the same Java values as {@link JSONObject#wrap(Object)}.</p>
+ * <p>Supports the same Java values as {@link JSONObject#wrap(Object)}, as well as primitive
+ * arrays. Messages are encoded and decoded in a single pass straight between the Java values and
+ * the UTF-8 bytes, without an intermediate {@link String}.</p>
+ *
+ * <p>{@link #INSTANCE} decodes JSON objects and arrays into {@link JSONObject}s and
+ * {@link JSONArray}s, and null into {@link JSONObject#NULL}. {@link #COLLECTIONS_INSTANCE} decodes
+ * them into {@link Map}s and {@link List}s, and null into null, without building an
+ * {@code org.json} tree at all.</p>
  *
  * <p>On the Dart side, JSON messages are handled by the JSON facilities of the
  * <a href="https://api.dartlang.org/stable/dart-convert/JSON-constant.html">dart:convert</a>
@@ -24,9 +32,18 @@ import org.json.JSONTokener;
  */
 public final class JSONMessageCodec implements MessageCodec<Object> {
     // This codec must match the Dart codec of the same name in package flutter/services.
-    public static final JSONMessageCodec INSTANCE = new JSONMessageCodec();
+    public static final JSONMessageCodec INSTANCE = new JSONMessageCodec(false);
+
+    /**
+     * A codec that decodes JSON objects into {@code Map<String, Object>}s and JSON arrays into
+     * {@code List<Object>}s.
+     */
+    public static final JSONMessageCodec COLLECTIONS_INSTANCE = new JSONMessageCodec(true);
+
+    private final boolean decodeAsCollections;
 
-    private JSONMessageCodec() {
+    private JSONMessageCodec(boolean decodeAsCollections) {
+        this.decodeAsCollections = decodeAsCollections;
     }
 
     @Override
@@ -34,11 +51,12 @@ public final class JSONMessageCodec implements MessageCodec<Object> {
         if (message == null) {
             return null;
         }
-        final Object wrapped = JSONUtil.wrap(message);
-        if (wrapped instanceof String) {
-          return StringCodec.INSTANCE.encodeMessage(JSONObject.quote((String) wrapped));
-        } else {
-          return StringCodec.INSTANCE.encodeMessage(wrapped.toString());
+        final JSONWriter writer = JSONWriter.open();
+        try {
+            writer.value(message);
+            return writer.finish();
+        } finally {
+            writer.release();
         }
     }
 
@@ -47,16 +65,6 @@ public final class JSONMessageCodec implements MessageCodec<Object> {
         if (message == null) {
             return null;
         }
-        try {
-            final String json = StringCodec.INSTANCE.decodeMessage(message);
-            final JSONTokener tokener = new JSONTokener(json);
-            final Object value = tokener.nextValue();
-            if (tokener.more()) {
-                throw new IllegalArgumentException("Invalid JSON");
-            }
-            return value;
-        } catch (JSONException e) {
-            throw new IllegalArgumentException("Invalid JSON", e);
-        }
+        return JSONReader.read(message, decodeAsCollections);
     }
 }
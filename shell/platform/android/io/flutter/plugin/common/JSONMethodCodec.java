@@ -5,6 +5,8 @@
 package io.flutter.plugin.common;
 
 import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -17,81 +19,120 @@ import org.json.JSONObject;
  * on the Dart side. These parts of the Flutter SDK are evolved synchronously.</p>
  *
  * <p>Values supported as methods arguments and result payloads are those supported by
- * {@link JSONMessageCodec}.</p>
+ * {@link JSONMessageCodec}. {@link #INSTANCE} decodes them like {@link JSONMessageCodec#INSTANCE},
+ * and {@link #COLLECTIONS_INSTANCE} like {@link JSONMessageCodec#COLLECTIONS_INSTANCE}.</p>
  */
 public final class JSONMethodCodec implements MethodCodec {
     // This codec must match the Dart codec of the same name in package flutter/services.
-    public static final JSONMethodCodec INSTANCE = new JSONMethodCodec();
+    public static final JSONMethodCodec INSTANCE = new JSONMethodCodec(JSONMessageCodec.INSTANCE);
 
-    private JSONMethodCodec() {
+    /**
+     * A codec that decodes JSON objects into {@code Map<String, Object>}s and JSON arrays into
+     * {@code List<Object>}s.
+     */
+    public static final JSONMethodCodec COLLECTIONS_INSTANCE =
+        new JSONMethodCodec(JSONMessageCodec.COLLECTIONS_INSTANCE);
+
+    private final JSONMessageCodec messageCodec;
+
+    private JSONMethodCodec(JSONMessageCodec messageCodec) {
+        this.messageCodec = messageCodec;
     }
 
     @Override
     public ByteBuffer encodeMethodCall(MethodCall methodCall) {
-       try {
-          final JSONObject map = new JSONObject();
-          map.put("method", methodCall.method);
-          map.put("args", JSONUtil.wrap(methodCall.arguments));
-          return JSONMessageCodec.INSTANCE.encodeMessage(map);
-       } catch (JSONException e) {
-          throw new IllegalArgumentException("Invalid JSON", e);
-       }
+        final JSONWriter writer = JSONWriter.open();
+        try {
+            writer.beginObject();
+            writer.name("method");
+            writer.value(methodCall.method);
+            writer.name("args");
+            writer.value(methodCall.arguments);
+            writer.endObject();
+            return writer.finish();
+        } finally {
+            writer.release();
+        }
     }
 
     @Override
     public MethodCall decodeMethodCall(ByteBuffer message) {
-        try {
-            final Object json = JSONMessageCodec.INSTANCE.decodeMessage(message);
-            if (json instanceof JSONObject) {
-                final JSONObject map = (JSONObject) json;
-                final Object method = map.get("method");
-                final Object arguments = unwrapNull(map.opt("args"));
-                if (method instanceof String) {
-                    return new MethodCall((String) method, arguments);
-                }
+        final Object json = messageCodec.decodeMessage(message);
+        if (json instanceof Map) {
+            final Map<?, ?> map = (Map<?, ?>) json;
+            final Object method = map.get("method");
+            if (method instanceof String) {
+                return new MethodCall((String) method, map.get("args"));
+            }
+        } else if (json instanceof JSONObject) {
+            final JSONObject map = (JSONObject) json;
+            final Object method = map.opt("method");
+            if (method instanceof String) {
+                return new MethodCall((String) method, unwrapNull(map.opt("args")));
             }
-            throw new IllegalArgumentException("Invalid method call: " + json);
-        } catch (JSONException e) {
-            throw new IllegalArgumentException("Invalid JSON", e);
         }
+        throw new IllegalArgumentException("Invalid method call: " + json);
     }
 
     @Override
     public ByteBuffer encodeSuccessEnvelope(Object result) {
-        return JSONMessageCodec.INSTANCE
-            .encodeMessage(new JSONArray().put(JSONUtil.wrap(result)));
+        final JSONWriter writer = JSONWriter.open();
+        try {
+            writer.beginArray();
+            writer.value(result);
+            writer.endArray();
+            return writer.finish();
+        } finally {
+            writer.release();
+        }
     }
 
     @Override
     public ByteBuffer encodeErrorEnvelope(String errorCode, String errorMessage,
         Object errorDetails) {
-        return JSONMessageCodec.INSTANCE.encodeMessage(new JSONArray()
-            .put(errorCode)
-            .put(JSONUtil.wrap(errorMessage))
-            .put(JSONUtil.wrap(errorDetails)));
+        final JSONWriter writer = JSONWriter.open();
+        try {
+            writer.beginArray();
+            writer.value(errorCode);
+            writer.value(errorMessage);
+            writer.value(errorDetails);
+            writer.endArray();
+            return writer.finish();
+        } finally {
+            writer.release();
+        }
     }
 
     @Override
     public Object decodeEnvelope(ByteBuffer envelope) {
-        try {
-            final Object json = JSONMessageCodec.INSTANCE.decodeMessage(envelope);
-            if (json instanceof JSONArray) {
+        final Object json = messageCodec.decodeMessage(envelope);
+        if (json instanceof List) {
+            final List<?> list = (List<?>) json;
+            if (list.size() == 1) {
+                return list.get(0);
+            }
+            if (list.size() == 3) {
+                throwIfError(list.get(0), list.get(1), list.get(2));
+            }
+        } else if (json instanceof JSONArray) {
+            try {
                 final JSONArray array = (JSONArray) json;
                 if (array.length() == 1) {
                     return unwrapNull(array.opt(0));
                 }
                 if (array.length() == 3) {
-                    final Object code = array.get(0);
-                    final Object message = unwrapNull(array.opt(1));
-                    final Object details = unwrapNull(array.opt(2));
-                    if (code instanceof String && (message == null || message instanceof String)) {
-                        throw new FlutterException((String) code, (String) message, details);
-                    }
+                    throwIfError(array.get(0), unwrapNull(array.opt(1)), unwrapNull(array.opt(2)));
                 }
+            } catch (JSONException e) {
+                throw new IllegalArgumentException("Invalid JSON", e);
             }
-            throw new IllegalArgumentException("Invalid envelope: " + json);
-        } catch (JSONException e) {
-            throw new IllegalArgumentException("Invalid JSON", e);
+        }
+        throw new IllegalArgumentException("Invalid envelope: " + json);
+    }
+
+    private static void throwIfError(Object code, Object message, Object details) {
+        if (code instanceof String && (message == null || message instanceof String)) {
+            throw new FlutterException((String) code, (String) message, details);
         }
     }
 
@@ -0,0 +1,342 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugin.common;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Reads a UTF-8 encoded JSON value straight from a {@link ByteBuffer}, in a single pass and
+ * without first decoding the message into a {@link String}.
+ *
+ * <p>Objects and arrays are read either into {@link JSONObject}s and {@link JSONArray}s, with
+ * {@link JSONObject#NULL} for null, or into {@code Map<String, Object>}s and
+ * {@code List<Object>}s, with plain nulls. Numbers are read as {@link Integer}s or {@link Long}s
+ * when integral and in range, and as {@link Double}s otherwise, like {@code org.json.JSONTokener}
+ * does.</p>
+ */
+final class JSONReader {
+    // Integers with at most this many digits cannot overflow a long.
+    private static final int MAX_SAFE_LONG_DIGITS = 18;
+
+    @NonNull
+    private final ByteBuffer buffer;
+    private final boolean asCollections;
+    private final int start;
+    private final int limit;
+    private int position;
+    // Scratch space for decoding strings and numbers.
+    @NonNull
+    private char[] chars = new char[64];
+
+    private JSONReader(@NonNull ByteBuffer buffer, boolean asCollections) {
+        this.buffer = buffer;
+        this.asCollections = asCollections;
+        this.start = buffer.position();
+        this.limit = buffer.limit();
+        this.position = start;
+    }
+
+    /**
+     * Reads the single JSON value between the position and the limit of {@code message}, and moves
+     * the position to the limit.
+     *
+     * @throws IllegalArgumentException if the message is not a single valid JSON value.
+     */
+    @Nullable
+    static Object read(@NonNull ByteBuffer message, boolean asCollections) {
+        final JSONReader reader = new JSONReader(message, asCollections);
+        reader.skipWhitespace();
+        final Object value = reader.readValue();
+        reader.skipWhitespace();
+        if (reader.position != reader.limit) {
+            throw reader.error("Unexpected data after JSON value");
+        }
+        message.position(reader.limit);
+        return value;
+    }
+
+    @Nullable
+    private Object readValue() {
+        if (position >= limit) {
+            throw error("Unexpected end of input");
+        }
+        final byte b = buffer.get(position);
+        switch (b) {
+            case '{':
+                position++;
+                return readObject();
+            case '[':
+                position++;
+                return readArray();
+            case '"':
+                position++;
+                return readString();
+            case 't':
+                expectLiteral("true");
+                return Boolean.TRUE;
+            case 'f':
+                expectLiteral("false");
+                return Boolean.FALSE;
+            case 'n':
+                expectLiteral("null");
+                return asCollections ? null : JSONObject.NULL;
+            default:
+                if (b == '-' || (b >= '0' && b <= '9')) {
+                    return readNumber();
+                }
+                throw error("Unexpected character '" + (char) (b & 0xFF) + "'");
+        }
+    }
+
+    @NonNull
+    private Object readObject() {
+        final Map<String, Object> map = asCollections ? new HashMap<String, Object>() : null;
+        final JSONObject object = asCollections ? null : new JSONObject();
+        skipWhitespace();
+        if (peek() == '}') {
+            position++;
+            return asCollections ? map : object;
+        }
+        while (true) {
+            skipWhitespace();
+            if (peek() != '"') {
+                throw error("Expected a member name");
+            }
+            position++;
+            final String name = readString();
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+            final Object value = readValue();
+            if (asCollections) {
+                map.put(name, value);
+            } else {
+                try {
+                    object.put(name, value);
+                } catch (JSONException e) {
+                    throw new IllegalArgumentException("Invalid JSON", e);
+                }
+            }
+            skipWhitespace();
+            final int next = peek();
+            position++;
+            if (next == '}') {
+                return asCollections ? map : object;
+            }
+            if (next != ',') {
+                position--;
+                throw error("Expected ',' or '}'");
+            }
+        }
+    }
+
+    @NonNull
+    private Object readArray() {
+        final List<Object> list = asCollections ? new ArrayList<>() : null;
+        final JSONArray array = asCollections ? null : new JSONArray();
+        skipWhitespace();
+        if (peek() == ']') {
+            position++;
+            return asCollections ? list : array;
+        }
+        while (true) {
+            skipWhitespace();
+            final Object value = readValue();
+            if (asCollections) {
+                list.add(value);
+            } else {
+                array.put(value);
+            }
+            skipWhitespace();
+            final int next = peek();
+            position++;
+            if (next == ']') {
+                return asCollections ? list : array;
+            }
+            if (next != ',') {
+                position--;
+                throw error("Expected ',' or ']'");
+            }
+        }
+    }
+
+    // Reads the rest of a string whose opening quote has been consumed.
+    @NonNull
+    private String readString() {
+        int count = 0;
+        while (true) {
+            if (position >= limit) {
+                throw error("Unterminated string");
+            }
+            final byte b = buffer.get(position++);
+            if (count + 2 > chars.length) {
+                growChars(count + 2);
+            }
+            if (b == '"') {
+                return new String(chars, 0, count);
+            } else if (b == '\\') {
+                chars[count++] = readEscape();
+            } else if (b >= 0) {
+                chars[count++] = (char) b;
+            } else {
+                final int consumed = Utf8.decodeMultiByte(buffer, position - 1, limit, chars, count);
+                position += consumed - 1;
+                count += consumed == 4 ? 2 : 1;
+            }
+        }
+    }
+
+    private char readEscape() {
+        if (position >= limit) {
+            throw error("Unterminated string");
+        }
+        final byte b = buffer.get(position++);
+        switch (b) {
+            case '"':
+            case '\\':
+            case '/':
+                return (char) b;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                if (limit - position < 4) {
+                    throw error("Unterminated escape sequence");
+                }
+                int c = 0;
+                for (int i = 0; i < 4; i++) {
+                    final int digit = Character.digit((char) buffer.get(position++), 16);
+                    if (digit < 0) {
+                        throw error("Invalid escape sequence");
+                    }
+                    c = (c << 4) | digit;
+                }
+                return (char) c;
+            default:
+                throw error("Invalid escape sequence");
+        }
+    }
+
+    @NonNull
+    private Number readNumber() {
+        final int numberStart = position;
+        boolean isIntegral = true;
+        int digits = 0;
+        if (peek() == '-') {
+            position++;
+        }
+        while (position < limit) {
+            final byte b = buffer.get(position);
+            if (b >= '0' && b <= '9') {
+                digits++;
+            } else if (b == '.' || b == 'e' || b == 'E' || ((b == '+' || b == '-') && !isIntegral)) {
+                isIntegral = false;
+            } else {
+                break;
+            }
+            position++;
+        }
+        if (digits == 0) {
+            throw error("Invalid number");
+        }
+        if (isIntegral && digits <= MAX_SAFE_LONG_DIGITS) {
+            long value = 0;
+            for (int i = buffer.get(numberStart) == '-' ? numberStart + 1 : numberStart; i < position; i++) {
+                value = value * 10 + (buffer.get(i) - '0');
+            }
+            if (buffer.get(numberStart) == '-') {
+                value = -value;
+            }
+            if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                return (int) value;
+            }
+            return value;
+        }
+        final int length = position - numberStart;
+        if (length > chars.length) {
+            growChars(length);
+        }
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) buffer.get(numberStart + i);
+        }
+        final String literal = new String(chars, 0, length);
+        try {
+            if (isIntegral) {
+                try {
+                    return Long.parseLong(literal);
+                } catch (NumberFormatException e) {
+                    // Too large for a long.
+                }
+            }
+            return Double.parseDouble(literal);
+        } catch (NumberFormatException e) {
+            position = numberStart;
+            throw error("Invalid number");
+        }
+    }
+
+    private void expectLiteral(@NonNull String literal) {
+        final int length = literal.length();
+        if (limit - position < length) {
+            throw error("Unexpected end of input");
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(position + i) != literal.charAt(i)) {
+                throw error("Unexpected character '" + (char) (buffer.get(position) & 0xFF) + "'");
+            }
+        }
+        position += length;
+    }
+
+    private void expect(char c) {
+        if (peek() != c) {
+            throw error("Expected '" + c + "'");
+        }
+        position++;
+    }
+
+    // Returns the byte at the current position, or -1 at the end of the input.
+    private int peek() {
+        return position < limit ? buffer.get(position) : -1;
+    }
+
+    private void skipWhitespace() {
+        while (position < limit) {
+            final byte b = buffer.get(position);
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                return;
+            }
+            position++;
+        }
+    }
+
+    private void growChars(int minLength) {
+        final char[] grown = new char[Math.max(minLength, chars.length * 2)];
+        System.arraycopy(chars, 0, grown, 0, chars.length);
+        chars = grown;
+    }
+
+    @NonNull
+    private IllegalArgumentException error(@NonNull String reason) {
+        return new IllegalArgumentException("Invalid JSON: " + reason + " at offset " + (position - start));
+    }
+}
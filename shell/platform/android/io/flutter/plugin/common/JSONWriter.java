@@ -0,0 +1,341 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugin.common;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Writes Java values as UTF-8 encoded JSON straight into a direct-allocated {@link ByteBuffer}
+ * obtained from {@link DirectByteBufferPool#INSTANCE}.
+ *
+ * <p>Supports the same Java values as {@link JSONUtil#wrap(Object)}, as well as {@link JSONObject}
+ * and {@link JSONArray} trees, and formats them like {@code org.json} does, without building an
+ * intermediate {@code org.json} tree or {@link String}.</p>
+ *
+ * <p>Obtain a writer with {@link #open()}, write a single value, call {@link #finish()} to take the
+ * encoded buffer, and always call {@link #release()} afterwards.</p>
+ */
+final class JSONWriter {
+    // Strings are encoded in chunks of this many chars, reserving room for the worst case of six
+    // bytes per char, a \\u escape.
+    private static final int STRING_CHUNK_CHARS = 1024;
+    private static final byte[] HEX_DIGITS = {
+        '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'
+    };
+
+    @NonNull
+    private final StandardMessageCodec.DirectByteBufferOutputStream stream;
+    // Whether a value was written at the current nesting level, so that the next needs a comma.
+    private boolean needsComma = false;
+
+    private JSONWriter(@NonNull StandardMessageCodec.DirectByteBufferOutputStream stream) {
+        this.stream = stream;
+    }
+
+    @NonNull
+    static JSONWriter open() {
+        return new JSONWriter(StandardMessageCodec.DirectByteBufferOutputStream.open());
+    }
+
+    /**
+     * Hands out the encoded bytes with both position and limit at the end of the written bytes.
+     */
+    @NonNull
+    ByteBuffer finish() {
+        return stream.finish();
+    }
+
+    void release() {
+        stream.release();
+    }
+
+    void beginObject() {
+        separate();
+        stream.write('{');
+        needsComma = false;
+    }
+
+    void endObject() {
+        stream.write('}');
+        needsComma = true;
+    }
+
+    void beginArray() {
+        separate();
+        stream.write('[');
+        needsComma = false;
+    }
+
+    void endArray() {
+        stream.write(']');
+        needsComma = true;
+    }
+
+    /**
+     * Writes the name of the next member of the current object.
+     */
+    void name(@NonNull String name) {
+        separate();
+        string(name);
+        stream.write(':');
+        needsComma = false;
+    }
+
+    /**
+     * Writes a value as the next element of the current array, as the value of the last
+     * {@link #name(String)}, or as the whole message.
+     *
+     * @throws IllegalArgumentException if the value contains a non-finite number or a map with
+     * keys other than Strings.
+     */
+    void value(@Nullable Object value) {
+        if (value == null || value == JSONObject.NULL) {
+            literal("null");
+        } else if (value instanceof String) {
+            separate();
+            string((String) value);
+            needsComma = true;
+        } else if (value instanceof Boolean) {
+            literal((Boolean) value ? "true" : "false");
+        } else if (value instanceof Integer || value instanceof Long
+            || value instanceof Short || value instanceof Byte) {
+            separate();
+            integer(((Number) value).longValue());
+            needsComma = true;
+        } else if (value instanceof Number) {
+            literal(numberToString((Number) value));
+        } else if (value instanceof Character) {
+            separate();
+            string(value.toString());
+            needsComma = true;
+        } else if (value instanceof Map) {
+            beginObject();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!(entry.getKey() instanceof String)) {
+                    throw new IllegalArgumentException("JSON object keys must be Strings: " + entry.getKey());
+                }
+                name((String) entry.getKey());
+                value(entry.getValue());
+            }
+            endObject();
+        } else if (value instanceof Collection) {
+            beginArray();
+            for (Object element : (Collection<?>) value) {
+                value(element);
+            }
+            endArray();
+        } else if (value instanceof JSONObject) {
+            final JSONObject object = (JSONObject) value;
+            beginObject();
+            final Iterator<String> keys = object.keys();
+            while (keys.hasNext()) {
+                final String key = keys.next();
+                name(key);
+                value(object.opt(key));
+            }
+            endObject();
+        } else if (value instanceof JSONArray) {
+            final JSONArray array = (JSONArray) value;
+            beginArray();
+            for (int i = 0; i < array.length(); i++) {
+                value(array.opt(i));
+            }
+            endArray();
+        } else if (value.getClass().isArray()) {
+            array(value);
+        } else if (value.getClass().getPackage() != null
+            && value.getClass().getPackage().getName().startsWith("java.")) {
+            separate();
+            string(value.toString());
+            needsComma = true;
+        } else {
+            literal("null");
+        }
+    }
+
+    private void array(@NonNull Object array) {
+        beginArray();
+        if (array instanceof int[]) {
+            for (int element : (int[]) array) {
+                separate();
+                integer(element);
+                needsComma = true;
+            }
+        } else if (array instanceof long[]) {
+            for (long element : (long[]) array) {
+                separate();
+                integer(element);
+                needsComma = true;
+            }
+        } else if (array instanceof double[]) {
+            for (double element : (double[]) array) {
+                literal(numberToString(element));
+            }
+        } else if (array instanceof float[]) {
+            for (float element : (float[]) array) {
+                literal(numberToString(element));
+            }
+        } else if (array instanceof byte[]) {
+            for (byte element : (byte[]) array) {
+                separate();
+                integer(element);
+                needsComma = true;
+            }
+        } else if (array instanceof short[]) {
+            for (short element : (short[]) array) {
+                separate();
+                integer(element);
+                needsComma = true;
+            }
+        } else if (array instanceof boolean[]) {
+            for (boolean element : (boolean[]) array) {
+                literal(element ? "true" : "false");
+            }
+        } else if (array instanceof char[]) {
+            for (char element : (char[]) array) {
+                value(element);
+            }
+        } else {
+            for (Object element : (Object[]) array) {
+                value(element);
+            }
+        }
+        endArray();
+    }
+
+    private void separate() {
+        if (needsComma) {
+            stream.write(',');
+        }
+    }
+
+    private void literal(@NonNull String literal) {
+        separate();
+        final int length = literal.length();
+        final ByteBuffer buffer = stream.reserve(length);
+        for (int i = 0; i < length; i++) {
+            buffer.put((byte) literal.charAt(i));
+        }
+        needsComma = true;
+    }
+
+    private void integer(long value) {
+        // At most 19 digits and a sign.
+        final ByteBuffer buffer = stream.reserve(20);
+        if (value == Long.MIN_VALUE) {
+            final String digits = Long.toString(value);
+            for (int i = 0; i < digits.length(); i++) {
+                buffer.put((byte) digits.charAt(i));
+            }
+            return;
+        }
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        long divisor = 1;
+        while (divisor <= value / 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            buffer.put((byte) ('0' + (value / divisor) % 10));
+        }
+    }
+
+    private void string(@NonNull String value) {
+        final int length = value.length();
+        stream.write('"');
+        int i = 0;
+        while (i < length) {
+            final int end = Math.min(length, i + STRING_CHUNK_CHARS);
+            final ByteBuffer buffer = stream.reserve(6 * (end - i));
+            for (; i < end; i++) {
+                final char c = value.charAt(i);
+                if (c < 0x80) {
+                    if (c == '"' || c == '\\') {
+                        buffer.put((byte) '\\');
+                        buffer.put((byte) c);
+                    } else if (c >= 0x20) {
+                        buffer.put((byte) c);
+                    } else {
+                        escapeControl(buffer, c);
+                    }
+                } else if (c < 0x800) {
+                    buffer.put((byte) (0xC0 | (c >> 6)));
+                    buffer.put((byte) (0x80 | (c & 0x3F)));
+                } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    // A pair takes four bytes, which fits the room reserved for its first char.
+                    final int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                    buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                    buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                    buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+                } else if (Character.isSurrogate(c)) {
+                    // Unpaired surrogates are replaced, as by String#getBytes.
+                    buffer.put((byte) '?');
+                } else {
+                    buffer.put((byte) (0xE0 | (c >> 12)));
+                    buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                    buffer.put((byte) (0x80 | (c & 0x3F)));
+                }
+            }
+        }
+        stream.write('"');
+    }
+
+    private static void escapeControl(@NonNull ByteBuffer buffer, char c) {
+        buffer.put((byte) '\\');
+        switch (c) {
+            case '\b':
+                buffer.put((byte) 'b');
+                break;
+            case '\f':
+                buffer.put((byte) 'f');
+                break;
+            case '\n':
+                buffer.put((byte) 'n');
+                break;
+            case '\r':
+                buffer.put((byte) 'r');
+                break;
+            case '\t':
+                buffer.put((byte) 't');
+                break;
+            default:
+                buffer.put((byte) 'u');
+                buffer.put((byte) '0');
+                buffer.put((byte) '0');
+                buffer.put(HEX_DIGITS[c >> 4]);
+                buffer.put(HEX_DIGITS[c & 0xF]);
+                break;
+        }
+    }
+
+    // Matches JSONObject#numberToString(Number), which prints integral values without a fraction.
+    @NonNull
+    private static String numberToString(@NonNull Number number) {
+        final double doubleValue = number.doubleValue();
+        if (Double.isNaN(doubleValue) || Double.isInfinite(doubleValue)) {
+            throw new IllegalArgumentException("JSON does not support non-finite numbers: " + number);
+        }
+        if (number.equals(-0.0d)) {
+            return "-0";
+        }
+        final long longValue = number.longValue();
+        if (doubleValue == (double) longValue) {
+            return Long.toString(longValue);
+        }
+        return number.toString();
+    }
+}
@@ -0,0 +1,233 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugin.common;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * Read-only {@link java.util.List} and {@link Map} views over lists and maps encoded by
+ * {@link StandardMessageCodec}, which decode their elements only when they are accessed.
+ *
+ * <p>A view records where its elements lie in the message buffer. On first access it scans them
+ * once, without decoding, into an index of their offsets, and from then on decodes each element
+ * the first time it is read and keeps the result. Nested lists and maps are decoded as views in
+ * turn, so reading one field of a large nested map decodes that field alone.</p>
+ *
+ * <p>Views share memory with the message and are subject to the same lifetime as typed data
+ * views, see {@link StandardMessageCodec#StandardMessageCodec(boolean)}. They are not thread
+ * safe.</p>
+ */
+final class LazyCollections {
+    // Maps with more entries than this look keys up through a hash index instead of a scan.
+    private static final int MAX_SCANNED_ENTRIES = 8;
+    private static final Object UNDECODED = new Object();
+
+    private LazyCollections() {
+    }
+
+    /**
+     * Returns a view of the list or map of the specified type whose size is encoded at
+     * {@code start} in the buffer and whose last element ends at {@code end}.
+     */
+    static Object view(StandardMessageCodec codec, ByteBuffer buffer, byte type, int start, int end) {
+        if (type == StandardMessageCodec.MAP) {
+            return new MapView(new Elements(codec, buffer, start, end, 2));
+        }
+        return new ListView(new Elements(codec, buffer, start, end, 1));
+    }
+
+    /**
+     * The encoded values of a list, or the alternating keys and values of a map.
+     */
+    private static final class Elements {
+        private final StandardMessageCodec codec;
+        private final ByteBuffer source;
+        private final int start;
+        private final int end;
+        private final int valuesPerElement;
+        // The offset of each value followed by the end offset, once the values have been scanned.
+        private int[] offsets;
+        private Object[] values;
+
+        Elements(StandardMessageCodec codec, ByteBuffer buffer, int start, int end, int valuesPerElement) {
+            this.codec = codec;
+            // Positions in the duplicate match the message, which keeps alignment padding intact.
+            this.source = buffer.duplicate().order(ByteOrder.nativeOrder());
+            this.source.limit(end);
+            this.start = start;
+            this.end = end;
+            this.valuesPerElement = valuesPerElement;
+        }
+
+        int size() {
+            scan();
+            return values.length / valuesPerElement;
+        }
+
+        Object get(int index) {
+            scan();
+            Object value = values[index];
+            if (value == UNDECODED) {
+                value = decode(offsets[index], offsets[index + 1]);
+                values[index] = value;
+            }
+            return value;
+        }
+
+        private void scan() {
+            if (offsets != null) {
+                return;
+            }
+            source.position(start);
+            final long count = (long) StandardMessageCodec.readSize(source) * valuesPerElement;
+            // Each value takes at least one byte, so a corrupted size cannot make the index huge.
+            if (count > source.remaining()) {
+                throw new IllegalArgumentException("Message corrupted");
+            }
+            final int[] index = new int[(int) count + 1];
+            for (int i = 0; i < count; i++) {
+                index[i] = source.position();
+                codec.skipValue(source);
+            }
+            if (source.hasRemaining()) {
+                throw new IllegalArgumentException("Message corrupted");
+            }
+            index[(int) count] = end;
+            values = new Object[(int) count];
+            Arrays.fill(values, UNDECODED);
+            offsets = index;
+        }
+
+        private Object decode(int offset, int next) {
+            source.position(offset);
+            final byte type = source.get();
+            if (type == StandardMessageCodec.LIST || type == StandardMessageCodec.MAP) {
+                // The scan already found where the nested collection ends.
+                return view(codec, source, type, offset + 1, next);
+            }
+            return codec.readValueOfType(type, source);
+        }
+    }
+
+    private static final class ListView extends AbstractList<Object> implements RandomAccess {
+        private final Elements elements;
+
+        ListView(Elements elements) {
+            this.elements = elements;
+        }
+
+        @Override
+        public int size() {
+            return elements.size();
+        }
+
+        @Override
+        public Object get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+            }
+            return elements.get(index);
+        }
+    }
+
+    private static final class MapView extends AbstractMap<Object, Object> {
+        private final Elements elements;
+        private Map<Object, Integer> keyIndex;
+        private Set<Map.Entry<Object, Object>> entrySet;
+
+        MapView(Elements elements) {
+            this.elements = elements;
+        }
+
+        @Override
+        public int size() {
+            return elements.size();
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return indexOf(key) >= 0;
+        }
+
+        @Override
+        public Object get(Object key) {
+            final int index = indexOf(key);
+            return index < 0 ? null : elements.get(2 * index + 1);
+        }
+
+        @Override
+        public Set<Map.Entry<Object, Object>> entrySet() {
+            if (entrySet == null) {
+                entrySet = new AbstractSet<Map.Entry<Object, Object>>() {
+                    @Override
+                    public int size() {
+                        return MapView.this.size();
+                    }
+
+                    @Override
+                    public Iterator<Map.Entry<Object, Object>> iterator() {
+                        return new Iterator<Map.Entry<Object, Object>>() {
+                            private int next;
+
+                            @Override
+                            public boolean hasNext() {
+                                return next < size();
+                            }
+
+                            @Override
+                            public Map.Entry<Object, Object> next() {
+                                if (!hasNext()) {
+                                    throw new NoSuchElementException();
+                                }
+                                final int index = next++;
+                                return new SimpleImmutableEntry<>(
+                                    elements.get(2 * index), elements.get(2 * index + 1));
+                            }
+
+                            @Override
+                            public void remove() {
+                                throw new UnsupportedOperationException();
+                            }
+                        };
+                    }
+                };
+            }
+            return entrySet;
+        }
+
+        // Returns the index of the entry with the specified key, decoding keys but no values.
+        private int indexOf(Object key) {
+            final int size = size();
+            if (size > MAX_SCANNED_ENTRIES) {
+                if (keyIndex == null) {
+                    keyIndex = new HashMap<>(size * 4 / 3 + 1);
+                    for (int i = 0; i < size; i++) {
+                        keyIndex.put(elements.get(2 * i), i);
+                    }
+                }
+                final Integer index = keyIndex.get(key);
+                return index == null ? -1 : index;
+            }
+            for (int i = size - 1; i >= 0; i--) {
+                final Object candidate = elements.get(2 * i);
+                if (key == null ? candidate == null : key.equals(candidate)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
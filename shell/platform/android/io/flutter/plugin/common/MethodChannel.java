@@ -4,6 +4,7 @@
 
 package io.flutter.plugin.common;
 
+import android.support.annotation.AnyThread;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.UiThread;
@@ -12,8 +13,15 @@ import android.util.Log;
 import io.flutter.BuildConfig;
 import io.flutter.plugin.common.BinaryMessenger.BinaryMessageHandler;
 import io.flutter.plugin.common.BinaryMessenger.BinaryReply;
+import io.flutter.plugin.common.BinaryMessenger.DirectBinaryMessageHandler;
+import io.flutter.plugin.common.BinaryMessenger.DirectBinaryReply;
+import io.flutter.plugin.common.BinaryMessenger.MessageRetention;
+import io.flutter.plugin.common.BinaryMessenger.TimeoutBinaryReply;
 
 import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * A named channel for communicating with the Flutter application using asynchronous
@@ -33,9 +41,18 @@ import java.nio.ByteBuffer;
 public final class MethodChannel {
     private static final String TAG = "MethodChannel#";
 
+    /**
+     * The error code passed to {@link Result#error(String, String, Object)} when a method invoked
+     * with {@link #invokeMethod(String, Object, Result, long)} does not complete in time.
+     */
+    public static final String TIMEOUT_ERROR_CODE = "channel-timeout";
+
     private final BinaryMessenger messenger;
     private final String name;
     private final MethodCodec codec;
+    private final boolean encodesIntoPool;
+    @Nullable
+    private final BinaryMessenger.TaskQueue taskQueue;
 
     /**
      * Creates a new channel associated with the specified {@link BinaryMessenger}
@@ -57,6 +74,21 @@ public final class MethodChannel {
      * @param codec a {@link MessageCodec}.
      */
     public MethodChannel(BinaryMessenger messenger, String name, MethodCodec codec) {
+        this(messenger, name, codec, null);
+    }
+
+    /**
+     * Creates a new channel associated with the specified {@link BinaryMessenger} and with the
+     * specified name and {@link MethodCodec}, whose method calls are decoded and handled on the
+     * given {@link BinaryMessenger.TaskQueue}.
+     *
+     * @param messenger a {@link BinaryMessenger}.
+     * @param name a channel name String.
+     * @param codec a {@link MessageCodec}.
+     * @param taskQueue a {@link BinaryMessenger.TaskQueue} made by {@code messenger}, or null to
+     * handle method calls on the main thread.
+     */
+    public MethodChannel(BinaryMessenger messenger, String name, MethodCodec codec, @Nullable BinaryMessenger.TaskQueue taskQueue) {
         if (BuildConfig.DEBUG) {
             if (messenger == null) {
                 Log.e(TAG, "Parameter messenger must not be null.");
@@ -71,6 +103,17 @@ public final class MethodChannel {
         this.messenger = messenger;
         this.name = name;
         this.codec = codec;
+        this.encodesIntoPool = codec != null && DirectByteBufferPool.encodesIntoPool(codec);
+        this.taskQueue = taskQueue;
+    }
+
+    // Marks a message this channel has just encoded, and never hands out, as leased, so that the
+    // messenger returns its buffer to the pool once the message has been sent.
+    private ByteBuffer leased(ByteBuffer message) {
+        if (encodesIntoPool && message != null) {
+            DirectByteBufferPool.INSTANCE.lease(message);
+        }
+        return message;
     }
 
     /**
@@ -95,10 +138,70 @@ public final class MethodChannel {
      */
     @UiThread
     public void invokeMethod(String method, @Nullable Object arguments, Result callback) {
-        messenger.send(name, codec.encodeMethodCall(new MethodCall(method, arguments)),
+        messenger.send(name, leased(codec.encodeMethodCall(new MethodCall(method, arguments))),
             callback == null ? null : new IncomingResultHandler(callback));
     }
 
+    /**
+     * Invokes a method on this channel, expecting a result within the given time.
+     *
+     * <p>If Flutter does not complete the call within {@code timeoutMillis}, {@code callback} receives
+     * an error with code {@link #TIMEOUT_ERROR_CODE}, and a late result is ignored.</p>
+     *
+     * <p>Any uncaught exception thrown by the result callback will be caught and logged.</p>
+     *
+     * @param method the name String of the method.
+     * @param arguments the arguments for the invocation, possibly null.
+     * @param callback a {@link Result} callback for the invocation result.
+     * @param timeoutMillis the positive number of milliseconds to wait for the result.
+     * @return a {@link BinaryMessenger.Cancellable} that stops waiting for the result, after which
+     * {@code callback} is not invoked.
+     */
+    @UiThread
+    @NonNull
+    public BinaryMessenger.Cancellable invokeMethod(String method, @Nullable Object arguments, @NonNull Result callback, long timeoutMillis) {
+        return messenger.send(name, leased(codec.encodeMethodCall(new MethodCall(method, arguments))),
+            new IncomingResultHandler(callback), timeoutMillis);
+    }
+
+    /**
+     * Invokes a method on this channel and returns a {@link ResultFuture} of its result.
+     *
+     * <p>The future completes on the platform thread, where the steps chained onto it with
+     * {@link ResultFuture#then(ResultFuture.Transform)} and
+     * {@link ResultFuture#thenCompose(ResultFuture.Transform)} then run one after the other.</p>
+     *
+     * @param method the name String of the method.
+     * @param arguments the arguments for the invocation, possibly null.
+     * @return a {@link ResultFuture} of the invocation result.
+     */
+    @UiThread
+    @NonNull
+    public ResultFuture<Object> invokeMethodAsync(@NonNull String method, @Nullable Object arguments) {
+        final ResultFuture<Object> future = new ResultFuture<>();
+        invokeMethod(method, arguments, future);
+        return future;
+    }
+
+    /**
+     * Invokes a method on this channel and returns a {@link ResultFuture} of its result, like
+     * {@link #invokeMethodAsync(String, Object)}, which fails with a {@link FlutterException} with
+     * code {@link #TIMEOUT_ERROR_CODE} if Flutter does not complete the call within
+     * {@code timeoutMillis}. Cancelling the future stops waiting for the result.
+     *
+     * @param method the name String of the method.
+     * @param arguments the arguments for the invocation, possibly null.
+     * @param timeoutMillis the positive number of milliseconds to wait for the result.
+     * @return a {@link ResultFuture} of the invocation result.
+     */
+    @UiThread
+    @NonNull
+    public ResultFuture<Object> invokeMethodAsync(@NonNull String method, @Nullable Object arguments, long timeoutMillis) {
+        final ResultFuture<Object> future = new ResultFuture<>();
+        future.setCancellable(invokeMethod(method, arguments, future, timeoutMillis));
+        return future;
+    }
+
     /**
      * Registers a method call handler on this channel.
      *
@@ -111,12 +214,42 @@ public final class MethodChannel {
      * <a href="https://docs.flutter.io/flutter/services/OptionalMethodChannel-class.html">OptionalMethodChannel</a>
      * is used.</p>
      *
+     * <p>A {@link DispatchTable} handler on a channel with a {@link StandardMethodCodec} reads only
+     * the method name of an incoming call before looking up its handler, and decodes the arguments
+     * only for methods that have one.</p>
+     *
      * @param handler a {@link MethodCallHandler}, or null to deregister.
+     * @throws IllegalArgumentException if {@code handler} is a {@link DispatchTable} with argument
+     * codecs and the codec of this channel is not a {@link StandardMethodCodec}.
      */
     @UiThread
     public void setMethodCallHandler(final @Nullable MethodCallHandler handler) {
-        messenger.setMessageHandler(name,
-            handler == null ? null : new IncomingMethodCallHandler(handler));
+        final BinaryMessageHandler incomingHandler;
+        final StandardMessageCodec messageCodec = codec instanceof StandardMethodCodec
+            ? ((StandardMethodCodec) codec).getMessageCodec()
+            : null;
+        if (handler instanceof DispatchTable && messageCodec != null) {
+            incomingHandler = new IncomingDispatchHandler((DispatchTable) handler, (StandardMethodCodec) codec);
+        } else if (handler instanceof DispatchTable && ((DispatchTable) handler).hasArgumentCodecs()) {
+            throw new IllegalArgumentException("Argument codecs require a StandardMethodCodec");
+        } else if (handler == null) {
+            incomingHandler = null;
+        } else if (messageCodec != null && messageCodec.decodesIntoMessage()) {
+            // The arguments share memory with the message, which is kept until the call is answered.
+            incomingHandler = new DirectMethodCallHandler(handler, true);
+        } else if (messageCodec != null && messageCodec.copiesDecodedValues()) {
+            // The arguments are copied while decoding, so the message is read in place and released
+            // when the handler returns.
+            incomingHandler = new DirectMethodCallHandler(handler, false);
+        } else {
+            // Other codecs may return slices of the message, so they decode a heap copy of it.
+            incomingHandler = new IncomingMethodCallHandler(handler);
+        }
+        if (taskQueue == null) {
+            messenger.setMessageHandler(name, incomingHandler);
+        } else {
+            messenger.setMessageHandler(name, incomingHandler, taskQueue);
+        }
     }
 
     /**
@@ -136,7 +269,8 @@ public final class MethodChannel {
          *
          * <p>The handler is called on the platform thread (Android main thread). For more details see
          * <a href="https://github.com/flutter/engine/wiki/Threading-in-the-Flutter-Engine">Threading in the Flutter
-         * Engine</a>.</p>
+         * Engine</a>. Channels created with a {@link BinaryMessenger.TaskQueue} call the handler on that
+         * queue instead. Either way, the result may be submitted from any thread.</p>
          *
          * @param call A {@link MethodCall}.
          * @param result A {@link Result} used for submitting the result of the call.
@@ -145,15 +279,118 @@ public final class MethodChannel {
         void onMethodCall(@NonNull MethodCall call, @NonNull Result result);
     }
 
+    /**
+     * A handler of incoming calls to a single method, registered in a {@link DispatchTable}.
+     *
+     * @param <T> the type of the decoded arguments.
+     */
+    public interface MethodHandler<T> {
+        /**
+         * Handles a call to the method, like {@link MethodCallHandler#onMethodCall(MethodCall, Result)}.
+         *
+         * @param arguments the decoded arguments of the call, possibly null.
+         * @param result A {@link Result} used for submitting the result of the call.
+         */
+        @UiThread
+        void onMethodCall(@Nullable T arguments, @NonNull Result result);
+    }
+
+    /**
+     * A {@link MethodCallHandler} that dispatches incoming calls by method name to the
+     * {@link MethodHandler} registered for it, and answers calls to other methods with
+     * {@link Result#notImplemented()}.
+     *
+     * <p>On a channel with a {@link StandardMethodCodec}, only the method name of an incoming call
+     * is decoded before it is dispatched. Calls to unregistered methods are answered without
+     * decoding their arguments, and the arguments of other calls are decoded by the message codec of
+     * the channel or by the argument codec registered for the method, see
+     * {@link #on(String, MessageCodec, MethodHandler)}.</p>
+     *
+     * <p>Register all methods before passing the table to
+     * {@link MethodChannel#setMethodCallHandler(MethodCallHandler)}.</p>
+     */
+    public static final class DispatchTable implements MethodCallHandler {
+        private static final class Entry<T> {
+            @Nullable
+            final MessageCodec<T> argumentCodec;
+            final MethodHandler<T> handler;
+
+            Entry(@Nullable MessageCodec<T> argumentCodec, MethodHandler<T> handler) {
+                this.argumentCodec = argumentCodec;
+                this.handler = handler;
+            }
+        }
+
+        private final Map<String, Entry<?>> entries = new HashMap<>();
+        private boolean hasArgumentCodecs;
+
+        /**
+         * Registers a handler for calls to {@code method}, whose arguments are decoded by the codec
+         * of the channel. Overrides any existing registration for the method.
+         *
+         * @return this table.
+         */
+        @NonNull
+        public DispatchTable on(@NonNull String method, @NonNull MethodHandler<Object> handler) {
+            entries.put(method, new Entry<>(null, handler));
+            return this;
+        }
+
+        /**
+         * Registers a handler for calls to {@code method}, whose arguments are decoded by
+         * {@code argumentCodec}. Overrides any existing registration for the method.
+         *
+         * <p>Argument codecs are only supported on channels with a {@link StandardMethodCodec}, see
+         * {@link StandardMethodCodec#decodeArguments(ByteBuffer, MessageCodec)}.</p>
+         *
+         * @return this table.
+         */
+        @NonNull
+        public <T> DispatchTable on(@NonNull String method, @NonNull MessageCodec<T> argumentCodec,
+            @NonNull MethodHandler<T> handler) {
+            entries.put(method, new Entry<>(argumentCodec, handler));
+            hasArgumentCodecs = true;
+            return this;
+        }
+
+        boolean hasArgumentCodecs() {
+            return hasArgumentCodecs;
+        }
+
+        @Nullable
+        Entry<?> entryFor(String method) {
+            return entries.get(method);
+        }
+
+        /**
+         * Dispatches a call that a codec other than {@link StandardMethodCodec} has decoded in full.
+         */
+        @Override
+        @SuppressWarnings("unchecked")
+        public void onMethodCall(@NonNull MethodCall call, @NonNull Result result) {
+            final Entry<?> entry = entries.get(call.method);
+            if (entry == null) {
+                result.notImplemented();
+            } else if (entry.argumentCodec != null) {
+                throw new IllegalStateException("Argument codecs require a StandardMethodCodec");
+            } else {
+                ((MethodHandler<Object>) entry.handler).onMethodCall(call.arguments, result);
+            }
+        }
+    }
+
     /**
      * Method call result callback. Supports dual use: Implementations of methods
      * to be invoked by Flutter act as clients of this interface for sending results
      * back to Flutter. Invokers of Flutter methods provide implementations of this
      * interface for handling results received from Flutter.
      *
-     * <p>All methods of this class must be called on the platform thread (Android main thread). For more details see
+     * <p>Results of calls from Flutter may be submitted from any thread; the reply is sent to Flutter on the
+     * platform thread (Android main thread). Results of calls to Flutter are handed to the callback on the
+     * platform thread. For more details see
      * <a href="https://github.com/flutter/engine/wiki/Threading-in-the-Flutter-Engine">Threading in the Flutter
-     * Engine</a>.</p>
+     * Engine</a>. A handler can also answer a call with a {@link ResultFuture}, through
+     * {@link ResultFuture#whenComplete(Result)}.</p>
      */
     public interface Result {
         /**
@@ -161,7 +398,7 @@ public final class MethodChannel {
          *
          * @param result The result, possibly null.
          */
-        @UiThread
+        @AnyThread
         void success(@Nullable Object result);
 
         /**
@@ -171,17 +408,17 @@ public final class MethodChannel {
          * @param errorMessage A human-readable error message String, possibly null.
          * @param errorDetails Error details, possibly null
          */
-        @UiThread
+        @AnyThread
         void error(String errorCode, @Nullable String errorMessage, @Nullable Object errorDetails);
 
         /**
          * Handles a call to an unimplemented method.
          */
-        @UiThread
+        @AnyThread
         void notImplemented();
     }
 
-    private final class IncomingResultHandler implements BinaryReply {
+    private final class IncomingResultHandler implements DirectBinaryReply, TimeoutBinaryReply {
         private final Result callback;
 
         IncomingResultHandler(Result callback) {
@@ -205,9 +442,26 @@ public final class MethodChannel {
                 Log.e(TAG + name, "Failed to handle method call result", e);
             }
         }
+
+        @Override
+        @UiThread
+        public void directReply(ByteBuffer reply, MessageRetention retention) {
+            // The envelope is fully decoded before the callback returns.
+            reply(reply);
+        }
+
+        @Override
+        @UiThread
+        public void onTimeout() {
+            try {
+                callback.error(TIMEOUT_ERROR_CODE, "Flutter did not respond to the method call in time", null);
+            } catch (RuntimeException e) {
+                Log.e(TAG + name, "Failed to handle method call timeout", e);
+            }
+        }
     }
 
-    private final class IncomingMethodCallHandler implements BinaryMessageHandler {
+    private class IncomingMethodCallHandler implements BinaryMessageHandler {
         private final MethodCallHandler handler;
 
         IncomingMethodCallHandler(MethodCallHandler handler) {
@@ -217,28 +471,139 @@ public final class MethodChannel {
         @Override
         @UiThread
         public void onMessage(ByteBuffer message, final BinaryReply reply) {
-            final MethodCall call = codec.decodeMethodCall(message);
+            handleMethodCall(codec.decodeMethodCall(message), reply);
+        }
+
+        void handleMethodCall(MethodCall call, final BinaryReply reply) {
             try {
-                handler.onMethodCall(call, new Result() {
-                    @Override
-                    public void success(Object result) {
-                        reply.reply(codec.encodeSuccessEnvelope(result));
-                    }
+                handler.onMethodCall(call, resultFor(reply));
+            } catch (RuntimeException e) {
+                Log.e(TAG + name, "Failed to handle method call", e);
+                reply.reply(leased(codec.encodeErrorEnvelope("error", e.getMessage(), null)));
+            }
+        }
+    }
 
-                    @Override
-                    public void error(String errorCode, String errorMessage, Object errorDetails) {
-                        reply.reply(codec.encodeErrorEnvelope(errorCode, errorMessage, errorDetails));
-                    }
+    private final class DirectMethodCallHandler extends IncomingMethodCallHandler
+        implements DirectBinaryMessageHandler {
+        private final boolean retainsMessages;
 
-                    @Override
-                    public void notImplemented() {
-                        reply.reply(null);
-                    }
-                });
+        DirectMethodCallHandler(MethodCallHandler handler, boolean retainsMessages) {
+            super(handler);
+            this.retainsMessages = retainsMessages;
+        }
+
+        @Override
+        @UiThread
+        public void onDirectMessage(ByteBuffer message, final BinaryReply reply, final MessageRetention retention) {
+            final MethodCall call = codec.decodeMethodCall(message);
+            handleMethodCall(call, retainsMessages ? retainUntilReplied(reply, retention) : reply);
+        }
+    }
+
+    private final class IncomingDispatchHandler implements DirectBinaryMessageHandler {
+        private final DispatchTable table;
+        private final StandardMethodCodec methodCodec;
+
+        IncomingDispatchHandler(DispatchTable table, StandardMethodCodec methodCodec) {
+            this.table = table;
+            this.methodCodec = methodCodec;
+        }
+
+        @Override
+        @UiThread
+        public void onMessage(ByteBuffer message, final BinaryReply reply) {
+            final DispatchTable.Entry<?> entry = table.entryFor(methodCodec.decodeMethodName(message));
+            if (entry == null) {
+                reply.reply(null);
+                return;
+            }
+            dispatch(entry, message, reply, null);
+        }
+
+        @Override
+        @UiThread
+        public void onDirectMessage(ByteBuffer message, final BinaryReply reply, final MessageRetention retention) {
+            final DispatchTable.Entry<?> entry = table.entryFor(methodCodec.decodeMethodName(message));
+            if (entry == null) {
+                // Nothing refers to the message, so it need not be retained.
+                reply.reply(null);
+                return;
+            }
+            dispatch(entry, message, reply, retention);
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T> void dispatch(DispatchTable.Entry<T> entry, ByteBuffer message, BinaryReply reply,
+            @Nullable MessageRetention retention) {
+            final MessageCodec<?> argumentCodec = entry.argumentCodec != null
+                ? entry.argumentCodec
+                : methodCodec.getMessageCodec();
+            final boolean sharesMessage = argumentCodec instanceof StandardMessageCodec
+                && ((StandardMessageCodec) argumentCodec).decodesIntoMessage();
+            if (retention != null && !sharesMessage && !(argumentCodec instanceof StandardMessageCodec
+                && ((StandardMessageCodec) argumentCodec).copiesDecodedValues())) {
+                // Codecs of unknown behavior decode a heap copy of the arguments, which outlives
+                // the engine message without pinning it.
+                message = copyToHeap(message);
+            }
+            final T arguments = entry.argumentCodec != null
+                ? methodCodec.decodeArguments(message, entry.argumentCodec)
+                : (T) methodCodec.decodeArguments(message);
+            if (retention != null && sharesMessage) {
+                reply = retainUntilReplied(reply, retention);
+            }
+            try {
+                entry.handler.onMethodCall(arguments, resultFor(reply));
             } catch (RuntimeException e) {
                 Log.e(TAG + name, "Failed to handle method call", e);
-                reply.reply(codec.encodeErrorEnvelope("error", e.getMessage(), null));
+                reply.reply(leased(codec.encodeErrorEnvelope("error", e.getMessage(), null)));
             }
         }
     }
+
+    // Copies the rest of the message, from its position on, into a heap buffer positioned at zero.
+    private static ByteBuffer copyToHeap(ByteBuffer message) {
+        final ByteBuffer copy = ByteBuffer.allocate(message.remaining());
+        copy.put(message);
+        copy.flip();
+        return copy;
+    }
+
+    // The arguments of a call may share memory with the message, so it is kept until the call is answered.
+    private static BinaryReply retainUntilReplied(final BinaryReply reply, final MessageRetention retention) {
+        retention.retain();
+        final AtomicBoolean released = new AtomicBoolean(false);
+        return new BinaryReply() {
+            @Override
+            public void reply(ByteBuffer envelope) {
+                try {
+                    reply.reply(envelope);
+                } finally {
+                    if (!released.getAndSet(true)) {
+                        retention.release();
+                    }
+                }
+            }
+        };
+    }
+
+    private Result resultFor(final BinaryReply reply) {
+        return new Result() {
+            @Override
+            public void success(Object result) {
+                reply.reply(leased(codec.encodeSuccessEnvelope(result)));
+            }
+
+            @Override
+            public void error(String errorCode, String errorMessage, Object errorDetails) {
+                reply.reply(leased(codec.encodeErrorEnvelope(errorCode, errorMessage, errorDetails)));
+            }
+
+            @Override
+            public void notImplemented() {
+                reply.reply(null);
+            }
+        };
+    }
 }
@@ -0,0 +1,382 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugin.common;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The eventual result of a method call, which can be chained, combined and waited for.
+ *
+ * <p>A future is a {@link MethodChannel.Result} that is completed by the first call to one of its
+ * methods, from any thread; later calls are ignored. A successful result completes it with a value,
+ * an error result with a {@link FlutterException}, and a call to an unimplemented method with a
+ * {@link NotImplementedException}. {@link MethodChannel#invokeMethodAsync(String, Object)} returns
+ * futures completed by Flutter, and a handler may answer an incoming call with a future through
+ * {@link #whenComplete(MethodChannel.Result)}.</p>
+ *
+ * <p>Transforms and callbacks run on the thread that completes the future, or right away if it is
+ * already complete, so a chain of steps on the result of a call to Flutter runs on the platform
+ * thread without posting to a {@link android.os.Handler} between steps. Steps that must run
+ * elsewhere can be moved with {@link #whenComplete(MethodChannel.Result, Executor)}. Exceptions
+ * thrown by callbacks that run on completion are caught and logged.</p>
+ *
+ * <p>Futures completed by Flutter complete on the platform thread, which must therefore never block
+ * in {@link #get()} on one.</p>
+ *
+ * @param <T> the type of the result.
+ */
+public final class ResultFuture<T> implements Future<T>, MethodChannel.Result {
+    private static final String TAG = "ResultFuture";
+
+    /**
+     * A step applied to the result of a future.
+     *
+     * @param <T> the type of the result.
+     * @param <R> the type returned by the step.
+     */
+    public interface Transform<T, R> {
+        /**
+         * Returns the value derived from {@code value}. Exceptions thrown here fail the derived
+         * future.
+         */
+        R apply(@Nullable T value);
+    }
+
+    /**
+     * The failure of a future completed by {@link #notImplemented()}.
+     */
+    public static final class NotImplementedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        NotImplementedException() {
+            super("Method not implemented");
+        }
+    }
+
+    private boolean done;
+    private T value;
+    private Throwable failure;
+    // The runnables to run on completion, while the future is pending.
+    private List<Runnable> listeners;
+    @Nullable
+    private BinaryMessenger.Cancellable cancellable;
+
+    /**
+     * Creates a pending future.
+     */
+    public ResultFuture() {
+    }
+
+    /**
+     * Returns a future completed with {@code value}.
+     */
+    @NonNull
+    public static <T> ResultFuture<T> completed(@Nullable T value) {
+        final ResultFuture<T> future = new ResultFuture<>();
+        future.complete(value, null);
+        return future;
+    }
+
+    /**
+     * Returns a future that completes with the results of {@code futures}, in order, once all of
+     * them succeed, or with the first failure among them.
+     */
+    @NonNull
+    public static ResultFuture<List<Object>> allOf(@NonNull final ResultFuture<?>... futures) {
+        final ResultFuture<List<Object>> combined = new ResultFuture<>();
+        final Object[] results = new Object[futures.length];
+        final AtomicInteger remaining = new AtomicInteger(futures.length);
+        if (futures.length == 0) {
+            combined.complete(new ArrayList<Object>(), null);
+        }
+        for (int i = 0; i < futures.length; i++) {
+            final ResultFuture<?> future = futures[i];
+            final int index = i;
+            future.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    if (future.failure != null) {
+                        combined.complete(null, future.failure);
+                        return;
+                    }
+                    results[index] = future.value;
+                    if (remaining.decrementAndGet() == 0) {
+                        combined.complete(new ArrayList<>(Arrays.asList(results)), null);
+                    }
+                }
+            });
+        }
+        return combined;
+    }
+
+    /**
+     * Returns a future that completes with the result of {@code transform} applied to the result of
+     * this future, or with the failure of this future.
+     */
+    @NonNull
+    public <R> ResultFuture<R> then(@NonNull final Transform<? super T, ? extends R> transform) {
+        final ResultFuture<R> next = new ResultFuture<>();
+        addListener(new Runnable() {
+            @Override
+            public void run() {
+                if (failure != null) {
+                    next.complete(null, failure);
+                    return;
+                }
+                final R result;
+                try {
+                    result = transform.apply(value);
+                } catch (RuntimeException e) {
+                    next.complete(null, e);
+                    return;
+                }
+                next.complete(result, null);
+            }
+        });
+        return next;
+    }
+
+    /**
+     * Returns a future that completes like the future returned by {@code transform} applied to the
+     * result of this future, or with the failure of this future. This chains calls that depend on
+     * each other's results.
+     */
+    @NonNull
+    public <R> ResultFuture<R> thenCompose(@NonNull final Transform<? super T, ResultFuture<R>> transform) {
+        final ResultFuture<R> next = new ResultFuture<>();
+        addListener(new Runnable() {
+            @Override
+            public void run() {
+                if (failure != null) {
+                    next.complete(null, failure);
+                    return;
+                }
+                final ResultFuture<R> inner;
+                try {
+                    inner = transform.apply(value);
+                } catch (RuntimeException e) {
+                    next.complete(null, e);
+                    return;
+                }
+                if (inner == null) {
+                    next.complete(null, null);
+                    return;
+                }
+                inner.addListener(new Runnable() {
+                    @Override
+                    public void run() {
+                        next.complete(inner.value, inner.failure);
+                    }
+                });
+            }
+        });
+        return next;
+    }
+
+    /**
+     * Submits the outcome of this future to {@code callback} once it completes, on the completing
+     * thread. A failure other than an error or unimplemented result is submitted as an error with
+     * code "error", as {@link MethodChannel} does for exceptions thrown by handlers.
+     *
+     * @return this future.
+     */
+    @NonNull
+    public ResultFuture<T> whenComplete(@NonNull final MethodChannel.Result callback) {
+        addListener(new Runnable() {
+            @Override
+            public void run() {
+                deliver(callback);
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Submits the outcome of this future to {@code callback} once it completes, like
+     * {@link #whenComplete(MethodChannel.Result)}, on {@code executor}.
+     *
+     * @return this future.
+     */
+    @NonNull
+    public ResultFuture<T> whenComplete(@NonNull final MethodChannel.Result callback, @NonNull final Executor executor) {
+        addListener(new Runnable() {
+            @Override
+            public void run() {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        deliver(callback);
+                    }
+                });
+            }
+        });
+        return this;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void success(@Nullable Object result) {
+        complete((T) result, null);
+    }
+
+    @Override
+    public void error(String errorCode, @Nullable String errorMessage, @Nullable Object errorDetails) {
+        complete(null, new FlutterException(errorCode, errorMessage, errorDetails));
+    }
+
+    @Override
+    public void notImplemented() {
+        complete(null, new NotImplementedException());
+    }
+
+    /**
+     * Completes this future with a {@link CancellationException}, and stops waiting for the result
+     * of the call to Flutter if it was made with a timeout. Flutter may still handle the call.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (!complete(null, new CancellationException())) {
+            return false;
+        }
+        final BinaryMessenger.Cancellable toCancel;
+        synchronized (this) {
+            toCancel = cancellable;
+        }
+        if (toCancel != null) {
+            toCancel.cancel();
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return failure instanceof CancellationException;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    @Override
+    public synchronized T get() throws InterruptedException, ExecutionException {
+        while (!done) {
+            wait();
+        }
+        return report();
+    }
+
+    @Override
+    public synchronized T get(long timeout, @NonNull TimeUnit unit)
+        throws InterruptedException, ExecutionException, TimeoutException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!done) {
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return report();
+    }
+
+    /**
+     * Makes {@link #cancel(boolean)} cancel the pending reply of the call that completes this
+     * future.
+     */
+    synchronized void setCancellable(@NonNull BinaryMessenger.Cancellable cancellable) {
+        this.cancellable = cancellable;
+    }
+
+    /**
+     * Completes this future with {@code failure}, which {@link #get()} reports wrapped in an
+     * {@link ExecutionException}.
+     */
+    void fail(@NonNull Throwable failure) {
+        complete(null, failure);
+    }
+
+    private T report() throws ExecutionException {
+        if (failure instanceof CancellationException) {
+            throw (CancellationException) failure;
+        }
+        if (failure != null) {
+            throw new ExecutionException(failure);
+        }
+        return value;
+    }
+
+    private void deliver(MethodChannel.Result callback) {
+        if (failure == null) {
+            callback.success(value);
+        } else if (failure instanceof FlutterException) {
+            final FlutterException error = (FlutterException) failure;
+            callback.error(error.code, error.getMessage(), error.details);
+        } else if (failure instanceof NotImplementedException) {
+            callback.notImplemented();
+        } else {
+            callback.error("error", failure.getMessage(), null);
+        }
+    }
+
+    // Runs the listener on completion, or right away if the future is complete.
+    private void addListener(Runnable listener) {
+        synchronized (this) {
+            if (!done) {
+                if (listeners == null) {
+                    listeners = new ArrayList<>(2);
+                }
+                listeners.add(listener);
+                return;
+            }
+        }
+        runListener(listener);
+    }
+
+    // A failing listener must not keep the others, and the futures they complete, waiting, nor
+    // throw into whoever added it to a completed future.
+    private static void runListener(Runnable listener) {
+        try {
+            listener.run();
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Uncaught exception in a completion listener", e);
+        }
+    }
+
+    // Returns whether this call completed the future.
+    private boolean complete(@Nullable T value, @Nullable Throwable failure) {
+        final List<Runnable> toRun;
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            this.value = value;
+            this.failure = failure;
+            done = true;
+            toRun = listeners;
+            listeners = null;
+            notifyAll();
+        }
+        if (toRun != null) {
+            for (Runnable listener : toRun) {
+                runListener(listener);
+            }
+        }
+        return true;
+    }
+}
@@ -9,9 +9,16 @@ import android.util.Log;
 import io.flutter.BuildConfig;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -35,7 +42,7 @@ import java.util.Map.Entry;
  *     <li>BigIntegers (see below)</li>
  *     <li>Floats, Doubles</li>
  *     <li>Strings</li>
- *     <li>byte[], int[], long[], double[]</li>
+ *     <li>byte[], int[], long[], float[], double[]</li>
  *     <li>Lists of supported values</li>
  *     <li>Maps with supported keys and values</li>
  * </ul>
@@ -51,6 +58,7 @@ import java.util.Map.Entry;
  *     <li>byte[]: Uint8List</li>
  *     <li>int[]: Int32List</li>
  *     <li>long[]: Int64List</li>
+ *     <li>float[]: Float64List</li>
  *     <li>double[]: Float64List</li>
  *     <li>List: List</li>
  *     <li>Map: Map</li>
@@ -59,22 +67,108 @@ import java.util.Map.Entry;
  * <p>BigIntegers are represented in Dart as strings with the
  * hexadecimal representation of the integer's value.</p>
  *
+ * <p>Dart has no Float32List in this format, so float[] values are widened to double and
+ * decoded as double[] on the way back.</p>
+ *
+ * <p>ByteBuffers, IntBuffers, LongBuffers, FloatBuffers and DoubleBuffers are also accepted
+ * when encoding, and are sent as the corresponding typed data list, FloatBuffers as a widened
+ * Float64List. Codecs created with
+ * {@link #StandardMessageCodec(boolean)} decode typed data lists as such buffers instead of
+ * arrays (see below).</p>
+ *
+ * <p>Codecs created with {@link #StandardMessageCodec(boolean, boolean, boolean)} can decode lists
+ * and maps lazily, as read-only views that decode their elements only when they are accessed.</p>
+ *
+ * <p>Encoded messages are written into direct buffers obtained from
+ * {@link DirectByteBufferPool#INSTANCE}. Only messages that a channel encodes and sends itself are
+ * returned to the pool; buffers returned by {@link #encodeMessage(Object)} belong to the caller.</p>
+ *
  * <p>To extend the codec, overwrite the writeValue and readValueOfType methods.</p>
  */
 public class StandardMessageCodec implements MessageCodec<Object> {
     private static final String TAG = "StandardMessageCodec#";
     public static final StandardMessageCodec INSTANCE = new StandardMessageCodec();
 
+    private final boolean decodeTypedDataAsViews;
+    private final StringInternCache stringCache;
+    private final boolean decodeCollectionsLazily;
+    // Subclasses may encode values differently, so only this class sizes messages.
+    private final boolean sizesMessages = getClass() == StandardMessageCodec.class;
+
+    /**
+     * Creates a codec that decodes typed data lists into newly allocated Java arrays.
+     */
+    public StandardMessageCodec() {
+        this(false);
+    }
+
+    /**
+     * Creates a codec that optionally decodes typed data lists as views over the message.
+     *
+     * <p>When {@code decodeTypedDataAsViews} is true, Uint8List, Int32List, Int64List and
+     * Float64List values are decoded as read-only {@link ByteBuffer}, {@link IntBuffer},
+     * {@link LongBuffer} and {@link DoubleBuffer} slices of the message buffer rather than copied
+     * into byte[], int[], long[] and double[].</p>
+     *
+     * <p>Such views share memory with the message and are only valid while the message is:
+     * that is, until the {@link BinaryMessenger.BinaryMessageHandler#onMessage(ByteBuffer,
+     * BinaryMessenger.BinaryReply)} or {@link BinaryMessenger.BinaryReply#reply(ByteBuffer)}
+     * call that received the message returns. Values that must outlive that call, including
+     * values handed to other threads, have to be copied first. {@link MethodChannel} keeps the
+     * message of an incoming method call valid until a result is submitted for it.</p>
+     */
+    public StandardMessageCodec(boolean decodeTypedDataAsViews) {
+        this(decodeTypedDataAsViews, false);
+    }
+
+    /**
+     * Creates a codec that optionally decodes typed data lists as views over the message, see
+     * {@link #StandardMessageCodec(boolean)}, and optionally reuses decoded strings.
+     *
+     * <p>When {@code internDecodedStrings} is true, the codec keeps a small, bounded cache of short
+     * strings keyed by their UTF-8 bytes, and decodes a string found in the cache to the cached
+     * instance instead of a new one. This avoids allocating the same map keys and enum-like values
+     * over and over for channels whose messages share them.</p>
+     */
+    public StandardMessageCodec(boolean decodeTypedDataAsViews, boolean internDecodedStrings) {
+        this(decodeTypedDataAsViews, internDecodedStrings, false);
+    }
+
+    /**
+     * Creates a codec that optionally decodes typed data lists as views over the message and reuses
+     * decoded strings, see {@link #StandardMessageCodec(boolean, boolean)}, and optionally decodes
+     * lists and maps lazily.
+     *
+     * <p>When {@code decodeCollectionsLazily} is true, lists and maps are decoded as read-only
+     * {@link List} and {@link Map} views over the message that record where their elements are
+     * and decode each element only when it is first accessed. A handler that reads one field of a
+     * large nested map then decodes only that field. A list or map that ends the message, such as
+     * the arguments of a method call, is not even scanned until it is accessed, so a corrupted one
+     * is reported by the first access rather than by the decode call.</p>
+     *
+     * <p>Such views share memory with the message and are only valid while the message is, like
+     * typed data views, see {@link #StandardMessageCodec(boolean)}. They are not thread safe.</p>
+     */
+    public StandardMessageCodec(boolean decodeTypedDataAsViews, boolean internDecodedStrings,
+        boolean decodeCollectionsLazily) {
+        this.decodeTypedDataAsViews = decodeTypedDataAsViews;
+        this.stringCache = internDecodedStrings ? new StringInternCache() : null;
+        this.decodeCollectionsLazily = decodeCollectionsLazily;
+    }
+
     @Override
     public ByteBuffer encodeMessage(Object message) {
         if (message == null) {
             return null;
         }
-        final ExposedByteArrayOutputStream stream = new ExposedByteArrayOutputStream();
-        writeValue(stream, message);
-        final ByteBuffer buffer = ByteBuffer.allocateDirect(stream.size());
-        buffer.put(stream.buffer(), 0, stream.size());
-        return buffer;
+        final DirectByteBufferOutputStream stream = DirectByteBufferOutputStream.open();
+        try {
+            stream.sizeOnGrowth(this, 0, message);
+            writeValue(stream, message);
+            return stream.finish();
+        } finally {
+            stream.release();
+        }
     }
 
     @Override
@@ -83,29 +177,46 @@ public class StandardMessageCodec implements MessageCodec<Object> {
             return null;
         }
         message.order(ByteOrder.nativeOrder());
-        final Object value = readValue(message);
+        final Object value = readTrailingValue(message);
         if (message.hasRemaining()) {
             throw new IllegalArgumentException("Message corrupted");
         }
         return value;
     }
 
+    /**
+     * Returns whether decoded values may share memory with the message, which is the case when
+     * typed data is decoded as views or collections are decoded lazily.
+     */
+    boolean decodesIntoMessage() {
+        return decodeTypedDataAsViews || decodeCollectionsLazily;
+    }
+
+    /**
+     * Returns whether decoded values are known to be copied out of the message entirely, which
+     * only holds for this class itself: subclasses may decode their own types into views.
+     */
+    boolean copiesDecodedValues() {
+        return !decodesIntoMessage() && getClass() == StandardMessageCodec.class;
+    }
+
     private static final boolean LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
     private static final Charset UTF8 = Charset.forName("UTF8");
-    private static final byte NULL = 0;
-    private static final byte TRUE = 1;
-    private static final byte FALSE = 2;
-    private static final byte INT = 3;
-    private static final byte LONG = 4;
-    private static final byte BIGINT = 5;
-    private static final byte DOUBLE = 6;
-    private static final byte STRING = 7;
-    private static final byte BYTE_ARRAY = 8;
-    private static final byte INT_ARRAY = 9;
-    private static final byte LONG_ARRAY = 10;
-    private static final byte DOUBLE_ARRAY = 11;
-    private static final byte LIST = 12;
-    private static final byte MAP = 13;
+    // The type bytes are package-private for TypedMessageCodec, which writes the same format.
+    static final byte NULL = 0;
+    static final byte TRUE = 1;
+    static final byte FALSE = 2;
+    static final byte INT = 3;
+    static final byte LONG = 4;
+    static final byte BIGINT = 5;
+    static final byte DOUBLE = 6;
+    static final byte STRING = 7;
+    static final byte BYTE_ARRAY = 8;
+    static final byte INT_ARRAY = 9;
+    static final byte LONG_ARRAY = 10;
+    static final byte DOUBLE_ARRAY = 11;
+    static final byte LIST = 12;
+    static final byte MAP = 13;
 
     /**
      * Writes an int representing a size to the specified stream.
@@ -131,7 +242,9 @@ public class StandardMessageCodec implements MessageCodec<Object> {
      * specified stream.
      */
     protected static final void writeChar(ByteArrayOutputStream stream, int value) {
-        if (LITTLE_ENDIAN) {
+        if (stream instanceof DirectByteBufferOutputStream) {
+            ((DirectByteBufferOutputStream) stream).putChar((char) value);
+        } else if (LITTLE_ENDIAN) {
             stream.write(value);
             stream.write(value >>> 8);
         } else {
@@ -144,7 +257,9 @@ public class StandardMessageCodec implements MessageCodec<Object> {
      * Writes the specified int as 4 bytes to the specified stream.
      */
     protected static final void writeInt(ByteArrayOutputStream stream, int value) {
-        if (LITTLE_ENDIAN) {
+        if (stream instanceof DirectByteBufferOutputStream) {
+            ((DirectByteBufferOutputStream) stream).putInt(value);
+        } else if (LITTLE_ENDIAN) {
             stream.write(value);
             stream.write(value >>> 8);
             stream.write(value >>> 16);
@@ -161,7 +276,9 @@ public class StandardMessageCodec implements MessageCodec<Object> {
      * Writes the specified long as 8 bytes to the specified stream.
      */
     protected static final void writeLong(ByteArrayOutputStream stream, long value) {
-        if (LITTLE_ENDIAN) {
+        if (stream instanceof DirectByteBufferOutputStream) {
+            ((DirectByteBufferOutputStream) stream).putLong(value);
+        } else if (LITTLE_ENDIAN) {
             stream.write((byte) value);
             stream.write((byte) (value >>> 8));
             stream.write((byte) (value >>> 16));
@@ -198,6 +315,88 @@ public class StandardMessageCodec implements MessageCodec<Object> {
         stream.write(bytes, 0, bytes.length);
     }
 
+    /**
+     * Writes the specified ints as 4 bytes each to the specified stream.
+     */
+    protected static final void writeInts(ByteArrayOutputStream stream, int[] values) {
+        if (stream instanceof DirectByteBufferOutputStream) {
+            ((DirectByteBufferOutputStream) stream).putInts(values);
+        } else {
+            for (final int n : values) {
+                writeInt(stream, n);
+            }
+        }
+    }
+
+    /**
+     * Writes the specified longs as 8 bytes each to the specified stream.
+     */
+    protected static final void writeLongs(ByteArrayOutputStream stream, long[] values) {
+        if (stream instanceof DirectByteBufferOutputStream) {
+            ((DirectByteBufferOutputStream) stream).putLongs(values);
+        } else {
+            for (final long n : values) {
+                writeLong(stream, n);
+            }
+        }
+    }
+
+    /**
+     * Writes the specified floats, widened to doubles, as 8 bytes each to the specified stream.
+     */
+    protected static final void writeFloatsAsDoubles(ByteArrayOutputStream stream, float[] values) {
+        if (stream instanceof DirectByteBufferOutputStream) {
+            ((DirectByteBufferOutputStream) stream).putFloatsAsDoubles(values);
+        } else {
+            for (final float f : values) {
+                writeDouble(stream, f);
+            }
+        }
+    }
+
+    /**
+     * Writes the specified doubles as 8 bytes each to the specified stream.
+     */
+    protected static final void writeDoubles(ByteArrayOutputStream stream, double[] values) {
+        if (stream instanceof DirectByteBufferOutputStream) {
+            ((DirectByteBufferOutputStream) stream).putDoubles(values);
+        } else {
+            for (final double d : values) {
+                writeDouble(stream, d);
+            }
+        }
+    }
+
+    /**
+     * Writes a String as UTF-8 to the specified stream, preceded by its byte length, without
+     * encoding it into an intermediate byte array first when possible.
+     */
+    static void writeString(ByteArrayOutputStream stream, String value) {
+        if (stream instanceof DirectByteBufferOutputStream) {
+            final int length = Utf8.encodedLength(value);
+            writeSize(stream, length);
+            Utf8.encode(value, ((DirectByteBufferOutputStream) stream).reserve(length));
+        } else {
+            writeBytes(stream, value.getBytes(UTF8));
+        }
+    }
+
+    /**
+     * Writes the remaining bytes of the specified buffer to the specified stream, consuming them.
+     */
+    private static void writeBuffer(ByteArrayOutputStream stream, ByteBuffer data) {
+        if (stream instanceof DirectByteBufferOutputStream) {
+            ((DirectByteBufferOutputStream) stream).put(data);
+        } else if (data.hasArray()) {
+            stream.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+            data.position(data.limit());
+        } else {
+            while (data.hasRemaining()) {
+                stream.write(data.get());
+            }
+        }
+    }
+
     /**
      * Writes a number of padding bytes to the specified stream to ensure that
      * the next value is aligned to a whole multiple of the specified alignment.
@@ -247,7 +446,7 @@ public class StandardMessageCodec implements MessageCodec<Object> {
             }
         } else if (value instanceof String) {
             stream.write(STRING);
-            writeBytes(stream, ((String) value).getBytes(UTF8));
+            writeString(stream, (String) value);
         } else if (value instanceof byte[]) {
             stream.write(BYTE_ARRAY);
             writeBytes(stream, (byte[]) value);
@@ -256,24 +455,77 @@ public class StandardMessageCodec implements MessageCodec<Object> {
             final int[] array = (int[]) value;
             writeSize(stream, array.length);
             writeAlignment(stream, 4);
-            for (final int n : array) {
-                writeInt(stream, n);
-            }
+            writeInts(stream, array);
         } else if (value instanceof long[]) {
             stream.write(LONG_ARRAY);
             final long[] array = (long[]) value;
             writeSize(stream, array.length);
             writeAlignment(stream, 8);
-            for (final long n : array) {
-                writeLong(stream, n);
-            }
+            writeLongs(stream, array);
+        } else if (value instanceof float[]) {
+            stream.write(DOUBLE_ARRAY);
+            final float[] array = (float[]) value;
+            writeSize(stream, array.length);
+            writeAlignment(stream, 8);
+            writeFloatsAsDoubles(stream, array);
         } else if (value instanceof double[]) {
             stream.write(DOUBLE_ARRAY);
             final double[] array = (double[]) value;
             writeSize(stream, array.length);
             writeAlignment(stream, 8);
-            for (final double d : array) {
-                writeDouble(stream, d);
+            writeDoubles(stream, array);
+        } else if (value instanceof ByteBuffer) {
+            stream.write(BYTE_ARRAY);
+            final ByteBuffer data = ((ByteBuffer) value).duplicate();
+            writeSize(stream, data.remaining());
+            writeBuffer(stream, data);
+        } else if (value instanceof IntBuffer) {
+            stream.write(INT_ARRAY);
+            final IntBuffer data = ((IntBuffer) value).duplicate();
+            writeSize(stream, data.remaining());
+            writeAlignment(stream, 4);
+            if (stream instanceof DirectByteBufferOutputStream) {
+                ((DirectByteBufferOutputStream) stream).putInts(data);
+            } else {
+                while (data.hasRemaining()) {
+                    writeInt(stream, data.get());
+                }
+            }
+        } else if (value instanceof LongBuffer) {
+            stream.write(LONG_ARRAY);
+            final LongBuffer data = ((LongBuffer) value).duplicate();
+            writeSize(stream, data.remaining());
+            writeAlignment(stream, 8);
+            if (stream instanceof DirectByteBufferOutputStream) {
+                ((DirectByteBufferOutputStream) stream).putLongs(data);
+            } else {
+                while (data.hasRemaining()) {
+                    writeLong(stream, data.get());
+                }
+            }
+        } else if (value instanceof FloatBuffer) {
+            stream.write(DOUBLE_ARRAY);
+            final FloatBuffer data = ((FloatBuffer) value).duplicate();
+            writeSize(stream, data.remaining());
+            writeAlignment(stream, 8);
+            if (stream instanceof DirectByteBufferOutputStream) {
+                ((DirectByteBufferOutputStream) stream).putFloatsAsDoubles(data);
+            } else {
+                while (data.hasRemaining()) {
+                    writeDouble(stream, data.get());
+                }
+            }
+        } else if (value instanceof DoubleBuffer) {
+            stream.write(DOUBLE_ARRAY);
+            final DoubleBuffer data = ((DoubleBuffer) value).duplicate();
+            writeSize(stream, data.remaining());
+            writeAlignment(stream, 8);
+            if (stream instanceof DirectByteBufferOutputStream) {
+                ((DirectByteBufferOutputStream) stream).putDoubles(data);
+            } else {
+                while (data.hasRemaining()) {
+                    writeDouble(stream, data.get());
+                }
             }
         } else if (value instanceof List) {
             stream.write(LIST);
@@ -295,6 +547,130 @@ public class StandardMessageCodec implements MessageCodec<Object> {
         }
     }
 
+    /**
+     * Returns the stream size after {@link #writeValue(ByteArrayOutputStream, Object)} writes the
+     * specified value into a stream holding {@code position} bytes, counting alignment padding.
+     *
+     * <p>Sizing walks the value much like writing it does, which only pays off for values made of
+     * a few large parts, such as typed data, long strings, or small maps of those. Values with more
+     * than {@link #MAX_SIZED_VALUES} nested values are therefore not sized.</p>
+     *
+     * <p>Returns -1 if {@code position} is -1, if this codec is a subclass, whose writeValue may
+     * encode values differently, if the value has too many nested values, or if it contains an
+     * unsupported type. Callers then encode into a stream that grows as needed instead.</p>
+     */
+    int sizeValue(int position, Object value) {
+        if (!sizesMessages || position < 0) {
+            return -1;
+        }
+        return new Sizer().endOf(position, value);
+    }
+
+    // Walking more values than this to size a message costs more than growing the buffer saves.
+    static final int MAX_SIZED_VALUES = 32;
+
+    // Mirrors writeValue, and must be kept in sync with it.
+    private static final class Sizer {
+        private int remainingValues = MAX_SIZED_VALUES;
+
+        int endOf(int position, Object value) {
+            if (--remainingValues < 0) {
+                return -1;
+            }
+            position++;
+            if (value == null || value == Boolean.TRUE || value == Boolean.FALSE) {
+                return position;
+            } else if (value instanceof Number) {
+                if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                    return position + 4;
+                } else if (value instanceof Long) {
+                    return position + 8;
+                } else if (value instanceof Float || value instanceof Double) {
+                    return align(position, 8) + 8;
+                } else if (value instanceof BigInteger) {
+                    // The hexadecimal digits are ASCII, one byte each.
+                    return endOfBytes(position, ((BigInteger) value).toString(16).length());
+                }
+                return -1;
+            } else if (value instanceof String) {
+                return endOfBytes(position, Utf8.encodedLength((String) value));
+            } else if (value instanceof byte[]) {
+                return endOfBytes(position, ((byte[]) value).length);
+            } else if (value instanceof int[]) {
+                return endOfArray(position, ((int[]) value).length, 4);
+            } else if (value instanceof long[]) {
+                return endOfArray(position, ((long[]) value).length, 8);
+            } else if (value instanceof float[]) {
+                return endOfArray(position, ((float[]) value).length, 8);
+            } else if (value instanceof double[]) {
+                return endOfArray(position, ((double[]) value).length, 8);
+            } else if (value instanceof ByteBuffer) {
+                return endOfBytes(position, ((ByteBuffer) value).remaining());
+            } else if (value instanceof IntBuffer) {
+                return endOfArray(position, ((IntBuffer) value).remaining(), 4);
+            } else if (value instanceof LongBuffer) {
+                return endOfArray(position, ((LongBuffer) value).remaining(), 8);
+            } else if (value instanceof FloatBuffer) {
+                return endOfArray(position, ((FloatBuffer) value).remaining(), 8);
+            } else if (value instanceof DoubleBuffer) {
+                return endOfArray(position, ((DoubleBuffer) value).remaining(), 8);
+            } else if (value instanceof List) {
+                final List<?> list = (List) value;
+                if (list.size() > remainingValues) {
+                    return -1;
+                }
+                position += sizeOfSize(list.size());
+                for (final Object o : list) {
+                    position = endOf(position, o);
+                    if (position < 0) {
+                        return -1;
+                    }
+                }
+                return position;
+            } else if (value instanceof Map) {
+                final Map<?, ?> map = (Map) value;
+                if (2 * map.size() > remainingValues) {
+                    return -1;
+                }
+                position += sizeOfSize(map.size());
+                for (final Entry<?, ?> entry : map.entrySet()) {
+                    position = endOf(position, entry.getKey());
+                    if (position < 0) {
+                        return -1;
+                    }
+                    position = endOf(position, entry.getValue());
+                    if (position < 0) {
+                        return -1;
+                    }
+                }
+                return position;
+            }
+            return -1;
+        }
+    }
+
+    private static int endOfBytes(int position, int length) {
+        return position + sizeOfSize(length) + length;
+    }
+
+    private static int endOfArray(int position, int length, int elementSize) {
+        return align(position + sizeOfSize(length), elementSize) + length * elementSize;
+    }
+
+    // The number of bytes writeSize writes for the specified value.
+    private static int sizeOfSize(int value) {
+        if (value < 254) {
+            return 1;
+        }
+        return value <= 0xffff ? 3 : 5;
+    }
+
+    // The position after the padding writeAlignment writes at the specified position.
+    private static int align(int position, int alignment) {
+        final int mod = position % alignment;
+        return mod == 0 ? position : position + alignment - mod;
+    }
+
     /**
      * Reads an int representing a size as written by writeSize.
      */
@@ -312,6 +688,11 @@ public class StandardMessageCodec implements MessageCodec<Object> {
         }
     }
 
+    // Returns a HashMap capacity that fits the given number of entries without rehashing.
+    private static int capacityFor(int entries) {
+        return entries < 3 ? entries + 1 : (int) (entries / 0.75f + 1.0f);
+    }
+
     /**
      * Reads a byte array as written by writeBytes.
      */
@@ -322,6 +703,20 @@ public class StandardMessageCodec implements MessageCodec<Object> {
         return bytes;
     }
 
+    /**
+     * Returns a read-only, native-order view of the next {@code length} bytes of the specified
+     * buffer and advances the buffer past them.
+     */
+    private static ByteBuffer readView(ByteBuffer buffer, int length) {
+        if (length > buffer.remaining()) {
+            throw new IllegalArgumentException("Message corrupted");
+        }
+        final ByteBuffer view = buffer.slice();
+        view.limit(length);
+        buffer.position(buffer.position() + length);
+        return view.asReadOnlyBuffer().order(ByteOrder.nativeOrder());
+    }
+
     /**
      * Reads alignment padding bytes as written by writeAlignment.
      */
@@ -343,6 +738,102 @@ public class StandardMessageCodec implements MessageCodec<Object> {
         return readValueOfType(type, buffer);
     }
 
+    /**
+     * Reads a value that ends the message, as written by writeValue. A list or map is then known
+     * to extend to the limit of the buffer, so when decoding lazily its view is returned without
+     * scanning it.
+     */
+    final Object readTrailingValue(ByteBuffer buffer) {
+        if (decodeCollectionsLazily && buffer.hasRemaining()) {
+            final int position = buffer.position();
+            final byte type = buffer.get(position);
+            if (type == LIST || type == MAP) {
+                buffer.position(buffer.limit());
+                return LazyCollections.view(this, buffer, type, position + 1, buffer.limit());
+            }
+        }
+        return readValue(buffer);
+    }
+
+    /**
+     * Advances the buffer past a value as written by writeValue, without decoding it.
+     */
+    final void skipValue(ByteBuffer buffer) {
+        if (!buffer.hasRemaining()) {
+            throw new IllegalArgumentException("Message corrupted");
+        }
+        skipValueOfType(buffer.get(), buffer);
+    }
+
+    private void skipValueOfType(byte type, ByteBuffer buffer) {
+        switch (type) {
+            case NULL:
+            case TRUE:
+            case FALSE:
+                break;
+            case INT:
+                skipBytes(buffer, 4);
+                break;
+            case LONG:
+                skipBytes(buffer, 8);
+                break;
+            case DOUBLE:
+                readAlignment(buffer, 8);
+                skipBytes(buffer, 8);
+                break;
+            case BIGINT:
+            case STRING:
+            case BYTE_ARRAY:
+                skipBytes(buffer, readSize(buffer));
+                break;
+            case INT_ARRAY: {
+                final int length = readSize(buffer);
+                readAlignment(buffer, 4);
+                skipBytes(buffer, 4L * length);
+                break;
+            }
+            case LONG_ARRAY:
+            case DOUBLE_ARRAY: {
+                final int length = readSize(buffer);
+                readAlignment(buffer, 8);
+                skipBytes(buffer, 8L * length);
+                break;
+            }
+            case LIST: {
+                final int size = readSize(buffer);
+                for (int i = 0; i < size; i++) {
+                    skipValue(buffer);
+                }
+                break;
+            }
+            case MAP: {
+                final int size = readSize(buffer);
+                for (int i = 0; i < size; i++) {
+                    skipValue(buffer);
+                    skipValue(buffer);
+                }
+                break;
+            }
+            default:
+                // Types added by subclasses can only be skipped by reading them.
+                readValueOfType(type, buffer);
+        }
+    }
+
+    private static void skipBytes(ByteBuffer buffer, long length) {
+        if (length > buffer.remaining()) {
+            throw new IllegalArgumentException("Message corrupted");
+        }
+        buffer.position(buffer.position() + (int) length);
+    }
+
+    // Skips a list or map whose type byte has been read and returns a view of it.
+    private Object readCollectionLazily(byte type, ByteBuffer buffer) {
+        final int start = buffer.position();
+        skipValueOfType(type, buffer);
+        return LazyCollections.view(this, buffer, type, start, buffer.position());
+    }
+
     /**
      * Reads a value of the specified type.
      *
@@ -377,16 +868,27 @@ public class StandardMessageCodec implements MessageCodec<Object> {
                 result = buffer.getDouble();
                 break;
             case STRING: {
-                final byte[] bytes = readBytes(buffer);
-                result = new String(bytes, UTF8);
+                final int length = readSize(buffer);
+                result = stringCache == null
+                    ? Utf8.decode(buffer, length)
+                    : stringCache.decode(buffer, length);
                 break;
             }
             case BYTE_ARRAY: {
-                result = readBytes(buffer);
+                if (decodeTypedDataAsViews) {
+                    result = readView(buffer, readSize(buffer));
+                } else {
+                    result = readBytes(buffer);
+                }
                 break;
             }
             case INT_ARRAY: {
                 final int length = readSize(buffer);
+                if (decodeTypedDataAsViews) {
+                    readAlignment(buffer, 4);
+                    result = readView(buffer, 4 * length).asIntBuffer();
+                    break;
+                }
                 final int[] array = new int[length];
                 readAlignment(buffer, 4);
                 buffer.asIntBuffer().get(array);
@@ -396,6 +898,11 @@ public class StandardMessageCodec implements MessageCodec<Object> {
             }
             case LONG_ARRAY: {
                 final int length = readSize(buffer);
+                if (decodeTypedDataAsViews) {
+                    readAlignment(buffer, 8);
+                    result = readView(buffer, 8 * length).asLongBuffer();
+                    break;
+                }
                 final long[] array = new long[length];
                 readAlignment(buffer, 8);
                 buffer.asLongBuffer().get(array);
@@ -405,6 +912,11 @@ public class StandardMessageCodec implements MessageCodec<Object> {
             }
             case DOUBLE_ARRAY: {
                 final int length = readSize(buffer);
+                if (decodeTypedDataAsViews) {
+                    readAlignment(buffer, 8);
+                    result = readView(buffer, 8 * length).asDoubleBuffer();
+                    break;
+                }
                 final double[] array = new double[length];
                 readAlignment(buffer, 8);
                 buffer.asDoubleBuffer().get(array);
@@ -413,6 +925,10 @@ public class StandardMessageCodec implements MessageCodec<Object> {
                 break;
             }
             case LIST: {
+                if (decodeCollectionsLazily) {
+                    result = readCollectionLazily(type, buffer);
+                    break;
+                }
                 final int size = readSize(buffer);
                 final List<Object> list = new ArrayList<>(size);
                 for (int i = 0; i < size; i++) {
@@ -422,8 +938,15 @@ public class StandardMessageCodec implements MessageCodec<Object> {
                 break;
             }
             case MAP: {
+                if (decodeCollectionsLazily) {
+                    result = readCollectionLazily(type, buffer);
+                    break;
+                }
                 final int size = readSize(buffer);
-                final Map<Object, Object> map = new HashMap<>();
+                // Presized for the entries, each of which takes at least two bytes, so that a
+                // corrupted size cannot make it huge.
+                final Map<Object, Object> map =
+                    new HashMap<>(capacityFor(Math.min(size, buffer.remaining() / 2)));
                 for (int i = 0; i < size; i++) {
                     map.put(readValue(buffer), readValue(buffer));
                 }
@@ -435,9 +958,283 @@ public class StandardMessageCodec implements MessageCodec<Object> {
         return result;
     }
 
-    static final class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
-        byte[] buffer() {
-            return buf;
+    /**
+     * A {@link ByteArrayOutputStream} that writes directly into a direct-allocated {@link ByteBuffer}
+     * obtained from {@link DirectByteBufferPool#INSTANCE}, instead of into the inherited byte array.
+     *
+     * <p>Streams are reused per thread. Obtain one with {@link #open()}, write the message, call
+     * {@link #finish()} to take the encoded buffer, and always call {@link #release()} afterwards.</p>
+     */
+    static final class DirectByteBufferOutputStream extends ByteArrayOutputStream {
+        private static final int INITIAL_CAPACITY = 256;
+        private static final ThreadLocal<DirectByteBufferOutputStream> CACHE =
+            new ThreadLocal<DirectByteBufferOutputStream>() {
+                @Override
+                protected DirectByteBufferOutputStream initialValue() {
+                    return new DirectByteBufferOutputStream();
+                }
+            };
+
+        private ByteBuffer buffer;
+        private boolean inUse;
+        // The values to size on the first growth, see sizeOnGrowth.
+        private StandardMessageCodec sizingCodec;
+        private int sizingStart;
+        private int sizingValueCount;
+        private Object firstSizingValue;
+        private Object secondSizingValue;
+
+        private DirectByteBufferOutputStream() {
+            super(0);
+        }
+
+        /**
+         * Returns an empty stream for the current thread, creating a new one if the thread's cached
+         * stream is already in use, for instance by a reentrant encode.
+         */
+        static DirectByteBufferOutputStream open() {
+            return open(-1);
+        }
+
+        /**
+         * Returns an empty stream, like {@link #open()}, with room for exactly {@code expectedSize}
+         * bytes when it is known up front, so that writing them never grows and copies the buffer.
+         * The stream still grows if more bytes are written.
+         *
+         * @param expectedSize the number of bytes that will be written, or -1 if unknown.
+         */
+        static DirectByteBufferOutputStream open(int expectedSize) {
+            DirectByteBufferOutputStream stream = CACHE.get();
+            if (stream.inUse) {
+                stream = new DirectByteBufferOutputStream();
+            }
+            stream.inUse = true;
+            stream.buffer = DirectByteBufferPool.INSTANCE.obtain(
+                expectedSize < 0 ? INITIAL_CAPACITY : Math.max(expectedSize, 1));
+            return stream;
+        }
+
+        /**
+         * Hands out the encoded bytes with both position and limit at the end of the written bytes.
+         * The buffer is not leased, so it belongs to the caller. The stream must not be written to
+         * afterwards.
+         */
+        ByteBuffer finish() {
+            final ByteBuffer result = buffer;
+            buffer = null;
+            clearSizing();
+            result.limit(result.position());
+            return result;
+        }
+
+        /**
+         * Makes this stream available for reuse, recycling its buffer if {@link #finish()} was not
+         * called.
+         */
+        void release() {
+            if (buffer != null) {
+                DirectByteBufferPool.INSTANCE.recycle(buffer);
+                buffer = null;
+            }
+            clearSizing();
+            inUse = false;
+        }
+
+        /**
+         * Sizes the message with {@link StandardMessageCodec#sizeValue(int, Object)} the first time
+         * it outgrows {@link DirectByteBufferPool#maxPooledCapacity()}, and grows the buffer once,
+         * straight to that size, instead of doubling it repeatedly.
+         *
+         * <p>Smaller messages are never sized: growing them reuses pooled buffers, which costs less
+         * than walking the value twice, while beyond the pooled sizes every doubling allocates a
+         * new direct buffer.</p>
+         *
+         * @param start the number of bytes written before {@code value}.
+         * @param value the value that ends the message.
+         */
+        void sizeOnGrowth(StandardMessageCodec codec, int start, Object value) {
+            setSizing(codec, start, 1, value, null);
+        }
+
+        /**
+         * Like {@link #sizeOnGrowth(StandardMessageCodec, int, Object)}, for messages that end with
+         * two values.
+         */
+        void sizeOnGrowth(StandardMessageCodec codec, int start, Object first, Object second) {
+            setSizing(codec, start, 2, first, second);
+        }
+
+        private void setSizing(StandardMessageCodec codec, int start, int valueCount, Object first, Object second) {
+            sizingCodec = codec;
+            sizingStart = start;
+            sizingValueCount = valueCount;
+            firstSizingValue = first;
+            secondSizingValue = second;
+        }
+
+        // Drops the references to the sized values, which this cached stream must not retain.
+        private void clearSizing() {
+            setSizing(null, 0, 0, null, null);
+        }
+
+        private void ensureCapacity(int additional) {
+            final int required = buffer.position() + additional;
+            if (required <= buffer.capacity()) {
+                return;
+            }
+            int capacity = Math.max(required, buffer.capacity() << 1);
+            if (sizingCodec != null && required > DirectByteBufferPool.maxPooledCapacity()) {
+                int size = sizingCodec.sizeValue(sizingStart, firstSizingValue);
+                if (sizingValueCount == 2) {
+                    size = sizingCodec.sizeValue(size, secondSizingValue);
+                }
+                clearSizing();
+                // A value that changed since writing started may need more room than it was sized.
+                if (size >= required) {
+                    capacity = size;
+                }
+            }
+            final ByteBuffer grown = DirectByteBufferPool.INSTANCE.obtain(capacity);
+            buffer.flip();
+            grown.put(buffer);
+            DirectByteBufferPool.INSTANCE.recycle(buffer);
+            buffer = grown;
+        }
+
+        /**
+         * Makes room for {@code additional} more bytes and returns the underlying buffer, positioned
+         * at the end of the written bytes, to put them into directly. The returned buffer may be
+         * replaced by any later write.
+         */
+        ByteBuffer reserve(int additional) {
+            ensureCapacity(additional);
+            return buffer;
+        }
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(1);
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(len);
+            buffer.put(b, off, len);
+        }
+
+        public void writeBytes(byte[] b) {
+            write(b, 0, b.length);
+        }
+
+        void putChar(char value) {
+            ensureCapacity(2);
+            buffer.putChar(value);
+        }
+
+        void putInt(int value) {
+            ensureCapacity(4);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) {
+            ensureCapacity(8);
+            buffer.putLong(value);
+        }
+
+        // The bulk puts below copy a whole array through a view buffer and then advance the
+        // position of the backing buffer past the copied bytes.
+
+        void putInts(int[] values) {
+            ensureCapacity(4 * values.length);
+            buffer.asIntBuffer().put(values);
+            buffer.position(buffer.position() + 4 * values.length);
+        }
+
+        void putLongs(long[] values) {
+            ensureCapacity(8 * values.length);
+            buffer.asLongBuffer().put(values);
+            buffer.position(buffer.position() + 8 * values.length);
+        }
+
+        void putFloatsAsDoubles(float[] values) {
+            ensureCapacity(8 * values.length);
+            for (final float f : values) {
+                buffer.putDouble(f);
+            }
+        }
+
+        void putDoubles(double[] values) {
+            ensureCapacity(8 * values.length);
+            buffer.asDoubleBuffer().put(values);
+            buffer.position(buffer.position() + 8 * values.length);
+        }
+
+        void put(ByteBuffer values) {
+            ensureCapacity(values.remaining());
+            buffer.put(values);
+        }
+
+        void putInts(IntBuffer values) {
+            final int count = values.remaining();
+            ensureCapacity(4 * count);
+            buffer.asIntBuffer().put(values);
+            buffer.position(buffer.position() + 4 * count);
+        }
+
+        void putLongs(LongBuffer values) {
+            final int count = values.remaining();
+            ensureCapacity(8 * count);
+            buffer.asLongBuffer().put(values);
+            buffer.position(buffer.position() + 8 * count);
+        }
+
+        void putFloatsAsDoubles(FloatBuffer values) {
+            ensureCapacity(8 * values.remaining());
+            while (values.hasRemaining()) {
+                buffer.putDouble(values.get());
+            }
+        }
+
+        void putDoubles(DoubleBuffer values) {
+            final int count = values.remaining();
+            ensureCapacity(8 * count);
+            buffer.asDoubleBuffer().put(values);
+            buffer.position(buffer.position() + 8 * count);
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            out.write(toByteArray());
+        }
+
+        @Override
+        public void reset() {
+            buffer.clear();
+        }
+
+        @Override
+        public int size() {
+            return buffer.position();
+        }
+
+        @Override
+        public byte[] toByteArray() {
+            final byte[] bytes = new byte[buffer.position()];
+            final ByteBuffer view = buffer.duplicate();
+            view.flip();
+            view.get(bytes);
+            return bytes;
+        }
+
+        @Override
+        public String toString() {
+            return new String(toByteArray());
+        }
+
+        @Override
+        public String toString(String charsetName) throws UnsupportedEncodingException {
+            return new String(toByteArray(), charsetName);
         }
     }
 }
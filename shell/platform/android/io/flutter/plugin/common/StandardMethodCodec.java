@@ -4,7 +4,10 @@
 
 package io.flutter.plugin.common;
 
-import io.flutter.plugin.common.StandardMessageCodec.ExposedByteArrayOutputStream;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import io.flutter.plugin.common.StandardMessageCodec.DirectByteBufferOutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
@@ -29,48 +32,112 @@ public final class StandardMethodCodec implements MethodCodec {
       this.messageCodec = messageCodec;
     }
 
+    /**
+     * Returns the message codec that encodes method names, arguments and results.
+     */
+    @NonNull
+    StandardMessageCodec getMessageCodec() {
+        return messageCodec;
+    }
+
     @Override
     public ByteBuffer encodeMethodCall(MethodCall methodCall) {
-        final ExposedByteArrayOutputStream stream = new ExposedByteArrayOutputStream();
-        messageCodec.writeValue(stream, methodCall.method);
-        messageCodec.writeValue(stream, methodCall.arguments);
-        final ByteBuffer buffer = ByteBuffer.allocateDirect(stream.size());
-        buffer.put(stream.buffer(), 0, stream.size());
-        return buffer;
+        final DirectByteBufferOutputStream stream = DirectByteBufferOutputStream.open();
+        try {
+            stream.sizeOnGrowth(messageCodec, 0, methodCall.method, methodCall.arguments);
+            messageCodec.writeValue(stream, methodCall.method);
+            messageCodec.writeValue(stream, methodCall.arguments);
+            return stream.finish();
+        } finally {
+            stream.release();
+        }
     }
 
     @Override
     public MethodCall decodeMethodCall(ByteBuffer methodCall) {
         methodCall.order(ByteOrder.nativeOrder());
         final Object method = messageCodec.readValue(methodCall);
-        final Object arguments = messageCodec.readValue(methodCall);
+        final Object arguments = messageCodec.readTrailingValue(methodCall);
         if (method instanceof String && !methodCall.hasRemaining()) {
             return new MethodCall((String) method, arguments);
         }
         throw new IllegalArgumentException("Method call corrupted");
     }
 
+    /**
+     * Decodes the method name of an encoded method call and leaves the buffer positioned at the
+     * encoded arguments, which are not read. They may then be decoded with
+     * {@link #decodeArguments(ByteBuffer)} or {@link #decodeArguments(ByteBuffer, MessageCodec)}.
+     *
+     * @throws IllegalArgumentException if the method call is corrupted.
+     */
+    @NonNull
+    public String decodeMethodName(ByteBuffer methodCall) {
+        methodCall.order(ByteOrder.nativeOrder());
+        final Object method = messageCodec.readValue(methodCall);
+        if (method instanceof String) {
+            return (String) method;
+        }
+        throw new IllegalArgumentException("Method call corrupted");
+    }
+
+    /**
+     * Decodes the arguments of a method call whose name has been decoded by
+     * {@link #decodeMethodName(ByteBuffer)}, using the message codec of this codec.
+     *
+     * @throws IllegalArgumentException if the method call is corrupted.
+     */
+    @Nullable
+    public Object decodeArguments(ByteBuffer methodCall) {
+        final Object arguments = messageCodec.readTrailingValue(methodCall);
+        if (methodCall.hasRemaining()) {
+            throw new IllegalArgumentException("Method call corrupted");
+        }
+        return arguments;
+    }
+
+    /**
+     * Decodes the arguments of a method call whose name has been decoded by
+     * {@link #decodeMethodName(ByteBuffer)}, using {@code argumentCodec}.
+     *
+     * <p>The argument codec is handed the method call itself, positioned at the arguments. They
+     * are encoded as a single value in the {@link StandardMessageCodec} format, so they can be
+     * decoded by another {@link StandardMessageCodec}, for instance one that decodes lazily, or by
+     * a {@link TypedMessageCodec} when the caller sends a value of its type.</p>
+     */
+    @Nullable
+    public <T> T decodeArguments(ByteBuffer methodCall, @NonNull MessageCodec<T> argumentCodec) {
+        return argumentCodec.decodeMessage(methodCall);
+    }
+
     @Override
     public ByteBuffer encodeSuccessEnvelope(Object result) {
-        final ExposedByteArrayOutputStream stream = new ExposedByteArrayOutputStream();
-        stream.write(0);
-        messageCodec.writeValue(stream, result);
-        final ByteBuffer buffer = ByteBuffer.allocateDirect(stream.size());
-        buffer.put(stream.buffer(), 0, stream.size());
-        return buffer;
+        final DirectByteBufferOutputStream stream = DirectByteBufferOutputStream.open();
+        try {
+            stream.sizeOnGrowth(messageCodec, 1, result);
+            stream.write(0);
+            messageCodec.writeValue(stream, result);
+            return stream.finish();
+        } finally {
+            stream.release();
+        }
     }
 
     @Override
     public ByteBuffer encodeErrorEnvelope(String errorCode, String errorMessage,
         Object errorDetails) {
-        final ExposedByteArrayOutputStream stream = new ExposedByteArrayOutputStream();
-        stream.write(1);
-        messageCodec.writeValue(stream, errorCode);
-        messageCodec.writeValue(stream, errorMessage);
-        messageCodec.writeValue(stream, errorDetails);
-        final ByteBuffer buffer = ByteBuffer.allocateDirect(stream.size());
-        buffer.put(stream.buffer(), 0, stream.size());
-        return buffer;
+        final DirectByteBufferOutputStream stream = DirectByteBufferOutputStream.open();
+        try {
+            // The error code is short, so it is sized right away.
+            stream.sizeOnGrowth(messageCodec, messageCodec.sizeValue(1, errorCode), errorMessage, errorDetails);
+            stream.write(1);
+            messageCodec.writeValue(stream, errorCode);
+            messageCodec.writeValue(stream, errorMessage);
+            messageCodec.writeValue(stream, errorDetails);
+            return stream.finish();
+        } finally {
+            stream.release();
+        }
     }
 
     @Override
@@ -79,7 +146,7 @@ public final class StandardMethodCodec implements MethodCodec {
         final byte flag = envelope.get();
         switch (flag) {
             case 0: {
-                final Object result = messageCodec.readValue(envelope);
+                final Object result = messageCodec.readTrailingValue(envelope);
                 if (!envelope.hasRemaining()) {
                     return result;
                 }
@@ -88,7 +155,7 @@ public final class StandardMethodCodec implements MethodCodec {
             case 1: {
                 final Object code = messageCodec.readValue(envelope);
                 final Object message = messageCodec.readValue(envelope);
-                final Object details = messageCodec.readValue(envelope);
+                final Object details = messageCodec.readTrailingValue(envelope);
                 if (code instanceof String
                     && (message == null || message instanceof String)
                     && !envelope.hasRemaining()) {
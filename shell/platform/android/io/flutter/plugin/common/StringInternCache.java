@@ -0,0 +1,82 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugin.common;
+
+import android.support.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A bounded cache of short strings decoded from UTF-8, keyed by their encoded bytes.
+ *
+ * <p>The cache is a direct-mapped table: each byte sequence hashes to a single slot, and a string
+ * whose slot holds another one is decoded afresh and takes the slot over. Lookups hash and compare
+ * the bytes in place in the message buffer, so a hit allocates nothing.</p>
+ *
+ * <p>This class is thread safe. Slots hold immutable entries, so racing threads can at worst
+ * replace each other's entries.</p>
+ */
+final class StringInternCache {
+    /**
+     * Strings longer than this many bytes are never cached.
+     */
+    static final int MAX_INTERNED_BYTES = 32;
+    private static final int SLOT_COUNT = 512;
+
+    private static final class Entry {
+        final int hash;
+        final byte[] bytes;
+        final String value;
+
+        Entry(int hash, byte[] bytes, String value) {
+            this.hash = hash;
+            this.bytes = bytes;
+            this.value = value;
+        }
+    }
+
+    private final Entry[] slots = new Entry[SLOT_COUNT];
+
+    /**
+     * Returns the string encoded in the next {@code length} bytes of {@code buffer}, preferably a
+     * cached instance, and advances the position past them.
+     *
+     * @throws IllegalArgumentException if the buffer has fewer than {@code length} bytes remaining.
+     */
+    @NonNull
+    String decode(@NonNull ByteBuffer buffer, int length) {
+        if (length > MAX_INTERNED_BYTES || length > buffer.remaining()) {
+            return Utf8.decode(buffer, length);
+        }
+        final int start = buffer.position();
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + buffer.get(start + i);
+        }
+        final int index = (hash ^ (hash >>> 16)) & (SLOT_COUNT - 1);
+        final Entry entry = slots[index];
+        if (entry != null && entry.hash == hash && entry.bytes.length == length
+            && matches(entry.bytes, buffer, start)) {
+            buffer.position(start + length);
+            return entry.value;
+        }
+        final byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        final String value = Utf8.decode(buffer, length);
+        slots[index] = new Entry(hash, bytes, value);
+        return value;
+    }
+
+    private static boolean matches(@NonNull byte[] bytes, @NonNull ByteBuffer buffer, int start) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != buffer.get(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
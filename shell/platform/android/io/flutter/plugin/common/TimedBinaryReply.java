@@ -0,0 +1,83 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugin.common;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.flutter.plugin.common.BinaryMessenger.BinaryReply;
+import io.flutter.plugin.common.BinaryMessenger.Cancellable;
+import io.flutter.plugin.common.BinaryMessenger.TimeoutBinaryReply;
+
+/**
+ * Times out a {@link TimeoutBinaryReply} for messengers that cannot do so themselves.
+ *
+ * <p>The reply is handed to the messenger as a plain {@link BinaryReply}. Whichever comes first of
+ * the response, the timeout posted to the main thread and {@link #cancel()} wins, and the others
+ * are ignored.</p>
+ */
+final class TimedBinaryReply implements BinaryReply, Cancellable, Runnable {
+    private static final String TAG = "TimedBinaryReply";
+
+    @NonNull
+    private final Handler mainThreadHandler = new Handler(Looper.getMainLooper());
+    @NonNull
+    private final TimeoutBinaryReply callback;
+    private final AtomicBoolean done = new AtomicBoolean();
+
+    private TimedBinaryReply(@NonNull TimeoutBinaryReply callback) {
+        this.callback = callback;
+    }
+
+    /**
+     * Sends {@code message} through {@code messenger}, calling {@code callback} with the response,
+     * or with {@link TimeoutBinaryReply#onTimeout()} if none arrives within {@code timeoutMillis}.
+     */
+    @NonNull
+    static Cancellable send(@NonNull BinaryMessenger messenger, @NonNull String channel, @Nullable ByteBuffer message,
+        @NonNull TimeoutBinaryReply callback, long timeoutMillis) {
+        if (timeoutMillis <= 0) {
+            throw new IllegalArgumentException("timeoutMillis must be positive, was " + timeoutMillis);
+        }
+        final TimedBinaryReply reply = new TimedBinaryReply(callback);
+        reply.mainThreadHandler.postDelayed(reply, timeoutMillis);
+        messenger.send(channel, message, reply);
+        return reply;
+    }
+
+    @Override
+    public void reply(@Nullable ByteBuffer reply) {
+        if (done.compareAndSet(false, true)) {
+            mainThreadHandler.removeCallbacks(this);
+            callback.reply(reply);
+        }
+    }
+
+    @Override
+    public void run() {
+        if (done.compareAndSet(false, true)) {
+            try {
+                callback.onTimeout();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Uncaught exception in binary message timeout handler", e);
+            }
+        }
+    }
+
+    @Override
+    public boolean cancel() {
+        if (done.compareAndSet(false, true)) {
+            mainThreadHandler.removeCallbacks(this);
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,256 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugin.common;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A {@link MessageCodec} for values of a single class, written field by field in the
+ * {@link StandardMessageCodec} wire format.
+ *
+ * <p>A value is encoded as an extension type byte, the number of fields as a size, and each field
+ * as a standard value, in a fixed order. This is the encoding of a list of the field values, with
+ * the type byte of a list replaced by the extension type byte. Primitive fields are written and
+ * read without boxing, and no intermediate {@link java.util.Map} or {@link java.util.List} is
+ * built. On the Dart side, a {@code StandardMessageCodec} subclass can read such a value by
+ * handling the extension type byte like a list.</p>
+ *
+ * <p>Subclasses are normally generated for classes annotated with {@link GenerateMessageCodec},
+ * but can be written by hand as well.</p>
+ *
+ * @param <T> the type of the encoded values.
+ */
+public abstract class TypedMessageCodec<T> implements MessageCodec<T> {
+    /**
+     * The smallest extension type byte. Smaller values are reserved for the standard types.
+     */
+    public static final int MIN_TYPE = 128;
+
+    /**
+     * The largest extension type byte.
+     */
+    public static final int MAX_TYPE = 255;
+
+    private final byte type;
+    private final int fieldCount;
+
+    /**
+     * Creates a codec for values with {@code fieldCount} fields, marked by the extension type byte
+     * {@code type}.
+     */
+    protected TypedMessageCodec(int type, int fieldCount) {
+        if (type < MIN_TYPE || type > MAX_TYPE) {
+            throw new IllegalArgumentException("Extension type must be between " + MIN_TYPE + " and " + MAX_TYPE);
+        }
+        this.type = (byte) type;
+        this.fieldCount = fieldCount;
+    }
+
+    /**
+     * Writes the fields of {@code value}, in order, to {@code writer}.
+     */
+    protected abstract void writeFields(@NonNull T value, @NonNull FieldWriter writer);
+
+    /**
+     * Reads the fields, in the order written by {@link #writeFields(Object, FieldWriter)}, from
+     * {@code reader} and returns the value they make up.
+     */
+    @NonNull
+    protected abstract T readFields(@NonNull FieldReader reader);
+
+    @Override
+    public ByteBuffer encodeMessage(T message) {
+        if (message == null) {
+            return null;
+        }
+        final StandardMessageCodec.DirectByteBufferOutputStream stream =
+            StandardMessageCodec.DirectByteBufferOutputStream.open();
+        try {
+            write(message, new FieldWriter(stream));
+            return stream.finish();
+        } finally {
+            stream.release();
+        }
+    }
+
+    @Override
+    public T decodeMessage(ByteBuffer message) {
+        if (message == null) {
+            return null;
+        }
+        message.order(ByteOrder.nativeOrder());
+        final T value = read(new FieldReader(message));
+        if (message.hasRemaining()) {
+            throw new IllegalArgumentException("Message corrupted");
+        }
+        return value;
+    }
+
+    private void write(@NonNull T value, @NonNull FieldWriter writer) {
+        writer.stream.write(type);
+        StandardMessageCodec.writeSize(writer.stream, fieldCount);
+        writeFields(value, writer);
+    }
+
+    @NonNull
+    private T read(@NonNull FieldReader reader) {
+        if (reader.readType() != type || StandardMessageCodec.readSize(reader.buffer) != fieldCount) {
+            throw new IllegalArgumentException("Message corrupted");
+        }
+        return readFields(reader);
+    }
+
+    /**
+     * Writes the fields of a value in the {@link StandardMessageCodec} wire format.
+     */
+    public static final class FieldWriter {
+        private final StandardMessageCodec.DirectByteBufferOutputStream stream;
+
+        private FieldWriter(StandardMessageCodec.DirectByteBufferOutputStream stream) {
+            this.stream = stream;
+        }
+
+        public void writeInt(int value) {
+            stream.write(StandardMessageCodec.INT);
+            stream.putInt(value);
+        }
+
+        public void writeLong(long value) {
+            stream.write(StandardMessageCodec.LONG);
+            stream.putLong(value);
+        }
+
+        public void writeDouble(double value) {
+            stream.write(StandardMessageCodec.DOUBLE);
+            StandardMessageCodec.writeAlignment(stream, 8);
+            StandardMessageCodec.writeDouble(stream, value);
+        }
+
+        public void writeBoolean(boolean value) {
+            stream.write(value ? StandardMessageCodec.TRUE : StandardMessageCodec.FALSE);
+        }
+
+        public void writeString(@Nullable String value) {
+            if (value == null) {
+                stream.write(StandardMessageCodec.NULL);
+                return;
+            }
+            stream.write(StandardMessageCodec.STRING);
+            StandardMessageCodec.writeString(stream, value);
+        }
+
+        /**
+         * Writes any value supported by {@link StandardMessageCodec}.
+         */
+        public void writeValue(@Nullable Object value) {
+            StandardMessageCodec.INSTANCE.writeValue(stream, value);
+        }
+
+        /**
+         * Writes a value with the given codec, or null.
+         */
+        public <V> void writeTyped(@NonNull TypedMessageCodec<V> codec, @Nullable V value) {
+            if (value == null) {
+                stream.write(StandardMessageCodec.NULL);
+                return;
+            }
+            codec.write(value, this);
+        }
+    }
+
+    /**
+     * Reads the fields of a value in the {@link StandardMessageCodec} wire format.
+     */
+    public static final class FieldReader {
+        private final ByteBuffer buffer;
+
+        private FieldReader(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        public int readInt() {
+            if (readType() != StandardMessageCodec.INT) {
+                throw new IllegalArgumentException("Expected an int");
+            }
+            return buffer.getInt();
+        }
+
+        /**
+         * Reads an integer, which Dart sends as an int when it fits 32 bits.
+         */
+        public long readLong() {
+            final byte type = readType();
+            if (type == StandardMessageCodec.INT) {
+                return buffer.getInt();
+            }
+            if (type != StandardMessageCodec.LONG) {
+                throw new IllegalArgumentException("Expected a long");
+            }
+            return buffer.getLong();
+        }
+
+        public double readDouble() {
+            if (readType() != StandardMessageCodec.DOUBLE) {
+                throw new IllegalArgumentException("Expected a double");
+            }
+            StandardMessageCodec.readAlignment(buffer, 8);
+            return buffer.getDouble();
+        }
+
+        public boolean readBoolean() {
+            final byte type = readType();
+            if (type == StandardMessageCodec.TRUE) {
+                return true;
+            }
+            if (type != StandardMessageCodec.FALSE) {
+                throw new IllegalArgumentException("Expected a boolean");
+            }
+            return false;
+        }
+
+        @Nullable
+        public String readString() {
+            final byte type = readType();
+            if (type == StandardMessageCodec.NULL) {
+                return null;
+            }
+            if (type != StandardMessageCodec.STRING) {
+                throw new IllegalArgumentException("Expected a String");
+            }
+            return Utf8.decode(buffer, StandardMessageCodec.readSize(buffer));
+        }
+
+        /**
+         * Reads any value supported by {@link StandardMessageCodec}.
+         */
+        @Nullable
+        public Object readValue() {
+            return StandardMessageCodec.INSTANCE.readValue(buffer);
+        }
+
+        /**
+         * Reads a value with the given codec, or null.
+         */
+        @Nullable
+        public <V> V readTyped(@NonNull TypedMessageCodec<V> codec) {
+            if (buffer.hasRemaining() && buffer.get(buffer.position()) == StandardMessageCodec.NULL) {
+                buffer.get();
+                return null;
+            }
+            return codec.read(this);
+        }
+
+        private byte readType() {
+            if (!buffer.hasRemaining()) {
+                throw new IllegalArgumentException("Message corrupted");
+            }
+            return buffer.get();
+        }
+    }
+}
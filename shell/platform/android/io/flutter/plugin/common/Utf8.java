@@ -0,0 +1,181 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugin.common;
+
+import android.support.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Encodes and decodes UTF-8 straight between {@link String}s and {@link ByteBuffer}s, without an
+ * intermediate byte array.
+ *
+ * <p>Malformed input is treated like {@link String#getBytes(Charset)} and
+ * {@link String#String(byte[], Charset)} treat it: unpaired surrogates are encoded as {@code '?'},
+ * and malformed byte sequences are decoded as U+FFFD.</p>
+ */
+final class Utf8 {
+    private static final Charset UTF8 = Charset.forName("UTF8");
+    private static final char REPLACEMENT_CHAR = '\uFFFD';
+    // Longer strings are decoded through a scratch array that is not kept for reuse.
+    private static final int MAX_CACHED_SCRATCH_CHARS = 4096;
+    private static final ThreadLocal<char[]> SCRATCH = new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+            return new char[256];
+        }
+    };
+
+    private Utf8() {
+    }
+
+    /**
+     * Returns the number of bytes {@link #encode(String, ByteBuffer)} writes for {@code value}.
+     */
+    static int encodedLength(@NonNull String value) {
+        final int length = value.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+            if (c < 0x800) {
+                bytes += 1;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                && Character.isLowSurrogate(value.charAt(i + 1))) {
+                // Four bytes for two chars.
+                bytes += 2;
+                i++;
+            } else if (!Character.isSurrogate(c)) {
+                bytes += 2;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes {@code value} as UTF-8 at the position of {@code buffer}, which must have room for
+     * {@link #encodedLength(String)} bytes, and advances the position past them.
+     */
+    static void encode(@NonNull String value, @NonNull ByteBuffer buffer) {
+        final int length = value.length();
+        int i = 0;
+        // Most strings sent over channels are ASCII.
+        while (i < length && value.charAt(i) < 0x80) {
+            buffer.put((byte) value.charAt(i++));
+        }
+        for (; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                && Character.isLowSurrogate(value.charAt(i + 1))) {
+                final int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    /**
+     * Reads a string from the next {@code length} UTF-8 bytes of {@code buffer} and advances the
+     * position past them.
+     *
+     * @throws IllegalArgumentException if the buffer has fewer than {@code length} bytes remaining.
+     */
+    @NonNull
+    static String decode(@NonNull ByteBuffer buffer, int length) {
+        if (length > buffer.remaining()) {
+            throw new IllegalArgumentException("Message corrupted");
+        }
+        final int start = buffer.position();
+        final int end = start + length;
+        buffer.position(end);
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + start, length, UTF8);
+        }
+        // A string has at most as many chars as its encoding has bytes.
+        char[] chars = SCRATCH.get();
+        if (chars.length < length) {
+            chars = new char[length];
+            if (length <= MAX_CACHED_SCRATCH_CHARS) {
+                SCRATCH.set(chars);
+            }
+        }
+        int count = 0;
+        int index = start;
+        while (index < end) {
+            final byte b = buffer.get(index);
+            if (b >= 0) {
+                chars[count++] = (char) b;
+                index++;
+            } else {
+                final int consumed = decodeMultiByte(buffer, index, end, chars, count);
+                index += consumed;
+                count += consumed == 4 ? 2 : 1;
+            }
+        }
+        return new String(chars, 0, count);
+    }
+
+    /**
+     * Decodes the multi-byte sequence that starts at {@code index} of {@code buffer} and ends before
+     * {@code limit} into {@code chars} at {@code count}, and returns the number of bytes consumed.
+     *
+     * <p>A sequence of four bytes is decoded into two chars, all others into one. A malformed
+     * sequence consumes only its first byte and is decoded as U+FFFD.</p>
+     */
+    static int decodeMultiByte(@NonNull ByteBuffer buffer, int index, int limit, @NonNull char[] chars, int count) {
+        final int lead = buffer.get(index) & 0xFF;
+        final int extraBytes;
+        int codePoint;
+        if ((lead & 0xE0) == 0xC0) {
+            extraBytes = 1;
+            codePoint = lead & 0x1F;
+        } else if ((lead & 0xF0) == 0xE0) {
+            extraBytes = 2;
+            codePoint = lead & 0x0F;
+        } else if ((lead & 0xF8) == 0xF0) {
+            extraBytes = 3;
+            codePoint = lead & 0x07;
+        } else {
+            chars[count] = REPLACEMENT_CHAR;
+            return 1;
+        }
+        for (int i = 1; i <= extraBytes; i++) {
+            if (index + i >= limit || (buffer.get(index + i) & 0xC0) != 0x80) {
+                chars[count] = REPLACEMENT_CHAR;
+                return 1;
+            }
+            codePoint = (codePoint << 6) | (buffer.get(index + i) & 0x3F);
+        }
+        if ((extraBytes == 1 && codePoint < 0x80)
+            || (extraBytes == 2 && (codePoint < 0x800 || Character.isSurrogate((char) codePoint)))
+            || (extraBytes == 3 && (codePoint < 0x10000 || codePoint > Character.MAX_CODE_POINT))) {
+            chars[count] = REPLACEMENT_CHAR;
+            return 1;
+        }
+        if (extraBytes < 3) {
+            chars[count] = (char) codePoint;
+        } else {
+            chars[count] = Character.highSurrogate(codePoint);
+            chars[count + 1] = Character.lowSurrogate(codePoint);
+        }
+        return extraBytes + 1;
+    }
+}
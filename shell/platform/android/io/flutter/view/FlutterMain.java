@@ -8,6 +8,7 @@ import android.content.Context;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 import android.content.res.AssetManager;
+import android.hardware.input.InputManager;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
@@ -141,6 +142,10 @@ public class FlutterMain {
             .getInstance((WindowManager) applicationContext.getSystemService(Context.WINDOW_SERVICE))
             .init();
 
+        InputDeviceCache
+            .getInstance()
+            .init((InputManager) applicationContext.getSystemService(Context.INPUT_SERVICE));
+
         // We record the initialization time using SystemClock because at the start of the
         // initialization we have not yet loaded the native library to call into dart_tools_api.h.
         // To get Timeline timestamp of the start of initialization we simply subtract the delta
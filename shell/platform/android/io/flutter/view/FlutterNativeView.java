@@ -128,12 +128,36 @@ public class FlutterNativeView implements BinaryMessenger {
         dartExecutor.send(channel, message, callback);
     }
 
+    @Override
+    @UiThread
+    public Cancellable send(String channel, ByteBuffer message, TimeoutBinaryReply callback, long timeoutMillis) {
+        if (!isAttached()) {
+            // The default implementation sends through the detached view, which drops the
+            // message, and so times the callback out after timeoutMillis.
+            return BinaryMessenger.super.send(channel, message, callback, timeoutMillis);
+        }
+
+        return dartExecutor.send(channel, message, callback, timeoutMillis);
+    }
+
     @Override
     @UiThread
     public void setMessageHandler(String channel, BinaryMessageHandler handler) {
         dartExecutor.setMessageHandler(channel, handler);
     }
 
+    @Override
+    @UiThread
+    public TaskQueue makeBackgroundTaskQueue(TaskQueueOptions options) {
+        return dartExecutor.makeBackgroundTaskQueue(options);
+    }
+
+    @Override
+    @UiThread
+    public void setMessageHandler(String channel, BinaryMessageHandler handler, TaskQueue taskQueue) {
+        dartExecutor.setMessageHandler(channel, handler, taskQueue);
+    }
+
     /*package*/ FlutterJNI getFlutterJNI() {
         return mFlutterJNI;
     }
@@ -401,6 +401,7 @@ public class FlutterView extends SurfaceView implements BinaryMessenger, Texture
     public FlutterNativeView detach() {
         if (!isAttached())
             return null;
+        androidTouchProcessor.flush();
         getHolder().removeCallback(mSurfaceCallback);
         mNativeView.detachFromFlutterView();
 
@@ -413,6 +414,7 @@ public class FlutterView extends SurfaceView implements BinaryMessenger, Texture
         if (!isAttached())
             return;
 
+        androidTouchProcessor.flush();
         getHolder().removeCallback(mSurfaceCallback);
 
         mNativeView.destroy();
@@ -461,6 +463,17 @@ public class FlutterView extends SurfaceView implements BinaryMessenger, Texture
         return handled;
     }
 
+    /**
+     * Sets whether the pointer data of the touch events that arrive during a frame is sent
+     * to Flutter together at the next frame, rather than as each event arrives.
+     *
+     * Coalescing saves Flutter's UI thread a task for every event, at the cost of up to one
+     * frame of input latency. Disabled by default.
+     */
+    public void setCoalescesPointerEventsToVsync(boolean coalescesPointerEventsToVsync) {
+        androidTouchProcessor.setCoalescesToVsync(coalescesPointerEventsToVsync);
+    }
+
     /**
      * Invoked by Android when a generic motion event occurs, e.g., joystick movement, mouse hover,
      * track pad touches, scroll wheel movements, etc.
@@ -747,12 +760,36 @@ public class FlutterView extends SurfaceView implements BinaryMessenger, Texture
         mNativeView.send(channel, message, callback);
     }
 
+    @Override
+    @UiThread
+    public Cancellable send(String channel, ByteBuffer message, TimeoutBinaryReply callback, long timeoutMillis) {
+        if (!isAttached()) {
+            // The default implementation sends through the detached view, which drops the
+            // message, and so times the callback out after timeoutMillis.
+            return BinaryMessenger.super.send(channel, message, callback, timeoutMillis);
+        }
+
+        return mNativeView.send(channel, message, callback, timeoutMillis);
+    }
+
     @Override
     @UiThread
     public void setMessageHandler(String channel, BinaryMessageHandler handler) {
         mNativeView.setMessageHandler(channel, handler);
     }
 
+    @Override
+    @UiThread
+    public TaskQueue makeBackgroundTaskQueue(TaskQueueOptions options) {
+        return mNativeView.makeBackgroundTaskQueue(options);
+    }
+
+    @Override
+    @UiThread
+    public void setMessageHandler(String channel, BinaryMessageHandler handler, TaskQueue taskQueue) {
+        mNativeView.setMessageHandler(channel, handler, taskQueue);
+    }
+
     /**
      * Listener will be called on the Android UI thread once when Flutter renders
      * the first frame.
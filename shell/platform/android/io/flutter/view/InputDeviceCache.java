@@ -0,0 +1,134 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.view;
+
+import android.hardware.input.InputManager;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.util.SparseArray;
+import android.view.InputDevice;
+import android.view.MotionEvent;
+
+/**
+ * Remembers the properties of input devices that Flutter sends along with input events.
+ *
+ * Looking a device up with {@link InputDevice#getDevice(int)} takes a lock and may make a binder
+ * call, which is too slow to do for every pointer of every touch event. Once {@link #init} has
+ * been called, each device is looked up on its first event only, and is forgotten again when
+ * {@link InputManager} reports that it changed or went away. Before that every call looks the
+ * device up.
+ */
+public class InputDeviceCache {
+    /**
+     * The properties of an input device, or the defaults for an event without a device.
+     */
+    public static final class Device {
+        @NonNull
+        public static final Device UNKNOWN = new Device(0, 0, 0.0f, 1.0f);
+
+        public final int vendorId;
+        public final int productId;
+        public final float pressureMin;
+        public final float pressureMax;
+
+        Device(int vendorId, int productId, float pressureMin, float pressureMax) {
+            this.vendorId = vendorId;
+            this.productId = productId;
+            this.pressureMin = pressureMin;
+            this.pressureMax = pressureMax;
+        }
+
+        @NonNull
+        static Device from(@Nullable InputDevice device) {
+            if (device == null) {
+                return UNKNOWN;
+            }
+            int vendorId = 0;
+            int productId = 0;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                vendorId = device.getVendorId();
+                productId = device.getProductId();
+            }
+            float pressureMin = UNKNOWN.pressureMin;
+            float pressureMax = UNKNOWN.pressureMax;
+            InputDevice.MotionRange pressureRange = device.getMotionRange(MotionEvent.AXIS_PRESSURE);
+            if (pressureRange != null) {
+                pressureMin = pressureRange.getMin();
+                pressureMax = pressureRange.getMax();
+            }
+            return new Device(vendorId, productId, pressureMin, pressureMax);
+        }
+    }
+
+    private static InputDeviceCache instance;
+
+    @NonNull
+    public static synchronized InputDeviceCache getInstance() {
+        if (instance == null) {
+            instance = new InputDeviceCache();
+        }
+        return instance;
+    }
+
+    @Nullable
+    private InputManager inputManager;
+    private final SparseArray<Device> devices = new SparseArray<>();
+
+    private final InputManager.InputDeviceListener inputDeviceListener = new InputManager.InputDeviceListener() {
+        @Override
+        public void onInputDeviceAdded(int deviceId) {
+            forget(deviceId);
+        }
+
+        @Override
+        public void onInputDeviceRemoved(int deviceId) {
+            forget(deviceId);
+        }
+
+        @Override
+        public void onInputDeviceChanged(int deviceId) {
+            forget(deviceId);
+        }
+    };
+
+    @VisibleForTesting
+    InputDeviceCache() {
+    }
+
+    /**
+     * Starts caching devices, watching {@code inputManager} for devices that change or go away.
+     * Must be called on a thread with a {@link android.os.Looper}, which receives the
+     * notifications. Calls after the first do nothing.
+     */
+    public synchronized void init(@NonNull InputManager inputManager) {
+        if (this.inputManager != null) {
+            return;
+        }
+        this.inputManager = inputManager;
+        inputManager.registerInputDeviceListener(inputDeviceListener, null);
+    }
+
+    /**
+     * Returns the device with the given id, or {@link Device#UNKNOWN} if there is none.
+     */
+    @NonNull
+    public synchronized Device getDevice(int deviceId) {
+        if (inputManager == null) {
+            return Device.from(InputDevice.getDevice(deviceId));
+        }
+        Device device = devices.get(deviceId);
+        if (device == null) {
+            device = Device.from(inputManager.getInputDevice(deviceId));
+            devices.put(deviceId, device);
+        }
+        return device;
+    }
+
+    private synchronized void forget(int deviceId) {
+        devices.remove(deviceId);
+    }
+}
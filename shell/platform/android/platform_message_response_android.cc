@@ -26,7 +26,7 @@ void PlatformMessageResponseAndroid::Complete(
       fml::MakeCopyable([response = response_id_,               //
                          weak_java_object = weak_java_object_,  //
                          data = std::move(data)                 //
-  ]() {
+  ]() mutable {
         // We are on the platform thread. Attempt to get the strong reference to
         // the Java object.
         auto* env = fml::jni::AttachCurrentThread();
@@ -38,16 +38,10 @@ void PlatformMessageResponseAndroid::Complete(
           return;
         }
 
-        // Convert the vector to a Java byte array.
-        fml::jni::ScopedJavaLocalRef<jbyteArray> data_array(
-            env, env->NewByteArray(data->GetSize()));
-        env->SetByteArrayRegion(
-            data_array.obj(), 0, data->GetSize(),
-            reinterpret_cast<const jbyte*>(data->GetMapping()));
-
-        // Make the response call into Java.
+        // Make the response call into Java. Java reads the data in place and
+        // releases it when done.
         FlutterViewHandlePlatformMessageResponse(env, java_object.obj(),
-                                                 response, data_array.obj());
+                                                 response, std::move(data));
       }));
 }
 
@@ -4,6 +4,7 @@
 
 #include "flutter/shell/platform/android/platform_view_android.h"
 
+#include <cstring>
 #include <memory>
 #include <utility>
 
@@ -18,6 +19,47 @@
 
 namespace flutter {
 
+namespace {
+
+// Exposes the data of a platform message as a mapping, keeping the message
+// alive for as long as the mapping is.
+class PlatformMessageMapping final : public fml::Mapping {
+ public:
+  explicit PlatformMessageMapping(fml::RefPtr<flutter::PlatformMessage> message)
+      : message_(std::move(message)) {}
+
+  ~PlatformMessageMapping() override = default;
+
+  // |fml::Mapping|
+  size_t GetSize() const override { return message_->data().size(); }
+
+  // |fml::Mapping|
+  const uint8_t* GetMapping() const override {
+    return message_->data().data();
+  }
+
+ private:
+  fml::RefPtr<flutter::PlatformMessage> message_;
+
+  FML_DISALLOW_COPY_AND_ASSIGN(PlatformMessageMapping);
+};
+
+// Reads a native-order int32 at |*offset| and advances past it, unless that
+// would read beyond |end|.
+bool ReadBatchInt32(const uint8_t* data,
+                    size_t end,
+                    size_t* offset,
+                    int32_t* value) {
+  if (end - *offset < sizeof(int32_t)) {
+    return false;
+  }
+  memcpy(value, data + *offset, sizeof(int32_t));
+  *offset += sizeof(int32_t);
+  return true;
+}
+
+}  // namespace
+
 PlatformViewAndroid::PlatformViewAndroid(
     PlatformView::Delegate& delegate,
     flutter::TaskRunners task_runners,
@@ -124,6 +166,60 @@ void PlatformViewAndroid::DispatchEmptyPlatformMessage(JNIEnv* env,
                                                     std::move(response)));
 }
 
+void PlatformViewAndroid::DispatchPlatformMessageBatch(JNIEnv* env,
+                                                       jobject batch_data,
+                                                       jint batch_position) {
+  const uint8_t* data =
+      static_cast<uint8_t*>(env->GetDirectBufferAddress(batch_data));
+  // GetDirectBufferAddress returns null for buffers that are not direct.
+  if (data == nullptr || batch_position < 0) {
+    FML_LOG(ERROR) << "Invalid platform message batch buffer.";
+    return;
+  }
+  const size_t end = batch_position;
+  size_t offset = 0;
+  while (offset < end) {
+    int32_t channel_length;
+    int32_t response_id;
+    int32_t message_length;
+    if (!ReadBatchInt32(data, end, &offset, &channel_length) ||
+        channel_length < 0 ||
+        end - offset < static_cast<size_t>(channel_length)) {
+      FML_LOG(ERROR) << "Malformed platform message batch.";
+      return;
+    }
+    std::string name(reinterpret_cast<const char*>(data + offset),
+                     channel_length);
+    offset += channel_length;
+    if (!ReadBatchInt32(data, end, &offset, &response_id) ||
+        !ReadBatchInt32(data, end, &offset, &message_length) ||
+        (message_length > 0 &&
+         end - offset < static_cast<size_t>(message_length))) {
+      FML_LOG(ERROR) << "Malformed platform message batch.";
+      return;
+    }
+
+    fml::RefPtr<flutter::PlatformMessageResponse> response;
+    if (response_id) {
+      response = fml::MakeRefCounted<PlatformMessageResponseAndroid>(
+          response_id, java_object_, task_runners_.GetPlatformTaskRunner());
+    }
+
+    // A negative length marks a message without data.
+    if (message_length < 0) {
+      PlatformView::DispatchPlatformMessage(
+          fml::MakeRefCounted<flutter::PlatformMessage>(std::move(name),
+                                                        std::move(response)));
+      continue;
+    }
+    std::vector<uint8_t> message(data + offset, data + offset + message_length);
+    offset += message_length;
+    PlatformView::DispatchPlatformMessage(
+        fml::MakeRefCounted<flutter::PlatformMessage>(
+            std::move(name), std::move(message), std::move(response)));
+  }
+}
+
 void PlatformViewAndroid::InvokePlatformMessageResponseCallback(
     JNIEnv* env,
     jint response_id,
@@ -172,16 +268,13 @@ void PlatformViewAndroid::HandlePlatformMessage(
   }
   auto java_channel = fml::jni::StringToJavaString(env, message->channel());
   if (message->hasData()) {
-    fml::jni::ScopedJavaLocalRef<jbyteArray> message_array(
-        env, env->NewByteArray(message->data().size()));
-    env->SetByteArrayRegion(
-        message_array.obj(), 0, message->data().size(),
-        reinterpret_cast<const jbyte*>(message->data().data()));
-    message = nullptr;
+    // Java reads the message data in place and releases it when done.
+    auto message_data =
+        std::make_unique<PlatformMessageMapping>(std::move(message));
 
     // This call can re-enter in InvokePlatformMessageXxxResponseCallback.
     FlutterViewHandlePlatformMessage(env, view.obj(), java_channel.obj(),
-                                     message_array.obj(), response_id);
+                                     std::move(message_data), response_id);
   } else {
     message = nullptr;
 
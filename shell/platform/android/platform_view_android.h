@@ -55,6 +55,12 @@ class PlatformViewAndroid final : public PlatformView {
                                     std::string name,
                                     jint response_id);
 
+  // Dispatches every message framed in the first |batch_position| bytes of
+  // |batch_data|. See FlutterJNI#dispatchPlatformMessageBatch for the format.
+  void DispatchPlatformMessageBatch(JNIEnv* env,
+                                    jobject batch_data,
+                                    jint batch_position);
+
   void InvokePlatformMessageResponseCallback(JNIEnv* env,
                                              jint response_id,
                                              jobject java_response_data,
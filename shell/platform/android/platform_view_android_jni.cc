@@ -65,24 +65,41 @@ jobject CreateFlutterCallbackInformation(
                         env->NewStringUTF(callbackLibraryPath.c_str()));
 }
 
+// Wraps |data| in a direct ByteBuffer and releases ownership of it. Returns
+// a null buffer and a zero handle if |data| is null.
+static std::pair<fml::jni::ScopedJavaLocalRef<jobject>, jlong>
+MessageDataToJavaBuffer(JNIEnv* env, std::unique_ptr<fml::Mapping> data) {
+  if (!data) {
+    return {fml::jni::ScopedJavaLocalRef<jobject>(), 0};
+  }
+  fml::jni::ScopedJavaLocalRef<jobject> buffer(
+      env, env->NewDirectByteBuffer(
+               const_cast<uint8_t*>(data->GetMapping()), data->GetSize()));
+  // Deleted in CleanupMessageData.
+  return {buffer, reinterpret_cast<jlong>(data.release())};
+}
+
 static jmethodID g_handle_platform_message_method = nullptr;
 void FlutterViewHandlePlatformMessage(JNIEnv* env,
                                       jobject obj,
                                       jstring channel,
-                                      jobject message,
+                                      std::unique_ptr<fml::Mapping> message,
                                       jint responseId) {
-  env->CallVoidMethod(obj, g_handle_platform_message_method, channel, message,
-                      responseId);
+  auto buffer = MessageDataToJavaBuffer(env, std::move(message));
+  env->CallVoidMethod(obj, g_handle_platform_message_method, channel,
+                      buffer.first.obj(), responseId, buffer.second);
   FML_CHECK(CheckException(env));
 }
 
 static jmethodID g_handle_platform_message_response_method = nullptr;
-void FlutterViewHandlePlatformMessageResponse(JNIEnv* env,
-                                              jobject obj,
-                                              jint responseId,
-                                              jobject response) {
+void FlutterViewHandlePlatformMessageResponse(
+    JNIEnv* env,
+    jobject obj,
+    jint responseId,
+    std::unique_ptr<fml::Mapping> response) {
+  auto buffer = MessageDataToJavaBuffer(env, std::move(response));
   env->CallVoidMethod(obj, g_handle_platform_message_response_method,
-                      responseId, response);
+                      responseId, buffer.first.obj(), buffer.second);
   FML_CHECK(CheckException(env));
 }
 
@@ -380,6 +397,18 @@ static void DispatchEmptyPlatformMessage(JNIEnv* env,
   );
 }
 
+static void DispatchPlatformMessageBatch(JNIEnv* env,
+                                        jobject jcaller,
+                                        jlong shell_holder,
+                                        jobject batch,
+                                        jint position) {
+  ANDROID_SHELL_HOLDER->GetPlatformView()->DispatchPlatformMessageBatch(
+      env,      //
+      batch,    //
+      position  //
+  );
+}
+
 static void DispatchPointerDataPacket(JNIEnv* env,
                                       jobject jcaller,
                                       jlong shell_holder,
@@ -466,6 +495,13 @@ static void InvokePlatformMessageResponseCallback(JNIEnv* env,
       );
 }
 
+static void CleanupMessageData(JNIEnv* env,
+                               jobject jcaller,
+                               jlong message_data) {
+  // Ownership was released in MessageDataToJavaBuffer.
+  delete reinterpret_cast<fml::Mapping*>(message_data);
+}
+
 static void InvokePlatformMessageEmptyResponseCallback(JNIEnv* env,
                                                        jobject jcaller,
                                                        jlong shell_holder,
@@ -505,6 +541,11 @@ bool RegisterApi(JNIEnv* env) {
           .signature = "(JLjava/lang/String;Ljava/nio/ByteBuffer;II)V",
           .fnPtr = reinterpret_cast<void*>(&DispatchPlatformMessage),
       },
+      {
+          .name = "nativeDispatchPlatformMessageBatch",
+          .signature = "(JLjava/nio/ByteBuffer;I)V",
+          .fnPtr = reinterpret_cast<void*>(&DispatchPlatformMessageBatch),
+      },
       {
           .name = "nativeInvokePlatformMessageResponseCallback",
           .signature = "(JILjava/nio/ByteBuffer;I)V",
@@ -517,6 +558,11 @@ bool RegisterApi(JNIEnv* env) {
           .fnPtr = reinterpret_cast<void*>(
               &InvokePlatformMessageEmptyResponseCallback),
       },
+      {
+          .name = "nativeCleanupMessageData",
+          .signature = "(J)V",
+          .fnPtr = reinterpret_cast<void*>(&CleanupMessageData),
+      },
 
       // Start of methods from FlutterView
       {
@@ -601,7 +647,7 @@ bool RegisterApi(JNIEnv* env) {
 
   g_handle_platform_message_method =
       env->GetMethodID(g_flutter_jni_class->obj(), "handlePlatformMessage",
-                       "(Ljava/lang/String;[BI)V");
+                       "(Ljava/lang/String;Ljava/nio/ByteBuffer;IJ)V");
 
   if (g_handle_platform_message_method == nullptr) {
     FML_LOG(ERROR) << "Could not locate handlePlatformMessage method";
@@ -609,7 +655,8 @@ bool RegisterApi(JNIEnv* env) {
   }
 
   g_handle_platform_message_response_method = env->GetMethodID(
-      g_flutter_jni_class->obj(), "handlePlatformMessageResponse", "(I[B)V");
+      g_flutter_jni_class->obj(), "handlePlatformMessageResponse",
+      "(ILjava/nio/ByteBuffer;J)V");
 
   if (g_handle_platform_message_response_method == nullptr) {
     FML_LOG(ERROR) << "Could not locate handlePlatformMessageResponse method";
@@ -6,21 +6,32 @@
 #define FLUTTER_SHELL_PLATFORM_ANDROID_PLATFORM_VIEW_ANDROID_JNI_H_
 
 #include <jni.h>
+
+#include <memory>
+
 #include "flutter/fml/macros.h"
+#include "flutter/fml/mapping.h"
 #include "flutter/shell/platform/android/platform_view_android.h"
 
 namespace flutter {
 
+// Passes |message| to Java as a direct ByteBuffer over the engine's memory.
+// Java takes ownership of |message| and releases it through
+// FlutterJNI#cleanupMessageData once it is no longer read.
 void FlutterViewHandlePlatformMessage(JNIEnv* env,
                                       jobject obj,
                                       jstring channel,
-                                      jobject message,
+                                      std::unique_ptr<fml::Mapping> message,
                                       jint responseId);
 
-void FlutterViewHandlePlatformMessageResponse(JNIEnv* env,
-                                              jobject obj,
-                                              jint responseId,
-                                              jobject response);
+// Passes |response| to Java as a direct ByteBuffer over the engine's memory.
+// Java takes ownership of |response| and releases it through
+// FlutterJNI#cleanupMessageData once it is no longer read.
+void FlutterViewHandlePlatformMessageResponse(
+    JNIEnv* env,
+    jobject obj,
+    jint responseId,
+    std::unique_ptr<fml::Mapping> response);
 
 void FlutterViewUpdateSemantics(JNIEnv* env,
                                 jobject obj,
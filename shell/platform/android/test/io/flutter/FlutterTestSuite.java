@@ -6,7 +6,19 @@ package io.flutter;
 
 import io.flutter.SmokeTest;
 import io.flutter.util.PreconditionsTest;
+import io.flutter.embedding.android.AndroidTouchProcessorTest;
 import io.flutter.embedding.android.FlutterActivityAndFragmentDelegateTest;
+import io.flutter.embedding.engine.dart.DartMessengerTest;
+import io.flutter.embedding.engine.dart.PendingReplyTableTest;
+import io.flutter.embedding.engine.systemchannels.KeyEventChannelTest;
+import io.flutter.plugin.codegen.MessageCodecProcessorTest;
+import io.flutter.plugin.common.ChunkedTransferChannelTest;
+import io.flutter.plugin.common.EventChannelTest;
+import io.flutter.plugin.common.JSONMessageCodecTest;
+import io.flutter.plugin.common.MethodChannelTest;
+import io.flutter.plugin.common.StandardMessageCodecTest;
+import io.flutter.plugin.common.TypedMessageCodecTest;
+import io.flutter.view.InputDeviceCacheTest;
 
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
@@ -16,7 +28,19 @@ import org.junit.runners.Suite.SuiteClasses;
 @SuiteClasses({
     PreconditionsTest.class,
     SmokeTest.class,
+    AndroidTouchProcessorTest.class,
     FlutterActivityAndFragmentDelegateTest.class,
+    DartMessengerTest.class,
+    PendingReplyTableTest.class,
+    KeyEventChannelTest.class,
+    MessageCodecProcessorTest.class,
+    ChunkedTransferChannelTest.class,
+    EventChannelTest.class,
+    JSONMessageCodecTest.class,
+    MethodChannelTest.class,
+    StandardMessageCodecTest.class,
+    TypedMessageCodecTest.class,
+    InputDeviceCacheTest.class,
 })
 /** Runs all of the unit tests listed in the {@code @SuiteClasses} annotation. */
 public class FlutterTestSuite {}
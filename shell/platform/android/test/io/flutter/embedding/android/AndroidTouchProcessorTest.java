@@ -0,0 +1,165 @@
+package io.flutter.embedding.android;
+
+import android.view.MotionEvent;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+import io.flutter.embedding.engine.renderer.FlutterRenderer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@Config(manifest=Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class AndroidTouchProcessorTest {
+  // Must match the size of a pointer in AndroidTouchProcessor.
+  private static final int BYTES_PER_POINTER = 24 * 8;
+
+  private FlutterRenderer mockRenderer;
+  private AndroidTouchProcessor touchProcessor;
+
+  @Before
+  public void setup() {
+    mockRenderer = mock(FlutterRenderer.class);
+    // Events are not coalesced by default, so most tests look at the packet sent for each event.
+    touchProcessor = new AndroidTouchProcessor(mockRenderer);
+  }
+
+  // Returns a move of the given number of fingers, the first of them at x = firstX.
+  private static MotionEvent mockMoveEvent(int pointerCount, float firstX) {
+    MotionEvent event = mock(MotionEvent.class);
+    when(event.getPointerCount()).thenReturn(pointerCount);
+    when(event.getActionMasked()).thenReturn(MotionEvent.ACTION_MOVE);
+    for (int i = 0; i < pointerCount; i++) {
+      when(event.getPointerId(i)).thenReturn(i);
+      when(event.getToolType(i)).thenReturn(MotionEvent.TOOL_TYPE_FINGER);
+      when(event.getAxisValue(MotionEvent.AXIS_X, i)).thenReturn(firstX + i);
+    }
+    return event;
+  }
+
+  @Test
+  public void itReusesPacketsAroundTheRing() {
+    int eventCount = AndroidTouchProcessor.PACKET_RING_SIZE + 1;
+    for (int i = 0; i < eventCount; i++) {
+      touchProcessor.onTouchEvent(mockMoveEvent(1, i));
+    }
+
+    ArgumentCaptor<ByteBuffer> packets = ArgumentCaptor.forClass(ByteBuffer.class);
+    ArgumentCaptor<Integer> positions = ArgumentCaptor.forClass(Integer.class);
+    verify(mockRenderer, times(eventCount)).dispatchPointerDataPacket(packets.capture(), positions.capture());
+    List<ByteBuffer> dispatched = packets.getAllValues();
+
+    for (int i = 1; i < AndroidTouchProcessor.PACKET_RING_SIZE; i++) {
+      assertNotSame(dispatched.get(0), dispatched.get(i));
+    }
+    assertSame(dispatched.get(0), dispatched.get(AndroidTouchProcessor.PACKET_RING_SIZE));
+    for (int position : positions.getAllValues()) {
+      assertEquals(BYTES_PER_POINTER, position);
+    }
+    // The reused packet holds the latest event: physical_x follows five 8-byte fields.
+    ByteBuffer packet = dispatched.get(AndroidTouchProcessor.PACKET_RING_SIZE);
+    assertEquals(ByteOrder.LITTLE_ENDIAN, packet.order());
+    assertEquals((double) (eventCount - 1), packet.getDouble(5 * 8), 0.0);
+  }
+
+  @Test
+  public void itGrowsPacketsForEventsWithManyPointers() {
+    int pointerCount = 5;
+    touchProcessor.onTouchEvent(mockMoveEvent(pointerCount, 0));
+
+    ArgumentCaptor<ByteBuffer> packet = ArgumentCaptor.forClass(ByteBuffer.class);
+    verify(mockRenderer).dispatchPointerDataPacket(packet.capture(), anyInt());
+    assertEquals(pointerCount * BYTES_PER_POINTER, packet.getValue().position());
+    assertEquals(pointerCount - 1, packet.getValue().getDouble(4 * BYTES_PER_POINTER + 5 * 8), 0.0);
+  }
+
+  @Test
+  public void itForwardsHistoricalSamplesInOnePacketWhenEnabled() {
+    int pointerCount = 2;
+    int historySize = 3;
+    MotionEvent event = mockMoveEvent(pointerCount, 100);
+    when(event.getEventTime()).thenReturn(40L);
+    when(event.getHistorySize()).thenReturn(historySize);
+    for (int h = 0; h < historySize; h++) {
+      when(event.getHistoricalEventTime(h)).thenReturn(10L * (h + 1));
+      for (int p = 0; p < pointerCount; p++) {
+        when(event.getHistoricalAxisValue(MotionEvent.AXIS_X, p, h)).thenReturn(10f * h + p);
+      }
+    }
+
+    touchProcessor.onTouchEvent(event);
+    touchProcessor.setForwardsHistoricalSamples(true);
+    touchProcessor.onTouchEvent(event);
+
+    ArgumentCaptor<ByteBuffer> packets = ArgumentCaptor.forClass(ByteBuffer.class);
+    ArgumentCaptor<Integer> positions = ArgumentCaptor.forClass(Integer.class);
+    verify(mockRenderer, times(2)).dispatchPointerDataPacket(packets.capture(), positions.capture());
+    assertEquals(pointerCount * BYTES_PER_POINTER, (int) positions.getAllValues().get(0));
+    assertEquals((historySize + 1) * pointerCount * BYTES_PER_POINTER, (int) positions.getAllValues().get(1));
+
+    // Samples are in time order, each with its own time stamp and position.
+    ByteBuffer packet = packets.getAllValues().get(1);
+    for (int h = 0; h <= historySize; h++) {
+      for (int p = 0; p < pointerCount; p++) {
+        int offset = (h * pointerCount + p) * BYTES_PER_POINTER;
+        double x = h < historySize ? 10 * h + p : 100 + p;
+        assertEquals(10_000L * (h + 1), packet.getLong(offset)); // time_stamp
+        assertEquals(p, packet.getLong(offset + 4 * 8)); // device
+        assertEquals(x, packet.getDouble(offset + 5 * 8), 0.0); // physical_x
+      }
+    }
+  }
+
+  @Test
+  public void itSendsEventsOfAFrameInOnePacketWhenCoalescing() {
+    touchProcessor.setCoalescesToVsync(true);
+    // Hold the frame callback until the events of the frame have arrived.
+    ShadowLooper.pauseMainLooper();
+    int eventCount = 3;
+    for (int i = 0; i < eventCount; i++) {
+      MotionEvent event = mockMoveEvent(2, 10 * i);
+      when(event.getEventTime()).thenReturn((long) i);
+      touchProcessor.onTouchEvent(event);
+    }
+    verify(mockRenderer, never()).dispatchPointerDataPacket(any(ByteBuffer.class), anyInt());
+
+    ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+    ArgumentCaptor<ByteBuffer> packet = ArgumentCaptor.forClass(ByteBuffer.class);
+    ArgumentCaptor<Integer> position = ArgumentCaptor.forClass(Integer.class);
+    verify(mockRenderer).dispatchPointerDataPacket(packet.capture(), position.capture());
+    assertEquals(eventCount * 2 * BYTES_PER_POINTER, (int) position.getValue());
+    for (int i = 0; i < eventCount; i++) {
+      for (int p = 0; p < 2; p++) {
+        int offset = (2 * i + p) * BYTES_PER_POINTER;
+        assertEquals(1000L * i, packet.getValue().getLong(offset)); // time_stamp
+        assertEquals(10 * i + p, packet.getValue().getDouble(offset + 5 * 8), 0.0); // physical_x
+      }
+    }
+
+    // Disabling coalescing sends what is pending right away.
+    touchProcessor.onTouchEvent(mockMoveEvent(1, 0));
+    touchProcessor.setCoalescesToVsync(false);
+    verify(mockRenderer).dispatchPointerDataPacket(any(ByteBuffer.class), eq(BYTES_PER_POINTER));
+  }
+}
@@ -0,0 +1,492 @@
+package io.flutter.embedding.engine.dart;
+
+import android.os.SystemClock;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.flutter.embedding.engine.FlutterJNI;
+import io.flutter.plugin.common.BinaryMessenger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@Config(manifest=Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class DartMessengerTest {
+  private static final long MESSAGE_DATA = 1234L;
+
+  private FlutterJNI mockFlutterJNI;
+  private DartMessenger messenger;
+
+  @Before
+  public void setup() {
+    mockFlutterJNI = mock(FlutterJNI.class);
+    messenger = new DartMessenger(mockFlutterJNI);
+  }
+
+  private static ByteBuffer engineBuffer(int value) {
+    final ByteBuffer buffer = ByteBuffer.allocateDirect(4);
+    buffer.putInt(0, value);
+    return buffer;
+  }
+
+  @Test
+  public void itCopiesMessagesForPlainHandlersAndReleasesEngineMemory() {
+    final AtomicReference<ByteBuffer> received = new AtomicReference<>();
+    messenger.setMessageHandler("test", new BinaryMessenger.BinaryMessageHandler() {
+      @Override
+      public void onMessage(ByteBuffer message, BinaryMessenger.BinaryReply reply) {
+        verify(mockFlutterJNI).cleanupMessageData(MESSAGE_DATA);
+        received.set(message);
+        reply.reply(null);
+      }
+    });
+
+    messenger.handleMessageFromDart("test", engineBuffer(42), 1, MESSAGE_DATA);
+
+    assertFalse(received.get().isDirect());
+    assertEquals(42, received.get().getInt(0));
+  }
+
+  @Test
+  public void itDeliversMessagesInPlaceToDirectHandlers() {
+    final AtomicReference<ByteBuffer> received = new AtomicReference<>();
+    messenger.setMessageHandler("test", new TestDirectHandler() {
+      @Override
+      public void onDirectMessage(ByteBuffer message, BinaryMessenger.BinaryReply reply, BinaryMessenger.MessageRetention retention) {
+        verify(mockFlutterJNI, never()).cleanupMessageData(MESSAGE_DATA);
+        received.set(message);
+        reply.reply(null);
+      }
+    });
+
+    messenger.handleMessageFromDart("test", engineBuffer(42), 1, MESSAGE_DATA);
+
+    assertTrue(received.get().isDirect());
+    assertTrue(received.get().isReadOnly());
+    assertEquals(42, received.get().getInt(0));
+    verify(mockFlutterJNI).cleanupMessageData(MESSAGE_DATA);
+  }
+
+  @Test
+  public void itKeepsRetainedMessagesUntilReleased() {
+    final AtomicReference<BinaryMessenger.MessageRetention> retained = new AtomicReference<>();
+    messenger.setMessageHandler("test", new TestDirectHandler() {
+      @Override
+      public void onDirectMessage(ByteBuffer message, BinaryMessenger.BinaryReply reply, BinaryMessenger.MessageRetention retention) {
+        retention.retain();
+        retained.set(retention);
+        reply.reply(null);
+      }
+    });
+
+    messenger.handleMessageFromDart("test", engineBuffer(42), 1, MESSAGE_DATA);
+    verify(mockFlutterJNI, never()).cleanupMessageData(MESSAGE_DATA);
+
+    retained.get().release();
+    verify(mockFlutterJNI).cleanupMessageData(MESSAGE_DATA);
+  }
+
+  @Test
+  public void itReleasesEngineMemoryWhenDirectHandlerThrows() {
+    messenger.setMessageHandler("test", new TestDirectHandler() {
+      @Override
+      public void onDirectMessage(ByteBuffer message, BinaryMessenger.BinaryReply reply, BinaryMessenger.MessageRetention retention) {
+        throw new RuntimeException("expected");
+      }
+    });
+
+    messenger.handleMessageFromDart("test", engineBuffer(42), 1, MESSAGE_DATA);
+
+    verify(mockFlutterJNI).cleanupMessageData(MESSAGE_DATA);
+    verify(mockFlutterJNI).invokePlatformMessageEmptyResponseCallback(1);
+  }
+
+  @Test
+  public void itReleasesEngineMemoryWithoutAHandler() {
+    messenger.handleMessageFromDart("unknown", engineBuffer(42), 1, MESSAGE_DATA);
+
+    verify(mockFlutterJNI).cleanupMessageData(MESSAGE_DATA);
+    verify(mockFlutterJNI).invokePlatformMessageEmptyResponseCallback(1);
+  }
+
+  @Test
+  public void itHandlesMessagesOnSerialBackgroundQueueAndRepliesOnMainThread() throws Exception {
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    final BinaryMessenger.TaskQueue taskQueue = messenger.makeBackgroundTaskQueue(
+        new BinaryMessenger.TaskQueueOptions().setExecutor(executor));
+    final List<Integer> handled = Collections.synchronizedList(new ArrayList<Integer>());
+    final Thread mainThread = Thread.currentThread();
+    final CountDownLatch done = new CountDownLatch(20);
+    messenger.setMessageHandler("test", new BinaryMessenger.BinaryMessageHandler() {
+      @Override
+      public void onMessage(ByteBuffer message, BinaryMessenger.BinaryReply reply) {
+        assertNotSame(mainThread, Thread.currentThread());
+        handled.add(message.getInt(0));
+        reply.reply(null);
+        done.countDown();
+      }
+    }, taskQueue);
+
+    for (int i = 0; i < 20; i++) {
+      messenger.handleMessageFromDart("test", engineBuffer(i), i + 1, MESSAGE_DATA + i);
+    }
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    executor.shutdown();
+
+    for (int i = 0; i < 20; i++) {
+      assertEquals(i, (int) handled.get(i));
+    }
+    verify(mockFlutterJNI, never()).invokePlatformMessageEmptyResponseCallback(1);
+    ShadowLooper.idleMainLooper();
+    for (int i = 0; i < 20; i++) {
+      verify(mockFlutterJNI).invokePlatformMessageEmptyResponseCallback(i + 1);
+    }
+  }
+
+  @Test
+  public void itKeepsDirectMessagesUntilBackgroundHandlerReturns() throws Exception {
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    final BinaryMessenger.TaskQueue taskQueue = messenger.makeBackgroundTaskQueue(
+        new BinaryMessenger.TaskQueueOptions().setIsSerial(false).setExecutor(executor));
+    final CountDownLatch release = new CountDownLatch(1);
+    messenger.setMessageHandler("test", new TestDirectHandler() {
+      @Override
+      public void onDirectMessage(ByteBuffer message, BinaryMessenger.BinaryReply reply, BinaryMessenger.MessageRetention retention) {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+        reply.reply(null);
+      }
+    }, taskQueue);
+
+    messenger.handleMessageFromDart("test", engineBuffer(42), 1, MESSAGE_DATA);
+    verify(mockFlutterJNI, never()).cleanupMessageData(MESSAGE_DATA);
+
+    release.countDown();
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    verify(mockFlutterJNI).cleanupMessageData(MESSAGE_DATA);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void itRejectsForeignTaskQueues() {
+    messenger.setMessageHandler("test", mock(BinaryMessenger.BinaryMessageHandler.class),
+        new BinaryMessenger.TaskQueue() {});
+  }
+
+  @Test
+  public void itSupportsConcurrentSendsAndRegistrations() throws Exception {
+    final int threadCount = 8;
+    final int messagesPerThread = 250;
+    final AtomicInteger replies = new AtomicInteger(0);
+    final CountDownLatch start = new CountDownLatch(1);
+    final ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+    final List<Future<?>> senders = new ArrayList<>();
+    for (int t = 0; t < threadCount; t++) {
+      final String channel = "channel" + t;
+      senders.add(executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          start.await();
+          for (int i = 0; i < messagesPerThread; i++) {
+            messenger.setMessageHandler(channel, mock(BinaryMessenger.BinaryMessageHandler.class));
+            messenger.send(channel, null, new BinaryMessenger.BinaryReply() {
+              private final AtomicBoolean replied = new AtomicBoolean(false);
+
+              @Override
+              public void reply(ByteBuffer reply) {
+                assertFalse(replied.getAndSet(true));
+                replies.incrementAndGet();
+              }
+            });
+          }
+          return null;
+        }
+      }));
+    }
+    start.countDown();
+    for (Future<?> sender : senders) {
+      sender.get(10, TimeUnit.SECONDS);
+    }
+    assertEquals(threadCount * messagesPerThread, messenger.getPendingChannelResponseCount());
+
+    // Sends made off the main thread reach FlutterJNI once the main looper runs.
+    ShadowLooper.idleMainLooper();
+    final ArgumentCaptor<Integer> replyIds = ArgumentCaptor.forClass(Integer.class);
+    verify(mockFlutterJNI, times(threadCount * messagesPerThread))
+        .dispatchEmptyPlatformMessage(anyString(), replyIds.capture());
+    final Set<Integer> uniqueReplyIds = new HashSet<>(replyIds.getAllValues());
+    assertEquals(threadCount * messagesPerThread, uniqueReplyIds.size());
+    assertFalse(uniqueReplyIds.contains(0));
+
+    // Deliver every reply once from each thread, concurrently; each callback must run exactly once.
+    final List<Future<?>> responders = new ArrayList<>();
+    for (int t = 0; t < threadCount; t++) {
+      responders.add(executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() {
+          for (int replyId : uniqueReplyIds) {
+            messenger.handlePlatformMessageResponse(replyId, null, 0);
+          }
+          return null;
+        }
+      }));
+    }
+    for (Future<?> responder : responders) {
+      responder.get(10, TimeUnit.SECONDS);
+    }
+    executor.shutdown();
+
+    assertEquals(threadCount * messagesPerThread, replies.get());
+    assertEquals(0, messenger.getPendingChannelResponseCount());
+  }
+
+  @Test
+  public void itKeepsRepliesByDefault() {
+    final DartMessenger messenger = new DartMessenger(mockFlutterJNI);
+    final BinaryMessenger.BinaryReply pending = mock(BinaryMessenger.BinaryReply.class);
+    messenger.send("test", null, pending);
+
+    SystemClock.setCurrentTimeMillis(SystemClock.uptimeMillis() + 60 * 60 * 1000);
+    messenger.send("test", null, mock(BinaryMessenger.BinaryReply.class));
+    ShadowLooper.idleMainLooper();
+
+    assertEquals(2, messenger.getPendingChannelResponseCount());
+    verify(pending, never()).reply(any(ByteBuffer.class));
+    final ByteBuffer late = ByteBuffer.allocateDirect(1);
+    messenger.handlePlatformMessageResponse(1, late, 0);
+    verify(pending).reply(any(ByteBuffer.class));
+  }
+
+  @Test
+  public void itRepliesNullToRepliesThatDartNeverSends() {
+    final DartMessenger messenger = new DartMessenger(mockFlutterJNI, 1000);
+    final BinaryMessenger.BinaryReply stale = mock(BinaryMessenger.BinaryReply.class);
+    messenger.send("test", null, stale);
+    assertEquals(1, messenger.getPendingChannelResponseCount());
+
+    SystemClock.setCurrentTimeMillis(SystemClock.uptimeMillis() + 2000);
+    messenger.send("test", null, mock(BinaryMessenger.BinaryReply.class));
+    assertEquals(1, messenger.getPendingChannelResponseCount());
+    ShadowLooper.idleMainLooper();
+    verify(stale).reply(null);
+
+    // A late reply is ignored.
+    messenger.handlePlatformMessageResponse(1, ByteBuffer.allocateDirect(1), 0);
+    verify(stale, times(1)).reply(any(ByteBuffer.class));
+  }
+
+  @Test
+  public void itTellsDroppedTimeoutRepliesThatTheyTimedOut() {
+    final DartMessenger messenger = new DartMessenger(mockFlutterJNI, 1000);
+    final BinaryMessenger.TimeoutBinaryReply stale = mock(BinaryMessenger.TimeoutBinaryReply.class);
+    messenger.send("test", null, stale);
+
+    SystemClock.setCurrentTimeMillis(SystemClock.uptimeMillis() + 2000);
+    messenger.send("test", null, mock(BinaryMessenger.BinaryReply.class));
+    ShadowLooper.idleMainLooper();
+
+    verify(stale).onTimeout();
+    verify(stale, never()).reply(any(ByteBuffer.class));
+  }
+
+  @Test
+  public void itKeepsRepliesWhenStaleReplyTimeoutIsDisabled() {
+    final DartMessenger messenger = new DartMessenger(mockFlutterJNI, 1000);
+    messenger.setStaleReplyTimeout(0);
+    final BinaryMessenger.TimeoutBinaryReply pending = mock(BinaryMessenger.TimeoutBinaryReply.class);
+    messenger.send("test", null, pending);
+
+    SystemClock.setCurrentTimeMillis(SystemClock.uptimeMillis() + 2000);
+    messenger.send("test", null, mock(BinaryMessenger.BinaryReply.class));
+    ShadowLooper.idleMainLooper();
+
+    assertEquals(2, messenger.getPendingChannelResponseCount());
+    messenger.handlePlatformMessageResponse(1, null, 0);
+    verify(pending).reply(null);
+    verify(pending, never()).onTimeout();
+  }
+
+  @Test
+  public void itTimesOutRepliesAndIgnoresLateOnes() {
+    final BinaryMessenger.TimeoutBinaryReply callback = mock(BinaryMessenger.TimeoutBinaryReply.class);
+    messenger.send("test", null, callback, 1000);
+    verify(mockFlutterJNI).dispatchEmptyPlatformMessage("test", 1);
+
+    ShadowLooper.idleMainLooper(900);
+    verify(callback, never()).onTimeout();
+    ShadowLooper.idleMainLooper(200);
+    verify(callback).onTimeout();
+    assertEquals(0, messenger.getPendingChannelResponseCount());
+
+    messenger.handlePlatformMessageResponse(1, null, 0);
+    verify(callback, never()).reply(any(ByteBuffer.class));
+  }
+
+  @Test
+  public void itTimesOutWithinOneTickOfDeadlinesBetweenTicks() {
+    // Send at every phase of the tick grid, so that most deadlines fall mid-tick.
+    final int count = (int) (ReplyTimeoutWheel.TICK_MS / 10);
+    final long[] deadlines = new long[count];
+    final long[] timeouts = new long[count];
+    for (int i = 0; i < count; i++) {
+      final int index = i;
+      deadlines[i] = SystemClock.uptimeMillis() + 73;
+      messenger.send("test", null, new BinaryMessenger.TimeoutBinaryReply() {
+        @Override
+        public void reply(ByteBuffer reply) {}
+
+        @Override
+        public void onTimeout() {
+          timeouts[index] = SystemClock.uptimeMillis();
+        }
+      }, 73);
+      ShadowLooper.idleMainLooper(10);
+    }
+
+    for (int ms = 0; ms < 200; ms++) {
+      ShadowLooper.idleMainLooper(1);
+    }
+    for (int i = 0; i < count; i++) {
+      assertTrue("Reply " + i + " timed out late", timeouts[i] != 0 && timeouts[i] <= deadlines[i] + ReplyTimeoutWheel.TICK_MS);
+      assertTrue("Reply " + i + " timed out early", timeouts[i] >= deadlines[i]);
+    }
+  }
+
+  @Test
+  public void itDoesNotTimeOutAnsweredOrCancelledReplies() {
+    final BinaryMessenger.TimeoutBinaryReply answered = mock(BinaryMessenger.TimeoutBinaryReply.class);
+    final BinaryMessenger.TimeoutBinaryReply cancelled = mock(BinaryMessenger.TimeoutBinaryReply.class);
+    messenger.send("test", null, answered, 1000);
+    final BinaryMessenger.Cancellable cancellable = messenger.send("test", null, cancelled, 1000);
+
+    messenger.handlePlatformMessageResponse(1, null, 0);
+    assertTrue(cancellable.cancel());
+    assertFalse(cancellable.cancel());
+    messenger.handlePlatformMessageResponse(2, null, 0);
+    ShadowLooper.idleMainLooper(2000);
+
+    verify(answered).reply(null);
+    verify(answered, never()).onTimeout();
+    verify(cancelled, never()).reply(any(ByteBuffer.class));
+    verify(cancelled, never()).onTimeout();
+    assertEquals(0, messenger.getPendingChannelResponseCount());
+  }
+
+  @Test
+  public void itBatchesMessagesSentDuringOneLooperTurn() {
+    ShadowLooper.pauseMainLooper();
+    final DartExecutor.PlatformMessageBatchListener listener = mock(DartExecutor.PlatformMessageBatchListener.class);
+    messenger.enableBatching(listener);
+    final ByteBuffer message = ByteBuffer.allocateDirect(8).order(ByteOrder.nativeOrder());
+    message.putInt(7);
+    messenger.send("a", message, null);
+    messenger.send("bc", null, mock(BinaryMessenger.BinaryReply.class));
+    verify(mockFlutterJNI, never()).dispatchPlatformMessageBatch(any(ByteBuffer.class), anyInt());
+
+    final ArgumentCaptor<ByteBuffer> batch = ArgumentCaptor.forClass(ByteBuffer.class);
+    final ArgumentCaptor<Integer> position = ArgumentCaptor.forClass(Integer.class);
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        // The batch buffer is reused once the engine has copied it.
+        final ByteBuffer frames = ((ByteBuffer) invocation.getArguments()[0]).duplicate().order(ByteOrder.nativeOrder());
+        assertEquals(1, frames.getInt(0));
+        assertEquals('a', frames.get(4));
+        assertEquals(0, frames.getInt(5));
+        assertEquals(4, frames.getInt(9));
+        assertEquals(7, frames.getInt(13));
+        assertEquals(2, frames.getInt(17));
+        assertEquals('b', frames.get(21));
+        assertEquals('c', frames.get(22));
+        assertEquals(1, frames.getInt(23));
+        assertEquals(-1, frames.getInt(27));
+        return null;
+      }
+    }).when(mockFlutterJNI).dispatchPlatformMessageBatch(batch.capture(), position.capture());
+    ShadowLooper.idleMainLooper();
+
+    verify(mockFlutterJNI).dispatchPlatformMessageBatch(any(ByteBuffer.class), eq(31));
+    verify(listener).onBatchDispatched(eq(2), eq(31), anyLong());
+    verify(mockFlutterJNI, never()).dispatchPlatformMessage(anyString(), any(ByteBuffer.class), anyInt(), anyInt());
+  }
+
+  @Test
+  public void itFlushesPendingBatchWhenBatchingIsDisabled() {
+    messenger.enableBatching(null);
+    messenger.send("test", null, null);
+    messenger.disableBatching();
+    verify(mockFlutterJNI).dispatchPlatformMessageBatch(any(ByteBuffer.class), eq(16));
+
+    messenger.send("test", null, null);
+    verify(mockFlutterJNI).dispatchEmptyPlatformMessage("test", 0);
+  }
+
+  @Test
+  public void itFlushesBatchedMessagesBeforeReplying() {
+    ShadowLooper.pauseMainLooper();
+    messenger.enableBatching(null);
+    messenger.setMessageHandler("test", new BinaryMessenger.BinaryMessageHandler() {
+      @Override
+      public void onMessage(ByteBuffer message, BinaryMessenger.BinaryReply reply) {
+        // An event sent before the result must reach Dart first.
+        messenger.send("events", null, null);
+        reply.reply(null);
+      }
+    });
+    messenger.handleMessageFromDart("test", engineBuffer(42), 1, MESSAGE_DATA);
+
+    final InOrder inOrder = inOrder(mockFlutterJNI);
+    inOrder.verify(mockFlutterJNI).dispatchPlatformMessageBatch(any(ByteBuffer.class), eq(18));
+    inOrder.verify(mockFlutterJNI).invokePlatformMessageEmptyResponseCallback(1);
+  }
+
+  private abstract static class TestDirectHandler implements BinaryMessenger.DirectBinaryMessageHandler {
+    @Override
+    public void onMessage(ByteBuffer message, BinaryMessenger.BinaryReply reply) {
+      throw new AssertionError("Direct handlers should receive messages in place");
+    }
+  }
+}
@@ -0,0 +1,67 @@
+package io.flutter.embedding.engine.dart;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.flutter.plugin.common.BinaryMessenger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+
+@Config(manifest=Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class PendingReplyTableTest {
+  @Test
+  public void itRemovesRepliesById() {
+    final PendingReplyTable table = new PendingReplyTable();
+    final BinaryMessenger.BinaryReply first = mock(BinaryMessenger.BinaryReply.class);
+    final BinaryMessenger.BinaryReply second = mock(BinaryMessenger.BinaryReply.class);
+    final int firstId = table.add(first, Long.MAX_VALUE, false).replyId;
+    final int secondId = table.add(second, Long.MAX_VALUE, false).replyId;
+    assertEquals(2, table.size());
+
+    assertSame(second, table.remove(secondId).callback);
+    assertNull(table.remove(secondId));
+    assertSame(first, table.remove(firstId).callback);
+    assertEquals(0, table.size());
+  }
+
+  @Test
+  public void itKeepsRepliesWhoseSlotIsStillTaken() {
+    final PendingReplyTable table = new PendingReplyTable();
+    // The first reply stays pending while enough later ones wrap around the ring to reuse its slot.
+    final PendingReplyTable.Entry oldest = table.add(mock(BinaryMessenger.BinaryReply.class), Long.MAX_VALUE, false);
+    final List<PendingReplyTable.Entry> entries = new ArrayList<>();
+    for (int i = 0; i < 3000; i++) {
+      entries.add(table.add(mock(BinaryMessenger.BinaryReply.class), Long.MAX_VALUE, false));
+    }
+    assertEquals(3001, table.size());
+
+    for (PendingReplyTable.Entry entry : entries) {
+      assertSame(entry, table.remove(entry.replyId));
+    }
+    assertSame(oldest, table.remove(oldest.replyId));
+    assertEquals(0, table.size());
+  }
+
+  @Test
+  public void itRemovesExpiredReplies() {
+    final PendingReplyTable table = new PendingReplyTable();
+    final PendingReplyTable.Entry expired = table.add(mock(BinaryMessenger.BinaryReply.class), 100, false);
+    final PendingReplyTable.Entry pending = table.add(mock(BinaryMessenger.BinaryReply.class), 200, false);
+
+    final List<PendingReplyTable.Entry> removed = table.removeExpired(150);
+
+    assertEquals(1, removed.size());
+    assertSame(expired, removed.get(0));
+    assertNull(table.remove(expired.replyId));
+    assertSame(pending, table.remove(pending.replyId));
+  }
+}
@@ -0,0 +1,135 @@
+package io.flutter.embedding.engine.systemchannels;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.flutter.embedding.engine.dart.DartExecutor;
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.JSONMessageCodec;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@Config(manifest=Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class KeyEventChannelTest {
+  private static KeyEventChannel.FlutterKeyEvent keyEvent(Character complexCharacter) {
+    return new KeyEventChannel.FlutterKeyEvent(1, 2, 'a', 'A', 29, complexCharacter, 30, 1, 257, 1118, 654);
+  }
+
+  // Reads a key data packet into the fields of the JSON message, as the
+  // framework's flutter/keydata listener does.
+  private static Map<String, Object> decodeKeyData(ByteBuffer packet) {
+    packet.order(ByteOrder.LITTLE_ENDIAN);
+    Map<String, Object> message = new HashMap<>();
+    message.put("type", packet.getInt() == KeyEventChannel.KEY_DATA_TYPE_KEYDOWN ? "keydown" : "keyup");
+    message.put("keymap", "android");
+    message.put("flags", packet.getInt());
+    message.put("plainCodePoint", packet.getInt());
+    message.put("codePoint", packet.getInt());
+    message.put("keyCode", packet.getInt());
+    message.put("scanCode", packet.getInt());
+    message.put("metaState", packet.getInt());
+    boolean hasCharacter = packet.getInt() != 0;
+    int character = packet.getInt();
+    if (hasCharacter) {
+      message.put("character", String.valueOf((char) character));
+    }
+    message.put("source", packet.getInt());
+    message.put("vendorId", packet.getInt());
+    message.put("productId", packet.getInt());
+    return message;
+  }
+
+  private static JSONObject decodeJson(ByteBuffer message) {
+    message.flip();
+    return (JSONObject) JSONMessageCodec.INSTANCE.decodeMessage(message);
+  }
+
+  @Test
+  public void keyDataPacketsDecodeToTheJsonMessage() throws JSONException {
+    for (Character complexCharacter : new Character[] {null, 'é', '\uffff'}) {
+      DartExecutor jsonExecutor = mock(DartExecutor.class);
+      new KeyEventChannel(jsonExecutor).keyDown(keyEvent(complexCharacter));
+      ArgumentCaptor<ByteBuffer> jsonMessage = ArgumentCaptor.forClass(ByteBuffer.class);
+      verify(jsonExecutor).send(eq("flutter/keyevent"), jsonMessage.capture(), any(BinaryMessenger.BinaryReply.class));
+
+      DartExecutor packetExecutor = mock(DartExecutor.class);
+      KeyEventChannel keyEventChannel = new KeyEventChannel(packetExecutor);
+      keyEventChannel.setUsesKeyDataPackets(true);
+      keyEventChannel.keyDown(keyEvent(complexCharacter));
+      ArgumentCaptor<ByteBuffer> packet = ArgumentCaptor.forClass(ByteBuffer.class);
+      verify(packetExecutor).send(eq(KeyEventChannel.KEY_DATA_CHANNEL), packet.capture(), any(BinaryMessenger.BinaryReply.class));
+      verify(packetExecutor, never()).send(eq("flutter/keyevent"), any(ByteBuffer.class), any(BinaryMessenger.BinaryReply.class));
+      assertEquals(KeyEventChannel.KEY_DATA_SIZE, packet.getValue().position());
+      packet.getValue().flip();
+
+      JSONObject expected = decodeJson(jsonMessage.getValue());
+      Map<String, Object> decoded = decodeKeyData(packet.getValue());
+      assertEquals(expected.length(), decoded.size());
+      for (Map.Entry<String, Object> field : decoded.entrySet()) {
+        assertEquals(field.getKey(), expected.get(field.getKey()), field.getValue());
+      }
+    }
+  }
+
+  @Test
+  public void keyDataPacketsAreSentWithoutReplyOnceAcknowledged() {
+    DartExecutor dartExecutor = mock(DartExecutor.class);
+    KeyEventChannel keyEventChannel = new KeyEventChannel(dartExecutor);
+    keyEventChannel.setUsesKeyDataPackets(true);
+    keyEventChannel.keyDown(keyEvent(null));
+    ArgumentCaptor<BinaryMessenger.BinaryReply> reply = ArgumentCaptor.forClass(BinaryMessenger.BinaryReply.class);
+    verify(dartExecutor).send(eq(KeyEventChannel.KEY_DATA_CHANNEL), any(ByteBuffer.class), reply.capture());
+
+    reply.getValue().reply(ByteBuffer.allocateDirect(1));
+    keyEventChannel.keyUp(keyEvent(null));
+    keyEventChannel.keyDown(keyEvent(null));
+
+    verify(dartExecutor, times(2)).send(eq(KeyEventChannel.KEY_DATA_CHANNEL), any(ByteBuffer.class));
+    verify(dartExecutor, never()).send(eq("flutter/keyevent"), any(ByteBuffer.class), any(BinaryMessenger.BinaryReply.class));
+  }
+
+  @Test
+  public void keyEventsFallBackToJsonWithoutFrameworkSupport() throws JSONException {
+    DartExecutor dartExecutor = mock(DartExecutor.class);
+    KeyEventChannel keyEventChannel = new KeyEventChannel(dartExecutor);
+    keyEventChannel.setUsesKeyDataPackets(true);
+    keyEventChannel.keyDown(keyEvent(null));
+    keyEventChannel.keyUp(keyEvent(null));
+    ArgumentCaptor<BinaryMessenger.BinaryReply> reply = ArgumentCaptor.forClass(BinaryMessenger.BinaryReply.class);
+    verify(dartExecutor, times(2)).send(eq(KeyEventChannel.KEY_DATA_CHANNEL), any(ByteBuffer.class), reply.capture());
+    verify(dartExecutor, never()).send(eq("flutter/keyevent"), any(ByteBuffer.class), any(BinaryMessenger.BinaryReply.class));
+
+    // Without a flutter/keydata listener, the framework replies to each packet
+    // with nothing.
+    for (BinaryMessenger.BinaryReply unhandled : reply.getAllValues()) {
+      unhandled.reply(null);
+    }
+    keyEventChannel.keyDown(keyEvent(null));
+
+    ArgumentCaptor<ByteBuffer> jsonMessage = ArgumentCaptor.forClass(ByteBuffer.class);
+    verify(dartExecutor, times(3)).send(eq("flutter/keyevent"), jsonMessage.capture(), any(BinaryMessenger.BinaryReply.class));
+    List<ByteBuffer> jsonMessages = jsonMessage.getAllValues();
+    assertEquals("keydown", decodeJson(jsonMessages.get(0)).get("type"));
+    assertEquals("keyup", decodeJson(jsonMessages.get(1)).get("type"));
+    assertEquals("keydown", decodeJson(jsonMessages.get(2)).get("type"));
+    verify(dartExecutor, times(2)).send(eq(KeyEventChannel.KEY_DATA_CHANNEL), any(ByteBuffer.class), any(BinaryMessenger.BinaryReply.class));
+  }
+}
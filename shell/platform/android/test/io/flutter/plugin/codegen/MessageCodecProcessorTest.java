@@ -0,0 +1,205 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugin.codegen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.flutter.plugin.common.MessageCodec;
+import io.flutter.plugin.common.StandardMessageCodec;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.Test;
+import org.robolectric.annotation.Config;
+import org.robolectric.RobolectricTestRunner;
+
+@Config(manifest=Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class MessageCodecProcessorTest {
+    private static final String POINT_SOURCE =
+        "package fixture;\n"
+        + "import io.flutter.plugin.common.GenerateMessageCodec;\n"
+        + "import java.util.List;\n"
+        + "@GenerateMessageCodec(type = 130)\n"
+        + "public class Point {\n"
+        + "    public static int ignoredStatic;\n"
+        + "    public transient int ignoredTransient;\n"
+        + "    public int x;\n"
+        + "    public short s;\n"
+        + "    public byte b;\n"
+        + "    public long y;\n"
+        + "    public float f;\n"
+        + "    public double weight;\n"
+        + "    public boolean visible;\n"
+        + "    public String label;\n"
+        + "    public List<Object> tags;\n"
+        + "    public Point next;\n"
+        + "    public Tag tag;\n"
+        + "    @GenerateMessageCodec(type = 131)\n"
+        + "    public static class Tag {\n"
+        + "        public String name;\n"
+        + "    }\n"
+        + "}\n";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    // Compiles the source of fixture.<className> with MessageCodecProcessor, returning the class
+    // loader of the output, or null if compilation failed, with the diagnostics in errors.
+    private ClassLoader compile(String className, String source, List<String> errors) throws IOException {
+        final File sourceDir = temporaryFolder.newFolder();
+        final File outputDir = temporaryFolder.newFolder();
+        final File sourceFile = new File(new File(sourceDir, "fixture"), className + ".java");
+        assertTrue(sourceFile.getParentFile().mkdirs());
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(sourceFile), "UTF-8")) {
+            writer.write(source);
+        }
+
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        final StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null);
+        final JavaCompiler.CompilationTask task = compiler.getTask(
+            null,
+            fileManager,
+            diagnostics,
+            Arrays.asList(
+                "-classpath", System.getProperty("java.class.path"),
+                "-d", outputDir.getPath(),
+                "-s", outputDir.getPath()),
+            null,
+            fileManager.getJavaFileObjects(sourceFile));
+        task.setProcessors(Collections.singletonList(new MessageCodecProcessor()));
+        final boolean succeeded = task.call();
+        fileManager.close();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                errors.add(diagnostic.getMessage(null));
+            }
+        }
+        if (!succeeded) {
+            return null;
+        }
+        return new URLClassLoader(new URL[] {outputDir.toURI().toURL()}, getClass().getClassLoader());
+    }
+
+    private static void set(Object target, String field, Object value) throws Exception {
+        target.getClass().getField(field).set(target, value);
+    }
+
+    private static Object get(Object target, String field) throws Exception {
+        return target.getClass().getField(field).get(target);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static MessageCodec<Object> codecOf(ClassLoader loader, String codecName) throws Exception {
+        final Field instance = loader.loadClass("fixture." + codecName).getField("INSTANCE");
+        return (MessageCodec<Object>) instance.get(null);
+    }
+
+    @Test
+    public void generatedCodec_roundTripsAnnotatedFixture() throws Exception {
+        final List<String> errors = new ArrayList<>();
+        final ClassLoader loader = compile("Point", POINT_SOURCE, errors);
+        assertEquals(Collections.<String>emptyList(), errors);
+        final Class<?> pointClass = loader.loadClass("fixture.Point");
+        final Object tag = loader.loadClass("fixture.Point$Tag").newInstance();
+        set(tag, "name", "red");
+        final Object next = pointClass.newInstance();
+        set(next, "x", 2);
+        final Object point = pointClass.newInstance();
+        set(point, "ignoredTransient", 9);
+        set(point, "x", 1);
+        set(point, "s", (short) -2);
+        set(point, "b", (byte) 3);
+        set(point, "y", 1L << 40);
+        set(point, "f", 0.5f);
+        set(point, "weight", 0.25);
+        set(point, "visible", true);
+        set(point, "label", "p1");
+        set(point, "tags", Arrays.<Object>asList("a", 1));
+        set(point, "next", next);
+        set(point, "tag", tag);
+
+        final MessageCodec<Object> codec = codecOf(loader, "PointCodec");
+        final ByteBuffer encoded = codec.encodeMessage(point);
+        encoded.flip();
+        final Object decoded = codec.decodeMessage(encoded);
+        assertEquals(0, get(decoded, "ignoredTransient"));
+        assertEquals(1, get(decoded, "x"));
+        assertEquals((short) -2, get(decoded, "s"));
+        assertEquals((byte) 3, get(decoded, "b"));
+        assertEquals(1L << 40, get(decoded, "y"));
+        assertEquals(0.5f, get(decoded, "f"));
+        assertEquals(0.25, get(decoded, "weight"));
+        assertEquals(true, get(decoded, "visible"));
+        assertEquals("p1", get(decoded, "label"));
+        assertEquals(Arrays.<Object>asList("a", 1), get(decoded, "tags"));
+        assertEquals(2, get(get(decoded, "next"), "x"));
+        assertNull(get(get(decoded, "next"), "label"));
+        assertEquals("red", get(get(decoded, "tag"), "name"));
+
+        // Without nested typed values, the fields read like a StandardMessageCodec list in
+        // declaration order.
+        set(point, "next", null);
+        set(point, "tag", null);
+        final ByteBuffer flat = codec.encodeMessage(point);
+        flat.flip();
+        flat.put(0, (byte) 12);
+        assertEquals(
+            Arrays.<Object>asList(1, -2, 3, 1L << 40, 0.5, 0.25, true, "p1", Arrays.<Object>asList("a", 1), null, null),
+            StandardMessageCodec.INSTANCE.decodeMessage(flat));
+    }
+
+    @Test
+    public void processor_rejectsPrivateFields() throws Exception {
+        final List<String> errors = new ArrayList<>();
+        final ClassLoader loader = compile("Secret",
+            "package fixture;\n"
+            + "@io.flutter.plugin.common.GenerateMessageCodec(type = 140)\n"
+            + "public class Secret {\n"
+            + "    private int value;\n"
+            + "}\n",
+            errors);
+        assertNull(loader);
+        assertEquals(
+            Collections.singletonList("Fields encoded by a generated codec must be neither private nor final"),
+            errors);
+    }
+
+    @Test
+    public void processor_rejectsExtensionTypesOutOfRange() throws Exception {
+        final List<String> errors = new ArrayList<>();
+        final ClassLoader loader = compile("Low",
+            "package fixture;\n"
+            + "@io.flutter.plugin.common.GenerateMessageCodec(type = 12)\n"
+            + "public class Low {\n"
+            + "    public int value;\n"
+            + "}\n",
+            errors);
+        assertNull(loader);
+        assertEquals(Collections.singletonList("The extension type must be between 128 and 255"), errors);
+    }
+}
@@ -0,0 +1,313 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugin.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import org.junit.Before;
+import org.junit.runner.RunWith;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.annotation.Config;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLooper;
+
+@Config(manifest=Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class ChunkedTransferChannelTest {
+    private static final String CHANNEL = "transfers";
+
+    // Messages sent by the sending side, delivered to the receiving side by deliver().
+    private final ArrayDeque<Object[]> pending = new ArrayDeque<>();
+    private BinaryMessenger sendingMessenger;
+    private BinaryMessenger receivingMessenger;
+    private int maxPendingChunks;
+
+    @Before
+    public void setUp() {
+        sendingMessenger = mock(BinaryMessenger.class);
+        receivingMessenger = mock(BinaryMessenger.class);
+        final Answer<Void> enqueue = new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                final Object[] arguments = invocation.getArguments();
+                pending.add(new Object[] {arguments[1], arguments.length > 2 ? arguments[2] : null});
+                maxPendingChunks = Math.max(maxPendingChunks, pending.size());
+                return null;
+            }
+        };
+        doAnswer(enqueue).when(sendingMessenger)
+            .send(eq(CHANNEL), any(ByteBuffer.class), any(BinaryMessenger.BinaryReply.class));
+        doAnswer(enqueue).when(sendingMessenger).send(eq(CHANNEL), any(ByteBuffer.class));
+    }
+
+    private BinaryMessenger.BinaryMessageHandler receiver(ChunkedTransferChannel.TransferHandler handler) {
+        new ChunkedTransferChannel(receivingMessenger, CHANNEL).setTransferHandler(handler);
+        final ArgumentCaptor<BinaryMessenger.BinaryMessageHandler> incoming =
+            ArgumentCaptor.forClass(BinaryMessenger.BinaryMessageHandler.class);
+        verify(receivingMessenger).setMessageHandler(eq(CHANNEL), incoming.capture());
+        return incoming.getValue();
+    }
+
+    // Delivers pending messages, and the replies to them, until none are left.
+    private void deliver(BinaryMessenger.BinaryMessageHandler handler) {
+        deliver(handler, Integer.MAX_VALUE);
+    }
+
+    private void deliver(BinaryMessenger.BinaryMessageHandler handler, int count) {
+        for (int i = 0; i < count && !pending.isEmpty(); i++) {
+            final Object[] message = pending.poll();
+            final ByteBuffer bytes = ((ByteBuffer) message[0]).duplicate();
+            bytes.flip();
+            final BinaryMessenger.BinaryReply reply = (BinaryMessenger.BinaryReply) message[1];
+            handler.onMessage(bytes, new BinaryMessenger.BinaryReply() {
+                @Override
+                public void reply(ByteBuffer envelope) {
+                    if (reply != null) {
+                        if (envelope != null) {
+                            envelope.flip();
+                        }
+                        reply.reply(envelope);
+                    }
+                }
+            });
+        }
+    }
+
+    private static ByteBuffer payload(int length) {
+        final ByteBuffer payload = ByteBuffer.allocate(length);
+        for (int i = 0; i < length; i++) {
+            payload.put((byte) (i * 31));
+        }
+        payload.flip();
+        return payload;
+    }
+
+    @Test
+    public void send_reassemblesPayloadWithinWindow() throws Exception {
+        final ByteBuffer[] received = new ByteBuffer[1];
+        final BinaryMessenger.BinaryMessageHandler handler = receiver(new ChunkedTransferChannel.TransferHandler() {
+            @Override
+            public ChunkedTransferChannel.Receiver onTransfer(long length) {
+                return new ChunkedTransferChannel.ReassemblingReceiver(length) {
+                    @Override
+                    protected void onPayload(ByteBuffer payload) {
+                        received[0] = payload;
+                    }
+                };
+            }
+        });
+        final ChunkedTransferChannel channel = new ChunkedTransferChannel(sendingMessenger, CHANNEL, 1000, 3);
+        final ByteBuffer payload = payload(10500);
+
+        final ResultFuture<Object> future = channel.send(payload);
+        deliver(handler);
+
+        assertTrue(future.isDone());
+        assertNull(future.get());
+        assertEquals(payload, received[0]);
+        assertEquals(3, maxPendingChunks);
+    }
+
+    @Test
+    public void send_failsWhenReceiverRejectsTransfer() throws Exception {
+        final BinaryMessenger.BinaryMessageHandler handler = receiver(new ChunkedTransferChannel.TransferHandler() {
+            @Override
+            public ChunkedTransferChannel.Receiver onTransfer(long length) {
+                return null;
+            }
+        });
+        final ResultFuture<Object> future =
+            new ChunkedTransferChannel(sendingMessenger, CHANNEL).send(payload(100));
+        deliver(handler);
+        try {
+            future.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals("transfer-aborted", ((FlutterException) e.getCause()).code);
+        }
+    }
+
+    @Test
+    public void cancel_stopsSendingAndNotifiesReceiver() {
+        final boolean[] cancelled = new boolean[1];
+        final int[] chunks = new int[1];
+        final BinaryMessenger.BinaryMessageHandler handler = receiver(new ChunkedTransferChannel.TransferHandler() {
+            @Override
+            public ChunkedTransferChannel.Receiver onTransfer(long length) {
+                return new ChunkedTransferChannel.Receiver() {
+                    @Override
+                    public void onChunk(ByteBuffer chunk, long offset) {
+                        chunks[0]++;
+                    }
+
+                    @Override
+                    public void onComplete() {
+                        fail();
+                    }
+
+                    @Override
+                    public void onCancel() {
+                        cancelled[0] = true;
+                    }
+                };
+            }
+        });
+        final ResultFuture<Object> future =
+            new ChunkedTransferChannel(sendingMessenger, CHANNEL, 10, 2).send(payload(100));
+        // Accepting the transfer sends the first two chunks.
+        deliver(handler, 1);
+        assertEquals(2, pending.size());
+
+        assertTrue(future.cancel(false));
+        deliver(handler, Integer.MAX_VALUE);
+        assertTrue(future.isCancelled());
+        assertTrue(cancelled[0]);
+        assertEquals(2, chunks[0]);
+    }
+
+    @Test
+    public void cancel_sendsCancelOnMainThread() throws Exception {
+        final CountingReceiver counting = new CountingReceiver();
+        final BinaryMessenger.BinaryMessageHandler handler = receiver(new ChunkedTransferChannel.TransferHandler() {
+            @Override
+            public ChunkedTransferChannel.Receiver onTransfer(long length) {
+                return counting;
+            }
+        });
+        final ResultFuture<Object> future =
+            new ChunkedTransferChannel(sendingMessenger, CHANNEL, 10, 2).send(payload(100));
+        // Accepting the transfer sends the first two chunks.
+        deliver(handler, 1);
+        assertEquals(2, pending.size());
+
+        final Thread canceller = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                future.cancel(false);
+            }
+        });
+        canceller.start();
+        canceller.join();
+        assertTrue(future.isCancelled());
+        // The cancel is not sent until the main looper runs.
+        assertEquals(2, pending.size());
+
+        ShadowLooper.idleMainLooper();
+        assertEquals(3, pending.size());
+        deliver(handler);
+        assertTrue(counting.cancelled);
+    }
+
+    @Test
+    public void setTransferHandler_cancelsTransfersOfReplacedHandler() {
+        final CountingReceiver counting = new CountingReceiver();
+        final ChunkedTransferChannel channel = new ChunkedTransferChannel(receivingMessenger, CHANNEL);
+        channel.setTransferHandler(new ChunkedTransferChannel.TransferHandler() {
+            @Override
+            public ChunkedTransferChannel.Receiver onTransfer(long length) {
+                return counting;
+            }
+        });
+        final ArgumentCaptor<BinaryMessenger.BinaryMessageHandler> incoming =
+            ArgumentCaptor.forClass(BinaryMessenger.BinaryMessageHandler.class);
+        verify(receivingMessenger).setMessageHandler(eq(CHANNEL), incoming.capture());
+        final BinaryMessenger.BinaryMessageHandler handler = incoming.getValue();
+        final ResultFuture<Object> future =
+            new ChunkedTransferChannel(sendingMessenger, CHANNEL, 10, 2).send(payload(100));
+        deliver(handler, 1);
+
+        channel.setTransferHandler(null);
+        assertTrue(counting.cancelled);
+        // Chunks that still reach the replaced handler are rejected.
+        deliver(handler);
+        assertEquals(0, counting.chunks);
+        assertTrue(future.isDone());
+    }
+
+    // A receiver that counts its chunks and records whether it was cancelled.
+    private static final class CountingReceiver implements ChunkedTransferChannel.Receiver {
+        int chunks;
+        boolean cancelled;
+
+        @Override
+        public void onChunk(ByteBuffer chunk, long offset) {
+            chunks++;
+        }
+
+        @Override
+        public void onComplete() {
+            fail();
+        }
+
+        @Override
+        public void onCancel() {
+            cancelled = true;
+        }
+    }
+
+    @Test
+    public void receiver_cancelsTransfersThatGoIdle() {
+        final CountingReceiver counting = new CountingReceiver();
+        final BinaryMessenger.BinaryMessageHandler handler = receiver(new ChunkedTransferChannel.TransferHandler() {
+            @Override
+            public ChunkedTransferChannel.Receiver onTransfer(long length) {
+                return counting;
+            }
+        });
+        final ResultFuture<Object> future =
+            new ChunkedTransferChannel(sendingMessenger, CHANNEL, 10, 2).send(payload(100));
+        deliver(handler, 1);
+
+        ShadowLooper.idleMainLooper(ChunkedTransferChannel.IDLE_TIMEOUT_MS / 2);
+        deliver(handler, 1);
+        ShadowLooper.idleMainLooper(ChunkedTransferChannel.IDLE_TIMEOUT_MS / 2);
+        assertFalse(counting.cancelled);
+
+        ShadowLooper.idleMainLooper(ChunkedTransferChannel.IDLE_TIMEOUT_MS / 2);
+        assertTrue(counting.cancelled);
+        // Chunks of the expired transfer are rejected.
+        deliver(handler);
+        assertEquals(1, counting.chunks);
+        assertTrue(future.isDone());
+    }
+
+    // Returns the reply of the handler to a message of the given bytes.
+    private static ByteBuffer replyTo(BinaryMessenger.BinaryMessageHandler handler, byte... bytes) {
+        final BinaryMessenger.BinaryReply reply = mock(BinaryMessenger.BinaryReply.class);
+        handler.onMessage(ByteBuffer.wrap(bytes), reply);
+        final ArgumentCaptor<ByteBuffer> status = ArgumentCaptor.forClass(ByteBuffer.class);
+        verify(reply).reply(status.capture());
+        return status.getValue();
+    }
+
+    @Test
+    public void receiver_abortsTruncatedMessages() {
+        final BinaryMessenger.BinaryMessageHandler handler = receiver(new ChunkedTransferChannel.TransferHandler() {
+            @Override
+            public ChunkedTransferChannel.Receiver onTransfer(long length) {
+                return new CountingReceiver();
+            }
+        });
+        // A begin without its chunk size, and a chunk without its sequence number.
+        assertEquals(1, replyTo(handler, (byte) 0, (byte) 1, (byte) 0, (byte) 0, (byte) 0, (byte) 8).get(0));
+        assertEquals(1, replyTo(handler, (byte) 1, (byte) 1, (byte) 0, (byte) 0, (byte) 0).get(0));
+        assertNull(replyTo(handler, (byte) 2, (byte) 1));
+    }
+}
@@ -0,0 +1,172 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugin.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Before;
+import org.junit.runner.RunWith;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.robolectric.annotation.Config;
+import org.robolectric.RobolectricTestRunner;
+
+@Config(manifest=Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class EventChannelTest {
+    private BinaryMessenger messenger;
+    private EventChannel.EventSink sink;
+
+    @Before
+    public void setUp() {
+        messenger = mock(BinaryMessenger.class);
+    }
+
+    private BinaryMessenger.BinaryMessageHandler listen(EventChannel.BackpressureStrategy strategy) {
+        final EventChannel channel = new EventChannel(messenger, "events");
+        channel.setStreamHandler(new EventChannel.StreamHandler() {
+            @Override
+            public void onListen(Object arguments, EventChannel.EventSink events) {
+                sink = events;
+            }
+
+            @Override
+            public void onCancel(Object arguments) {}
+        }, strategy);
+        final ArgumentCaptor<BinaryMessenger.BinaryMessageHandler> handler =
+            ArgumentCaptor.forClass(BinaryMessenger.BinaryMessageHandler.class);
+        verify(messenger).setMessageHandler(eq("events"), handler.capture());
+        invoke(handler.getValue(), "listen", null);
+        return handler.getValue();
+    }
+
+    private static void invoke(BinaryMessenger.BinaryMessageHandler handler, String method, Object arguments) {
+        final ByteBuffer call = StandardMethodCodec.INSTANCE.encodeMethodCall(new MethodCall(method, arguments));
+        call.flip();
+        handler.onMessage(call, mock(BinaryMessenger.BinaryReply.class));
+    }
+
+    // Returns the events sent so far, with the reply callback of the last one in lastReply.
+    private List<Object> sentEvents(BinaryMessenger.TimeoutBinaryReply[] lastReply) {
+        final ArgumentCaptor<ByteBuffer> messages = ArgumentCaptor.forClass(ByteBuffer.class);
+        final ArgumentCaptor<BinaryMessenger.TimeoutBinaryReply> replies =
+            ArgumentCaptor.forClass(BinaryMessenger.TimeoutBinaryReply.class);
+        verify(messenger, atLeast(0))
+            .send(eq("events"), messages.capture(), replies.capture(), anyLong());
+        final List<Object> events = new ArrayList<>();
+        for (ByteBuffer message : messages.getAllValues()) {
+            if (message == null) {
+                events.add("<end>");
+                continue;
+            }
+            final ByteBuffer envelope = message.duplicate();
+            envelope.flip();
+            try {
+                events.add(StandardMethodCodec.INSTANCE.decodeEnvelope(envelope));
+            } catch (FlutterException e) {
+                events.add("<" + e.code + ">");
+            }
+        }
+        if (lastReply != null && !replies.getAllValues().isEmpty()) {
+            lastReply[0] = replies.getValue();
+        }
+        return events;
+    }
+
+    @Test
+    public void dropOldest_keepsMostRecentEventsWhileAwaitingAcknowledgement() {
+        listen(EventChannel.BackpressureStrategy.dropOldest(2));
+        for (int i = 1; i <= 5; i++) {
+            sink.success(i);
+        }
+        final BinaryMessenger.TimeoutBinaryReply[] reply = new BinaryMessenger.TimeoutBinaryReply[1];
+        assertEquals(Arrays.<Object>asList(1), sentEvents(reply));
+
+        reply[0].reply(null);
+        reply[0].onTimeout();
+        assertEquals(Arrays.<Object>asList(1, 4, 5), sentEvents(null));
+    }
+
+    @Test
+    public void dropOldest_coalescesErrorsAndCountsThemTowardsCapacity() {
+        listen(EventChannel.BackpressureStrategy.dropOldest(2));
+        sink.success(1);
+        sink.error("e1", null, null);
+        sink.error("e2", null, null);
+        assertEquals(Arrays.<Object>asList(1), sentEvents(null));
+
+        sink.success(2);
+        sink.error("e3", null, null);
+        sink.success(3);
+        final BinaryMessenger.TimeoutBinaryReply[] reply = new BinaryMessenger.TimeoutBinaryReply[1];
+        sentEvents(reply);
+        reply[0].reply(null);
+        sentEvents(reply);
+        reply[0].reply(null);
+        assertEquals(Arrays.<Object>asList(1, "<e3>", 3), sentEvents(null));
+    }
+
+    @Test
+    public void latestPerKey_coalescesHeldBackEventsByKey() {
+        listen(EventChannel.BackpressureStrategy.latestPerKey(new EventChannel.BackpressureStrategy.KeySelector() {
+            @Override
+            public Object keyOf(Object event) {
+                return ((String) event).substring(0, 1);
+            }
+        }));
+        sink.success("a0");
+        sink.success("a1");
+        sink.success("b1");
+        sink.success("a2");
+        sink.endOfStream();
+        final BinaryMessenger.TimeoutBinaryReply[] reply = new BinaryMessenger.TimeoutBinaryReply[1];
+        assertEquals(Arrays.<Object>asList("a0"), sentEvents(reply));
+
+        reply[0].reply(null);
+        sentEvents(reply);
+        reply[0].reply(null);
+        sentEvents(reply);
+        reply[0].reply(null);
+        assertEquals(Arrays.<Object>asList("a0", "a2", "b1", "<end>"), sentEvents(null));
+    }
+
+    @Test
+    public void credit_sendsEventsOnlyAsCreditIsGranted() {
+        final BinaryMessenger.BinaryMessageHandler handler = listen(EventChannel.BackpressureStrategy.credit(10));
+        sink.success(1);
+        sink.success(2);
+        sink.success(3);
+        assertEquals(new ArrayList<Object>(), sentEvents(null));
+
+        invoke(handler, "request", 2);
+        assertEquals(Arrays.<Object>asList(1, 2), sentEvents(null));
+
+        invoke(handler, "request", 5);
+        sink.success(4);
+        assertEquals(Arrays.<Object>asList(1, 2, 3, 4), sentEvents(null));
+    }
+
+    @Test
+    public void cancel_discardsHeldBackEvents() {
+        final BinaryMessenger.BinaryMessageHandler handler = listen(EventChannel.BackpressureStrategy.dropOldest(4));
+        sink.success(1);
+        sink.success(2);
+        final BinaryMessenger.TimeoutBinaryReply[] reply = new BinaryMessenger.TimeoutBinaryReply[1];
+        sentEvents(reply);
+
+        invoke(handler, "cancel", null);
+        reply[0].reply(null);
+        assertEquals(Arrays.<Object>asList(1), sentEvents(null));
+    }
+}
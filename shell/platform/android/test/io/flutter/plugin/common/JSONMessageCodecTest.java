@@ -0,0 +1,132 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugin.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.runner.RunWith;
+import org.junit.Test;
+import org.robolectric.annotation.Config;
+import org.robolectric.RobolectricTestRunner;
+
+@Config(manifest=Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class JSONMessageCodecTest {
+    private static final Charset UTF8 = Charset.forName("UTF8");
+
+    private static String encodeToString(Object value) {
+        final ByteBuffer encoded = JSONMessageCodec.INSTANCE.encodeMessage(value);
+        final byte[] bytes = new byte[encoded.position()];
+        encoded.flip();
+        encoded.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    private static ByteBuffer utf8(String json) {
+        final byte[] bytes = json.getBytes(UTF8);
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+        buffer.flip();
+        return buffer;
+    }
+
+    @Test
+    public void encodeMessage_matchesOrgJsonFormatting() throws Exception {
+        final Map<String, Object> map = new LinkedHashMap<>();
+        map.put("text", "tab\t \"quote\" back\\slash \u0001 \u00e9\u4e2d\ud83d\ude00");
+        map.put("numbers", Arrays.asList(1, -7L, 2.0, 0.5, 0.1f, Long.MIN_VALUE));
+        map.put("flags", new boolean[] {true, false});
+        map.put("ints", new int[] {3, 4});
+        map.put("nothing", null);
+        // org.json does not keep the member order, so compare after parsing the output back.
+        assertEquals(JSONUtil.wrap(map).toString(), new JSONObject(encodeToString(map)).toString());
+        assertEquals("[1,-7,2,0.5,0.1,-9223372036854775808]", encodeToString(map.get("numbers")));
+        assertEquals("\"tab\\t \\\"quote\\\" back\\\\slash \\u0001 \u00e9\u4e2d\ud83d\ude00\"",
+            encodeToString(map.get("text")));
+    }
+
+    @Test
+    public void encodeMessage_rejectsNonFiniteNumbers() {
+        try {
+            JSONMessageCodec.INSTANCE.encodeMessage(Arrays.asList(Double.NaN));
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void decodeMessage_readsOrgJsonTrees() throws Exception {
+        final Object decoded = JSONMessageCodec.INSTANCE.decodeMessage(
+            utf8("{\"a\": [1, 3000000000, 1.5e2, null, true], \"b\": {\"c\": \"\\u00e9\\n\"}}"));
+        final JSONObject object = (JSONObject) decoded;
+        final JSONArray array = object.getJSONArray("a");
+        assertEquals(1, array.get(0));
+        assertEquals(3000000000L, array.get(1));
+        assertEquals(150.0, array.get(2));
+        assertSame(JSONObject.NULL, array.get(3));
+        assertEquals(true, array.get(4));
+        assertEquals("\u00e9\n", object.getJSONObject("b").getString("c"));
+    }
+
+    @Test
+    public void decodeMessage_readsCollections() {
+        final Map<String, Object> map = new HashMap<>();
+        map.put("emoji", "caf\u00e9 \ud83d\ude00");
+        map.put("list", Arrays.asList(1, "two", null, false, -0.25));
+        map.put("nested", new HashMap<String, Object>());
+        final ByteBuffer encoded = JSONMessageCodec.COLLECTIONS_INSTANCE.encodeMessage(map);
+        encoded.flip();
+        assertEquals(map, JSONMessageCodec.COLLECTIONS_INSTANCE.decodeMessage(encoded));
+        assertNull(JSONMessageCodec.COLLECTIONS_INSTANCE.decodeMessage(utf8(" null ")));
+    }
+
+    @Test
+    public void decodeMessage_rejectsInvalidJson() {
+        for (String json : new String[] {"", "{", "[1,]", "{\"a\" 1}", "\"open", "1 2", "tru", "-"}) {
+            try {
+                JSONMessageCodec.INSTANCE.decodeMessage(utf8(json));
+                fail("Accepted " + json);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void methodCodec_roundTripsCallsAndEnvelopes() {
+        final JSONMethodCodec codec = JSONMethodCodec.COLLECTIONS_INSTANCE;
+        final ByteBuffer call = codec.encodeMethodCall(new MethodCall("setState", Arrays.asList(1, "x")));
+        call.flip();
+        final MethodCall decoded = codec.decodeMethodCall(call);
+        assertEquals("setState", decoded.method);
+        assertEquals(Arrays.asList(1, "x"), decoded.arguments);
+
+        final ByteBuffer success = codec.encodeSuccessEnvelope("ok");
+        success.flip();
+        assertEquals("ok", codec.decodeEnvelope(success));
+
+        final ByteBuffer error = JSONMethodCodec.INSTANCE.encodeErrorEnvelope("code", null, Arrays.asList(1));
+        error.flip();
+        try {
+            JSONMethodCodec.INSTANCE.decodeEnvelope(error);
+            fail();
+        } catch (FlutterException e) {
+            assertEquals("code", e.code);
+            assertTrue(e.details instanceof JSONArray);
+        }
+    }
+}
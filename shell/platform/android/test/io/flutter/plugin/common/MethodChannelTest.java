@@ -0,0 +1,364 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugin.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import org.junit.Before;
+import org.junit.runner.RunWith;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.robolectric.annotation.Config;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLooper;
+
+@Config(manifest=Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class MethodChannelTest {
+    private BinaryMessenger messenger;
+
+    @Before
+    public void setUp() {
+        messenger = mock(BinaryMessenger.class);
+    }
+
+    private BinaryMessenger.BinaryMessageHandler register(MethodChannel.MethodCallHandler handler) {
+        new MethodChannel(messenger, "methods").setMethodCallHandler(handler);
+        final ArgumentCaptor<BinaryMessenger.BinaryMessageHandler> incoming =
+            ArgumentCaptor.forClass(BinaryMessenger.BinaryMessageHandler.class);
+        verify(messenger).setMessageHandler(eq("methods"), incoming.capture());
+        return incoming.getValue();
+    }
+
+    // Sends the message to the handler and returns the reply it sends back.
+    private static ByteBuffer send(BinaryMessenger.BinaryMessageHandler handler, ByteBuffer message) {
+        final BinaryMessenger.BinaryReply reply = mock(BinaryMessenger.BinaryReply.class);
+        handler.onMessage(message, reply);
+        final ArgumentCaptor<ByteBuffer> envelope = ArgumentCaptor.forClass(ByteBuffer.class);
+        verify(reply).reply(envelope.capture());
+        return envelope.getValue();
+    }
+
+    @Test
+    public void dispatchTable_answersUnknownMethodsWithoutDecodingArguments() {
+        final BinaryMessenger.BinaryMessageHandler handler = register(new MethodChannel.DispatchTable()
+            .on("known", new MethodChannel.MethodHandler<Object>() {
+                @Override
+                public void onMethodCall(Object arguments, MethodChannel.Result result) {
+                    result.success(arguments);
+                }
+            }));
+        final ByteBuffer encoded = StandardMessageCodec.INSTANCE.encodeMessage("unknown");
+        final ByteBuffer call = ByteBuffer.allocateDirect(encoded.position() + 1);
+        encoded.flip();
+        // The method name is followed by a value of an undefined type.
+        call.put(encoded).put((byte) 99).flip();
+        assertNull(send(handler, call));
+    }
+
+    @Test
+    public void dispatchTable_decodesArgumentsWithRegisteredCodec() {
+        final Map<String, Object> seen = new HashMap<>();
+        final BinaryMessenger.BinaryMessageHandler handler = register(new MethodChannel.DispatchTable()
+            .on("peek", new StandardMessageCodec(false, false, true), new MethodChannel.MethodHandler<Object>() {
+                @Override
+                public void onMethodCall(Object arguments, MethodChannel.Result result) {
+                    final Map<?, ?> map = (Map<?, ?>) arguments;
+                    assertFalse(map instanceof HashMap);
+                    result.success(map.get("id"));
+                }
+            })
+            .on("echo", new MethodChannel.MethodHandler<Object>() {
+                @Override
+                public void onMethodCall(Object arguments, MethodChannel.Result result) {
+                    seen.put("echo", arguments);
+                    result.success(arguments);
+                }
+            }));
+        final Map<String, Object> arguments = new HashMap<>();
+        arguments.put("id", 42);
+        arguments.put("label", "node");
+
+        ByteBuffer call = StandardMethodCodec.INSTANCE.encodeMethodCall(new MethodCall("peek", arguments));
+        call.flip();
+        ByteBuffer envelope = send(handler, call);
+        envelope.flip();
+        assertEquals(42, StandardMethodCodec.INSTANCE.decodeEnvelope(envelope));
+
+        call = StandardMethodCodec.INSTANCE.encodeMethodCall(new MethodCall("echo", arguments));
+        call.flip();
+        envelope = send(handler, call);
+        envelope.flip();
+        assertEquals(arguments, StandardMethodCodec.INSTANCE.decodeEnvelope(envelope));
+        assertEquals(arguments, seen.get("echo"));
+    }
+
+    @Test
+    public void dispatchTable_requiresStandardMethodCodecForArgumentCodecs() {
+        final MethodChannel channel = new MethodChannel(messenger, "methods", JSONMethodCodec.INSTANCE);
+        try {
+            channel.setMethodCallHandler(new MethodChannel.DispatchTable()
+                .on("typed", StandardMessageCodec.INSTANCE, new MethodChannel.MethodHandler<Object>() {
+                    @Override
+                    public void onMethodCall(Object arguments, MethodChannel.Result result) {}
+                }));
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    // Registers a handler that answers every call with null on a channel with the given codec.
+    private BinaryMessenger.BinaryMessageHandler registerEcho(MethodCodec codec) {
+        new MethodChannel(messenger, "methods", codec).setMethodCallHandler(new MethodChannel.MethodCallHandler() {
+            @Override
+            public void onMethodCall(MethodCall call, MethodChannel.Result result) {
+                result.success(null);
+            }
+        });
+        final ArgumentCaptor<BinaryMessenger.BinaryMessageHandler> incoming =
+            ArgumentCaptor.forClass(BinaryMessenger.BinaryMessageHandler.class);
+        verify(messenger).setMessageHandler(eq("methods"), incoming.capture());
+        return incoming.getValue();
+    }
+
+    // Sends a call to the handler as an engine message and returns its retention.
+    private static BinaryMessenger.MessageRetention sendDirect(BinaryMessenger.BinaryMessageHandler handler,
+        String method) {
+        final ByteBuffer call = StandardMethodCodec.INSTANCE.encodeMethodCall(new MethodCall(method, Arrays.asList(1, 2)));
+        call.flip();
+        final BinaryMessenger.MessageRetention retention = mock(BinaryMessenger.MessageRetention.class);
+        ((BinaryMessenger.DirectBinaryMessageHandler) handler)
+            .onDirectMessage(call, mock(BinaryMessenger.BinaryReply.class), retention);
+        return retention;
+    }
+
+    @Test
+    public void methodCallHandler_retainsMessagesOnlyForCodecsThatDecodeIntoThem() {
+        BinaryMessenger.BinaryMessageHandler handler = registerEcho(StandardMethodCodec.INSTANCE);
+        verify(sendDirect(handler, "plain"), never()).retain();
+
+        messenger = mock(BinaryMessenger.class);
+        handler = registerEcho(new StandardMethodCodec(new StandardMessageCodec(false, false, true)));
+        verify(sendDirect(handler, "lazy")).retain();
+
+        messenger = mock(BinaryMessenger.class);
+        handler = registerEcho(JSONMethodCodec.INSTANCE);
+        assertFalse(handler instanceof BinaryMessenger.DirectBinaryMessageHandler);
+
+        messenger = mock(BinaryMessenger.class);
+        handler = registerEcho(new StandardMethodCodec(new StandardMessageCodec() {}));
+        assertFalse(handler instanceof BinaryMessenger.DirectBinaryMessageHandler);
+    }
+
+    @Test
+    public void dispatchTable_retainsMessagesOnlyForCodecsThatDecodeIntoThem() {
+        final MethodChannel.MethodHandler<Object> ignore = new MethodChannel.MethodHandler<Object>() {
+            @Override
+            public void onMethodCall(Object arguments, MethodChannel.Result result) {}
+        };
+        final List<Object> custom = new ArrayList<>();
+        final BinaryMessenger.BinaryMessageHandler handler = register(new MethodChannel.DispatchTable()
+            .on("plain", ignore)
+            .on("lazy", new StandardMessageCodec(false, false, true), ignore)
+            .on("custom", new StandardMessageCodec() {}, new MethodChannel.MethodHandler<Object>() {
+                @Override
+                public void onMethodCall(Object arguments, MethodChannel.Result result) {
+                    custom.add(arguments);
+                }
+            }));
+        verify(sendDirect(handler, "plain"), never()).retain();
+        verify(sendDirect(handler, "lazy")).retain();
+        verify(sendDirect(handler, "custom"), never()).retain();
+        assertEquals(Arrays.asList((Object) Arrays.asList(1, 2)), custom);
+    }
+
+    // Answers the call that was sent to Flutter with the index-th reply callback.
+    private void replyToCall(int index, Object result) {
+        final ArgumentCaptor<BinaryMessenger.BinaryReply> replies =
+            ArgumentCaptor.forClass(BinaryMessenger.BinaryReply.class);
+        verify(messenger, atLeast(index + 1))
+            .send(eq("methods"), any(ByteBuffer.class), replies.capture());
+        final ByteBuffer envelope = StandardMethodCodec.INSTANCE.encodeSuccessEnvelope(result);
+        envelope.flip();
+        replies.getAllValues().get(index).reply(envelope);
+    }
+
+    @Test
+    public void invokeMethod_leasesOnlyMessagesItEncodes() {
+        final ByteBuffer cached = StandardMethodCodec.INSTANCE.encodeMethodCall(new MethodCall("cached", null));
+        new MethodChannel(messenger, "methods").invokeMethod("fresh", null);
+        final ArgumentCaptor<ByteBuffer> sent = ArgumentCaptor.forClass(ByteBuffer.class);
+        verify(messenger).send(eq("methods"), sent.capture(), any(BinaryMessenger.BinaryReply.class));
+
+        // The messenger releases what it sends, which recycles the channel's own buffer only.
+        DirectByteBufferPool.INSTANCE.release(cached);
+        DirectByteBufferPool.INSTANCE.release(sent.getValue());
+        final ByteBuffer next = StandardMethodCodec.INSTANCE.encodeMethodCall(new MethodCall("next", null));
+        assertSame(sent.getValue(), next);
+        assertEquals("cached", StandardMethodCodec.INSTANCE.decodeMethodCall((ByteBuffer) cached.flip()).method);
+    }
+
+    @Test
+    public void invokeMethodAsync_chainsAndCombinesResults() throws Exception {
+        final MethodChannel channel = new MethodChannel(messenger, "methods");
+        final ResultFuture<Object> first = channel.invokeMethodAsync("first", null);
+        final ResultFuture<Object> second = channel.invokeMethodAsync("second", null);
+        final ResultFuture<Object> sum = first.then(new ResultFuture.Transform<Object, Object>() {
+            @Override
+            public Object apply(Object value) {
+                return (Integer) value + 1;
+            }
+        });
+        final ResultFuture<List<Object>> both = ResultFuture.allOf(sum, second);
+        assertFalse(both.isDone());
+
+        replyToCall(1, "two");
+        replyToCall(0, 1);
+        assertTrue(both.isDone());
+        assertEquals(Arrays.<Object>asList(2, "two"), both.get());
+    }
+
+    @Test
+    public void invokeMethodAsync_failsWithErrorResults() throws Exception {
+        final MethodChannel channel = new MethodChannel(messenger, "methods");
+        final ResultFuture<Object> future = channel.invokeMethodAsync("fail", null);
+        final ArgumentCaptor<BinaryMessenger.BinaryReply> reply =
+            ArgumentCaptor.forClass(BinaryMessenger.BinaryReply.class);
+        verify(messenger).send(eq("methods"), any(ByteBuffer.class), reply.capture());
+        final ByteBuffer envelope = StandardMethodCodec.INSTANCE.encodeErrorEnvelope("bad", "Bad call", null);
+        envelope.flip();
+        reply.getValue().reply(envelope);
+        try {
+            future.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals("bad", ((FlutterException) e.getCause()).code);
+        }
+    }
+
+    // A messenger that only implements the methods that BinaryMessenger requires.
+    private static final class MinimalMessenger implements BinaryMessenger {
+        final List<BinaryReply> replies = new ArrayList<>();
+
+        @Override
+        public void send(String channel, ByteBuffer message) {}
+
+        @Override
+        public void send(String channel, ByteBuffer message, BinaryReply callback) {
+            replies.add(callback);
+        }
+
+        @Override
+        public void setMessageHandler(String channel, BinaryMessageHandler handler) {}
+    }
+
+    @Test
+    public void invokeMethodAsync_timesOutOnMessengersWithoutTimeoutSupport() throws Exception {
+        final MinimalMessenger minimal = new MinimalMessenger();
+        final MethodChannel channel = new MethodChannel(minimal, "methods");
+        final ResultFuture<Object> answered = channel.invokeMethodAsync("answered", null, 1000);
+        final ResultFuture<Object> unanswered = channel.invokeMethodAsync("unanswered", null, 1000);
+        final ByteBuffer envelope = StandardMethodCodec.INSTANCE.encodeSuccessEnvelope("done");
+        envelope.flip();
+        minimal.replies.get(0).reply(envelope);
+
+        ShadowLooper.idleMainLooper(900);
+        assertFalse(unanswered.isDone());
+        ShadowLooper.idleMainLooper(200);
+        assertEquals("done", answered.get());
+        try {
+            unanswered.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals(MethodChannel.TIMEOUT_ERROR_CODE, ((FlutterException) e.getCause()).code);
+        }
+    }
+
+    @Test
+    public void resultFuture_runsRemainingListenersWhenOneThrows() throws Exception {
+        final ResultFuture<Object> future = new ResultFuture<>();
+        future.whenComplete(new ErrorLogResult("test") {
+            @Override
+            public void success(Object result) {
+                throw new IllegalStateException("listener failed");
+            }
+        });
+        final ResultFuture<Object> derived = future.then(new ResultFuture.Transform<Object, Object>() {
+            @Override
+            public Object apply(Object value) {
+                return (Integer) value + 1;
+            }
+        });
+        future.success(1);
+        assertTrue(future.isDone());
+        assertEquals(2, derived.get());
+    }
+
+    @Test
+    public void resultFuture_logsListenersThatThrowOnCompletedFutures() throws Exception {
+        final ResultFuture<Object> future = new ResultFuture<>();
+        future.success(1);
+        // Like on a pending future, the exception is logged rather than thrown to the caller.
+        future.whenComplete(new ErrorLogResult("test") {
+            @Override
+            public void success(Object result) {
+                throw new IllegalStateException("listener failed");
+            }
+        });
+        final ResultFuture<Object> derived = future.then(new ResultFuture.Transform<Object, Object>() {
+            @Override
+            public Object apply(Object value) {
+                return (Integer) value + 1;
+            }
+        });
+        assertEquals(2, derived.get());
+    }
+
+    @Test
+    public void resultFuture_answersIncomingCallFromAnotherThread() throws Exception {
+        final Thread[] worker = new Thread[1];
+        final BinaryMessenger.BinaryMessageHandler handler = register(new MethodChannel.MethodCallHandler() {
+            @Override
+            public void onMethodCall(MethodCall call, MethodChannel.Result result) {
+                final ResultFuture<Object> future = new ResultFuture<>();
+                future.whenComplete(result);
+                worker[0] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        future.success("done");
+                    }
+                });
+                worker[0].start();
+            }
+        });
+        final ByteBuffer call = StandardMethodCodec.INSTANCE.encodeMethodCall(new MethodCall("work", null));
+        call.flip();
+        final BinaryMessenger.BinaryReply reply = mock(BinaryMessenger.BinaryReply.class);
+        handler.onMessage(call, reply);
+        worker[0].join();
+        final ArgumentCaptor<ByteBuffer> envelope = ArgumentCaptor.forClass(ByteBuffer.class);
+        verify(reply).reply(envelope.capture());
+        envelope.getValue().flip();
+        assertEquals("done", StandardMethodCodec.INSTANCE.decodeEnvelope(envelope.getValue()));
+    }
+}
@@ -0,0 +1,370 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugin.common;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.runner.RunWith;
+import org.junit.Test;
+import org.robolectric.annotation.Config;
+import org.robolectric.RobolectricTestRunner;
+
+@Config(manifest=Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class StandardMessageCodecTest {
+    private static Object roundTrip(StandardMessageCodec codec, Object value) {
+        final ByteBuffer encoded = codec.encodeMessage(value);
+        encoded.flip();
+        return codec.decodeMessage(encoded);
+    }
+
+    @Test
+    public void encodeMessage_roundTripsNestedValues() {
+        final Map<String, Object> map = new HashMap<>();
+        map.put("id", 42);
+        map.put("name", "flutter");
+        map.put("ratio", 0.5);
+        map.put("values", Arrays.asList(1L, "two", null, true));
+        final Map<?, ?> decoded = (Map<?, ?>) roundTrip(StandardMessageCodec.INSTANCE, map);
+        assertEquals(map, decoded);
+    }
+
+    @Test
+    public void encodeMessage_growsBeyondInitialCapacity() {
+        final byte[] bytes = new byte[100000];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+        final List<Object> list = new ArrayList<>();
+        list.add(bytes);
+        list.add(new double[] {1.0, 2.0});
+        final List<?> decoded = (List<?>) roundTrip(StandardMessageCodec.INSTANCE, list);
+        assertArrayEquals(bytes, (byte[]) decoded.get(0));
+        assertArrayEquals(new double[] {1.0, 2.0}, (double[]) decoded.get(1), 0.0);
+    }
+
+    @Test
+    public void encodeMessage_roundTripsTypedArrays() {
+        final int[] ints = new int[] {1, -2, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        final long[] longs = new long[] {1L, -2L, Long.MAX_VALUE, Long.MIN_VALUE};
+        final float[] floats = new float[] {1.5f, -2.25f, Float.NaN, Float.MAX_VALUE};
+        final double[] doubles = new double[] {1.5, -2.25, Double.NaN, Double.MIN_VALUE};
+        // A leading byte array of odd length forces alignment padding before each typed array.
+        final List<?> decoded = (List<?>) roundTrip(StandardMessageCodec.INSTANCE,
+            Arrays.asList(new byte[] {1, 2, 3}, ints, new byte[] {4}, longs, floats, doubles));
+        assertArrayEquals(ints, (int[]) decoded.get(1));
+        assertArrayEquals(longs, (long[]) decoded.get(3));
+        // Floats are sent widened, as a Float64List.
+        assertArrayEquals(new double[] {1.5, -2.25, Double.NaN, Float.MAX_VALUE}, (double[]) decoded.get(4), 0.0);
+        assertArrayEquals(doubles, (double[]) decoded.get(5), 0.0);
+    }
+
+    @Test
+    public void writeValue_typedArraysMatchElementwiseEncoding() {
+        final int[] ints = new int[1000];
+        for (int i = 0; i < ints.length; i++) {
+            ints[i] = i * 31;
+        }
+        final ByteBuffer bulk = StandardMessageCodec.INSTANCE.encodeMessage(ints);
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        StandardMessageCodec.INSTANCE.writeValue(expected, ints);
+        final byte[] actual = new byte[bulk.position()];
+        bulk.flip();
+        bulk.get(actual);
+        assertArrayEquals(expected.toByteArray(), actual);
+    }
+
+    @Test
+    public void sizeValue_matchesWrittenSizeIncludingAlignment() {
+        final Map<String, Object> map = new HashMap<>();
+        map.put("doubles", new double[] {1.0, 2.0});
+        map.put("floats", FloatBuffer.wrap(new float[] {1.0f}));
+        map.put("text", "caf\u00e9 \u4e2d\ud83d\ude00");
+        map.put("big", new BigInteger("-123456789abcdef", 16));
+        final Object value = Arrays.asList(
+            null, true, 7, 8L, 1.5, new byte[300], new int[3], new long[0], new float[70000], map);
+        // Alignment padding depends on where the value starts.
+        for (int position = 0; position < 8; position++) {
+            final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            for (int i = 0; i < position; i++) {
+                stream.write(0);
+            }
+            StandardMessageCodec.INSTANCE.writeValue(stream, value);
+            assertEquals(stream.size(), StandardMessageCodec.INSTANCE.sizeValue(position, value));
+        }
+    }
+
+    @Test
+    public void encodeSuccessEnvelope_writesIntoExactlySizedBuffer() {
+        final Map<String, Object> result = new HashMap<>();
+        result.put("samples", new double[10000]);
+        result.put("label", "samples");
+        final ByteBuffer encoded = StandardMethodCodec.INSTANCE.encodeSuccessEnvelope(result);
+        // Buffers beyond the largest pooled size class are allocated at the requested size.
+        assertEquals(encoded.limit(), encoded.capacity());
+        encoded.flip();
+        assertEquals("samples", ((Map<?, ?>) StandardMethodCodec.INSTANCE.decodeEnvelope(encoded)).get("label"));
+    }
+
+    @Test
+    public void sizeValue_isUnknownForSubclassesUnsupportedAndManyValues() {
+        final StandardMessageCodec subclass = new StandardMessageCodec() {};
+        assertEquals(-1, subclass.sizeValue(0, "value"));
+        assertEquals(-1, StandardMessageCodec.INSTANCE.sizeValue(0, Arrays.asList(1, new Object())));
+        final List<Object> list = new ArrayList<>();
+        for (int i = 0; i < StandardMessageCodec.MAX_SIZED_VALUES; i++) {
+            list.add(i);
+        }
+        assertEquals(-1, StandardMessageCodec.INSTANCE.sizeValue(0, list));
+    }
+
+    @Test
+    public void decodeMessage_typedDataAsReadOnlyViews() {
+        final StandardMessageCodec codec = new StandardMessageCodec(true);
+        final ByteBuffer encoded = codec.encodeMessage(Arrays.asList(
+            new byte[] {1, 2, 3}, new int[] {4, 5}, new long[] {6L}, new float[] {7.5f}, new double[] {8.5}));
+        encoded.flip();
+        final List<?> decoded = (List<?>) codec.decodeMessage(encoded);
+
+        final ByteBuffer bytes = (ByteBuffer) decoded.get(0);
+        assertTrue(bytes.isReadOnly());
+        assertEquals(3, bytes.remaining());
+        assertEquals(3, bytes.get(2));
+        final IntBuffer ints = (IntBuffer) decoded.get(1);
+        assertTrue(ints.isReadOnly());
+        assertEquals(2, ints.remaining());
+        assertEquals(5, ints.get(1));
+        assertEquals(6L, ((LongBuffer) decoded.get(2)).get(0));
+        assertEquals(7.5, ((DoubleBuffer) decoded.get(3)).get(0), 0.0);
+        assertEquals(8.5, ((DoubleBuffer) decoded.get(4)).get(0), 0.0);
+    }
+
+    @Test
+    public void encodeMessage_acceptsTypedDataBuffers() {
+        final Object decoded = roundTrip(StandardMessageCodec.INSTANCE, Arrays.asList(
+            ByteBuffer.wrap(new byte[] {1, 2}), IntBuffer.wrap(new int[] {3, 4}),
+            DoubleBuffer.wrap(new double[] {5.0})));
+        final List<?> list = (List<?>) decoded;
+        assertArrayEquals(new byte[] {1, 2}, (byte[]) list.get(0));
+        assertArrayEquals(new int[] {3, 4}, (int[]) list.get(1));
+        assertArrayEquals(new double[] {5.0}, (double[]) list.get(2), 0.0);
+    }
+
+    @Test
+    public void encodeMessage_positionAndLimitMarkEndOfMessage() {
+        final ByteBuffer encoded = StandardMessageCodec.INSTANCE.encodeMessage("hello");
+        assertTrue(encoded.isDirect());
+        assertEquals(7, encoded.position());
+        assertEquals(7, encoded.limit());
+    }
+
+    @Test
+    public void encodeMessage_writesStringsAsUtf8() {
+        final Charset utf8 = Charset.forName("UTF8");
+        final String[] strings = new String[] {
+            "", "ascii", "caf\u00e9 \u4e2d \ud83d\ude00", "lone \ud83d surrogate", new String(new char[300]).replace('\0', '\u00e9')
+        };
+        for (String string : strings) {
+            final ByteBuffer encoded = StringCodec.INSTANCE.encodeMessage(string);
+            final byte[] bytes = new byte[encoded.position()];
+            encoded.flip();
+            encoded.get(bytes);
+            assertArrayEquals(string.getBytes(utf8), bytes);
+            encoded.rewind();
+            assertEquals(new String(bytes, utf8), StringCodec.INSTANCE.decodeMessage(encoded));
+            assertEquals(new String(bytes, utf8), roundTrip(StandardMessageCodec.INSTANCE, string));
+        }
+        final ByteBuffer malformed = ByteBuffer.allocateDirect(4);
+        malformed.put(new byte[] {'a', (byte) 0xC3, 'b', (byte) 0xFF});
+        malformed.flip();
+        assertEquals("a\ufffdb\ufffd", StringCodec.INSTANCE.decodeMessage(malformed));
+    }
+
+    @Test
+    public void decodeMessage_reusesInternedStrings() {
+        final StandardMessageCodec codec = new StandardMessageCodec(false, true);
+        final Map<String, Object> message = new HashMap<>();
+        message.put("type", "keydown");
+        message.put("description", new String(new char[StringInternCache.MAX_INTERNED_BYTES + 1]).replace('\0', 'x'));
+        final Map<?, ?> first = (Map<?, ?>) roundTrip(codec, message);
+        final Map<?, ?> second = (Map<?, ?>) roundTrip(codec, message);
+        assertEquals(message, second);
+        assertSame(first.get("type"), second.get("type"));
+        assertSame(keyOf(first, "type"), keyOf(second, "type"));
+        assertNotSame(first.get("description"), second.get("description"));
+    }
+
+    private static Object keyOf(Map<?, ?> map, String key) {
+        for (Object candidate : map.keySet()) {
+            if (candidate.equals(key)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void decodeMessage_lazyCollectionsDecodeOnAccess() {
+        final StandardMessageCodec codec = new StandardMessageCodec(false, false, true);
+        final Map<String, Object> nested = new HashMap<>();
+        nested.put("ratio", 0.5);
+        nested.put("values", Arrays.asList(1L, "two", null, true));
+        final Map<Object, Object> map = new HashMap<>();
+        for (int i = 0; i < 20; i++) {
+            map.put("key" + i, i);
+        }
+        map.put("nested", nested);
+        map.put(7, Arrays.asList(nested, nested));
+        final Map<?, ?> decoded = (Map<?, ?>) roundTrip(codec, map);
+
+        assertFalse(decoded instanceof HashMap);
+        assertEquals(19, decoded.get("key19"));
+        assertEquals(nested, decoded.get("nested"));
+        assertFalse(decoded.get("nested") instanceof HashMap);
+        assertEquals(Arrays.asList(nested, nested), decoded.get(7));
+        assertFalse(decoded.containsKey("missing"));
+        assertEquals(map, decoded);
+        assertEquals(decoded, map);
+        try {
+            ((Map<Object, Object>) decoded).put("key0", 1);
+            fail();
+        } catch (UnsupportedOperationException expected) {
+        }
+    }
+
+    @Test
+    public void decodeMessage_lazyCollectionsReportCorruptionOnAccess() {
+        final StandardMessageCodec codec = new StandardMessageCodec(false, false, true);
+        final ByteBuffer encoded = codec.encodeMessage(Arrays.asList("one", Arrays.asList(2, 3)));
+        encoded.flip();
+        final ByteBuffer corrupted = ByteBuffer.allocateDirect(encoded.remaining() + 1);
+        corrupted.put(encoded).put((byte) 0).flip();
+        final List<?> decoded = (List<?>) codec.decodeMessage(corrupted);
+        try {
+            decoded.size();
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void decodeMethodCall_lazyArgumentsSkipUnreadValues() {
+        final StandardMessageCodec messageCodec = new StandardMessageCodec(false, false, true) {
+            @Override
+            protected void writeValue(ByteArrayOutputStream stream, Object value) {
+                if (value instanceof StringBuilder) {
+                    stream.write(128);
+                    writeBytes(stream, value.toString().getBytes());
+                } else {
+                    super.writeValue(stream, value);
+                }
+            }
+
+            @Override
+            protected Object readValueOfType(byte type, ByteBuffer buffer) {
+                if (type == (byte) 128) {
+                    return new StringBuilder(new String(readBytes(buffer)));
+                }
+                return super.readValueOfType(type, buffer);
+            }
+        };
+        final StandardMethodCodec codec = new StandardMethodCodec(messageCodec);
+        final Map<String, Object> arguments = new HashMap<>();
+        arguments.put("custom", new StringBuilder("custom"));
+        arguments.put("samples", new double[] {1.0, 2.0, 3.0});
+        arguments.put("id", 42L);
+        final ByteBuffer encoded = codec.encodeMethodCall(new MethodCall("update", arguments));
+        encoded.flip();
+        final MethodCall call = codec.decodeMethodCall(encoded);
+        assertEquals("update", call.method);
+        assertEquals(Long.valueOf(42L), call.<Long>argument("id"));
+        assertEquals("custom", call.argument("custom").toString());
+        assertArrayEquals(new double[] {1.0, 2.0, 3.0}, (double[]) call.argument("samples"), 0.0);
+    }
+
+    @Test
+    public void release_ignoresEncodedMessages() {
+        final ByteBuffer first = StandardMessageCodec.INSTANCE.encodeMessage("first");
+        DirectByteBufferPool.INSTANCE.release(first);
+        final ByteBuffer second = StandardMessageCodec.INSTANCE.encodeMessage("second");
+        assertNotSame(first, second);
+        assertEquals("first", StandardMessageCodec.INSTANCE.decodeMessage((ByteBuffer) first.flip()));
+    }
+
+    @Test
+    public void encodesIntoPool_onlyForCodecsThatDoNotOverrideEncoding() {
+        assertTrue(DirectByteBufferPool.encodesIntoPool(StandardMessageCodec.INSTANCE));
+        assertTrue(DirectByteBufferPool.encodesIntoPool(new StandardMessageCodec() {
+            @Override
+            protected void writeValue(ByteArrayOutputStream stream, Object value) {
+                super.writeValue(stream, value);
+            }
+        }));
+        assertTrue(DirectByteBufferPool.encodesIntoPool(StringCodec.INSTANCE));
+        assertTrue(DirectByteBufferPool.encodesIntoPool(StandardMethodCodec.INSTANCE));
+        assertTrue(DirectByteBufferPool.encodesIntoPool(JSONMethodCodec.INSTANCE));
+        assertFalse(DirectByteBufferPool.encodesIntoPool(BinaryCodec.INSTANCE));
+        assertFalse(DirectByteBufferPool.encodesIntoPool(new StandardMessageCodec() {
+            @Override
+            public ByteBuffer encodeMessage(Object message) {
+                return super.encodeMessage(message);
+            }
+        }));
+    }
+
+    @Test
+    public void release_ignoresForeignBuffers() {
+        final ByteBuffer foreign = ByteBuffer.allocateDirect(256);
+        DirectByteBufferPool.INSTANCE.release(foreign);
+        final ByteBuffer encoded = StandardMessageCodec.INSTANCE.encodeMessage("value");
+        assertNotSame(foreign, encoded);
+    }
+
+    @Test
+    public void writeValue_supportsSubclassExtensions() {
+        final StandardMessageCodec codec = new StandardMessageCodec() {
+            @Override
+            protected void writeValue(ByteArrayOutputStream stream, Object value) {
+                if (value instanceof StringBuilder) {
+                    stream.write(128);
+                    writeBytes(stream, value.toString().getBytes());
+                } else {
+                    super.writeValue(stream, value);
+                }
+            }
+
+            @Override
+            protected Object readValueOfType(byte type, ByteBuffer buffer) {
+                if (type == (byte) 128) {
+                    return new StringBuilder(new String(readBytes(buffer)));
+                }
+                return super.readValueOfType(type, buffer);
+            }
+        };
+        final Object decoded = roundTrip(codec, Arrays.asList(new StringBuilder("custom"), 7));
+        final List<?> list = (List<?>) decoded;
+        assertEquals("custom", list.get(0).toString());
+        assertEquals(7, list.get(1));
+    }
+}
@@ -0,0 +1,110 @@
+// Copyright 2013 The Flutter Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package io.flutter.plugin.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.runner.RunWith;
+import org.junit.Test;
+import org.robolectric.annotation.Config;
+import org.robolectric.RobolectricTestRunner;
+
+@Config(manifest=Config.NONE)
+@RunWith(RobolectricTestRunner.class)
+public class TypedMessageCodecTest {
+    static class Point {
+        int x;
+        long y;
+        double weight;
+        boolean visible;
+        String label;
+        List<Object> tags;
+        Point next;
+    }
+
+    // What MessageCodecProcessor generates for Point, see MessageCodecProcessorTest.
+    static final class PointCodec extends TypedMessageCodec<Point> {
+        static final PointCodec INSTANCE = new PointCodec();
+
+        private PointCodec() {
+            super(130, 7);
+        }
+
+        @Override
+        protected void writeFields(Point value, TypedMessageCodec.FieldWriter writer) {
+            writer.writeInt(value.x);
+            writer.writeLong(value.y);
+            writer.writeDouble(value.weight);
+            writer.writeBoolean(value.visible);
+            writer.writeString(value.label);
+            writer.writeValue(value.tags);
+            writer.writeTyped(PointCodec.INSTANCE, value.next);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected Point readFields(TypedMessageCodec.FieldReader reader) {
+            final Point value = new Point();
+            value.x = reader.readInt();
+            value.y = reader.readLong();
+            value.weight = reader.readDouble();
+            value.visible = reader.readBoolean();
+            value.label = reader.readString();
+            value.tags = (List<Object>) reader.readValue();
+            value.next = reader.readTyped(PointCodec.INSTANCE);
+            return value;
+        }
+    }
+
+    private static Point point(int x, Point next) {
+        final Point point = new Point();
+        point.x = x;
+        point.y = 1L << 40;
+        point.weight = 0.25;
+        point.visible = true;
+        point.label = "p" + x;
+        point.tags = Arrays.<Object>asList("a", 1);
+        point.next = next;
+        return point;
+    }
+
+    @Test
+    public void encodeMessage_roundTripsNestedValues() {
+        final ByteBuffer encoded = PointCodec.INSTANCE.encodeMessage(point(1, point(2, null)));
+        encoded.flip();
+        final Point decoded = PointCodec.INSTANCE.decodeMessage(encoded);
+        assertEquals(1, decoded.x);
+        assertEquals(1L << 40, decoded.y);
+        assertEquals(0.25, decoded.weight, 0.0);
+        assertEquals("p1", decoded.label);
+        assertEquals(Arrays.<Object>asList("a", 1), decoded.tags);
+        assertEquals(2, decoded.next.x);
+        assertNull(decoded.next.next);
+    }
+
+    @Test
+    public void encodeMessage_matchesStandardListEncoding() {
+        final Point point = point(3, null);
+        point.label = null;
+        final ByteBuffer encoded = PointCodec.INSTANCE.encodeMessage(point);
+        encoded.flip();
+        // Marking the value as a list makes it readable by a plain StandardMessageCodec.
+        encoded.put(0, (byte) 12);
+        assertEquals(
+            Arrays.<Object>asList(3, 1L << 40, 0.25, true, null, Arrays.<Object>asList("a", 1), null),
+            StandardMessageCodec.INSTANCE.decodeMessage(encoded));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decodeMessage_rejectsOtherTypes() {
+        final ByteBuffer encoded = StandardMessageCodec.INSTANCE.encodeMessage(Arrays.asList(1, 2));
+        encoded.flip();
+        PointCodec.INSTANCE.decodeMessage(encoded);
+    }
+}
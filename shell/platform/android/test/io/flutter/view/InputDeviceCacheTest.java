@@ -0,0 +1,54 @@
+package io.flutter.view;
+
+import android.hardware.input.InputManager;
+import android.os.Handler;
+import android.view.InputDevice;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@Config(manifest=Config.NONE, sdk=27)
+@RunWith(RobolectricTestRunner.class)
+public class InputDeviceCacheTest {
+  @Test
+  public void itLooksDevicesUpOnceUntilTheyChange() {
+    InputManager inputManager = mock(InputManager.class);
+    InputDevice inputDevice = mock(InputDevice.class);
+    when(inputDevice.getVendorId()).thenReturn(7);
+    when(inputDevice.getProductId()).thenReturn(9);
+    when(inputManager.getInputDevice(3)).thenReturn(inputDevice);
+
+    InputDeviceCache cache = new InputDeviceCache();
+    cache.init(inputManager);
+    ArgumentCaptor<InputManager.InputDeviceListener> listener =
+        ArgumentCaptor.forClass(InputManager.InputDeviceListener.class);
+    verify(inputManager).registerInputDeviceListener(listener.capture(), (Handler) isNull());
+
+    InputDeviceCache.Device device = cache.getDevice(3);
+    assertEquals(7, device.vendorId);
+    assertEquals(9, device.productId);
+    // Without a pressure range, pressure is assumed to go from 0 to 1.
+    assertEquals(0.0f, device.pressureMin, 0.0f);
+    assertEquals(1.0f, device.pressureMax, 0.0f);
+    assertSame(device, cache.getDevice(3));
+    verify(inputManager, times(1)).getInputDevice(3);
+
+    // A device without an InputDevice gets the defaults.
+    assertSame(InputDeviceCache.Device.UNKNOWN, cache.getDevice(4));
+
+    listener.getValue().onInputDeviceChanged(3);
+    cache.getDevice(3);
+    verify(inputManager, times(2)).getInputDevice(3);
+  }
+}
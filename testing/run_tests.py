@@ -191,12 +191,12 @@ def EnsureDebugUnoptSkyPackagesAreBuilt():
   subprocess.check_call(gn_command, cwd=buildroot_dir)
   subprocess.check_call(ninja_command, cwd=buildroot_dir)
 
-def EnsureJavaTestsAreBuilt(android_out_dir):
+def EnsureJavaTestsAreBuilt(android_out_dir, target='flutter/shell/platform/android:robolectric_tests'):
   ninja_command = [
     'ninja',
     '-C',
     android_out_dir,
-    'flutter/shell/platform/android:robolectric_tests'
+    target
   ]
 
   # Attempt running Ninja if the out directory exists.
@@ -228,6 +228,7 @@ def RunJavaTests(filter):
     os.path.join(buildroot_dir, 'third_party', 'android_tools', 'sdk', 'platforms', 'android-28', 'android.jar'),
     os.path.join(robolectric_dir, '*'), # Wildcard for all jars in the directory
     os.path.join(android_out_dir, 'flutter_java.jar'),
+    os.path.join(android_out_dir, 'flutter_codec_generator.jar'),
     os.path.join(android_out_dir, 'robolectric_tests.jar')
   ])
 
@@ -243,6 +244,52 @@ def RunJavaTests(filter):
 
   return subprocess.call(command)
 
+def RunJavaBenchmarks(filter, update_baseline):
+  jmh_dir = os.path.join(buildroot_dir, 'third_party', 'jmh', 'lib')
+  if not os.path.isdir(jmh_dir):
+    print('Skipping Java benchmarks: %s does not exist. JMH is not in DEPS; place the '
+          'jmh-core and jmh-generator-annprocess 1.21, jopt-simple 4.6 and commons-math3 3.2 '
+          'jars there to run them.' % jmh_dir)
+    return 0
+
+  android_out_dir = os.path.join(out_dir, 'android_debug_unopt')
+  EnsureJavaTestsAreBuilt(android_out_dir, 'flutter/shell/platform/android:flutter_codec_benchmarks')
+
+  # The benchmarks run on the host JVM. The Robolectric android-all jar provides
+  # the org.json implementation used by the JSON codecs.
+  robolectric_dir = os.path.join(buildroot_dir, 'third_party', 'robolectric', 'lib')
+  android_all_jar = glob.glob(os.path.join(robolectric_dir, 'android-all-*.jar'))[0]
+  classpath = map(str, [
+    os.path.join(jmh_dir, '*'), # Wildcard for all jars in the directory
+    android_all_jar,
+    os.path.join(android_out_dir, 'flutter_java.jar'),
+    os.path.join(android_out_dir, 'flutter_codec_benchmarks.jar')
+  ])
+
+  results = os.path.join(android_out_dir, 'flutter_codec_benchmarks.json')
+  command = [
+    'java',
+    '-classpath', ':'.join(classpath),
+    'org.openjdk.jmh.Main',
+    '-prof', 'gc',
+    '-rf', 'json',
+    '-rff', results,
+  ]
+  if filter:
+    command.append(filter)
+  subprocess.check_call(command)
+
+  compare_command = [
+    sys.executable,
+    os.path.join(buildroot_dir, 'flutter', 'shell', 'platform', 'android', 'benchmark', 'compare_benchmarks.py'),
+    # Throughput depends on the machine, so the baseline stays with the build output.
+    '--baseline', os.path.join(android_out_dir, 'flutter_codec_benchmarks_baseline.json'),
+    '--results', results,
+  ]
+  if update_baseline:
+    compare_command.append('--update')
+  return subprocess.call(compare_command)
+
 def RunDartTests(build_dir, filter):
   # This one is a bit messy. The pubspec.yaml at flutter/testing/dart/pubspec.yaml
   # has dependencies that are hardcoded to point to the sky packages at host_debug_unopt/
@@ -273,6 +320,10 @@ def main():
       help='A list of Dart test scripts to run.')
   parser.add_argument('--java-filter', type=str, default='',
       help='A single Java test class to run.')
+  parser.add_argument('--java-benchmark-filter', type=str, default='',
+      help='A JMH regular expression selecting the Java benchmarks to run.')
+  parser.add_argument('--update-java-benchmark-baseline', action='store_true', default=False,
+      help='Record the results of this run as the Java benchmark baseline of this machine.')
 
   args = parser.parse_args()
 
@@ -282,7 +333,7 @@ def main():
     types = args.type.split(',')
 
   build_dir = os.path.join(out_dir, args.variant)
-  if args.type != 'java':
+  if args.type not in ('java', 'java_benchmarks'):
     assert os.path.exists(build_dir), 'Build variant directory %s does not exist!' % build_dir
 
   engine_filter = args.engine_filter.split(',') if args.engine_filter else None
@@ -306,6 +357,12 @@ def main():
   if 'benchmarks' in types and not IsWindows():
     RunEngineBenchmarks(build_dir, engine_filter)
 
+  # The Java benchmarks take several minutes, so they only run when asked for.
+  if 'java_benchmarks' in types:
+    assert not IsWindows(), "Android engine files can't be compiled on Windows."
+    if RunJavaBenchmarks(args.java_benchmark_filter, args.update_java_benchmark_baseline) != 0:
+      return 1
+
 
 if __name__ == '__main__':
   sys.exit(main())